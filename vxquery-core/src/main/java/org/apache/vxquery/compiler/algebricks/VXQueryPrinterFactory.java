@@ -24,8 +24,22 @@ import org.apache.hyracks.algebricks.data.IPrinterFactory;
 public class VXQueryPrinterFactory implements IPrinterFactory {
     private static final long serialVersionUID = 1L;
 
+    private final boolean jsonLines;
+
+    public VXQueryPrinterFactory() {
+        this(false);
+    }
+
+    /**
+     * @param jsonLines
+     *            print each result item as a JSON value on its own line instead of as XML
+     */
+    public VXQueryPrinterFactory(boolean jsonLines) {
+        this.jsonLines = jsonLines;
+    }
+
     @Override
     public IPrinter createPrinter() {
-        return new XMLSerializer();
+        return new XMLSerializer(jsonLines);
     }
 }
@@ -34,20 +34,58 @@ import org.apache.hyracks.algebricks.core.algebra.expressions.AggregateFunctionC
 import org.apache.hyracks.algebricks.core.algebra.expressions.ScalarFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.UnnestingFunctionCallExpression;
 import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
 import org.apache.hyracks.algebricks.core.algebra.functions.IFunctionInfo;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AggregateOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
-import org.apache.hyracks.algebricks.core.algebra.operators.logical.GroupByOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DistinctOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.NestedTupleSourceOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.OrderOperator.IOrder;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.SubplanOperator;
 import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
 import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.context.RootStaticContextImpl;
+import org.apache.vxquery.context.StaticContextImpl;
 import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.types.NodeType;
+import org.apache.vxquery.types.SequenceType;
 
+/**
+ * The rule replaces a sort and/or distinct nodes function on a sequence of nodes with order and distinct operators,
+ * so the node ids are sorted by the Hyracks runtime instead of inside the scalar function.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   ASSIGN( $v1 : sort_distinct_nodes_asc_or_atomics( $v0 ) )
+ *   plan__child
+ *
+ *   Where $v0 is a variable defined in plan__child holding only nodes.
+ *
+ * After
+ *
+ *   plan__parent
+ *   SUBPLAN{
+ *     AGGREGATE( $v1 : sequence( $v2 ) )
+ *     DISTINCT( $v3, $v4 )
+ *     ORDER( $v3, $v4 )
+ *     ASSIGN( $v4 : local_id_from_node( $v2 ) )
+ *     ASSIGN( $v3 : tree_id_from_node( $v2 ) )
+ *     UNNEST( $v2 : iterate( $v0 ) )
+ *     NESTEDTUPLESOURCE
+ *   }
+ *   plan__child
+ *
+ *   The order operator is only added for the sorting functions and the distinct
+ *   operator only for the distinct functions.
+ * </pre>
+ */
 public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraicRewriteRule {
+    final StaticContextImpl dCtx = new StaticContextImpl(RootStaticContextImpl.INSTANCE);
 
     @Override
     public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context) throws AlgebricksException {
@@ -55,12 +93,12 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
     }
 
     /**
-     * Find where a sort distinct nodes is being used and not required based on input parameters.
+     * Find where a sort distinct nodes is being used on a sequence of nodes.
      * Search pattern: assign [function-call: sort-distinct-nodes-asc-or-atomics]
      */
-    @SuppressWarnings("unused")
     @Override
-    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context) {
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
         Mutable<ILogicalOperator> nextOperatorRef;
 
         // Check if assign is for sort-distinct-nodes-asc-or-atomics.
@@ -77,12 +115,24 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
             return false;
         }
         AbstractFunctionCallExpression functionCall = (AbstractFunctionCallExpression) logicalExpression;
-        if (!functionCall.getFunctionIdentifier().equals(
-                BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
-                && !functionCall.getFunctionIdentifier().equals(
-                        BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier())
-                && !functionCall.getFunctionIdentifier().equals(
-                        BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())) {
+        FunctionIdentifier fid = functionCall.getFunctionIdentifier();
+        boolean sort = fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_NODES_ASC.getFunctionIdentifier());
+        boolean distinct = fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier());
+        if (!sort && !distinct) {
+            return false;
+        }
+
+        // The node id key is empty for atomic values, so only a sequence of nodes can use the operators.
+        Mutable<ILogicalExpression> argument = functionCall.getArguments().get(0);
+        if (argument.getValue().getExpressionTag() != LogicalExpressionTag.VARIABLE) {
+            return false;
+        }
+        if (!isNodeSequence(assign.getInputs().get(0), argument)) {
             return false;
         }
 
@@ -93,8 +143,7 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
         nextOperatorRef = new MutableObject<ILogicalOperator>(ntsOperator);
 
         // Get variable that is being used for sort and distinct operators.
-        VariableReferenceExpression inputVariableRef = (VariableReferenceExpression) functionCall.getArguments().get(0)
-                .getValue();
+        VariableReferenceExpression inputVariableRef = (VariableReferenceExpression) argument.getValue();
         LogicalVariable inputVariable = inputVariableRef.getVariableReference();
 
         // Unnest.
@@ -103,39 +152,33 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
         unnestOperator.getInputs().add(nextOperatorRef);
         nextOperatorRef = new MutableObject<ILogicalOperator>(unnestOperator);
 
-        // Assign Node ID key.
-        LogicalVariable nodeIdKeyVariable = context.newVar();
-        AssignOperator nodeIdAssignOp = getAssignOperator(unnestVariable, nodeIdKeyVariable,
-                BuiltinOperators.ID_FROM_NODE);
-        nodeIdAssignOp.getInputs().add(nextOperatorRef);
-        nextOperatorRef = new MutableObject<ILogicalOperator>(nodeIdAssignOp);
+        // Assign the node id keys: the tree id and the local id within the tree.
+        LogicalVariable treeIdKeyVariable = context.newVar();
+        AssignOperator treeIdAssignOp = getAssignOperator(unnestVariable, treeIdKeyVariable,
+                BuiltinOperators.TREE_ID_FROM_NODE);
+        treeIdAssignOp.getInputs().add(nextOperatorRef);
+        nextOperatorRef = new MutableObject<ILogicalOperator>(treeIdAssignOp);
 
-        // Prepare for Order and Distinct.
-        Mutable<ILogicalExpression> nodeIdKeyVariableRef = new MutableObject<ILogicalExpression>(
-                new VariableReferenceExpression(nodeIdKeyVariable));
+        LogicalVariable localIdKeyVariable = context.newVar();
+        AssignOperator localIdAssignOp = getAssignOperator(unnestVariable, localIdKeyVariable,
+                BuiltinOperators.LOCAL_ID_FROM_NODE);
+        localIdAssignOp.getInputs().add(nextOperatorRef);
+        nextOperatorRef = new MutableObject<ILogicalOperator>(localIdAssignOp);
+
+        // Order. Distinct nodes also expects the input sorted by the key.
+        if (sort) {
+            OrderOperator orderOperator = getOrderOperator(treeIdKeyVariable, localIdKeyVariable);
+            orderOperator.getInputs().add(nextOperatorRef);
+            nextOperatorRef = new MutableObject<ILogicalOperator>(orderOperator);
+        }
 
         // Distinct.
-        if (functionCall.getFunctionIdentifier().equals(
-                BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
-                || functionCall.getFunctionIdentifier().equals(
-                        BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier())) {
-            LogicalVariable groupByVariable = context.newVar();
-            ILogicalExpression nodeIdKeyVre = new VariableReferenceExpression(nodeIdKeyVariable);
-            GroupByOperator groupByOperator = getGroupByOperator(groupByVariable, nodeIdKeyVre);
-            groupByOperator.getInputs().add(nextOperatorRef);
-            nextOperatorRef = new MutableObject<ILogicalOperator>(groupByOperator);
+        if (distinct) {
+            DistinctOperator distinctOperator = getDistinctOperator(treeIdKeyVariable, localIdKeyVariable);
+            distinctOperator.getInputs().add(nextOperatorRef);
+            nextOperatorRef = new MutableObject<ILogicalOperator>(distinctOperator);
         }
 
-//        // Order.
-//        if (functionCall.getFunctionIdentifier().equals(
-//                BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
-//                || functionCall.getFunctionIdentifier().equals(
-//                        BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())) {
-//            OrderOperator orderOperator = getOrderOperator(nodeIdKeyVariableRef);
-//            orderOperator.getInputs().add(nextOperatorRef);
-//            nextOperatorRef = new MutableObject<ILogicalOperator>(orderOperator);
-//        }
-//
         // Aggregate.
         LogicalVariable aggregateVariable = assign.getVariables().get(0);
         AggregateOperator aggregateOperator = getAggregateOperator(unnestVariable, aggregateVariable);
@@ -147,6 +190,7 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
         subplanOperator.getInputs().add(assign.getInputs().get(0));
         subplanOperator.setRootOp(nextOperatorRef);
 
+        assign.getInputs().clear();
         opRef.setValue(subplanOperator);
 
         return true;
@@ -179,10 +223,48 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
         return new AssignOperator(outputVariable, nodeTreeIdExpression);
     }
 
-    private GroupByOperator getGroupByOperator(LogicalVariable outputVariable, ILogicalExpression variableRef) {
-        GroupByOperator op = new GroupByOperator();
-        op.addGbyExpression(outputVariable, variableRef);
-        return op;
+    private DistinctOperator getDistinctOperator(LogicalVariable... variables) {
+        List<Mutable<ILogicalExpression>> distinctArgs = new ArrayList<Mutable<ILogicalExpression>>();
+        for (LogicalVariable variable : variables) {
+            distinctArgs.add(new MutableObject<ILogicalExpression>(new VariableReferenceExpression(variable)));
+        }
+        return new DistinctOperator(distinctArgs);
+    }
+
+    /**
+     * Check the static type of the argument. Path steps are collected into a sequence by an aggregate at the root of
+     * a subplan, so the aggregated expression is checked in that case.
+     */
+    private boolean isNodeSequence(Mutable<ILogicalOperator> inputRef, Mutable<ILogicalExpression> argument) {
+        LogicalVariable variable = ((VariableReferenceExpression) argument.getValue()).getVariableReference();
+        AbstractLogicalOperator input = (AbstractLogicalOperator) inputRef.getValue();
+        if (input.getOperatorTag() == LogicalOperatorTag.SUBPLAN) {
+            SubplanOperator subplan = (SubplanOperator) input;
+            Mutable<ILogicalOperator> rootRef = subplan.getNestedPlans().get(0).getRoots().get(0);
+            AbstractLogicalOperator root = (AbstractLogicalOperator) rootRef.getValue();
+            if (root.getOperatorTag() == LogicalOperatorTag.AGGREGATE) {
+                AggregateOperator aggregate = (AggregateOperator) root;
+                int index = aggregate.getVariables().indexOf(variable);
+                if (index >= 0) {
+                    ILogicalExpression aggregateExpression = aggregate.getExpressions().get(index).getValue();
+                    if (aggregateExpression.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+                        return false;
+                    }
+                    AbstractFunctionCallExpression aggregateCall = (AbstractFunctionCallExpression) aggregateExpression;
+                    if (!aggregateCall.getFunctionIdentifier()
+                            .equals(BuiltinOperators.SEQUENCE.getFunctionIdentifier())) {
+                        return false;
+                    }
+                    return isNodeType(
+                            ExpressionToolbox.getOutputSequenceType(rootRef, aggregateCall.getArguments().get(0), dCtx));
+                }
+            }
+        }
+        return isNodeType(ExpressionToolbox.getOutputSequenceType(inputRef, argument, dCtx));
+    }
+
+    private boolean isNodeType(SequenceType sequenceType) {
+        return sequenceType != null && sequenceType.getItemType() instanceof NodeType;
     }
 
     private Mutable<ILogicalOperator> getInputOperator(Mutable<ILogicalOperator> opRef) {
@@ -199,10 +281,13 @@ public class ConvertAssignSortDistinctNodesToOperatorsRule implements IAlgebraic
         }
     }
 
-    @SuppressWarnings("unused")
-    private OrderOperator getOrderOperator(Mutable<ILogicalExpression> variableRef) {
+    private OrderOperator getOrderOperator(LogicalVariable... variables) {
         List<Pair<IOrder, Mutable<ILogicalExpression>>> orderArgs = new ArrayList<Pair<IOrder, Mutable<ILogicalExpression>>>();
-        orderArgs.add(new Pair<IOrder, Mutable<ILogicalExpression>>(OrderOperator.ASC_ORDER, variableRef));
+        for (LogicalVariable variable : variables) {
+            Mutable<ILogicalExpression> variableRef = new MutableObject<ILogicalExpression>(
+                    new VariableReferenceExpression(variable));
+            orderArgs.add(new Pair<IOrder, Mutable<ILogicalExpression>>(OrderOperator.ASC_ORDER, variableRef));
+        }
         OrderOperator oo = new OrderOperator(orderArgs);
         return oo;
     }
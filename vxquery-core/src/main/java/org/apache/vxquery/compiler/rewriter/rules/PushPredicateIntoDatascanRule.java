@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.AlgebricksBuiltinFunctions;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.SelectOperator;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.runtime.functions.comparison.general.GeneralComparisonKeys.Comparison;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.types.AnyItemType;
+import org.apache.vxquery.types.AnyNodeType;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.ItemType;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.xmlparser.ElementPredicate;
+
+/**
+ * The rule searches for a select operator above a collection data scan whose
+ * child path steps have been pushed into the scan. Each conjunct of the
+ * condition that compares a child path of the scanned element with a constant
+ * is added to the data source, and the parser leaves out the elements for
+ * which the comparison is false before they are written to a frame.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   SELECT( value-eq( data( child( $v1, dataType ) ), "TMAX" ) and ... )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ * After
+ *
+ *   plan__parent
+ *   SELECT( value-eq( data( child( $v1, dataType ) ), "TMAX" ) and ... )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   $source is encoded with the predicate dataType eq "TMAX".
+ * </pre>
+ *
+ * The select is kept, so the parser only has to leave out elements that are
+ * sure to fail the condition. Assign operators between the select and the scan
+ * are looked through.
+ */
+public class PushPredicateIntoDatascanRule implements IAlgebraicRewriteRule {
+    private StaticContext dCtx = null;
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        AbstractLogicalOperator op1 = (AbstractLogicalOperator) opRef.getValue();
+        if (op1.getOperatorTag() != LogicalOperatorTag.SELECT || context.checkIfInDontApplySet(this, op1)) {
+            return false;
+        }
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        SelectOperator select = (SelectOperator) op1;
+
+        // Find the data scan and the expressions assigned between it and the select.
+        Map<LogicalVariable, Mutable<ILogicalExpression>> assigned = new HashMap<>();
+        AbstractLogicalOperator op2 = (AbstractLogicalOperator) select.getInputs().get(0).getValue();
+        while (op2.getOperatorTag() == LogicalOperatorTag.ASSIGN) {
+            AssignOperator assign = (AssignOperator) op2;
+            for (int i = 0; i < assign.getVariables().size(); ++i) {
+                assigned.put(assign.getVariables().get(i), assign.getExpressions().get(i));
+            }
+            op2 = (AbstractLogicalOperator) op2.getInputs().get(0).getValue();
+        }
+        if (op2.getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+            return false;
+        }
+        DataSourceScanOperator datascan = (DataSourceScanOperator) op2;
+        if (!(datascan.getDataSource() instanceof VXQueryCollectionDataSource)) {
+            return false;
+        }
+        VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+        if (ds.getChildSeq().isEmpty()) {
+            // Whole documents are not filtered.
+            return false;
+        }
+
+        List<ElementPredicate> predicates = new ArrayList<>();
+        findPredicates(select.getCondition(), datascan.getVariables().get(0), assigned, predicates);
+        context.addToDontApplySet(this, select);
+        for (ElementPredicate predicate : predicates) {
+            ds.addElementPredicate(predicate);
+        }
+        return !predicates.isEmpty();
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        return false;
+    }
+
+    private void findPredicates(Mutable<ILogicalExpression> expressionRef, LogicalVariable scanVariable,
+            Map<LogicalVariable, Mutable<ILogicalExpression>> assigned, List<ElementPredicate> predicates) {
+        ILogicalExpression le = expressionRef.getValue();
+        if (le.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            Mutable<ILogicalExpression> assignedRef = assigned
+                    .get(((VariableReferenceExpression) le).getVariableReference());
+            if (assignedRef != null) {
+                findPredicates(assignedRef, scanVariable, assigned, predicates);
+            }
+            return;
+        }
+        if (le.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return;
+        }
+        AbstractFunctionCallExpression afce = (AbstractFunctionCallExpression) le;
+        FunctionIdentifier fid = afce.getFunctionIdentifier();
+        if (fid.equals(BuiltinFunctions.FN_BOOLEAN_1.getFunctionIdentifier())) {
+            findPredicates(afce.getArguments().get(0), scanVariable, assigned, predicates);
+            return;
+        }
+        if (fid.equals(AlgebricksBuiltinFunctions.AND) || fid.equals(BuiltinOperators.AND.getFunctionIdentifier())) {
+            // Every conjunct must hold, so each one can be checked on its own.
+            for (Mutable<ILogicalExpression> argument : afce.getArguments()) {
+                findPredicates(argument, scanVariable, assigned, predicates);
+            }
+            return;
+        }
+        boolean general = isGeneralComparison(fid);
+        Comparison comparison = getComparison(fid);
+        if (comparison == null || afce.getArguments().size() != 2) {
+            return;
+        }
+        Mutable<ILogicalExpression> arg1 = afce.getArguments().get(0);
+        Mutable<ILogicalExpression> arg2 = afce.getArguments().get(1);
+        List<Integer> childSeq = getChildPath(arg1, scanVariable, assigned, general);
+        byte[] constant = getConstant(arg2, assigned, general);
+        if (childSeq == null || constant == null) {
+            // The constant may come first.
+            childSeq = getChildPath(arg2, scanVariable, assigned, general);
+            constant = getConstant(arg1, assigned, general);
+            comparison = reverse(comparison);
+        }
+        if (childSeq != null && !childSeq.isEmpty() && constant != null) {
+            predicates.add(new ElementPredicate(childSeq, comparison, general, constant));
+        }
+    }
+
+    /**
+     * @return the type codes of the child path steps from the scanned element, or null if the expression is not a
+     *         child path of the scanned element
+     */
+    private List<Integer> getChildPath(Mutable<ILogicalExpression> expressionRef, LogicalVariable scanVariable,
+            Map<LogicalVariable, Mutable<ILogicalExpression>> assigned, boolean general) {
+        Mutable<ILogicalExpression> ref = removeWrappers(expressionRef, general);
+        ILogicalExpression le = ref.getValue();
+        if (le.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable variable = ((VariableReferenceExpression) le).getVariableReference();
+            if (variable.equals(scanVariable)) {
+                return new ArrayList<>();
+            }
+            Mutable<ILogicalExpression> assignedRef = assigned.get(variable);
+            return assignedRef == null ? null : getChildPath(assignedRef, scanVariable, assigned, general);
+        }
+        if (le.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return null;
+        }
+        AbstractFunctionCallExpression afce = (AbstractFunctionCallExpression) le;
+        if (!afce.getFunctionIdentifier().equals(BuiltinOperators.CHILD.getFunctionIdentifier())) {
+            return null;
+        }
+        int typeId = ExpressionToolbox.getTypeExpressionTypeArgument(ref);
+        if (typeId <= 0 || !(dCtx.lookupSequenceType(typeId).getItemType() instanceof ElementType)) {
+            return null;
+        }
+        ElementType it = (ElementType) dCtx.lookupSequenceType(typeId).getItemType();
+        if (!it.getContentType().equals(ElementType.ANYELEMENT.getContentType())) {
+            return null;
+        }
+        List<Integer> childSeq = getChildPath(afce.getArguments().get(0), scanVariable, assigned, general);
+        if (childSeq != null) {
+            childSeq.add(typeId);
+        }
+        return childSeq;
+    }
+
+    /**
+     * @return the constant as a tagged value, or null if the expression is not a constant that the parser can
+     *         compare with the text of an element
+     */
+    private byte[] getConstant(Mutable<ILogicalExpression> expressionRef,
+            Map<LogicalVariable, Mutable<ILogicalExpression>> assigned, boolean general) {
+        ILogicalExpression le = removeWrappers(expressionRef, general).getValue();
+        if (le.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            Mutable<ILogicalExpression> assignedRef = assigned
+                    .get(((VariableReferenceExpression) le).getVariableReference());
+            return assignedRef == null ? null : getConstant(assignedRef, assigned, general);
+        }
+        if (le.getExpressionTag() != LogicalExpressionTag.CONSTANT) {
+            return null;
+        }
+        TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        ExpressionToolbox.getConstantAsPointable((ConstantExpression) le, tvp);
+        // Value comparisons compare untyped values as strings, general comparisons cast them to numbers.
+        if (tvp.getTag() != ValueTag.XS_STRING_TAG && !(general && FunctionHelper.isDerivedFromDouble(tvp.getTag()))) {
+            return null;
+        }
+        return Arrays.copyOfRange(tvp.getByteArray(), tvp.getStartOffset(), tvp.getStartOffset() + tvp.getLength());
+    }
+
+    /**
+     * Skips the atomization, sorting and type checks around an operand that do not change the comparison. A type
+     * check that fails on an empty sequence, or on several items of a general comparison, is kept.
+     */
+    private Mutable<ILogicalExpression> removeWrappers(Mutable<ILogicalExpression> expressionRef, boolean general) {
+        Mutable<ILogicalExpression> ref = expressionRef;
+        while (ref.getValue().getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL) {
+            AbstractFunctionCallExpression afce = (AbstractFunctionCallExpression) ref.getValue();
+            FunctionIdentifier fid = afce.getFunctionIdentifier();
+            if (fid.equals(BuiltinFunctions.FN_DATA_1.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier())) {
+                ref = afce.getArguments().get(0);
+            } else if (fid.equals(BuiltinOperators.PROMOTE.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.TREAT.getFunctionIdentifier())) {
+                SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(ref, dCtx);
+                if (type == null || !isUncheckedType(type, general)) {
+                    return ref;
+                }
+                ref = afce.getArguments().get(0);
+            } else {
+                return ref;
+            }
+        }
+        return ref;
+    }
+
+    private static boolean isUncheckedType(SequenceType type, boolean general) {
+        ItemType itemType = type.getItemType();
+        if (!itemType.equals(AnyItemType.INSTANCE) && !itemType.equals(AnyNodeType.INSTANCE)
+                && !itemType.equals(BuiltinTypeRegistry.XS_ANY_ATOMIC)) {
+            return false;
+        }
+        return type.getQuantifier() == Quantifier.QUANT_STAR
+                || (!general && type.getQuantifier() == Quantifier.QUANT_QUESTION);
+    }
+
+    private static boolean isGeneralComparison(FunctionIdentifier fid) {
+        return fid.equals(BuiltinOperators.GENERAL_EQ.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_NE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GE.getFunctionIdentifier());
+    }
+
+    private static Comparison getComparison(FunctionIdentifier fid) {
+        if (fid.equals(AlgebricksBuiltinFunctions.EQ) || fid.equals(BuiltinOperators.VALUE_EQ.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_EQ.getFunctionIdentifier())) {
+            return Comparison.EQ;
+        } else if (fid.equals(AlgebricksBuiltinFunctions.NEQ)
+                || fid.equals(BuiltinOperators.VALUE_NE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_NE.getFunctionIdentifier())) {
+            return Comparison.NE;
+        } else if (fid.equals(AlgebricksBuiltinFunctions.LT)
+                || fid.equals(BuiltinOperators.VALUE_LT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LT.getFunctionIdentifier())) {
+            return Comparison.LT;
+        } else if (fid.equals(AlgebricksBuiltinFunctions.LE)
+                || fid.equals(BuiltinOperators.VALUE_LE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_LE.getFunctionIdentifier())) {
+            return Comparison.LE;
+        } else if (fid.equals(AlgebricksBuiltinFunctions.GT)
+                || fid.equals(BuiltinOperators.VALUE_GT.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GT.getFunctionIdentifier())) {
+            return Comparison.GT;
+        } else if (fid.equals(AlgebricksBuiltinFunctions.GE)
+                || fid.equals(BuiltinOperators.VALUE_GE.getFunctionIdentifier())
+                || fid.equals(BuiltinOperators.GENERAL_GE.getFunctionIdentifier())) {
+            return Comparison.GE;
+        }
+        return null;
+    }
+
+    private static Comparison reverse(Comparison comparison) {
+        switch (comparison) {
+            case LT:
+                return Comparison.GT;
+            case LE:
+                return Comparison.GE;
+            case GT:
+                return Comparison.LT;
+            case GE:
+                return Comparison.LE;
+            default:
+                return comparison;
+        }
+    }
+}
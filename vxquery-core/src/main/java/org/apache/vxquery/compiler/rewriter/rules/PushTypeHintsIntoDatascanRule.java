@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalPlan;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractOperatorWithNestedPlans;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AggregateOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.UnnestOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.visitors.VariableUtilities;
+import org.apache.hyracks.algebricks.core.algebra.visitors.ILogicalExpressionReferenceTransform;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.AnyItemType;
+import org.apache.vxquery.types.AnyNodeType;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.ItemType;
+import org.apache.vxquery.types.NameTest;
+import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.xmlparser.ElementTypeHint;
+import org.apache.vxquery.xmlparser.ElementTypeHintCaster;
+
+/**
+ * The rule searches the whole plan for the uses of the elements returned by a
+ * collection data scan whose child path steps have been pushed into the scan.
+ * A child path of the scanned element whose elements are only used in casts to
+ * one of the types the scan can cast to is added to the data source, and the
+ * parser stores the text of these elements as a value of the type.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : cast( data( child( $v1, value ) ), xs:double? ) )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ * After
+ *
+ *   plan__parent
+ *   ASSIGN( $v2 : cast( data( child( $v1, value ) ), xs:double? ) )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   $source is encoded with the type hint value as xs:double.
+ * </pre>
+ *
+ * The cast is kept and becomes the identity on the stored value. Variables
+ * assigned, unnested or aggregated from child paths of the scanned element are
+ * followed. Any other use of a path, or of a path that may select the same
+ * elements or their ancestors, leaves the path untyped.
+ */
+public class PushTypeHintsIntoDatascanRule implements IAlgebraicRewriteRule {
+    private StaticContext dCtx = null;
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.DISTRIBUTE_RESULT || context.checkIfInDontApplySet(this, op)) {
+            return false;
+        }
+        if (dCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            dCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        context.addToDontApplySet(this, op);
+
+        List<ILogicalOperator> operators = new ArrayList<>();
+        findOperators(opRef, operators);
+        boolean modified = false;
+        for (ILogicalOperator operator : operators) {
+            if (operator.getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+                continue;
+            }
+            DataSourceScanOperator datascan = (DataSourceScanOperator) operator;
+            if (!(datascan.getDataSource() instanceof VXQueryCollectionDataSource)) {
+                continue;
+            }
+            VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+            if (ds.getChildSeq().isEmpty() || !ds.getValueSeq().isEmpty() || !ds.getElementTypeHints().isEmpty()) {
+                // Whole documents and JSON values are not typed.
+                continue;
+            }
+            for (ElementTypeHint hint : findTypeHints(datascan.getVariables().get(0), operators)) {
+                ds.addElementTypeHint(hint);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        return false;
+    }
+
+    private static void findOperators(Mutable<ILogicalOperator> opRef, List<ILogicalOperator> operators) {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (operators.contains(op)) {
+            return;
+        }
+        operators.add(op);
+        if (op.hasNestedPlans()) {
+            for (ILogicalPlan plan : ((AbstractOperatorWithNestedPlans) op).getNestedPlans()) {
+                for (Mutable<ILogicalOperator> root : plan.getRoots()) {
+                    findOperators(root, operators);
+                }
+            }
+        }
+        for (Mutable<ILogicalOperator> input : op.getInputs()) {
+            findOperators(input, operators);
+        }
+    }
+
+    private List<ElementTypeHint> findTypeHints(LogicalVariable scanVariable, List<ILogicalOperator> operators)
+            throws AlgebricksException {
+        // The child path from the scanned element of each variable that holds the elements of a path.
+        Map<LogicalVariable, List<Integer>> paths = new HashMap<>();
+        paths.put(scanVariable, new ArrayList<Integer>());
+        boolean added;
+        do {
+            added = false;
+            for (ILogicalOperator op : operators) {
+                List<LogicalVariable> variables = new ArrayList<>();
+                List<Mutable<ILogicalExpression>> expressions = new ArrayList<>();
+                getDefinitions(op, variables, expressions);
+                for (int i = 0; i < variables.size(); ++i) {
+                    if (paths.containsKey(variables.get(i))) {
+                        continue;
+                    }
+                    List<Integer> childSeq = getDefinedPath(op, expressions.get(i), paths);
+                    if (childSeq != null) {
+                        paths.put(variables.get(i), childSeq);
+                        added = true;
+                    }
+                }
+            }
+        } while (added);
+
+        Map<List<Integer>, ItemType> casts = new LinkedHashMap<>();
+        Map<List<Integer>, Integer> castTypes = new HashMap<>();
+        Set<List<Integer>> conflicts = new HashSet<>();
+        List<List<Integer>> otherUses = new ArrayList<>();
+        for (ILogicalOperator op : operators) {
+            if (op.getOperatorTag() == LogicalOperatorTag.PROJECT) {
+                continue;
+            }
+            final Set<LogicalVariable> found = new HashSet<>();
+            List<LogicalVariable> variables = new ArrayList<>();
+            List<Mutable<ILogicalExpression>> expressions = new ArrayList<>();
+            getDefinitions(op, variables, expressions);
+            final Set<Mutable<ILogicalExpression>> definitions = Collections
+                    .newSetFromMap(new IdentityHashMap<Mutable<ILogicalExpression>, Boolean>());
+            for (int i = 0; i < variables.size(); ++i) {
+                if (paths.containsKey(variables.get(i))) {
+                    // The uses of the defined variable are checked instead.
+                    definitions.add(expressions.get(i));
+                    expressions.get(i).getValue().getUsedVariables(found);
+                }
+            }
+            op.acceptExpressionTransform(new ILogicalExpressionReferenceTransform() {
+                @Override
+                public boolean transform(Mutable<ILogicalExpression> expressionRef) throws AlgebricksException {
+                    if (!definitions.contains(expressionRef)) {
+                        findUses(expressionRef, paths, casts, castTypes, conflicts, otherUses, found);
+                    }
+                    return false;
+                }
+            });
+            if (((AbstractLogicalOperator) op).hasNestedPlans()) {
+                // The operators of the nested plans are checked on their own.
+                continue;
+            }
+            List<LogicalVariable> used = new ArrayList<>();
+            VariableUtilities.getUsedVariables(op, used);
+            for (LogicalVariable variable : used) {
+                if (paths.containsKey(variable) && !found.contains(variable)) {
+                    otherUses.add(paths.get(variable));
+                }
+            }
+        }
+
+        List<ElementTypeHint> hints = new ArrayList<>();
+        for (List<Integer> childSeq : casts.keySet()) {
+            if (conflicts.contains(childSeq) || overlaps(childSeq, otherUses)) {
+                continue;
+            }
+            boolean overlapsCast = false;
+            for (List<Integer> other : casts.keySet()) {
+                if (!other.equals(childSeq) && overlaps(childSeq, other)) {
+                    overlapsCast = true;
+                }
+            }
+            if (!overlapsCast) {
+                hints.add(new ElementTypeHint(childSeq, castTypes.get(childSeq)));
+            }
+        }
+        return hints;
+    }
+
+    /**
+     * Finds the variables an operator defines from a single expression.
+     */
+    private static void getDefinitions(ILogicalOperator op, List<LogicalVariable> variables,
+            List<Mutable<ILogicalExpression>> expressions) {
+        switch (op.getOperatorTag()) {
+            case ASSIGN:
+                AssignOperator assign = (AssignOperator) op;
+                variables.addAll(assign.getVariables());
+                expressions.addAll(assign.getExpressions());
+                break;
+            case AGGREGATE:
+                AggregateOperator aggregate = (AggregateOperator) op;
+                variables.addAll(aggregate.getVariables());
+                expressions.addAll(aggregate.getExpressions());
+                break;
+            case UNNEST:
+                UnnestOperator unnest = (UnnestOperator) op;
+                variables.add(unnest.getVariable());
+                expressions.add(unnest.getExpressionRef());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the child path of the elements the expression assigns, unnests or aggregates, or null if the variable
+     *         does not hold the elements of a child path of the scanned element
+     */
+    private List<Integer> getDefinedPath(ILogicalOperator op, Mutable<ILogicalExpression> expressionRef,
+            Map<LogicalVariable, List<Integer>> paths) {
+        ILogicalExpression le = expressionRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.ASSIGN
+                && le.getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL) {
+            FunctionIdentifier fid = ((AbstractFunctionCallExpression) le).getFunctionIdentifier();
+            if ((op.getOperatorTag() == LogicalOperatorTag.UNNEST
+                    && fid.equals(BuiltinOperators.ITERATE.getFunctionIdentifier()))
+                    || (op.getOperatorTag() == LogicalOperatorTag.AGGREGATE
+                            && fid.equals(BuiltinOperators.SEQUENCE.getFunctionIdentifier()))) {
+                return getChildPath(((AbstractFunctionCallExpression) le).getArguments().get(0), paths);
+            }
+        }
+        if (op.getOperatorTag() == LogicalOperatorTag.AGGREGATE) {
+            return null;
+        }
+        return getChildPath(expressionRef, paths);
+    }
+
+    /**
+     * Records the casts and the other uses of the paths in an expression.
+     */
+    private void findUses(Mutable<ILogicalExpression> expressionRef, Map<LogicalVariable, List<Integer>> paths,
+            Map<List<Integer>, ItemType> casts, Map<List<Integer>, Integer> castTypes, Set<List<Integer>> conflicts,
+            List<List<Integer>> otherUses, Set<LogicalVariable> found) {
+        ILogicalExpression le = expressionRef.getValue();
+        if (le.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable variable = ((VariableReferenceExpression) le).getVariableReference();
+            if (paths.containsKey(variable)) {
+                found.add(variable);
+                otherUses.add(paths.get(variable));
+            }
+            return;
+        }
+        if (le.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return;
+        }
+        AbstractFunctionCallExpression afce = (AbstractFunctionCallExpression) le;
+        if (afce.getFunctionIdentifier().equals(BuiltinOperators.CAST.getFunctionIdentifier())) {
+            SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(expressionRef, dCtx);
+            List<Integer> childSeq = getChildPath(removeWrappers(afce.getArguments().get(0), true), paths);
+            if (type != null && childSeq != null && !childSeq.isEmpty()
+                    && ElementTypeHintCaster.getCastOperation(type.getItemType()) != null) {
+                expressionRef.getValue().getUsedVariables(found);
+                ItemType itemType = casts.get(childSeq);
+                if (itemType == null) {
+                    casts.put(childSeq, type.getItemType());
+                    castTypes.put(childSeq, ExpressionToolbox.getTypeExpressionTypeArgument(expressionRef));
+                } else if (!itemType.equals(type.getItemType())) {
+                    conflicts.add(childSeq);
+                }
+                return;
+            }
+        }
+        List<Integer> childSeq = getChildPath(expressionRef, paths);
+        if (childSeq != null) {
+            le.getUsedVariables(found);
+            otherUses.add(childSeq);
+            return;
+        }
+        for (Mutable<ILogicalExpression> argument : afce.getArguments()) {
+            findUses(argument, paths, casts, castTypes, conflicts, otherUses, found);
+        }
+    }
+
+    /**
+     * @return the type codes of the child path steps from the scanned element, or null if the expression is not a
+     *         child path of the scanned element
+     */
+    private List<Integer> getChildPath(Mutable<ILogicalExpression> expressionRef,
+            Map<LogicalVariable, List<Integer>> paths) {
+        Mutable<ILogicalExpression> ref = removeWrappers(expressionRef, false);
+        ILogicalExpression le = ref.getValue();
+        if (le.getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            List<Integer> childSeq = paths.get(((VariableReferenceExpression) le).getVariableReference());
+            return childSeq == null ? null : new ArrayList<>(childSeq);
+        }
+        if (le.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return null;
+        }
+        AbstractFunctionCallExpression afce = (AbstractFunctionCallExpression) le;
+        if (!afce.getFunctionIdentifier().equals(BuiltinOperators.CHILD.getFunctionIdentifier())) {
+            return null;
+        }
+        int typeId = ExpressionToolbox.getTypeExpressionTypeArgument(ref);
+        if (typeId <= 0 || !(dCtx.lookupSequenceType(typeId).getItemType() instanceof ElementType)) {
+            return null;
+        }
+        ElementType it = (ElementType) dCtx.lookupSequenceType(typeId).getItemType();
+        if (!it.getContentType().equals(ElementType.ANYELEMENT.getContentType())) {
+            return null;
+        }
+        List<Integer> childSeq = getChildPath(afce.getArguments().get(0), paths);
+        if (childSeq != null) {
+            childSeq.add(typeId);
+        }
+        return childSeq;
+    }
+
+    /**
+     * Skips the sorting and type checks around a path that do not look at the content of its elements, and the
+     * atomization in front of a cast.
+     */
+    private Mutable<ILogicalExpression> removeWrappers(Mutable<ILogicalExpression> expressionRef, boolean data) {
+        Mutable<ILogicalExpression> ref = expressionRef;
+        while (ref.getValue().getExpressionTag() == LogicalExpressionTag.FUNCTION_CALL) {
+            AbstractFunctionCallExpression afce = (AbstractFunctionCallExpression) ref.getValue();
+            FunctionIdentifier fid = afce.getFunctionIdentifier();
+            if ((data && fid.equals(BuiltinFunctions.FN_DATA_1.getFunctionIdentifier()))
+                    || fid.equals(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.SORT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier())) {
+                ref = afce.getArguments().get(0);
+            } else if (fid.equals(BuiltinOperators.PROMOTE.getFunctionIdentifier())
+                    || fid.equals(BuiltinOperators.TREAT.getFunctionIdentifier())) {
+                SequenceType type = ExpressionToolbox.getTypeExpressionTypeArgument(ref, dCtx);
+                if (type == null || (!type.getItemType().equals(AnyItemType.INSTANCE)
+                        && !type.getItemType().equals(AnyNodeType.INSTANCE))) {
+                    return ref;
+                }
+                ref = afce.getArguments().get(0);
+            } else {
+                return ref;
+            }
+        }
+        return ref;
+    }
+
+    private boolean overlaps(List<Integer> childSeq, List<List<Integer>> others) {
+        for (List<Integer> other : others) {
+            if (overlaps(childSeq, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if an element selected by one path may be selected by the other path or be one of its ancestors
+     */
+    private boolean overlaps(List<Integer> childSeq1, List<Integer> childSeq2) {
+        for (int i = 0; i < childSeq1.size() && i < childSeq2.size(); ++i) {
+            NameTest nameTest1 = ((ElementType) dCtx.lookupSequenceType(childSeq1.get(i)).getItemType()).getNameTest();
+            NameTest nameTest2 = ((ElementType) dCtx.lookupSequenceType(childSeq2.get(i)).getItemType()).getNameTest();
+            if (!mayMatch(nameTest1.getUri(), nameTest2.getUri())
+                    || !mayMatch(nameTest1.getLocalName(), nameTest2.getLocalName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean mayMatch(byte[] name1, byte[] name2) {
+        return name1 == null || name2 == null || Arrays.equals(name1, name2);
+    }
+}
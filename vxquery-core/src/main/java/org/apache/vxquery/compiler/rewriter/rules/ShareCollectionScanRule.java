@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.metadata.IDataSource;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.ExchangeOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.ReplicateOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.physical.AssignPOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.physical.OneToOneExchangePOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.physical.ReplicatePOperator;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+
+/**
+ * Read a collection once when a query scans it several times with the same
+ * pushed down steps, for example in a self join. The first scan is kept and
+ * its output is replicated to the parents of the other scans. An assign maps
+ * the variables of the kept scan to the variables of each removed scan. The
+ * outputs of the replicate are materialized, so a join reading both of them
+ * does not block while it consumes its build input.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent1                        plan__parent2
+ *   DATASCAN( collection( $v0 ) , $v1 )  DATASCAN( collection( $v0 ) , $v2 )
+ *   EMPTYTUPLESOURCE                     EMPTYTUPLESOURCE
+ *
+ * After
+ *
+ *   plan__parent1                        plan__parent2
+ *   EXCHANGE                             ASSIGN( $v2 : $v1 )
+ *                                        EXCHANGE
+ *   REPLICATE
+ *   DATASCAN( collection( $v0 ) , $v1 )
+ *   EMPTYTUPLESOURCE
+ * </pre>
+ *
+ * The rule runs on the physical plan, so the new operators get their physical
+ * operators here.
+ */
+public class ShareCollectionScanRule implements IAlgebraicRewriteRule {
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        if (context.checkIfInDontApplySet(this, opRef.getValue())) {
+            return false;
+        }
+        // The whole plan is searched from its root.
+        List<Mutable<ILogicalOperator>> scanRefs = new ArrayList<>();
+        findCollectionScans(opRef, scanRefs, context);
+
+        boolean modified = false;
+        while (!scanRefs.isEmpty()) {
+            Mutable<ILogicalOperator> firstRef = scanRefs.remove(0);
+            DataSourceScanOperator first = (DataSourceScanOperator) firstRef.getValue();
+            List<Mutable<ILogicalOperator>> group = new ArrayList<>();
+            group.add(firstRef);
+            for (Iterator<Mutable<ILogicalOperator>> it = scanRefs.iterator(); it.hasNext();) {
+                Mutable<ILogicalOperator> scanRef = it.next();
+                DataSourceScanOperator scan = (DataSourceScanOperator) scanRef.getValue();
+                if (first.getVariables().size() == scan.getVariables().size()
+                        && getCollectionDataSource(first).isSameScan(getCollectionDataSource(scan))) {
+                    group.add(scanRef);
+                    it.remove();
+                }
+            }
+            if (group.size() > 1) {
+                shareScan(group, context);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        return false;
+    }
+
+    private void findCollectionScans(Mutable<ILogicalOperator> opRef, List<Mutable<ILogicalOperator>> scanRefs,
+            IOptimizationContext context) {
+        ILogicalOperator op = opRef.getValue();
+        if (context.checkIfInDontApplySet(this, op)) {
+            return;
+        }
+        context.addToDontApplySet(this, op);
+        if (getCollectionDataSource(op) != null && hasEmptyInput(op)) {
+            scanRefs.add(opRef);
+        }
+        for (Mutable<ILogicalOperator> inputOpRef : op.getInputs()) {
+            findCollectionScans(inputOpRef, scanRefs, context);
+        }
+    }
+
+    private void shareScan(List<Mutable<ILogicalOperator>> group, IOptimizationContext context)
+            throws AlgebricksException {
+        DataSourceScanOperator scan = (DataSourceScanOperator) group.get(0).getValue();
+
+        boolean[] materialize = new boolean[group.size()];
+        Arrays.fill(materialize, true);
+        ReplicateOperator replicate = new ReplicateOperator(group.size(), materialize);
+        replicate.setPhysicalOperator(new ReplicatePOperator());
+        replicate.setExecutionMode(scan.getExecutionMode());
+        replicate.getInputs().add(new MutableObject<ILogicalOperator>(scan));
+        context.computeAndSetTypeEnvironmentForOperator(replicate);
+        replicate.computeDeliveredPhysicalProperties(context);
+
+        for (Mutable<ILogicalOperator> scanRef : group) {
+            ExchangeOperator exchange = new ExchangeOperator();
+            exchange.setPhysicalOperator(new OneToOneExchangePOperator());
+            exchange.setExecutionMode(scan.getExecutionMode());
+            exchange.getInputs().add(new MutableObject<ILogicalOperator>(replicate));
+            context.computeAndSetTypeEnvironmentForOperator(exchange);
+            exchange.computeDeliveredPhysicalProperties(context);
+            replicate.getOutputs().add(new MutableObject<ILogicalOperator>(exchange));
+
+            if (scanRef.getValue() == scan) {
+                scanRef.setValue(exchange);
+                continue;
+            }
+
+            // Rename the shared scan variables for the parent of the removed scan.
+            DataSourceScanOperator removed = (DataSourceScanOperator) scanRef.getValue();
+            List<Mutable<ILogicalExpression>> expressions = new ArrayList<>();
+            for (LogicalVariable variable : scan.getVariables()) {
+                expressions.add(new MutableObject<ILogicalExpression>(new VariableReferenceExpression(variable)));
+            }
+            AssignOperator assign = new AssignOperator(new ArrayList<>(removed.getVariables()), expressions);
+            assign.setPhysicalOperator(new AssignPOperator());
+            assign.setExecutionMode(scan.getExecutionMode());
+            assign.getInputs().add(new MutableObject<ILogicalOperator>(exchange));
+            context.computeAndSetTypeEnvironmentForOperator(assign);
+            assign.computeDeliveredPhysicalProperties(context);
+            scanRef.setValue(assign);
+        }
+    }
+
+    private static VXQueryCollectionDataSource getCollectionDataSource(ILogicalOperator op) {
+        if (op.getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+            return null;
+        }
+        IDataSource<?> dataSource = ((DataSourceScanOperator) op).getDataSource();
+        if (dataSource instanceof VXQueryCollectionDataSource) {
+            return (VXQueryCollectionDataSource) dataSource;
+        }
+        return null;
+    }
+
+    private static boolean hasEmptyInput(ILogicalOperator op) {
+        ILogicalOperator input = op.getInputs().get(0).getValue();
+        while (input.getOperatorTag() == LogicalOperatorTag.EXCHANGE) {
+            input = input.getInputs().get(0).getValue();
+        }
+        return input.getOperatorTag() == LogicalOperatorTag.EMPTYTUPLESOURCE;
+    }
+}
@@ -48,6 +48,7 @@ public final class RootStaticContextImpl extends StaticContextImpl {
         INSTANCE.registerNamespaceUri(XQueryConstants.LOCAL_PREFIX, XQueryConstants.LOCAL_NSURI);
         INSTANCE.registerNamespaceUri(XQueryConstants.OP_PREFIX, XQueryConstants.OP_NSURI);
         INSTANCE.registerNamespaceUri(XQueryConstants.OPEXT_PREFIX, XQueryConstants.OPEXT_NSURI);
+        INSTANCE.registerNamespaceUri(XQueryConstants.OUTPUT_PREFIX, XQueryConstants.OUTPUT_NSURI);
         INSTANCE.registerNamespaceUri(XQueryConstants.JS_PREFIX, XQueryConstants.JS_NSURI);
         INSTANCE.registerNamespaceUri(XQueryConstants.JN_PREFIX, XQueryConstants.JN_NSURI);
         INSTANCE.registerNamespaceUri(XQueryConstants.LIBJN_PREFIX, XQueryConstants.LIBJN_NSURI);
@@ -34,10 +34,13 @@ import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 /**
  * The datamodel of the JSON object is represented in this class:
  * Byte 1: Value tag of object (109)
- * Byte 2 to 5: number of key-value pairs in the object
+ * Byte 2 to 5: number of key-value pairs in the object. The highest bit is set if the object has a key directory.
  * Next few bytes: Offsets for each key-value pair in the object in the order appearing in the json data
+ * Next few bytes (only with a key directory): Indexes of the key-value pairs, ordered by the bytes of their keys
  * Next bytes: The keys in the object each followed by the value of the key. Each key is a StringPointable and the value
  * of the key will be the respective pointable starting with its valuetag.
+ * Objects without the key directory are looked up by a linear scan of their keys; this is the format of all objects
+ * with fewer than {@link #MIN_KEY_DIRECTORY_ENTRIES} pairs and of objects written before the directory existed.
  */
 public class ObjectPointable extends AbstractPointable {
     public static final IPointableFactory FACTORY = new IPointableFactory() {
@@ -53,6 +56,8 @@ public class ObjectPointable extends AbstractPointable {
             return new ObjectPointable();
         }
     };
+    public static final int KEY_DIRECTORY_FLAG = 0x80000000;
+    public static final int MIN_KEY_DIRECTORY_ENTRIES = 8;
     private static final int ENTRY_COUNT_SIZE = IntegerPointable.TYPE_TRAITS.getFixedLength();
     private static final int SLOT_SIZE = IntegerPointable.TYPE_TRAITS.getFixedLength();
     private final SequenceBuilder sb = new SequenceBuilder();
@@ -63,10 +68,19 @@ public class ObjectPointable extends AbstractPointable {
     }
 
     private static int getEntryCount(byte[] bytes, int start) {
-        return IntegerPointable.getInteger(bytes, start);
+        return IntegerPointable.getInteger(bytes, start) & ~KEY_DIRECTORY_FLAG;
     }
 
-    private static int getKeyLength(byte[] bytes, int start) {
+    private static boolean hasKeyDirectory(byte[] bytes, int start) {
+        return (IntegerPointable.getInteger(bytes, start) & KEY_DIRECTORY_FLAG) != 0;
+    }
+
+    private static int getKeyDirectoryValue(byte[] bytes, int start, int idx) {
+        return IntegerPointable.getInteger(bytes,
+                getSlotArrayOffset(start) + (getEntryCount(bytes, start) + idx) * SLOT_SIZE);
+    }
+
+    public static int getKeyLength(byte[] bytes, int start) {
         int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
         return utfLength + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
     }
@@ -76,7 +90,22 @@ public class ObjectPointable extends AbstractPointable {
     }
 
     private static int getDataAreaOffset(byte[] bytes, int start) {
-        return getSlotArrayOffset(start) + getEntryCount(bytes, start) * SLOT_SIZE;
+        int slotCount = hasKeyDirectory(bytes, start) ? getEntryCount(bytes, start) * 2 : getEntryCount(bytes, start);
+        return getSlotArrayOffset(start) + slotCount * SLOT_SIZE;
+    }
+
+    /**
+     * Orders keys by their bytes, unsigned, and then by their length.
+     */
+    public static int compareKeys(byte[] bytes1, int start1, int length1, byte[] bytes2, int start2, int length2) {
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; ++i) {
+            int c = (bytes1[start1 + i] & 0xff) - (bytes2[start2 + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length1 - length2;
     }
 
     public void getKeys(IMutableValueStorage abvs) throws IOException {
@@ -95,6 +124,9 @@ public class ObjectPointable extends AbstractPointable {
 
     //here the UTF8StringPointable of key is without the tag
     public boolean getValue(UTF8StringPointable key, IPointable result) {
+        if (hasKeyDirectory(bytes, start)) {
+            return findValue(key, result);
+        }
         int dataAreaOffset = getDataAreaOffset(bytes, start);
         int entryCount = getEntryCount();
         int start;
@@ -112,6 +144,38 @@ public class ObjectPointable extends AbstractPointable {
         return false;
     }
 
+    /**
+     * Binary search in the key directory. Of equal keys, the first one in the
+     * object is found, as with the linear scan.
+     */
+    private boolean findValue(UTF8StringPointable key, IPointable result) {
+        int dataAreaOffset = getDataAreaOffset(bytes, start);
+        int low = 0;
+        int high = getEntryCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int keyStart = dataAreaOffset + getRelativeEntryStartOffset(getKeyDirectoryValue(bytes, start, mid));
+            if (compareKeys(bytes, keyStart, getKeyLength(bytes, keyStart), key.getByteArray(), key.getStartOffset(),
+                    key.getLength()) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == getEntryCount()) {
+            return false;
+        }
+        int entry = getKeyDirectoryValue(bytes, start, low);
+        int keyStart = dataAreaOffset + getRelativeEntryStartOffset(entry);
+        int keyLength = getKeyLength(bytes, keyStart);
+        if (!FunctionHelper.arraysEqual(bytes, keyStart, keyLength, key.getByteArray(), key.getStartOffset(),
+                key.getLength())) {
+            return false;
+        }
+        result.set(bytes, keyStart + keyLength, getEntryLength(entry) - keyLength);
+        return true;
+    }
+
     private int getRelativeEntryStartOffset(int idx) {
         return idx == 0 ? 0 : getSlotValue(bytes, start, idx - 1);
     }
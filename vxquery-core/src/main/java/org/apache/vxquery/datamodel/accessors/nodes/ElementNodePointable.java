@@ -37,6 +37,9 @@ import org.apache.hyracks.data.std.primitive.VoidPointable;
  *  Sequence childrenChunk?;
  * }
  * 
+ * The childrenChunk of an element that a collection scan stored with a type hint
+ * holds the typed value as its only item instead of a text node.
+ * 
  * ElementHeader (padded) {
  *  bit nsChunkExists;
  *  bit attrChunkExists;
@@ -24,6 +24,7 @@ import org.apache.hyracks.data.std.api.IPointableFactory;
 import org.apache.hyracks.data.std.collections.api.IValueReferenceVector;
 import org.apache.hyracks.data.std.primitive.BytePointable;
 import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.util.string.UTF8StringUtil;
@@ -44,7 +45,7 @@ import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
  * }
  *
  * NodeId {
- *  int32 id;
+ *  int64 id;
  * }
  *
  * Dictionary {
@@ -61,7 +62,7 @@ public class NodeTreePointable extends AbstractPointable {
 
     private static final int HEADER_OFFSET = 0;
     private static final int HEADER_SIZE = 1;
-    private static final int NODE_ID_SIZE = 4;
+    private static final int NODE_ID_SIZE = 8;
 
     private static final int DICTIONARY_SIZE_SIZE = 4;
     private static final int DICTIONARY_NENTRIES_SIZE = 4;
@@ -99,7 +100,11 @@ public class NodeTreePointable extends AbstractPointable {
             int sortedPtrArrayStart = getDictionarySortedPointerArrayOffset();
             int sortedSlotValue = IntegerPointable.getInteger(bytes,
                     sortedPtrArrayStart + index * SORTED_PTR_SLOT_SIZE);
-            return dataAreaStart + sortedSlotValue;
+            // The sorted pointers are slot indexes. A slot starts where the previous one ends.
+            int slotStart = sortedSlotValue == 0 ? 0
+                    : IntegerPointable.getInteger(bytes,
+                            getDictionaryIndexPointerArrayOffset() + (sortedSlotValue - 1) * IDX_PTR_SLOT_SIZE);
+            return dataAreaStart + slotStart;
         }
 
         @Override
@@ -123,8 +128,15 @@ public class NodeTreePointable extends AbstractPointable {
         return (getHeader() & HEADER_TYPE_EXISTS_MASK) != 0;
     }
 
-    public int getRootNodeId() {
-        return nodeIdExists() ? IntegerPointable.getInteger(bytes, getNodeIdOffset()) : -1;
+    public long getRootNodeId() {
+        return nodeIdExists() ? LongPointable.getLong(bytes, getNodeIdOffset()) : -1;
+    }
+
+    /**
+     * Overwrite the id of a tree that has a node id.
+     */
+    public void setRootNodeId(long id) {
+        LongPointable.setLong(bytes, getNodeIdOffset(), id);
     }
 
     public int getDictionaryEntryCount() {
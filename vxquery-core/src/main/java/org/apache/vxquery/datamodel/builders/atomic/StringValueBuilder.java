@@ -31,4 +31,8 @@ public class StringValueBuilder {
     public void write(CharSequence string, DataOutput out) throws IOException {
         writer.writeUTF8(string, out);
     }
+
+    public void write(char[] chars, int start, int length, DataOutput out) throws IOException {
+        writer.writeUTF8(chars, start, length, out);
+    }
 }
@@ -20,10 +20,13 @@ import java.io.IOException;
 
 import org.apache.hyracks.data.std.api.IValueReference;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.vxquery.datamodel.accessors.jsonitem.ObjectPointable;
 import org.apache.vxquery.datamodel.builders.base.IBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
 
 public class ObjectBuilder extends AbstractJsonBuilder implements IBuilder {
+    private int[] keyDirectory = new int[ObjectPointable.MIN_KEY_DIRECTORY_ENTRIES];
+    private int[] sortBuffer = new int[ObjectPointable.MIN_KEY_DIRECTORY_ENTRIES];
 
     @Override
     public int getValueTag() {
@@ -36,4 +39,75 @@ public class ObjectBuilder extends AbstractJsonBuilder implements IBuilder {
         slots.append(dataArea.getLength());
     }
 
+    /**
+     * Objects with many keys are written with a key directory, which
+     * {@link ObjectPointable} searches to look up a key.
+     */
+    @Override
+    public void finish() throws IOException {
+        int size = slots.getSize();
+        if (size < ObjectPointable.MIN_KEY_DIRECTORY_ENTRIES) {
+            super.finish();
+            return;
+        }
+        out.writeInt(size | ObjectPointable.KEY_DIRECTORY_FLAG);
+        int[] slotArray = slots.getArray();
+        for (int i = 0; i < size; ++i) {
+            out.writeInt(slotArray[i]);
+        }
+        sortKeys(size);
+        for (int i = 0; i < size; ++i) {
+            out.writeInt(keyDirectory[i]);
+        }
+        out.write(dataArea.getByteArray(), dataArea.getStartOffset(), dataArea.getLength());
+    }
+
+    /**
+     * Stable merge sort of the entry indexes by key, so the first of equal keys
+     * comes first.
+     */
+    private void sortKeys(int size) {
+        if (keyDirectory.length < size) {
+            keyDirectory = new int[size];
+            sortBuffer = new int[size];
+        }
+        for (int i = 0; i < size; ++i) {
+            keyDirectory[i] = i;
+        }
+        int[] from = keyDirectory;
+        int[] to = sortBuffer;
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int mid = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int i = low;
+                int j = mid;
+                for (int k = low; k < high; ++k) {
+                    if (i < mid && (j >= high || compareEntryKeys(from[i], from[j]) <= 0)) {
+                        to[k] = from[i++];
+                    } else {
+                        to[k] = from[j++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != keyDirectory) {
+            System.arraycopy(from, 0, keyDirectory, 0, size);
+        }
+    }
+
+    private int compareEntryKeys(int entry1, int entry2) {
+        byte[] bytes = dataArea.getByteArray();
+        int start1 = getEntryStart(entry1);
+        int start2 = getEntryStart(entry2);
+        return ObjectPointable.compareKeys(bytes, start1, ObjectPointable.getKeyLength(bytes, start1), bytes, start2,
+                ObjectPointable.getKeyLength(bytes, start2));
+    }
+
+    private int getEntryStart(int entry) {
+        return dataArea.getStartOffset() + (entry == 0 ? 0 : slots.getArray()[entry - 1]);
+    }
 }
@@ -19,11 +19,8 @@ package org.apache.vxquery.datamodel.builders.nodes;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
 
-import org.apache.hyracks.data.std.algorithms.BinarySearchAlgorithm;
-import org.apache.hyracks.data.std.collections.api.IValueReferenceVector;
 import org.apache.hyracks.data.std.primitive.IntegerPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
@@ -32,9 +29,20 @@ import org.apache.hyracks.util.string.UTF8StringUtil;
 import org.apache.hyracks.util.string.UTF8StringWriter;
 import org.apache.vxquery.util.GrowableIntArray;
 
+/**
+ * Builds the string dictionary of a node tree.
+ * <p>
+ * Strings are looked up in an open addressing hash table over their chars, so that a string and its UTF-8 bytes
+ * find the same entry. The sorted pointer array of the dictionary is only built when the dictionary is written, and
+ * only the strings added since the last write are sorted and merged into it.
+ */
 public class DictionaryBuilder {
+    private static final int INITIAL_TABLE_SIZE = 64;
+
     private final GrowableIntArray stringEndOffsets;
 
+    private final GrowableIntArray stringHashes;
+
     private final GrowableIntArray sortedSlotIndexes;
 
     private final ByteArrayAccessibleOutputStream dataBuffer;
@@ -43,56 +51,43 @@ public class DictionaryBuilder {
 
     private final ArrayBackedValueStorage cache;
 
-    private final TreeMap<String, Integer> hashSlotIndexes;
+    // Slot index + 1 of each string, 0 for an empty entry.
+    private int[] hashTable;
+
+    private int[] sortBuffer;
 
     private boolean cacheReady;
 
     private final UTF8StringWriter UTF8Writer = new UTF8StringWriter();
 
-    private final IValueReferenceVector sortedStringsVector = new IValueReferenceVector() {
-        @Override
-        public int getStart(int index) {
-            int slot = sortedSlotIndexes.getArray()[index];
-            return slot == 0 ? 0 : stringEndOffsets.getArray()[slot - 1];
-        }
-
-        @Override
-        public int getSize() {
-            return stringEndOffsets.getSize();
-        }
-
-        @Override
-        public int getLength(int index) {
-            int utfLength = UTF8StringUtil.getUTFLength(dataBuffer.getByteArray(), getStart(index));
-            return utfLength + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
-        }
-
-        @Override
-        public byte[] getBytes(int index) {
-            return dataBuffer.getByteArray();
-        }
-    };
-
-    private final BinarySearchAlgorithm binSearch = new BinarySearchAlgorithm();
-
     public DictionaryBuilder() {
         stringEndOffsets = new GrowableIntArray();
+        stringHashes = new GrowableIntArray();
         sortedSlotIndexes = new GrowableIntArray();
         dataBuffer = new ByteArrayAccessibleOutputStream();
         dataBufferOut = new DataOutputStream(dataBuffer);
         cache = new ArrayBackedValueStorage();
-        hashSlotIndexes = new TreeMap<>();
+        hashTable = new int[INITIAL_TABLE_SIZE];
+        sortBuffer = new int[0];
         cacheReady = false;
     }
 
     public void reset() {
         stringEndOffsets.clear();
+        stringHashes.clear();
         sortedSlotIndexes.clear();
         dataBuffer.reset();
-        hashSlotIndexes.clear();
+        Arrays.fill(hashTable, 0);
         cacheReady = false;
     }
 
+    /**
+     * @return the number of strings in the dictionary
+     */
+    public int size() {
+        return stringEndOffsets.getSize();
+    }
+
     public void writeFromCache(ArrayBackedValueStorage abvs) throws IOException {
         if (!cacheReady) {
             cache.reset();
@@ -104,6 +99,7 @@ public class DictionaryBuilder {
     }
 
     public void write(ArrayBackedValueStorage abvs) throws IOException {
+        sortSlots();
         DataOutput out = abvs.getDataOutput();
         int sizeOffset = abvs.getLength();
         out.writeInt(0);
@@ -113,15 +109,9 @@ public class DictionaryBuilder {
         for (int i = 0; i < entryCount; ++i) {
             out.writeInt(entryOffsets[i]);
         }
-        if (hashSlotIndexes.isEmpty()) {
-            int[] sortedOffsets = sortedSlotIndexes.getArray();
-            for (int i = 0; i < entryCount; ++i) {
-                out.writeInt(sortedOffsets[i]);
-            }
-        } else {
-            for (Entry<String, Integer> me : hashSlotIndexes.entrySet()) {
-                out.writeInt((Integer) me.getValue());
-            }
+        int[] sortedOffsets = sortedSlotIndexes.getArray();
+        for (int i = 0; i < entryCount; ++i) {
+            out.writeInt(sortedOffsets[i]);
         }
         out.write(dataBuffer.getByteArray(), 0, dataBuffer.size());
         // TODO can this value be determined before writing. Could this be append only.
@@ -129,29 +119,48 @@ public class DictionaryBuilder {
     }
 
     public int lookup(String str) {
-        Integer slotIndex = hashSlotIndexes.get(str);
-        if (slotIndex == null) {
-            try {
-                UTF8Writer.writeUTF8(str, dataBufferOut);
-                slotIndex = stringEndOffsets.getSize();
-                dataBufferOut.writeInt(slotIndex);
-            } catch (IOException e) {
-                throw new IllegalStateException(e);
+        int hash = str.hashCode();
+        int mask = hashTable.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int slotIndex = hashTable[i] - 1;
+            if (slotIndex < 0) {
+                break;
+            }
+            if (stringHashes.getArray()[slotIndex] == hash && entryEquals(slotIndex, str)) {
+                return slotIndex;
             }
-            stringEndOffsets.append(dataBuffer.size());
-            hashSlotIndexes.put(str, slotIndex);
-            cacheReady = false;
         }
-        return slotIndex;
+        try {
+            UTF8Writer.writeUTF8(str, dataBufferOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return addEntry(hash);
     }
 
     public int lookup(UTF8StringPointable str) {
-        boolean found = binSearch.find(sortedStringsVector, str);
-        int index = binSearch.getIndex();
-        if (found) {
-            return sortedSlotIndexes.getArray()[index];
+        byte[] bytes = str.getByteArray();
+        int start = str.getStartOffset();
+        int length = str.getLength();
+        int hash = hash(bytes, start);
+        int mask = hashTable.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int slotIndex = hashTable[i] - 1;
+            if (slotIndex < 0) {
+                break;
+            }
+            if (stringHashes.getArray()[slotIndex] == hash && entryEquals(slotIndex, bytes, start, length)) {
+                return slotIndex;
+            }
         }
-        dataBuffer.write(str.getByteArray(), str.getStartOffset(), str.getLength());
+        dataBuffer.write(bytes, start, length);
+        return addEntry(hash);
+    }
+
+    /**
+     * Finish the entry of the string just written to the data buffer.
+     */
+    private int addEntry(int hash) {
         int slotIndex = stringEndOffsets.getSize();
         try {
             dataBufferOut.writeInt(slotIndex);
@@ -159,8 +168,139 @@ public class DictionaryBuilder {
             throw new IllegalStateException(e);
         }
         stringEndOffsets.append(dataBuffer.size());
-        sortedSlotIndexes.insert(index, slotIndex);
+        stringHashes.append(hash);
+        if (2 * stringEndOffsets.getSize() > hashTable.length) {
+            rehash(hashTable.length * 2);
+        } else {
+            insert(slotIndex, hash);
+        }
         cacheReady = false;
         return slotIndex;
     }
+
+    private void insert(int slotIndex, int hash) {
+        int mask = hashTable.length - 1;
+        int i = hash & mask;
+        while (hashTable[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        hashTable[i] = slotIndex + 1;
+    }
+
+    private void rehash(int tableSize) {
+        hashTable = new int[tableSize];
+        int[] hashes = stringHashes.getArray();
+        for (int slotIndex = 0; slotIndex < stringHashes.getSize(); ++slotIndex) {
+            insert(slotIndex, hashes[slotIndex]);
+        }
+    }
+
+    private int getEntryStart(int slotIndex) {
+        return slotIndex == 0 ? 0 : stringEndOffsets.getArray()[slotIndex - 1];
+    }
+
+    /**
+     * @return the length of the string of an entry, without the slot index stored after it
+     */
+    private int getEntryLength(int slotIndex) {
+        return stringEndOffsets.getArray()[slotIndex] - getEntryStart(slotIndex) - 4;
+    }
+
+    private boolean entryEquals(int slotIndex, byte[] bytes, int start, int length) {
+        if (getEntryLength(slotIndex) != length) {
+            return false;
+        }
+        byte[] data = dataBuffer.getByteArray();
+        int entryStart = getEntryStart(slotIndex);
+        for (int i = 0; i < length; ++i) {
+            if (data[entryStart + i] != bytes[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean entryEquals(int slotIndex, String str) {
+        byte[] data = dataBuffer.getByteArray();
+        int entryStart = getEntryStart(slotIndex);
+        int utfLength = UTF8StringUtil.getUTFLength(data, entryStart);
+        int offset = entryStart + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = offset + utfLength;
+        int strLength = str.length();
+        int i = 0;
+        while (offset < end) {
+            if (i == strLength || UTF8StringUtil.charAt(data, offset) != str.charAt(i)) {
+                return false;
+            }
+            offset += UTF8StringUtil.charSize(data, offset);
+            ++i;
+        }
+        return i == strLength;
+    }
+
+    /**
+     * @return the hash of the chars of a UTF-8 string, the same as {@link String#hashCode()}
+     */
+    private static int hash(byte[] bytes, int start) {
+        int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
+        int offset = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = offset + utfLength;
+        int hash = 0;
+        while (offset < end) {
+            hash = 31 * hash + UTF8StringUtil.charAt(bytes, offset);
+            offset += UTF8StringUtil.charSize(bytes, offset);
+        }
+        return hash;
+    }
+
+    /**
+     * Sort the slots added since the last call and merge them into the sorted slots.
+     */
+    private void sortSlots() {
+        int sorted = sortedSlotIndexes.getSize();
+        int count = stringEndOffsets.getSize();
+        if (sorted == count) {
+            return;
+        }
+        for (int i = sorted; i < count; ++i) {
+            sortedSlotIndexes.append(i);
+        }
+        if (sortBuffer.length < count) {
+            sortBuffer = new int[Math.max(count, sortBuffer.length * 2)];
+        }
+        int[] slots = sortedSlotIndexes.getArray();
+        mergeSort(slots, sorted, count);
+        merge(slots, 0, sorted, count);
+    }
+
+    private void mergeSort(int[] slots, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(slots, from, mid);
+        mergeSort(slots, mid, to);
+        merge(slots, from, mid, to);
+    }
+
+    private void merge(int[] slots, int from, int mid, int to) {
+        if (from == mid || mid == to || compareSlots(slots[mid - 1], slots[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(slots, from, sortBuffer, from, mid - from);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            slots[k++] = compareSlots(sortBuffer[i], slots[j]) <= 0 ? sortBuffer[i++] : slots[j++];
+        }
+        while (i < mid) {
+            slots[k++] = sortBuffer[i++];
+        }
+    }
+
+    private int compareSlots(int slotIndex1, int slotIndex2) {
+        byte[] data = dataBuffer.getByteArray();
+        return UTF8StringUtil.compareTo(data, getEntryStart(slotIndex1), data, getEntryStart(slotIndex2));
+    }
 }
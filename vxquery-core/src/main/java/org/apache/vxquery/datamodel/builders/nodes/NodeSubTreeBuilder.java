@@ -43,7 +43,7 @@ public class NodeSubTreeBuilder extends AbstractNodeBuilder {
         }
         out.write(header);
         if (hasNodeIds) {
-            out.writeInt(ntp.getRootNodeId());
+            out.writeLong(ntp.getRootNodeId());
         }
         if (hasDictionary) {
             out.write(ntp.getByteArray(), ntp.getDictionaryOffset(), ntp.getDictionarySize());
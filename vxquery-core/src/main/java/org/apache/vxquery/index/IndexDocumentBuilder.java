@@ -34,8 +34,10 @@ import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.util.BytesRef;
 import org.apache.vxquery.datamodel.accessors.PointablePool;
 import org.apache.vxquery.datamodel.accessors.PointablePoolFactory;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
@@ -106,6 +108,8 @@ public class IndexDocumentBuilder extends XMLSerializer {
     public void printStart() throws IOException {
 
         doc.add(new StringField(Constants.FIELD_PATH, filePath, Field.Store.YES));
+        //The binary node tree lets the index reader return elements without rebuilding them from the items.
+        doc.add(new StoredField(Constants.FIELD_TREE, new BytesRef(bstart, sstart, lstart)));
         print(bstart, sstart, lstart, "0", "");
         for (int i = 1; i < results.size(); i++) {
             //TODO: Since each doc is a file,
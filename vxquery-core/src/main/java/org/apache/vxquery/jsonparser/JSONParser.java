@@ -17,6 +17,7 @@ package org.apache.vxquery.jsonparser;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -140,20 +141,76 @@ public class JSONParser implements IParser {
 
     public int parse(Reader input, ArrayBackedValueStorage result, IFrameWriter writer, IFrameFieldAppender appender)
             throws HyracksDataException {
+        return parse(createParser(input), result, writer, appender);
+    }
+
+    /**
+     * Parses a document from its bytes, which Jackson reads with its UTF-8 parser
+     * instead of a decoding {@link Reader}. The encoding is detected as the JSON
+     * specification describes.
+     */
+    public int parse(InputStream input, ArrayBackedValueStorage result, IFrameWriter writer,
+            IFrameFieldAppender appender) throws HyracksDataException {
+        return parse(createParser(input), result, writer, appender);
+    }
+
+    /**
+     * Parses a document held in an array, such as the bytes of a
+     * {@link org.apache.vxquery.xmlparser.DocumentBuffer}. Jackson's UTF-8 parser
+     * reads the array in place.
+     */
+    public int parse(byte[] bytes, int offset, int length, ArrayBackedValueStorage result, IFrameWriter writer,
+            IFrameFieldAppender appender) throws HyracksDataException {
+        return parse(createParser(bytes, offset, length), result, writer, appender);
+    }
+
+    private int parse(JsonParser parser, ArrayBackedValueStorage result, IFrameWriter writer,
+            IFrameFieldAppender appender) throws HyracksDataException {
         this.writer = writer;
         this.appender = appender;
         if (this.valueSeq != null) {
-            return parseElements(input, result);
+            return parseElements(parser, result);
         } else {
-            return parse(input, result);
+            return parse(parser, result);
         }
     }
 
+    public int parse(InputStream input, ArrayBackedValueStorage result) throws HyracksDataException {
+        return parse(createParser(input), result);
+    }
+
     public int parse(Reader input, ArrayBackedValueStorage result) throws HyracksDataException {
+        return parse(createParser(input), result);
+    }
+
+    private JsonParser createParser(InputStream input) throws HyracksDataException {
+        try {
+            return factory.createParser(input);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    private JsonParser createParser(byte[] bytes, int offset, int length) throws HyracksDataException {
+        try {
+            return factory.createParser(bytes, offset, length);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    private JsonParser createParser(Reader input) throws HyracksDataException {
+        try {
+            return factory.createParser(input);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    private int parse(JsonParser parser, ArrayBackedValueStorage result) throws HyracksDataException {
         int items = 0;
         try {
             DataOutput outResult = result.getDataOutput();
-            JsonParser parser = factory.createParser(input);
             JsonToken token = parser.nextToken();
             checkItem = null;
             levelArray = 0;
@@ -230,9 +287,12 @@ public class JSONParser implements IParser {
     }
 
     public int parseElements(Reader input, ArrayBackedValueStorage result) throws HyracksDataException {
+        return parseElements(createParser(input), result);
+    }
+
+    private int parseElements(JsonParser parser, ArrayBackedValueStorage result) throws HyracksDataException {
         int items = 0;
         try {
-            JsonParser parser = factory.createParser(input);
             JsonToken token = parser.nextToken();
             checkItem = null;
 
@@ -385,7 +445,7 @@ public class JSONParser implements IParser {
         if (tag == ValueTag.XS_DOUBLE_TAG) {
             out.writeDouble(parser.getDoubleValue());
         } else if (tag == ValueTag.XS_STRING_TAG) {
-            svb.write(parser.getText(), out);
+            svb.write(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), out);
         } else if (tag == ValueTag.XS_INTEGER_TAG) {
             out.writeLong(parser.getLongValue());
         }
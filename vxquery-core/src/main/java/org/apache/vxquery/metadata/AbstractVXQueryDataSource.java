@@ -22,6 +22,8 @@ import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
 import org.apache.hyracks.algebricks.core.algebra.metadata.IDataSourcePropertiesProvider;
 import org.apache.hyracks.algebricks.core.algebra.properties.FunctionalDependency;
 import org.apache.hyracks.algebricks.core.algebra.properties.INodeDomain;
+import org.apache.vxquery.xmlparser.ElementPredicate;
+import org.apache.vxquery.xmlparser.ElementTypeHint;
 
 public abstract class AbstractVXQueryDataSource implements IVXQueryDataSource {
     protected static final String DELIMITER = "\\|";
@@ -34,6 +36,8 @@ public abstract class AbstractVXQueryDataSource implements IVXQueryDataSource {
     protected List<Byte[]> indexValueSeq;
     protected List<Integer> indexAttsSeq;
     protected List<Byte[]> valueSeq;
+    protected List<ElementPredicate> elementPredicates;
+    protected List<ElementTypeHint> elementTypeHints;
     protected int totalDataSources;
     protected String tag;
 
@@ -134,6 +138,22 @@ public abstract class AbstractVXQueryDataSource implements IVXQueryDataSource {
         return valueSeq;
     }
 
+    public void addElementPredicate(ElementPredicate elementPredicate) {
+        elementPredicates.add(elementPredicate);
+    }
+
+    public List<ElementPredicate> getElementPredicates() {
+        return elementPredicates;
+    }
+
+    public void addElementTypeHint(ElementTypeHint elementTypeHint) {
+        elementTypeHints.add(elementTypeHint);
+    }
+
+    public List<ElementTypeHint> getElementTypeHints() {
+        return elementTypeHints;
+    }
+
     public String[] getPartitions() {
         return collectionPartitions;
     }
@@ -17,7 +17,9 @@
 package org.apache.vxquery.metadata;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
 import org.apache.hyracks.algebricks.core.algebra.metadata.IDataSourcePropertiesProvider;
@@ -46,6 +48,8 @@ public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
         this.tag = null;
         this.childSeq = new ArrayList<>();
         this.valueSeq = new ArrayList<>();
+        this.elementPredicates = new ArrayList<>();
+        this.elementTypeHints = new ArrayList<>();
     }
 
     public static VXQueryCollectionDataSource create(int id, String collection, Object type) {
@@ -55,11 +59,34 @@ public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
     @Override
     public String toString() {
         return "VXQueryCollectionDataSource [collectionName=" + collectionName + ", childSeq=" + childSeq
-                + ", valueSeq=" + valueSeq + "]";
+                + ", valueSeq=" + valueSeq + ", elementPredicates=" + elementPredicates + ", elementTypeHints="
+                + elementTypeHints + "]";
     }
 
     public boolean usingIndex() {
         return false;
     }
 
+    /**
+     * Checks whether a scan of the other data source returns the same items as a scan of this one.
+     *
+     * @param other
+     *            the data source of the other scan
+     * @return true if both scans read the same collection with the same pushed down steps, predicates and types
+     */
+    public boolean isSameScan(VXQueryCollectionDataSource other) {
+        if (!collectionName.equals(other.collectionName) || !Objects.equals(tag, other.tag)
+                || !childSeq.equals(other.childSeq) || !elementPredicates.equals(other.elementPredicates)
+                || !elementTypeHints.equals(other.elementTypeHints)
+                || valueSeq.size() != other.valueSeq.size()) {
+            return false;
+        }
+        for (int i = 0; i < valueSeq.size(); ++i) {
+            if (!Arrays.equals(valueSeq.get(i), other.valueSeq.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
@@ -18,15 +18,16 @@ package org.apache.vxquery.metadata;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -67,6 +68,9 @@ import org.apache.hyracks.hdfs2.dataflow.FileSplitsFactory;
 import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.hdfs2.HDFSFunctions;
 import org.apache.vxquery.jsonparser.JSONParser;
+import org.apache.vxquery.xmlparser.DocumentBuffer;
+import org.apache.vxquery.xmlparser.ElementPredicate;
+import org.apache.vxquery.xmlparser.ElementTypeHint;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.XMLParser;
@@ -78,25 +82,44 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
     private String[] collectionPartitions;
     private List<Integer> childSeq;
     private List<Byte[]> valueSeq;
+    private List<ElementPredicate> elementPredicates;
+    private List<ElementTypeHint> elementTypeHints;
     protected static final Logger LOGGER = Logger.getLogger(VXQueryCollectionOperatorDescriptor.class.getName());
     private HDFSFunctions hdfs;
     private String tag;
     private static final String START_TAG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
     private final String hdfsConf;
     private final Map<String, NodeControllerInfo> nodeControllerInfos;
+    private final int partitionsPerNode;
 
     public VXQueryCollectionOperatorDescriptor(IOperatorDescriptorRegistry spec, AbstractVXQueryDataSource ds,
             RecordDescriptor rDesc, String hdfsConf, Map<String, NodeControllerInfo> nodeControllerInfos) {
+        this(spec, ds, rDesc, hdfsConf, nodeControllerInfos, ds.getPartitionCount());
+    }
+
+    /**
+     * @param partitionsPerNode
+     *            number of partitions of the scan on each node. When it is larger
+     *            than the number of collection partitions, the partitions of a
+     *            node reading the same local directory split its files between
+     *            them.
+     */
+    public VXQueryCollectionOperatorDescriptor(IOperatorDescriptorRegistry spec, AbstractVXQueryDataSource ds,
+            RecordDescriptor rDesc, String hdfsConf, Map<String, NodeControllerInfo> nodeControllerInfos,
+            int partitionsPerNode) {
         super(spec, 1, 1);
         collectionPartitions = ds.getPartitions();
         dataSourceId = (short) ds.getDataSourceId();
         totalDataSources = (short) ds.getTotalDataSources();
         childSeq = ds.getChildSeq();
         valueSeq = ds.getValueSeq();
+        elementPredicates = ds.getElementPredicates();
+        elementTypeHints = ds.getElementTypeHints();
         outRecDescs[0] = rDesc;
         this.tag = ds.getTag();
         this.hdfsConf = hdfsConf;
         this.nodeControllerInfos = nodeControllerInfos;
+        this.partitionsPerNode = Math.max(partitionsPerNode, collectionPartitions.length);
     }
 
     @Override
@@ -112,9 +135,18 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
         final String nodeId = ctx.getJobletContext().getServiceContext().getNodeId();
         final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
         final ArrayBackedValueStorage jsonAbvs = new ArrayBackedValueStorage();
-        final String collectionName = collectionPartitions[partition % collectionPartitions.length];
-        final XMLParser parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq,
-                dCtx.getStaticContext());
+        final int nodePartition = partition % partitionsPerNode;
+        final int directoryIndex = nodePartition % collectionPartitions.length;
+        final String collectionName = collectionPartitions[directoryIndex];
+        // Partitions of this node reading the same directory, and the share of its files read by this one.
+        final int directoryReaders =
+                (partitionsPerNode - directoryIndex + collectionPartitions.length - 1) / collectionPartitions.length;
+        final int directoryReader = nodePartition / collectionPartitions.length;
+        // The XML and JSON parsers read one document at a time, so they share the buffer for its bytes.
+        final DocumentBuffer documentBuffer = new DocumentBuffer();
+        // Without a schema the scanned text stays untyped, except for the elements the query only casts.
+        final XMLParser parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq, elementPredicates,
+                elementTypeHints, dCtx.getStaticContext(), documentBuffer);
         final JSONParser jparser = new JSONParser(valueSeq);
 
         return new AbstractUnaryInputUnaryOutputOperatorNodePushable() {
@@ -216,7 +248,8 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                                         // read every file in the directory
                                         RemoteIterator<LocatedFileStatus> it = fs.listFiles(directory, true);
                                         while (it.hasNext()) {
-                                            xmlDocument = it.next().getPath();
+                                            LocatedFileStatus status = it.next();
+                                            xmlDocument = status.getPath();
                                             if (fs.isFile(xmlDocument)) {
                                                 if (LOGGER.isLoggable(Level.FINE)) {
                                                     LOGGER.fine(
@@ -226,7 +259,8 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                                                 // file currently reading and
                                                 // send it to parser
                                                 InputStream in = fs.open(xmlDocument).getWrappedStream();
-                                                parser.parseHDFSElements(in, writer, fta, tupleIndex);
+                                                parser.parseHDFSElements(in, status.getLen(), writer, fta,
+                                                        tupleIndex);
                                                 in.close();
                                             }
                                         }
@@ -249,12 +283,14 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
             }
 
             public void xmlAndJsonCollection(File directory) throws HyracksDataException {
-                Reader input;
                 for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
                     Iterator<File> it = FileUtils.iterateFiles(directory, new VXQueryIOFileFilter(),
                             TrueFileFilter.INSTANCE);
                     while (it.hasNext()) {
                         File file = it.next();
+                        if (directoryReaders > 1 && !isAssigned(directory, file)) {
+                            continue;
+                        }
                         String fileName = file.getName().toLowerCase();
                         if (fileName.endsWith(".xml")) {
                             if (LOGGER.isLoggable(Level.FINE)) {
@@ -265,18 +301,35 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                             if (LOGGER.isLoggable(Level.FINE)) {
                                 LOGGER.fine("Starting to read JSON document: " + file.getAbsolutePath());
                             }
-                            try {
-                                jsonAbvs.reset();
-                                input = new InputStreamReader(new FileInputStream(file));
-                                jparser.parse(input, jsonAbvs, writer, appender);
-                            } catch (FileNotFoundException e) {
+                            jsonAbvs.reset();
+                            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                                if (documentBuffer.read(channel)) {
+                                    jparser.parse(documentBuffer.getBytes(), 0, documentBuffer.getLength(), jsonAbvs,
+                                            writer, appender);
+                                } else {
+                                    jparser.parse(documentBuffer.remainder(Channels.newInputStream(channel)), jsonAbvs,
+                                            writer, appender);
+                                }
+                            } catch (NoSuchFileException e) {
                                 throw new HyracksDataException(e.toString());
+                            } catch (IOException e) {
+                                throw new HyracksDataException(e);
                             }
                         }
                     }
                 }
             }
 
+            /**
+             * Files are assigned by the hash of their path relative to the
+             * collection directory, so each file is read by exactly one partition
+             * and the assignment does not depend on the order of the listing.
+             */
+            private boolean isAssigned(File directory, File file) {
+                String relativePath = file.getAbsolutePath().substring(directory.getAbsolutePath().length());
+                return Math.floorMod(relativePath.hashCode(), directoryReaders) == directoryReader;
+            }
+
             @Override
             public void fail() throws HyracksDataException {
                 writer.fail();
@@ -76,6 +76,16 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
         indexSeq = ds.getIndexValueSeq();
     }
 
+    /**
+     * @return true if this operator builds, updates or deletes an index, false if
+     *         it only reads one.
+     */
+    public boolean isIndexModification() {
+        return functionCall.equals(BuiltinFunctions.FN_BUILD_INDEX_ON_COLLECTION_1.getFunctionIdentifier().getName())
+                || functionCall.equals(BuiltinFunctions.FN_UPDATE_INDEX_1.getFunctionIdentifier().getName())
+                || functionCall.equals(BuiltinFunctions.FN_DELETE_INDEX_1.getFunctionIdentifier().getName());
+    }
+
     @Override
     public IOperatorNodePushable createPushRuntime(IHyracksTaskContext ctx,
             IRecordDescriptorProvider recordDescProvider, int partition, int nPartitions) throws HyracksDataException {
@@ -19,10 +19,13 @@ package org.apache.vxquery.metadata;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.namespace.QName;
+
 import org.apache.hyracks.algebricks.common.constraints.AlgebricksAbsolutePartitionConstraint;
 import org.apache.hyracks.algebricks.common.constraints.AlgebricksPartitionConstraint;
 import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
@@ -52,24 +55,38 @@ import org.apache.hyracks.api.dataflow.value.RecordDescriptor;
 import org.apache.hyracks.api.dataset.ResultSetId;
 import org.apache.hyracks.api.job.JobSpecification;
 import org.apache.hyracks.dataflow.std.result.ResultWriterOperatorDescriptor;
+import org.apache.vxquery.compiler.algebricks.VXQueryPrinterFactory;
 import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.xmlquery.query.XQueryConstants;
 
 public class VXQueryMetadataProvider implements IMetadataProvider<String, String> {
+    /** Option that selects the serialization of the query result, as in {@code declare option output:method}. */
+    private static final QName OUTPUT_METHOD = new QName(XQueryConstants.OUTPUT_NSURI, "method");
+    private static final String JSON_LINES_METHOD = "json-lines";
+
     private final String[] nodeList;
     private final Map<String, File> sourceFileMap;
     private final StaticContext staticCtx;
     private final String hdfsConf;
     private final List<String> collections;
     private final Map<String, NodeControllerInfo> nodeControllerInfos;
+    private final int availableProcessors;
 
     public VXQueryMetadataProvider(String[] nodeList, Map<String, File> sourceFileMap, StaticContext staticCtx,
             String hdfsConf, Map<String, NodeControllerInfo> nodeControllerInfos, List<String> collections) {
+        this(nodeList, sourceFileMap, staticCtx, hdfsConf, nodeControllerInfos, collections, -1);
+    }
+
+    public VXQueryMetadataProvider(String[] nodeList, Map<String, File> sourceFileMap, StaticContext staticCtx,
+            String hdfsConf, Map<String, NodeControllerInfo> nodeControllerInfos, List<String> collections,
+            int availableProcessors) {
         this.nodeList = nodeList;
         this.sourceFileMap = sourceFileMap;
         this.staticCtx = staticCtx;
         this.hdfsConf = hdfsConf;
         this.nodeControllerInfos = nodeControllerInfos;
         this.collections = collections;
+        this.availableProcessors = availableProcessors;
     }
 
     @Override
@@ -108,9 +125,10 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
 
         if (!ds.usingIndex()) {
             rDesc = new RecordDescriptor(new ISerializerDeserializer[opSchema.getSize()]);
+            int partitionsPerNode = getScanPartitionsPerNode(ds);
             scanner = new VXQueryCollectionOperatorDescriptor(jobSpec, ds, rDesc, this.hdfsConf,
-                    this.nodeControllerInfos);
-            constraint = getClusterLocations(nodeList, ds.getPartitionCount());
+                    this.nodeControllerInfos, partitionsPerNode);
+            constraint = getClusterLocations(nodeList, partitionsPerNode);
         } else {
             rDesc = new RecordDescriptor(new ISerializerDeserializer[opSchema.getSize()]);
             scanner = new VXQueryIndexingOperatorDescriptor(jobSpec, (VXQueryIndexingDataSource) ds, rDesc);
@@ -120,6 +138,20 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
         return new Pair<>(scanner, constraint);
     }
 
+    /**
+     * A local collection is scanned by at least one partition per available
+     * processor, which split the files of each directory between them. HDFS
+     * collections are already split by their input splits.
+     */
+    private int getScanPartitionsPerNode(AbstractVXQueryDataSource ds) {
+        for (String partition : ds.getPartitions()) {
+            if (partition.contains("hdfs:/")) {
+                return ds.getPartitionCount();
+            }
+        }
+        return Math.max(ds.getPartitionCount(), availableProcessors);
+    }
+
     public static AlgebricksAbsolutePartitionConstraint getClusterLocations(String[] nodeList) {
         int availableProcessors = Runtime.getRuntime().availableProcessors();
         if (availableProcessors < 1) {
@@ -201,6 +233,11 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
         QueryResultSetDataSink rsds = (QueryResultSetDataSink) sink;
         ResultSetId rssId = rsds.getId();
 
+        if (staticCtx != null && JSON_LINES_METHOD.equals(staticCtx.getOption(OUTPUT_METHOD))) {
+            printerFactories = new IPrinterFactory[printerFactories.length];
+            Arrays.fill(printerFactories, new VXQueryPrinterFactory(true));
+        }
+
         IResultSerializerFactoryProvider resultSerializerFactoryProvider = ResultSerializerFactoryProvider.INSTANCE;
         IAWriterFactory writerFactory = PrinterBasedWriterFactory.INSTANCE;
 
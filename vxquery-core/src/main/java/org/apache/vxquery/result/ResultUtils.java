@@ -15,33 +15,41 @@
 package org.apache.vxquery.result;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
 import org.apache.hyracks.api.comm.IFrameTupleAccessor;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
-import org.apache.hyracks.dataflow.common.comm.util.ByteBufferInputStream;
 
 public class ResultUtils {
     public static String getStringFromBuffer(ByteBuffer buffer, IFrameTupleAccessor fta) throws HyracksDataException {
-        String resultRecords = "";
-        ByteBufferInputStream bbis = new ByteBufferInputStream();
-        try {
-            fta.reset(buffer);
-            for (int tIndex = 0; tIndex < fta.getTupleCount(); tIndex++) {
-                int start = fta.getTupleStartOffset(tIndex);
-                int length = fta.getTupleEndOffset(tIndex) - start;
-                bbis.setByteBuffer(buffer, start);
-                byte[] recordBytes = new byte[length];
-                bbis.read(recordBytes, 0, length);
-                resultRecords += new String(recordBytes, 0, length);
-            }
-        } finally {
-            try {
-                bbis.close();
-            } catch (IOException e) {
-                throw new HyracksDataException(e);
-            }
+        StringBuilder resultRecords = new StringBuilder();
+        fta.reset(buffer);
+        for (int tIndex = 0; tIndex < fta.getTupleCount(); tIndex++) {
+            int start = fta.getTupleStartOffset(tIndex);
+            int length = fta.getTupleEndOffset(tIndex) - start;
+            resultRecords.append(new String(buffer.array(), buffer.arrayOffset() + start, length));
+        }
+        return resultRecords.toString();
+    }
+
+    /**
+     * Writes the bytes of every tuple in the frame to the output stream without decoding them.
+     *
+     * @param buffer
+     *            result frame
+     * @param fta
+     *            accessor for the result frame
+     * @param out
+     *            output stream the records are written to
+     * @throws IOException
+     */
+    public static void writeBuffer(ByteBuffer buffer, IFrameTupleAccessor fta, OutputStream out) throws IOException {
+        fta.reset(buffer);
+        for (int tIndex = 0; tIndex < fta.getTupleCount(); tIndex++) {
+            int start = fta.getTupleStartOffset(tIndex);
+            int length = fta.getTupleEndOffset(tIndex) - start;
+            out.write(buffer.array(), buffer.arrayOffset() + start, length);
         }
-        return resultRecords;
     }
 }
@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.factory.comparator;
+
+import org.apache.hyracks.data.std.primitive.BooleanPointable;
+import org.apache.hyracks.data.std.primitive.BytePointable;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.FloatPointable;
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.ShortPointable;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDatePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDateTimePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDecimalPointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDurationPointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSTimePointable;
+import org.apache.vxquery.datamodel.util.DateTime;
+import org.apache.vxquery.datamodel.values.ValueTag;
+
+/**
+ * Total order of tagged values used to sort and group them.
+ * <p>
+ * Values are first ordered by class: the empty sequence, NaN, numbers, booleans, strings, date-times, dates,
+ * times, durations and then everything else. Inside a class numbers compare by value after promotion, strings
+ * (including xs:untypedAtomic and xs:anyURI) by codepoint, date, time and date-time values by their UTC instant and
+ * durations by months and then milliseconds. Values without a timezone are taken as UTC, since the implicit timezone
+ * is not known at this point. All other values compare by their tag and then by their bytes.
+ * <p>
+ * The normalized key of a value is an unsigned int with the class in the upper four bits and a prefix of the value
+ * in the remaining bits, so that a smaller key always belongs to a smaller value.
+ * <p>
+ * The hash of a value is computed from the same canonical form, so values that compare as equal have the same hash.
+ */
+public class TaggedValueOrder {
+    private static final int EMPTY_CLASS = 0;
+    private static final int NAN_CLASS = 1;
+    private static final int NUMERIC_CLASS = 2;
+    private static final int BOOLEAN_CLASS = 3;
+    private static final int STRING_CLASS = 4;
+    private static final int DATETIME_CLASS = 5;
+    private static final int DATE_CLASS = 6;
+    private static final int TIME_CLASS = 7;
+    private static final int DURATION_CLASS = 8;
+    private static final int OTHER_CLASS = 15;
+
+    private static final int CLASS_SHIFT = 28;
+    private static final int PREFIX_BITS = 28;
+    private static final long PREFIX_MAX = (1L << PREFIX_BITS) - 1;
+    private static final long PREFIX_ZERO = 1L << (PREFIX_BITS - 1);
+    // The prefix of an instant has a resolution of about 70 minutes and covers about 17,000 years around 1970.
+    private static final int INSTANT_SHIFT = 22;
+
+    private TaggedValueOrder() {
+    }
+
+    public static int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        int class1 = getOrderClass(b1, s1);
+        int class2 = getOrderClass(b2, s2);
+        if (class1 != class2) {
+            return class1 < class2 ? -1 : 1;
+        }
+        switch (class1) {
+            case EMPTY_CLASS:
+            case NAN_CLASS:
+                return 0;
+            case NUMERIC_CLASS:
+                return compareNumerics(b1, s1, b2, s2);
+            case BOOLEAN_CLASS:
+                return Boolean.compare(BooleanPointable.getBoolean(b1, s1 + 1),
+                        BooleanPointable.getBoolean(b2, s2 + 1));
+            case STRING_CLASS:
+                return compareStrings(b1, s1 + 1, b2, s2 + 1);
+            case DATETIME_CLASS:
+                return Long.compare(getDateTimeInstant(b1, s1 + 1), getDateTimeInstant(b2, s2 + 1));
+            case DATE_CLASS:
+                return Long.compare(getDateInstant(b1, s1 + 1), getDateInstant(b2, s2 + 1));
+            case TIME_CLASS:
+                return Long.compare(getTimeInstant(b1, s1 + 1), getTimeInstant(b2, s2 + 1));
+            case DURATION_CLASS:
+                int c = Long.compare(getDurationMonths(b1, s1), getDurationMonths(b2, s2));
+                return c != 0 ? c : Long.compare(getDurationMilliSeconds(b1, s1), getDurationMilliSeconds(b2, s2));
+            default:
+                return compareBytes(b1, s1, l1, b2, s2, l2);
+        }
+    }
+
+    public static int normalize(byte[] bytes, int start, int length) {
+        int orderClass = getOrderClass(bytes, start);
+        long prefix;
+        switch (orderClass) {
+            case NUMERIC_CLASS:
+                double d = getDouble(bytes, start);
+                // -0.0 and 0.0 are equal.
+                long bits = Double.doubleToLongBits(d == 0 ? 0.0 : d);
+                bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+                prefix = bits >>> (Long.SIZE - PREFIX_BITS);
+                break;
+            case BOOLEAN_CLASS:
+                prefix = BooleanPointable.getBoolean(bytes, start + 1) ? 1 : 0;
+                break;
+            case STRING_CLASS:
+                prefix = getStringPrefix(bytes, start + 1);
+                break;
+            case DATETIME_CLASS:
+                prefix = clampPrefix(getDateTimeInstant(bytes, start + 1) >> INSTANT_SHIFT);
+                break;
+            case DATE_CLASS:
+                prefix = clampPrefix(getDateInstant(bytes, start + 1) >> INSTANT_SHIFT);
+                break;
+            case TIME_CLASS:
+                prefix = clampPrefix(getTimeInstant(bytes, start + 1) >> 1);
+                break;
+            case DURATION_CLASS:
+                prefix = clampPrefix(getDurationMonths(bytes, start));
+                break;
+            case OTHER_CLASS:
+                prefix = (bytes[start] & 0xff) << (PREFIX_BITS - 8);
+                break;
+            default:
+                prefix = 0;
+        }
+        return (orderClass << CLASS_SHIFT) | (int) prefix;
+    }
+
+    public static int hash(byte[] bytes, int start, int length, int seed) {
+        int orderClass = getOrderClass(bytes, start);
+        long h;
+        switch (orderClass) {
+            case EMPTY_CLASS:
+            case NAN_CLASS:
+                h = 0;
+                break;
+            case NUMERIC_CLASS:
+                // Numbers that are equal after promotion have the same double value.
+                double d = getDouble(bytes, start);
+                h = Double.doubleToLongBits(d == 0 ? 0.0 : d);
+                break;
+            case BOOLEAN_CLASS:
+                h = BooleanPointable.getBoolean(bytes, start + 1) ? 1 : 0;
+                break;
+            case STRING_CLASS:
+                h = hashString(bytes, start + 1);
+                break;
+            case DATETIME_CLASS:
+                h = getDateTimeInstant(bytes, start + 1);
+                break;
+            case DATE_CLASS:
+                h = getDateInstant(bytes, start + 1);
+                break;
+            case TIME_CLASS:
+                h = getTimeInstant(bytes, start + 1);
+                break;
+            case DURATION_CLASS:
+                h = getDurationMonths(bytes, start) * 31 + getDurationMilliSeconds(bytes, start);
+                break;
+            default:
+                h = 0;
+                for (int i = 0; i < length; ++i) {
+                    h = 31 * h + bytes[start + i];
+                }
+        }
+        return mix(h + orderClass, seed);
+    }
+
+    private static int getOrderClass(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.SEQUENCE_TAG:
+                // A sequence starts with its entry count.
+                return IntegerPointable.getInteger(bytes, start + 1) == 0 ? EMPTY_CLASS : OTHER_CLASS;
+            case ValueTag.XS_DOUBLE_TAG:
+                return Double.isNaN(DoublePointable.getDouble(bytes, start + 1)) ? NAN_CLASS : NUMERIC_CLASS;
+            case ValueTag.XS_FLOAT_TAG:
+                return Float.isNaN(FloatPointable.getFloat(bytes, start + 1)) ? NAN_CLASS : NUMERIC_CLASS;
+            case ValueTag.XS_DECIMAL_TAG:
+            case ValueTag.XS_INTEGER_TAG:
+            case ValueTag.XS_NON_POSITIVE_INTEGER_TAG:
+            case ValueTag.XS_NEGATIVE_INTEGER_TAG:
+            case ValueTag.XS_LONG_TAG:
+            case ValueTag.XS_NON_NEGATIVE_INTEGER_TAG:
+            case ValueTag.XS_UNSIGNED_LONG_TAG:
+            case ValueTag.XS_POSITIVE_INTEGER_TAG:
+            case ValueTag.XS_INT_TAG:
+            case ValueTag.XS_UNSIGNED_INT_TAG:
+            case ValueTag.XS_SHORT_TAG:
+            case ValueTag.XS_UNSIGNED_SHORT_TAG:
+            case ValueTag.XS_BYTE_TAG:
+            case ValueTag.XS_UNSIGNED_BYTE_TAG:
+                return NUMERIC_CLASS;
+            case ValueTag.XS_BOOLEAN_TAG:
+                return BOOLEAN_CLASS;
+            case ValueTag.XS_STRING_TAG:
+            case ValueTag.XS_NORMALIZED_STRING_TAG:
+            case ValueTag.XS_TOKEN_TAG:
+            case ValueTag.XS_LANGUAGE_TAG:
+            case ValueTag.XS_NMTOKEN_TAG:
+            case ValueTag.XS_NAME_TAG:
+            case ValueTag.XS_NCNAME_TAG:
+            case ValueTag.XS_ID_TAG:
+            case ValueTag.XS_IDREF_TAG:
+            case ValueTag.XS_ENTITY_TAG:
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+            case ValueTag.XS_ANY_URI_TAG:
+                return STRING_CLASS;
+            case ValueTag.XS_DATETIME_TAG:
+                return DATETIME_CLASS;
+            case ValueTag.XS_DATE_TAG:
+                return DATE_CLASS;
+            case ValueTag.XS_TIME_TAG:
+                return TIME_CLASS;
+            case ValueTag.XS_DURATION_TAG:
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                return DURATION_CLASS;
+            default:
+                return OTHER_CLASS;
+        }
+    }
+
+    private static boolean isInteger(int tag) {
+        return tag != ValueTag.XS_DOUBLE_TAG && tag != ValueTag.XS_FLOAT_TAG && tag != ValueTag.XS_DECIMAL_TAG;
+    }
+
+    private static int compareNumerics(byte[] b1, int s1, byte[] b2, int s2) {
+        if (isInteger(b1[s1]) && isInteger(b2[s2])) {
+            return Long.compare(getLong(b1, s1), getLong(b2, s2));
+        }
+        double d1 = getDouble(b1, s1);
+        double d2 = getDouble(b2, s2);
+        return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+    }
+
+    private static long getLong(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.XS_INT_TAG:
+            case ValueTag.XS_UNSIGNED_SHORT_TAG:
+                return IntegerPointable.getInteger(bytes, start + 1);
+            case ValueTag.XS_SHORT_TAG:
+            case ValueTag.XS_UNSIGNED_BYTE_TAG:
+                return ShortPointable.getShort(bytes, start + 1);
+            case ValueTag.XS_BYTE_TAG:
+                return BytePointable.getByte(bytes, start + 1);
+            default:
+                return LongPointable.getLong(bytes, start + 1);
+        }
+    }
+
+    private static double getDouble(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.XS_DOUBLE_TAG:
+                return DoublePointable.getDouble(bytes, start + 1);
+            case ValueTag.XS_FLOAT_TAG:
+                return FloatPointable.getFloat(bytes, start + 1);
+            case ValueTag.XS_DECIMAL_TAG:
+                return XSDecimalPointable.getDecimalValue(bytes, start + 1)
+                        / Math.pow(10, XSDecimalPointable.getDecimalPlace(bytes, start + 1));
+            default:
+                return getLong(bytes, start);
+        }
+    }
+
+    /**
+     * Strings are compared char by char, with surrogates moved above the other chars so that the order is the
+     * one of the codepoints.
+     */
+    private static int compareStrings(byte[] b1, int s1, byte[] b2, int s2) {
+        int utfLength1 = UTF8StringUtil.getUTFLength(b1, s1);
+        int utfLength2 = UTF8StringUtil.getUTFLength(b2, s2);
+        int c1 = s1 + UTF8StringUtil.getNumBytesToStoreLength(utfLength1);
+        int c2 = s2 + UTF8StringUtil.getNumBytesToStoreLength(utfLength2);
+        int end1 = c1 + utfLength1;
+        int end2 = c2 + utfLength2;
+        while (c1 < end1 && c2 < end2) {
+            char ch1 = UTF8StringUtil.charAt(b1, c1);
+            char ch2 = UTF8StringUtil.charAt(b2, c2);
+            if (ch1 != ch2) {
+                return Integer.compare(codepointOrder(ch1), codepointOrder(ch2));
+            }
+            c1 += UTF8StringUtil.charSize(b1, c1);
+            c2 += UTF8StringUtil.charSize(b2, c2);
+        }
+        return Boolean.compare(c1 < end1, c2 < end2);
+    }
+
+    private static long getStringPrefix(byte[] bytes, int start) {
+        int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
+        int offset = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = offset + utfLength;
+        long prefix = 0;
+        // The first char and the upper 12 bits of the second one.
+        for (int i = 0; i < 2; ++i) {
+            prefix <<= Character.SIZE;
+            if (offset < end) {
+                prefix |= codepointOrder(UTF8StringUtil.charAt(bytes, offset));
+                offset += UTF8StringUtil.charSize(bytes, offset);
+            }
+        }
+        return prefix >>> (2 * Character.SIZE - PREFIX_BITS);
+    }
+
+    private static long hashString(byte[] bytes, int start) {
+        int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
+        int offset = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = offset + utfLength;
+        long h = 0;
+        while (offset < end) {
+            h = 31 * h + UTF8StringUtil.charAt(bytes, offset);
+            offset += UTF8StringUtil.charSize(bytes, offset);
+        }
+        return h;
+    }
+
+    private static int codepointOrder(char c) {
+        if (c < Character.MIN_SURROGATE) {
+            return c;
+        }
+        return c > Character.MAX_SURROGATE ? c - 0x800 : c + 0x2000;
+    }
+
+    private static long getDateTimeInstant(byte[] bytes, int start) {
+        long instant = getEpochDay(XSDateTimePointable.getYear(bytes, start),
+                XSDateTimePointable.getMonth(bytes, start), XSDateTimePointable.getDay(bytes, start))
+                * DateTime.CHRONON_OF_DAY;
+        instant += XSDateTimePointable.getHour(bytes, start) * DateTime.CHRONON_OF_HOUR
+                + XSDateTimePointable.getMinute(bytes, start) * DateTime.CHRONON_OF_MINUTE
+                + XSDateTimePointable.getMilliSecond(bytes, start);
+        return instant - getTimezoneOffset(XSDateTimePointable.getTimezoneHour(bytes, start),
+                XSDateTimePointable.getTimezoneMinute(bytes, start));
+    }
+
+    private static long getDateInstant(byte[] bytes, int start) {
+        long instant = getEpochDay(XSDatePointable.getYear(bytes, start), XSDatePointable.getMonth(bytes, start),
+                XSDatePointable.getDay(bytes, start)) * DateTime.CHRONON_OF_DAY;
+        return instant - getTimezoneOffset(XSDatePointable.getTimezoneHour(bytes, start),
+                XSDatePointable.getTimezoneMinute(bytes, start));
+    }
+
+    private static long getTimeInstant(byte[] bytes, int start) {
+        return XSTimePointable.getDayTime(bytes, start) - getTimezoneOffset(
+                XSTimePointable.getTimezoneHour(bytes, start), XSTimePointable.getTimezoneMinute(bytes, start));
+    }
+
+    private static long getTimezoneOffset(long timezoneHour, long timezoneMinute) {
+        if (timezoneHour == DateTime.TIMEZONE_HOUR_NULL || timezoneMinute == DateTime.TIMEZONE_MINUTE_NULL) {
+            return 0;
+        }
+        return timezoneHour * DateTime.CHRONON_OF_HOUR + timezoneMinute * DateTime.CHRONON_OF_MINUTE;
+    }
+
+    /**
+     * @return the number of days between 1970-01-01 and the given day of the proleptic Gregorian calendar
+     */
+    private static long getEpochDay(long yearArg, long month, long day) {
+        long year = month <= 2 ? yearArg - 1 : yearArg;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long getDurationMonths(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                return IntegerPointable.getInteger(bytes, start + 1);
+            case ValueTag.XS_DURATION_TAG:
+                return XSDurationPointable.getYearMonth(bytes, start + 1);
+            default:
+                return 0;
+        }
+    }
+
+    private static long getDurationMilliSeconds(byte[] bytes, int start) {
+        switch (bytes[start]) {
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                return LongPointable.getLong(bytes, start + 1);
+            case ValueTag.XS_DURATION_TAG:
+                return XSDurationPointable.getDayTime(bytes, start + 1);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * The finalization step of MurmurHash3, applied to the value and the seed of the hash function.
+     */
+    private static int mix(long value, int seed) {
+        long h = value ^ (seed * 0x9e3779b97f4a7c15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long clampPrefix(long value) {
+        return Math.max(0, Math.min(PREFIX_MAX, value + PREFIX_ZERO));
+    }
+
+    private static int compareBytes(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        for (int i = 0; i < l1 && i < l2; ++i) {
+            if (b1[s1 + i] != b2[s2 + i]) {
+                return (b1[s1 + i] & 0xff) - (b2[s2 + i] & 0xff);
+            }
+        }
+        return l1 - l2;
+    }
+}
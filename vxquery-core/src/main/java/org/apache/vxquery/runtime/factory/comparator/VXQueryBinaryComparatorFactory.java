@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.factory.comparator;
+
+import org.apache.hyracks.api.dataflow.value.IBinaryComparator;
+import org.apache.hyracks.api.dataflow.value.IBinaryComparatorFactory;
+
+/**
+ * Compares tagged values in the order of {@link TaggedValueOrder}.
+ */
+public class VXQueryBinaryComparatorFactory implements IBinaryComparatorFactory {
+    private static final long serialVersionUID = 1L;
+
+    public static final IBinaryComparatorFactory ASC_INSTANCE = new VXQueryBinaryComparatorFactory(true);
+    public static final IBinaryComparatorFactory DESC_INSTANCE = new VXQueryBinaryComparatorFactory(false);
+
+    private final boolean ascending;
+
+    private VXQueryBinaryComparatorFactory(boolean ascending) {
+        this.ascending = ascending;
+    }
+
+    @Override
+    public IBinaryComparator createBinaryComparator() {
+        return new IBinaryComparator() {
+            @Override
+            public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+                int c = TaggedValueOrder.compare(b1, s1, l1, b2, s2, l2);
+                return ascending ? c : -c;
+            }
+        };
+    }
+}
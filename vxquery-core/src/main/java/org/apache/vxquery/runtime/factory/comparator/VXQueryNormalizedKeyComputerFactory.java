@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.factory.comparator;
+
+import org.apache.hyracks.api.dataflow.value.INormalizedKeyComputer;
+import org.apache.hyracks.api.dataflow.value.INormalizedKeyComputerFactory;
+
+/**
+ * Computes the normalized keys of {@link TaggedValueOrder}, so that sorts only fall back to
+ * {@link VXQueryBinaryComparatorFactory} for values with the same key.
+ */
+public class VXQueryNormalizedKeyComputerFactory implements INormalizedKeyComputerFactory {
+    private static final long serialVersionUID = 1L;
+
+    public static final INormalizedKeyComputerFactory ASC_INSTANCE = new VXQueryNormalizedKeyComputerFactory(true);
+    public static final INormalizedKeyComputerFactory DESC_INSTANCE = new VXQueryNormalizedKeyComputerFactory(false);
+
+    private final boolean ascending;
+
+    private VXQueryNormalizedKeyComputerFactory(boolean ascending) {
+        this.ascending = ascending;
+    }
+
+    @Override
+    public INormalizedKeyComputer createNormalizedKeyComputer() {
+        return new INormalizedKeyComputer() {
+            @Override
+            public int normalize(byte[] bytes, int start, int length) {
+                int key = TaggedValueOrder.normalize(bytes, start, length);
+                // Keys are compared as unsigned ints.
+                return ascending ? key : ~key;
+            }
+        };
+    }
+}
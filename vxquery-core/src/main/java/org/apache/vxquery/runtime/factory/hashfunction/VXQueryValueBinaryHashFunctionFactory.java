@@ -18,22 +18,18 @@ package org.apache.vxquery.runtime.factory.hashfunction;
 
 import org.apache.hyracks.api.dataflow.value.IBinaryHashFunction;
 import org.apache.hyracks.api.dataflow.value.IBinaryHashFunctionFactory;
-import org.apache.hyracks.data.std.accessors.MurmurHash3BinaryHashFunctionFamily;
 
-public class VXQueryRawBinaryHashFunctionFactory implements IBinaryHashFunctionFactory {
+public class VXQueryValueBinaryHashFunctionFactory implements IBinaryHashFunctionFactory {
     private static final long serialVersionUID = 1L;
 
-    public static IBinaryHashFunctionFactory INSTANCE = new VXQueryRawBinaryHashFunctionFactory();
-
-    private VXQueryRawBinaryHashFunctionFactory() {
+    public static final IBinaryHashFunctionFactory INSTANCE = new VXQueryValueBinaryHashFunctionFactory();
 
+    private VXQueryValueBinaryHashFunctionFactory() {
     }
 
     @Override
     public IBinaryHashFunction createBinaryHashFunction() {
-
-        return MurmurHash3BinaryHashFunctionFamily.INSTANCE.createBinaryHashFunction(0);
-
+        return VXQueryValueBinaryHashFunctionFamily.INSTANCE.createBinaryHashFunction(0);
     }
 
 }
@@ -31,7 +31,6 @@ import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.datamodel.values.XDMConstants;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
-import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
 import org.apache.vxquery.runtime.functions.arithmetic.DivideOperation;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluatorFactory;
@@ -48,11 +47,7 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
     protected IAggregateEvaluator createEvaluator(IScalarEvaluator[] args) throws HyracksDataException {
         final ArrayBackedValueStorage abvsCount = new ArrayBackedValueStorage();
         final DataOutput dOutCount = abvsCount.getDataOutput();
-        final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
-        final DataOutput dOutSum = abvsSum.getDataOutput();
-        final AddOperation aOpAdd = new AddOperation();
-        final ArithmeticHelper add1 = new ArithmeticHelper(aOpAdd, dCtx);
-        final ArithmeticHelper add2 = new ArithmeticHelper(aOpAdd, dCtx);
+        final SumAccumulator sum = new SumAccumulator(dCtx);
         final DivideOperation aOpDivide = new DivideOperation();
         final ArithmeticHelper divide = new ArithmeticHelper(aOpDivide, dCtx);
         final LongPointable longp = (LongPointable) LongPointable.FACTORY.createPointable();
@@ -62,21 +57,12 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
         return new AbstractTaggedValueArgumentAggregateEvaluator(args) {
             TaggedValuePointable tvpSum = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
             TaggedValuePointable tvpCount = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            long count;
 
             @Override
             public void init() throws HyracksDataException {
-                try {
-                    abvsCount.reset();
-                    dOutCount.write(ValueTag.XS_INTEGER_TAG);
-                    dOutCount.writeLong(0);
-                    tvpCount.set(abvsCount);
-                    abvsSum.reset();
-                    dOutSum.write(ValueTag.XS_INTEGER_TAG);
-                    dOutSum.writeLong(0);
-                    tvpSum.set(abvsSum);
-                } catch (Exception e) {
-                    throw new HyracksDataException(e);
-                }
+                count = 0;
+                sum.reset();
             }
 
             @Override
@@ -86,12 +72,17 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
 
             @Override
             public void finish(IPointable result) throws HyracksDataException {
-                tvpCount.getValue(longp);
-                if (longp.getLong() == 0) {
+                if (count == 0) {
                     XDMConstants.setEmptySequence(result);
                 } else {
                     // Set count as a TaggedValuePointable.
                     try {
+                        abvsCount.reset();
+                        dOutCount.write(ValueTag.XS_INTEGER_TAG);
+                        dOutCount.writeLong(count);
+                        tvpCount.set(abvsCount);
+
+                        sum.get(tvpSum);
                         divide.compute(tvpSum, tvpCount, tvpSum);
                         result.set(tvpSum);
                     } catch (Exception e) {
@@ -110,10 +101,12 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
                         // No results from nodes.
                         return;
                     } else if (seqLen == 2) {
+                        // The local counts are always xs:integer.
                         seq.getEntry(0, tvpArg);
-                        add1.compute(tvpArg, tvpCount, tvpCount);
+                        tvpArg.getValue(longp);
+                        count += longp.getLong();
                         seq.getEntry(1, tvpArg);
-                        add2.compute(tvpArg, tvpSum, tvpSum);
+                        sum.add(tvpArg);
                     } else {
                         throw new SystemException(ErrorCode.SYSE0001);
                     }
@@ -16,21 +16,14 @@
  */
 package org.apache.vxquery.runtime.functions.aggregate;
 
-import java.io.DataOutput;
-import java.io.IOException;
-
 import org.apache.hyracks.algebricks.runtime.base.IAggregateEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
-import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-import org.apache.vxquery.datamodel.values.ValueTag;
-import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.util.ArithmeticHelper;
 
 public class FnSumAggregateEvaluatorFactory extends AbstractTaggedValueArgumentAggregateEvaluatorFactory {
     private static final long serialVersionUID = 1L;
@@ -41,26 +34,14 @@ public class FnSumAggregateEvaluatorFactory extends AbstractTaggedValueArgumentA
 
     @Override
     protected IAggregateEvaluator createEvaluator(IScalarEvaluator[] args) throws HyracksDataException {
-        final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
-        final DataOutput dOutSum = abvsSum.getDataOutput();
-        final AddOperation aOpAdd = new AddOperation();
-        final ArithmeticHelper add = new ArithmeticHelper(aOpAdd, dCtx);
+        final SumAccumulator sum = new SumAccumulator(dCtx);
 
         return new AbstractTaggedValueArgumentAggregateEvaluator(args) {
-            TaggedValuePointable tvpSum = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
-
             // TODO Check if the second argument is supplied as the zero value.
 
             @Override
             public void init() throws HyracksDataException {
-                try {
-                    abvsSum.reset();
-                    dOutSum.write(ValueTag.XS_INTEGER_TAG);
-                    dOutSum.writeLong(0);
-                    tvpSum.set(abvsSum);
-                } catch (IOException e) {
-                    throw new HyracksDataException(e.toString());
-                }
+                sum.reset();
             }
 
             @Override
@@ -70,13 +51,12 @@ public class FnSumAggregateEvaluatorFactory extends AbstractTaggedValueArgumentA
 
             @Override
             public void finish(IPointable result) throws HyracksDataException {
-                result.set(tvpSum);
+                sum.get(result);
             }
 
             @Override
             protected void step(TaggedValuePointable[] args) throws HyracksDataException {
-                TaggedValuePointable tvp = args[0];
-                add.compute(tvp, tvpSum, tvpSum);
+                sum.add(args[0]);
             }
         };
     }
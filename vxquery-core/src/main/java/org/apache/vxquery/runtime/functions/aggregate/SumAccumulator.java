@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.aggregate;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDoubleOperation;
+import org.apache.vxquery.runtime.functions.util.ArithmeticHelper;
+
+/**
+ * Running sum of an aggregate. While the items are xs:integer, xs:double or
+ * untyped atomic values, the sum is kept in a primitive long or double and
+ * adding an item does not dispatch on the value tags or write a buffer. The
+ * first item of another type moves the sum into a tagged value, and from then
+ * on items are added with the generic arithmetic.
+ */
+public class SumAccumulator {
+    private static final int STATE_EMPTY = 0;
+    private static final int STATE_INTEGER = 1;
+    private static final int STATE_DOUBLE = 2;
+    private static final int STATE_GENERIC = 3;
+
+    private final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
+    private final DataOutput dOutSum = abvsSum.getDataOutput();
+    private final ArrayBackedValueStorage abvsDouble = new ArrayBackedValueStorage();
+    private final TaggedValuePointable tvpSum = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TypedPointables tp = new TypedPointables();
+    private final CastToDoubleOperation castToDouble = new CastToDoubleOperation();
+    private final ArithmeticHelper add;
+    private int state;
+    private long longSum;
+    private double doubleSum;
+
+    public SumAccumulator(DynamicContext dCtx) {
+        add = new ArithmeticHelper(new AddOperation(), dCtx);
+    }
+
+    /**
+     * Start a sum at the xs:integer zero.
+     */
+    public void reset() {
+        state = STATE_INTEGER;
+        longSum = 0;
+    }
+
+    /**
+     * Start a sum at the first item added.
+     */
+    public void resetEmpty() {
+        state = STATE_EMPTY;
+    }
+
+    public void add(TaggedValuePointable tvp) throws SystemException {
+        try {
+            switch (tvp.getTag()) {
+                case ValueTag.XS_INTEGER_TAG:
+                    tvp.getValue(tp.longp);
+                    if (state == STATE_INTEGER) {
+                        longSum += tp.longp.getLong();
+                        return;
+                    } else if (state == STATE_DOUBLE) {
+                        doubleSum += tp.longp.doubleValue();
+                        return;
+                    } else if (state == STATE_EMPTY) {
+                        state = STATE_INTEGER;
+                        longSum = tp.longp.getLong();
+                        return;
+                    }
+                    break;
+
+                case ValueTag.XS_DOUBLE_TAG:
+                    tvp.getValue(tp.doublep);
+                    if (addDouble(tp.doublep.getDouble())) {
+                        return;
+                    }
+                    break;
+
+                case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+                    if (state != STATE_GENERIC) {
+                        tvp.getValue(tp.utf8sp);
+                        abvsDouble.reset();
+                        castToDouble.convertUntypedAtomic(tp.utf8sp, abvsDouble.getDataOutput());
+                        addDouble(DoublePointable.getDouble(abvsDouble.getByteArray(),
+                                abvsDouble.getStartOffset() + 1));
+                        return;
+                    }
+                    break;
+            }
+            if (state == STATE_EMPTY) {
+                state = STATE_GENERIC;
+                abvsSum.reset();
+                dOutSum.write(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength());
+                tvpSum.set(abvsSum);
+                return;
+            }
+            if (state != STATE_GENERIC) {
+                writeSum();
+                state = STATE_GENERIC;
+            }
+            add.compute(tvp, tvpSum, tvpSum);
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    /**
+     * Set the result to the sum. A sum started with {@link #resetEmpty()} must have an item.
+     */
+    public void get(IPointable result) throws SystemException {
+        if (state != STATE_GENERIC) {
+            try {
+                writeSum();
+            } catch (IOException e) {
+                throw new SystemException(ErrorCode.SYSE0001, e);
+            }
+        }
+        result.set(tvpSum);
+    }
+
+    private boolean addDouble(double value) {
+        switch (state) {
+            case STATE_EMPTY:
+                doubleSum = value;
+                break;
+            case STATE_INTEGER:
+                doubleSum = longSum + value;
+                break;
+            case STATE_DOUBLE:
+                doubleSum += value;
+                break;
+            default:
+                return false;
+        }
+        state = STATE_DOUBLE;
+        return true;
+    }
+
+    private void writeSum() throws IOException {
+        abvsSum.reset();
+        if (state == STATE_DOUBLE) {
+            dOutSum.write(ValueTag.XS_DOUBLE_TAG);
+            dOutSum.writeDouble(doubleSum);
+        } else {
+            dOutSum.write(ValueTag.XS_INTEGER_TAG);
+            dOutSum.writeLong(longSum);
+        }
+        tvpSum.set(abvsSum);
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.vxquery.runtime.functions.cast;
 
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.vxquery.datamodel.accessors.atomic.XSDatePointable;
 import org.apache.vxquery.datamodel.accessors.atomic.XSDateTimePointable;
@@ -25,12 +26,11 @@ import org.apache.vxquery.datamodel.util.DateTime;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
-import org.apache.vxquery.runtime.functions.strings.ICharacterIterator;
-import org.apache.vxquery.runtime.functions.strings.UTF8StringCharacterIterator;
 
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 
 public class CastToDateTimeOperation extends AbstractCastToOperation {
+    private final long[] date = new long[8];
 
     @Override
     public void convertDate(XSDatePointable datep, DataOutput dOut) throws SystemException, IOException {
@@ -53,11 +53,13 @@ public class CastToDateTimeOperation extends AbstractCastToOperation {
 
     @Override
     public void convertString(UTF8StringPointable stringp, DataOutput dOut) throws SystemException, IOException {
-        ICharacterIterator charIterator = new UTF8StringCharacterIterator(stringp);
-        charIterator.reset();
+        // The lexical forms only use ASCII characters, so the bytes are read directly.
+        byte[] bytes = stringp.getByteArray();
+        int start = stringp.getCharStartOffset();
+        int end = start + stringp.getUTF8Length();
         int c;
         int index = 0;
-        long[] date = new long[8];
+        Arrays.fill(date, 0);
         boolean positiveTimezone = false;
         boolean pastDecimal = false;
         boolean negativeYear = false;
@@ -67,10 +69,11 @@ public class CastToDateTimeOperation extends AbstractCastToOperation {
         date[6] = DateTime.TIMEZONE_HOUR_NULL;
         date[7] = DateTime.TIMEZONE_MINUTE_NULL;
 
-        while ((c = charIterator.next()) != ICharacterIterator.EOS_CHAR) {
-            if (Character.isDigit(c)) {
+        for (int i = start; i < end; ++i) {
+            c = bytes[i];
+            if (c >= '0' && c <= '9') {
                 // Add the digit to the current numbered index.
-                date[index] = date[index] * 10 + Character.getNumericValue(c);
+                date[index] = date[index] * 10 + (c - '0');
                 if (pastDecimal) {
                     --decimalPlace;
                 }
@@ -79,12 +82,16 @@ public class CastToDateTimeOperation extends AbstractCastToOperation {
                 negativeYear = true;
             } else if (c == Character.valueOf('-') || c == Character.valueOf(':') || c == Character.valueOf('T')) {
                 // The basic case for going to the next number in the series.
-                ++index;
+                if (++index >= date.length) {
+                    throw new SystemException(ErrorCode.FORG0001);
+                }
                 pastDecimal = false;
                 date[index] = 0;
             } else if (c == Character.valueOf('+')) {
                 // Moving to the next number and logging this is now a positive timezone offset.
-                ++index;
+                if (++index >= date.length) {
+                    throw new SystemException(ErrorCode.FORG0001);
+                }
                 pastDecimal = false;
                 date[index] = 0;
                 positiveTimezone = true;
@@ -37,6 +37,15 @@ import org.apache.hyracks.data.std.primitive.ShortPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 
 public class CastToDoubleOperation extends AbstractCastToOperation {
+    /**
+     * The powers of ten that are exact doubles.
+     */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+    private double parsedValue;
+
     @Override
     public void convertBoolean(BooleanPointable boolp, DataOutput dOut) throws SystemException, IOException {
         double value = (boolp.getBoolean() ? 1 : 0);
@@ -71,6 +80,11 @@ public class CastToDoubleOperation extends AbstractCastToOperation {
 
     @Override
     public void convertString(UTF8StringPointable stringp, DataOutput dOut) throws SystemException, IOException {
+        if (parseDecimal(stringp)) {
+            dOut.write(ValueTag.XS_DOUBLE_TAG);
+            dOut.writeDouble(parsedValue);
+            return;
+        }
         ICharacterIterator charIterator = new UTF8StringCharacterIterator(stringp);
         charIterator.reset();
         double valueDouble;
@@ -97,7 +111,8 @@ public class CastToDoubleOperation extends AbstractCastToOperation {
                 } else {
                     valueDouble = Double.POSITIVE_INFINITY;
                 }
-            } else if (c == Character.valueOf('N') && c2 == Character.valueOf('a') && c3 == Character.valueOf('N')) {
+            } else if (c == Character.valueOf('N') && c2 == Character.valueOf('a') && c3 == Character.valueOf('N')
+                    && !negativeValue) {
                 valueDouble = Double.NaN;
             } else {
                 throw new SystemException(ErrorCode.FORG0001);
@@ -173,6 +188,76 @@ public class CastToDoubleOperation extends AbstractCastToOperation {
         writeIntegerAsDouble(intp, dOut);
     }
 
+    /**
+     * Parse a plain decimal such as "-12.5" or "1.5E3" straight from the bytes. When the digits fit in the
+     * significand of a double and the power of ten is exact, one multiplication or division gives the correctly
+     * rounded value, the same as {@link Double#parseDouble(String)}.
+     *
+     * @param stringp
+     *            the lexical form
+     * @return false if the string is not such a decimal, and must be parsed the general way
+     */
+    private boolean parseDecimal(UTF8StringPointable stringp) {
+        byte[] bytes = stringp.getByteArray();
+        int i = stringp.getCharStartOffset();
+        int end = i + stringp.getUTF8Length();
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+        long significand = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean pastDecimal = false;
+        for (; i < end; ++i) {
+            int c = bytes[i];
+            if (c >= '0' && c <= '9') {
+                significand = significand * 10 + (c - '0');
+                if (significand > MAX_EXACT_SIGNIFICAND) {
+                    return false;
+                }
+                ++digits;
+                if (pastDecimal) {
+                    --scale;
+                }
+            } else if (c == '.' && !pastDecimal) {
+                pastDecimal = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                ++i;
+            }
+            if (i == end) {
+                return false;
+            }
+            int exponent = 0;
+            for (; i < end; ++i) {
+                int c = bytes[i];
+                if (c < '0' || c > '9' || exponent > POWERS_OF_TEN.length) {
+                    return false;
+                }
+                exponent = exponent * 10 + (c - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (i != end || scale < -POWERS_OF_TEN.length + 1 || scale > POWERS_OF_TEN.length - 1) {
+            return false;
+        }
+        double value = scale < 0 ? significand / POWERS_OF_TEN[-scale] : significand * POWERS_OF_TEN[scale];
+        parsedValue = negative ? -value : value;
+        return true;
+    }
+
     private void writeIntegerAsDouble(INumeric numericp, DataOutput dOut) throws SystemException, IOException {
         dOut.write(ValueTag.XS_DOUBLE_TAG);
         dOut.writeDouble(numericp.doubleValue());
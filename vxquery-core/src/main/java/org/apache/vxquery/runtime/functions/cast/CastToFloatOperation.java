@@ -103,7 +103,8 @@ public class CastToFloatOperation extends AbstractCastToOperation {
                 } else {
                     valueFloat = Float.POSITIVE_INFINITY;
                 }
-            } else if (c == Character.valueOf('N') && c2 == Character.valueOf('a') && c3 == Character.valueOf('N')) {
+            } else if (c == Character.valueOf('N') && c2 == Character.valueOf('a') && c3 == Character.valueOf('N')
+                    && !negativeValue) {
                 valueFloat = Float.NaN;
             } else {
                 throw new SystemException(ErrorCode.FORG0001);
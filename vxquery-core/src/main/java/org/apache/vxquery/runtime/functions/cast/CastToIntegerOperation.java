@@ -23,8 +23,6 @@ import org.apache.vxquery.datamodel.accessors.atomic.XSDecimalPointable;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
-import org.apache.vxquery.runtime.functions.strings.ICharacterIterator;
-import org.apache.vxquery.runtime.functions.strings.UTF8StringCharacterIterator;
 
 import org.apache.hyracks.data.std.api.INumeric;
 import org.apache.hyracks.data.std.primitive.BooleanPointable;
@@ -91,32 +89,33 @@ public class CastToIntegerOperation extends AbstractCastToOperation {
 
     @Override
     public void convertString(UTF8StringPointable stringp, DataOutput dOut) throws SystemException, IOException {
-        ICharacterIterator charIterator = new UTF8StringCharacterIterator(stringp);
-        charIterator.reset();
+        // The lexical form only uses ASCII characters, so the bytes are read directly.
+        byte[] bytes = stringp.getByteArray();
+        int i = stringp.getCharStartOffset();
+        int end = i + stringp.getUTF8Length();
         long value = 0;
-        int c = 0;
+        int c;
         boolean negative = false;
         long limit = -Long.MAX_VALUE;
 
         // Check the first character.
-        c = charIterator.next();
-        if (c == Character.valueOf('-') && negativeAllowed) {
+        if (i < end && bytes[i] == '-' && negativeAllowed) {
             negative = true;
-            c = charIterator.next();
+            ++i;
             limit = Long.MIN_VALUE;
         }
+        if (i == end) {
+            throw new SystemException(ErrorCode.FORG0001);
+        }
 
         // Read the numeric value.
-        do {
-            if (Character.isDigit(c)) {
-                if (value < limit + Character.getNumericValue(c)) {
-                    throw new SystemException(ErrorCode.FORG0001);
-                }
-                value = value * 10 - Character.getNumericValue(c);
-            } else {
+        for (; i < end; ++i) {
+            c = bytes[i] - '0';
+            if (c < 0 || c > 9 || value < (limit + c) / 10) {
                 throw new SystemException(ErrorCode.FORG0001);
             }
-        } while ((c = charIterator.next()) != ICharacterIterator.EOS_CHAR);
+            value = value * 10 - c;
+        }
 
         if (negativeRequired && value != 0 && !negative) {
             throw new SystemException(ErrorCode.FORG0001);
@@ -17,6 +17,7 @@
 package org.apache.vxquery.runtime.functions.comparison.general;
 
 import java.io.DataOutput;
+import java.io.IOException;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
@@ -107,6 +108,9 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 .createPointable();
         final TaggedValuePointable tvpCompare1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
         final TaggedValuePointable tvpCompare2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final GeneralComparisonKeys.Comparison comparison = getComparison();
+        final GeneralComparisonKeys keys1 = new GeneralComparisonKeys();
+        final GeneralComparisonKeys keys2 = new GeneralComparisonKeys();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             AbstractCastToOperation aCastToOp = new CastToStringOperation();
@@ -117,7 +121,9 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 TaggedValuePointable tvpArg1 = args[0];
                 TaggedValuePointable tvpArg2 = args[1];
                 try {
-                    if (tvpArg1.getTag() == ValueTag.SEQUENCE_TAG) {
+                    if (evaluateSequenceKeys(tvpArg1, tvpArg2)) {
+                        booleanResult = GeneralComparisonKeys.compare(comparison, keys1, keys2);
+                    } else if (tvpArg1.getTag() == ValueTag.SEQUENCE_TAG) {
                         tvpArg1.getValue(seqp1);
                         int seqLen = seqp1.getEntryCount();
                         for (int j = 0; j < seqLen; ++j) {
@@ -143,6 +149,29 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 }
             }
 
+            /**
+             * Load the items of two sequence arguments as keys, so the comparison does not have to compare every
+             * pair of items.
+             *
+             * @param tvpArg1
+             * @param tvpArg2
+             * @return true if both arguments are non empty sequences with comparable keys
+             * @throws SystemException
+             * @throws IOException
+             */
+            private boolean evaluateSequenceKeys(TaggedValuePointable tvpArg1, TaggedValuePointable tvpArg2)
+                    throws SystemException, IOException {
+                if (tvpArg1.getTag() != ValueTag.SEQUENCE_TAG || tvpArg2.getTag() != ValueTag.SEQUENCE_TAG) {
+                    return false;
+                }
+                tvpArg1.getValue(seqp1);
+                tvpArg2.getValue(seqp2);
+                if (seqp1.getEntryCount() == 0 || seqp2.getEntryCount() == 0) {
+                    return false;
+                }
+                return keys1.load(seqp1, ah, ppool) && keys2.load(seqp2, ah, ppool) && keys1.isSameKind(keys2);
+            }
+
             /**
              * Check the second argument for a sequence and loop if required.
              *
@@ -383,4 +412,6 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
     }
 
     protected abstract AbstractValueComparisonOperation createValueComparisonOperation();
+
+    protected abstract GeneralComparisonKeys.Comparison getComparison();
 }
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.comparison.general;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.PointablePool;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.util.AtomizeHelper;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.util.GrowableIntArray;
+
+/**
+ * The atomized items of a sequence operand of a general comparison, stored as
+ * keys that compare like the items do. Strings and untyped atomic values are
+ * kept as strings, and numeric values as doubles. When both operands hold keys
+ * of the same kind, the general comparison probes a hash table or compares the
+ * smallest and largest keys instead of comparing every pair of items.
+ */
+public class GeneralComparisonKeys {
+    public enum Comparison {
+        EQ,
+        NE,
+        LT,
+        LE,
+        GT,
+        GE
+    }
+
+    private static final int KIND_NONE = 0;
+    private static final int KIND_STRING = 1;
+    private static final int KIND_DOUBLE = 2;
+    private static final int INITIAL_TABLE_SIZE = 64;
+
+    private final ArrayBackedValueStorage keys = new ArrayBackedValueStorage();
+    private final GrowableIntArray keyEnds = new GrowableIntArray();
+    private final ArrayBackedValueStorage abvsDouble = new ArrayBackedValueStorage();
+    private final VoidPointable vp = (VoidPointable) VoidPointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TaggedValuePointable tvpAtomic = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TypedPointables tp = new TypedPointables();
+    private final UTF8StringPointable utf8sp1 = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final UTF8StringPointable utf8sp2 = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private int[] hashTable = new int[INITIAL_TABLE_SIZE];
+    private boolean hashed;
+    private int kind;
+    private boolean hasNaN;
+
+    /**
+     * Atomize the items of a sequence and store them as keys.
+     *
+     * @param seqp
+     *            the sequence operand
+     * @param ah
+     *            atomizer for the node items
+     * @param ppool
+     *            pointable pool of the evaluator
+     * @return false if an item is neither a string nor a number, or if the sequence mixes both kinds
+     * @throws SystemException
+     * @throws IOException
+     */
+    public boolean load(SequencePointable seqp, AtomizeHelper ah, PointablePool ppool)
+            throws SystemException, IOException {
+        keys.reset();
+        keyEnds.clear();
+        hashed = false;
+        hasNaN = false;
+        kind = KIND_NONE;
+        DataOutput out = keys.getDataOutput();
+        int seqLen = seqp.getEntryCount();
+        for (int j = 0; j < seqLen; ++j) {
+            seqp.getEntry(j, vp);
+            tvpItem.set(vp.getByteArray(), vp.getStartOffset(), vp.getLength());
+            // Nodes without a typed value are left untouched by the atomizer.
+            tvpAtomic.set(tvpItem);
+            ah.atomize(tvpItem, ppool, tvpAtomic);
+            if (tvpAtomic.getTag() == ValueTag.NODE_TREE_TAG) {
+                return false;
+            }
+            switch (FunctionHelper.getBaseTypeForGeneralComparisons(tvpAtomic.getTag())) {
+                case ValueTag.XS_STRING_TAG:
+                case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+                    if (kind == KIND_DOUBLE) {
+                        return false;
+                    }
+                    kind = KIND_STRING;
+                    out.write(tvpAtomic.getByteArray(), tvpAtomic.getStartOffset() + 1, tvpAtomic.getLength() - 1);
+                    keyEnds.append(keys.getLength());
+                    break;
+
+                case ValueTag.XS_DOUBLE_TAG:
+                    if (kind == KIND_STRING) {
+                        return false;
+                    }
+                    kind = KIND_DOUBLE;
+                    abvsDouble.reset();
+                    FunctionHelper.getDoublePointable(tvpAtomic, abvsDouble.getDataOutput(), tp);
+                    double value = DoublePointable.getDouble(abvsDouble.getByteArray(),
+                            abvsDouble.getStartOffset() + 1);
+                    if (Double.isNaN(value)) {
+                        // NaN is not equal to, less than or greater than any value.
+                        hasNaN = true;
+                    } else {
+                        // Positive and negative zero are equal.
+                        out.writeDouble(value == 0 ? 0.0 : value);
+                        keyEnds.append(keys.getLength());
+                    }
+                    break;
+
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare the keys of two operands with a general comparison.
+     * Both operands must have been loaded from non empty sequences.
+     *
+     * @param comparison
+     *            the general comparison
+     * @param keys1
+     *            keys of the first operand
+     * @param keys2
+     *            keys of the second operand
+     * @return true if some pair of items satisfies the comparison
+     */
+    public static boolean compare(Comparison comparison, GeneralComparisonKeys keys1, GeneralComparisonKeys keys2) {
+        int count1 = keys1.keyEnds.getSize();
+        int count2 = keys2.keyEnds.getSize();
+        if (comparison == Comparison.NE) {
+            // NaN is unequal to every value, otherwise the operands are unequal unless all keys are the same.
+            return keys1.hasNaN || keys2.hasNaN || keys1.hasOtherKey(keys1, 0) || keys2.hasOtherKey(keys1, 0);
+        }
+        if (count1 == 0 || count2 == 0) {
+            return false;
+        }
+        switch (comparison) {
+            case EQ:
+                return count1 <= count2 ? keys1.containsAny(keys2) : keys2.containsAny(keys1);
+            case LT:
+                return compareKeys(keys1, keys1.findExtreme(-1), keys2, keys2.findExtreme(1)) < 0;
+            case LE:
+                return compareKeys(keys1, keys1.findExtreme(-1), keys2, keys2.findExtreme(1)) <= 0;
+            case GT:
+                return compareKeys(keys1, keys1.findExtreme(1), keys2, keys2.findExtreme(-1)) > 0;
+            case GE:
+                return compareKeys(keys1, keys1.findExtreme(1), keys2, keys2.findExtreme(-1)) >= 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param other
+     *            keys of the other operand
+     * @return true if the keys of both operands are comparable with each other
+     */
+    public boolean isSameKind(GeneralComparisonKeys other) {
+        return kind == other.kind;
+    }
+
+    private int getKeyStart(int index) {
+        return index == 0 ? 0 : keyEnds.getArray()[index - 1];
+    }
+
+    private int getKeyLength(int index) {
+        return keyEnds.getArray()[index] - getKeyStart(index);
+    }
+
+    private boolean keyEquals(int index, GeneralComparisonKeys other, int otherIndex) {
+        int length = getKeyLength(index);
+        if (length != other.getKeyLength(otherIndex)) {
+            return false;
+        }
+        byte[] bytes = keys.getByteArray();
+        byte[] otherBytes = other.keys.getByteArray();
+        int start = keys.getStartOffset() + getKeyStart(index);
+        int otherStart = other.keys.getStartOffset() + other.getKeyStart(otherIndex);
+        for (int i = 0; i < length; ++i) {
+            if (bytes[start + i] != otherBytes[otherStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int keyHash(int index) {
+        byte[] bytes = keys.getByteArray();
+        int start = keys.getStartOffset() + getKeyStart(index);
+        int end = start + getKeyLength(index);
+        int hash = 0;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int compareKeys(GeneralComparisonKeys keys1, int index1, GeneralComparisonKeys keys2,
+            int index2) {
+        if (keys1.kind == KIND_DOUBLE) {
+            return Double.compare(
+                    DoublePointable.getDouble(keys1.keys.getByteArray(),
+                            keys1.keys.getStartOffset() + keys1.getKeyStart(index1)),
+                    DoublePointable.getDouble(keys2.keys.getByteArray(),
+                            keys2.keys.getStartOffset() + keys2.getKeyStart(index2)));
+        }
+        keys1.utf8sp1.set(keys1.keys.getByteArray(), keys1.keys.getStartOffset() + keys1.getKeyStart(index1),
+                keys1.getKeyLength(index1));
+        keys1.utf8sp2.set(keys2.keys.getByteArray(), keys2.keys.getStartOffset() + keys2.getKeyStart(index2),
+                keys2.getKeyLength(index2));
+        return keys1.utf8sp1.compareTo(keys1.utf8sp2);
+    }
+
+    /**
+     * @param sign
+     *            -1 for the smallest key, 1 for the largest key
+     * @return the index of the smallest or largest key
+     */
+    private int findExtreme(int sign) {
+        int extreme = 0;
+        for (int i = 1; i < keyEnds.getSize(); ++i) {
+            if (sign * compareKeys(this, i, this, extreme) > 0) {
+                extreme = i;
+            }
+        }
+        return extreme;
+    }
+
+    private boolean hasOtherKey(GeneralComparisonKeys other, int otherIndex) {
+        for (int i = 0; i < keyEnds.getSize(); ++i) {
+            if (!keyEquals(i, other, otherIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsAny(GeneralComparisonKeys probe) {
+        if (!hashed) {
+            buildHashTable();
+        }
+        int mask = hashTable.length - 1;
+        for (int j = 0; j < probe.keyEnds.getSize(); ++j) {
+            int i = probe.keyHash(j) & mask;
+            while (hashTable[i] != 0) {
+                if (keyEquals(hashTable[i] - 1, probe, j)) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+        return false;
+    }
+
+    private void buildHashTable() {
+        int tableSize = INITIAL_TABLE_SIZE;
+        while (tableSize < 2 * keyEnds.getSize()) {
+            tableSize *= 2;
+        }
+        if (hashTable.length < tableSize) {
+            hashTable = new int[tableSize];
+        } else {
+            Arrays.fill(hashTable, 0);
+        }
+        int mask = hashTable.length - 1;
+        for (int index = 0; index < keyEnds.getSize(); ++index) {
+            int i = keyHash(index) & mask;
+            while (hashTable[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashTable[i] = index + 1;
+        }
+        hashed = true;
+    }
+}
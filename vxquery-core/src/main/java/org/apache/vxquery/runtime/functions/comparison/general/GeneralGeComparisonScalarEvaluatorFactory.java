@@ -32,4 +32,9 @@ public class GeneralGeComparisonScalarEvaluatorFactory extends AbstractGeneralCo
     protected AbstractValueComparisonOperation createValueComparisonOperation() {
         return new ValueGeComparisonOperation();
     }
+
+    @Override
+    protected GeneralComparisonKeys.Comparison getComparison() {
+        return GeneralComparisonKeys.Comparison.GE;
+    }
 }
@@ -32,4 +32,9 @@ public class GeneralGtComparisonScalarEvaluatorFactory extends AbstractGeneralCo
     protected AbstractValueComparisonOperation createValueComparisonOperation() {
         return new ValueGtComparisonOperation();
     }
+
+    @Override
+    protected GeneralComparisonKeys.Comparison getComparison() {
+        return GeneralComparisonKeys.Comparison.GT;
+    }
 }
@@ -32,4 +32,9 @@ public class GeneralLeComparisonScalarEvaluatorFactory extends AbstractGeneralCo
     protected AbstractValueComparisonOperation createValueComparisonOperation() {
         return new ValueLeComparisonOperation();
     }
+
+    @Override
+    protected GeneralComparisonKeys.Comparison getComparison() {
+        return GeneralComparisonKeys.Comparison.LE;
+    }
 }
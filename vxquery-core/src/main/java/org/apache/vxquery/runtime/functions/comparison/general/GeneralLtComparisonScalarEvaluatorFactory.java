@@ -32,4 +32,9 @@ public class GeneralLtComparisonScalarEvaluatorFactory extends AbstractGeneralCo
     protected AbstractValueComparisonOperation createValueComparisonOperation() {
         return new ValueLtComparisonOperation();
     }
+
+    @Override
+    protected GeneralComparisonKeys.Comparison getComparison() {
+        return GeneralComparisonKeys.Comparison.LT;
+    }
 }
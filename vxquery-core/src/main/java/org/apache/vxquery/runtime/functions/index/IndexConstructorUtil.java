@@ -119,7 +119,9 @@ public class IndexConstructorUtil {
                     xmlMetadata.setPath(file.getCanonicalPath());
                     xmlMetadata.setFileName(file.getName());
                     xmlMetadata.setLastModified(sdf.format(file.lastModified()));
-                    xmlMetadata.setMd5(metaFileUtil.generateMD5(file));
+                    xmlMetadata.setLastModifiedTime(file.lastModified());
+                    xmlMetadata.setSize(file.length());
+                    xmlMetadata.setChecksum(metaFileUtil.generateChecksum(file));
                     metadataMap.put(file.getCanonicalPath(), xmlMetadata);
                 }
 
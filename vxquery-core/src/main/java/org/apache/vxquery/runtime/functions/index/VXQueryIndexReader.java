@@ -16,11 +16,14 @@
 */
 package org.apache.vxquery.runtime.functions.index;
 
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
@@ -29,7 +32,9 @@ import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.comm.util.FrameUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
@@ -41,12 +46,19 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.CodedQNamePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.DocumentNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.ElementNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.index.IndexAttributes;
+import org.apache.vxquery.runtime.functions.index.update.Constants;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 import org.apache.vxquery.types.AttributeType;
 import org.apache.vxquery.types.ElementType;
@@ -60,6 +72,9 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 public class VXQueryIndexReader {
+    private static final String FIELD_ITEM = "item";
+    private static final Set<String> TREE_FIELDS = Collections.singleton(Constants.FIELD_TREE);
+    private static final Set<String> ITEM_FIELDS = Collections.singleton(FIELD_ITEM);
 
     private ArrayBackedValueStorage nodeAbvs = new ArrayBackedValueStorage();
 
@@ -83,6 +98,19 @@ public class VXQueryIndexReader {
     private boolean firstElement;
     private List<Byte[]> indexSeq;
     private List<Integer> indexAttsSeq;
+    private ITreeNodeIdProvider nodeIdProvider;
+
+    // Path steps of the returned elements, matched on the stored node tree of a document.
+    private UTF8StringPointable[] stepNames;
+    private int[] stepCodes;
+    private TaggedValuePointable[] stepNodes;
+    private ElementNodePointable[] stepElements;
+    private SequencePointable[] stepChildren;
+    private final TaggedValuePointable treeTVP = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+    private final DocumentNodePointable dnp = (DocumentNodePointable) DocumentNodePointable.FACTORY.createPointable();
+    private final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+    private final ArrayBackedValueStorage elementAbvs = new ArrayBackedValueStorage();
 
     public VXQueryIndexReader(IHyracksTaskContext context, String indexPath, List<Integer> childSeq,
             List<Integer> indexChildSeq, List<Integer> indexAttsSeq, List<Byte[]> indexSeq,
@@ -108,6 +136,12 @@ public class VXQueryIndexReader {
             }
         }
         childLocalName = new String[childSequenceTypes.size() + searchSize];
+        int steps = childSequenceTypes.size();
+        stepNames = new UTF8StringPointable[steps];
+        stepCodes = new int[steps];
+        stepNodes = new TaggedValuePointable[steps];
+        stepElements = new ElementNodePointable[steps];
+        stepChildren = new SequencePointable[steps];
         int index = 0;
         StringBuilder stb = new StringBuilder();
         stb.append("/");
@@ -116,6 +150,13 @@ public class VXQueryIndexReader {
             ElementType eType = (ElementType) nodeType;
             NameTest nameTest = eType.getNameTest();
             childLocalName[index] = FunctionHelper.getStringFromBytes(nameTest.getLocalName());
+            if (nameTest.getLocalName() != null) {
+                stepNames[index] = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+                stepNames[index].set(nameTest.getLocalName(), 0, nameTest.getLocalName().length);
+            }
+            stepNodes[index] = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            stepElements[index] = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
+            stepChildren[index] = (SequencePointable) SequencePointable.FACTORY.createPointable();
             stb.append(childLocalName[index]);
             if (index != childSequenceTypes.size() - 1) {
                 stb.append("/");
@@ -190,12 +231,20 @@ public class VXQueryIndexReader {
         if (indexPlace < indexLength) {
             nodeAbvs.reset();
             try {
-                //TODO: now we get back the entire document
-                doc = searcher.doc(hits[indexPlace].doc);
-                fields = doc.getFields();
-                handler.setupElementWriter(writer, tupleIndex);
-                this.firstElement = true;
-                parse(nodeAbvs);
+                BytesRef tree = null;
+                if (indexSeq.isEmpty()) {
+                    tree = searcher.doc(hits[indexPlace].doc, TREE_FIELDS).getBinaryValue(Constants.FIELD_TREE);
+                }
+                if (tree != null) {
+                    writeElements(tree, writer);
+                } else {
+                    //Value searches and indexes without node trees rebuild the elements from the items.
+                    doc = searcher.doc(hits[indexPlace].doc, ITEM_FIELDS);
+                    fields = doc.getFields();
+                    handler.setupElementWriter(writer, tupleIndex);
+                    this.firstElement = true;
+                    parse(nodeAbvs);
+                }
             } catch (IOException e) {
                 throw new AlgebricksException(e);
             }
@@ -209,7 +258,7 @@ public class VXQueryIndexReader {
     public void init() throws SystemException {
 
         int partition = ctx.getTaskAttemptId().getTaskId().getPartition();
-        ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider((short) partition);
+        nodeIdProvider = new TreeNodeIdProvider((short) partition);
         handler = new SAXContentHandler(false, nodeIdProvider, appender, childSequenceTypes);
 
         nodeAbvs.reset();
@@ -227,7 +276,7 @@ public class VXQueryIndexReader {
         searcher = new IndexSearcher(reader);
         Analyzer analyzer = new CaseSensitiveAnalyzer();
 
-        parser = new CaseSensitiveQueryParser("item", analyzer);
+        parser = new CaseSensitiveQueryParser(FIELD_ITEM, analyzer);
 
         String queryString = "";
         queryString = returnPath.replaceAll("/", ".");
@@ -271,6 +320,82 @@ public class VXQueryIndexReader {
         indexLength = hits.length;
     }
 
+    /*Writes the elements at the return path of a stored node tree to the frame,
+     * each as a node tree of its own that shares the dictionary of the document.
+     */
+    private void writeElements(BytesRef tree, IFrameWriter writer) throws IOException {
+        treeTVP.set(tree.bytes, tree.offset, tree.length);
+        treeTVP.getValue(ntp);
+        if (!ntp.dictionaryExists()) {
+            return;
+        }
+        for (int i = 0; i < stepNames.length; ++i) {
+            stepCodes[i] = stepNames[i] == null ? -1 : ntp.lookupString(stepNames[i]);
+            if (stepNames[i] != null && stepCodes[i] < 0) {
+                return;
+            }
+        }
+        ntp.getRootNode(treeTVP);
+        if (treeTVP.getTag() != ValueTag.DOCUMENT_NODE_TAG || stepNames.length == 0) {
+            return;
+        }
+        treeTVP.getValue(dnp);
+        dnp.getContent(ntp, stepChildren[0]);
+        writeElements(0, writer);
+    }
+
+    private void writeElements(int step, IFrameWriter writer) throws IOException {
+        SequencePointable children = stepChildren[step];
+        TaggedValuePointable node = stepNodes[step];
+        ElementNodePointable element = stepElements[step];
+        int count = children.getByteArray() == null ? 0 : children.getEntryCount();
+        for (int i = 0; i < count; ++i) {
+            children.getEntry(i, node);
+            if (node.getTag() != ValueTag.ELEMENT_NODE_TAG) {
+                continue;
+            }
+            node.getValue(element);
+            if (stepNames[step] != null) {
+                element.getName(cqp);
+                if (cqp.getLocalCode() != stepCodes[step]) {
+                    continue;
+                }
+            }
+            if (step == stepNames.length - 1) {
+                writeElement(node, writer);
+            } else {
+                element.getChildrenSequence(ntp, stepChildren[step + 1]);
+                writeElements(step + 1, writer);
+            }
+        }
+    }
+
+    private void writeElement(TaggedValuePointable node, IFrameWriter writer) throws IOException {
+        elementAbvs.reset();
+        DataOutput out = elementAbvs.getDataOutput();
+        out.write(ValueTag.NODE_TREE_TAG);
+        byte header = 0;
+        if (ntp.dictionaryExists()) {
+            header |= NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK;
+        }
+        if (ntp.typeExists()) {
+            header |= NodeTreePointable.HEADER_TYPE_EXISTS_MASK;
+        }
+        if (ntp.nodeIdExists()) {
+            header |= NodeTreePointable.HEADER_NODEID_EXISTS_MASK;
+        }
+        out.write(header);
+        if (ntp.nodeIdExists()) {
+            out.writeLong(nodeIdProvider.getId());
+        }
+        if (ntp.dictionaryExists()) {
+            out.write(ntp.getByteArray(), ntp.getDictionaryOffset(), ntp.getDictionarySize());
+        }
+        out.write(node.getByteArray(), node.getStartOffset(), node.getLength());
+        FrameUtils.appendFieldToWriter(writer, appender, elementAbvs.getByteArray(), elementAbvs.getStartOffset(),
+                elementAbvs.getLength());
+    }
+
     public void parse(ArrayBackedValueStorage abvsFileNode) throws IOException {
         int iPath = 0;
         try {
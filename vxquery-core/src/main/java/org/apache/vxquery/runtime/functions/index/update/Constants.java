@@ -21,6 +21,7 @@ package org.apache.vxquery.runtime.functions.index.update;
  */
 public class Constants {
     public static final String FIELD_PATH = "path";
+    public static final String FIELD_TREE = "tree";
     public static final String META_FILE_NAME = "vxquery_index.xml";
 
     private Constants() {
@@ -21,9 +21,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
@@ -44,8 +50,15 @@ import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 
 /**
  * Update the index if the source files are changed.
+ * Files whose size and last modified time match the stored metadata are skipped without being read. The other files
+ * are hashed once, and the changed ones are parsed and indexed on a pool of worker threads sharing one
+ * {@link IndexWriter}. The number of workers is set with the "vxquery.index_update_threads" system property, and
+ * "vxquery.index_merge_segments" sets the number of segments to merge the index down to when the update is done
+ * (0 leaves merging to the merge policy of the writer).
  */
 public class IndexUpdater {
+    private final int updateThreads;
+    private final int mergeSegments;
     private MetaFileUtil metaFileUtil;
     private ConcurrentHashMap<String, XmlMetadata> metadataMap;
     private IPointable result;
@@ -61,16 +74,31 @@ public class IndexUpdater {
     private final Logger LOGGER = Logger.getLogger("Index Updater");
     private SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
     private IndexConstructorUtil indexConstructorUtil = new IndexConstructorUtil();
+    private final ThreadLocal<IndexConstructorUtil> workerConstructorUtil =
+            ThreadLocal.withInitial(IndexConstructorUtil::new);
+    private final ThreadLocal<ArrayBackedValueStorage> workerFileNode =
+            ThreadLocal.withInitial(ArrayBackedValueStorage::new);
+    private ExecutorService executor;
+    private final List<Future<?>> pendingFiles = new ArrayList<>();
 
     public IndexUpdater(String indexFolder, IPointable result, ArrayBackedValueStorage abvs, ITreeNodeIdProvider nodeIdProvider,
             ArrayBackedValueStorage abvsFileNode, String nodeId) {
         this.indexFolder = indexFolder;
         this.result = result;
         this.abvs = abvs;
-        this.nodeIdProvider = nodeIdProvider;
+        // Node ids are handed out to all workers.
+        this.nodeIdProvider = new ITreeNodeIdProvider() {
+            @Override
+            public synchronized long getId() {
+                return nodeIdProvider.getId();
+            }
+        };
         this.abvsFileNode = abvsFileNode;
         this.nodeId = nodeId;
         this.pathsFromFileList = new HashSet<>();
+        updateThreads = Integer.parseInt(System.getProperty("vxquery.index_update_threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        mergeSegments = Integer.parseInt(System.getProperty("vxquery.index_merge_segments", "0"));
     }
 
     /**
@@ -110,7 +138,21 @@ public class IndexUpdater {
         }
 
         //Execute update index process
-        updateIndex(collectionDirectory);
+        if (updateThreads > 1) {
+            executor = Executors.newFixedThreadPool(updateThreads);
+        }
+        try {
+            updateIndex(collectionDirectory);
+            for (Future<?> pendingFile : pendingFiles) {
+                waitFor(pendingFile);
+            }
+        } finally {
+            pendingFiles.clear();
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
 
         //Detect deleted files and execute the delete index process.
         deleteIndexOfDeletedFiles(metadataMap.keySet(), pathsFromFileList);
@@ -124,7 +166,9 @@ public class IndexUpdater {
      *             : If exiting the index folder generates {@link IOException}
      */
     public void exit() throws IOException {
-        indexWriter.forceMerge(1);
+        if (mergeSegments > 0) {
+            indexWriter.forceMerge(mergeSegments);
+        }
 
         indexWriter.close();
 
@@ -160,52 +204,87 @@ public class IndexUpdater {
             pathsFromFileList.add(file.getCanonicalPath());
             if (indexConstructorUtil.readableXmlFile(file.getCanonicalPath())) {
                 XmlMetadata data = metadataMap.get(file.getCanonicalPath());
-                String md5 = metaFileUtil.generateMD5(file);
-
-                abvsFileNode.reset();
-
-                IndexDocumentBuilder indexDocumentBuilder;
-                if (data != null) {
-
-                    // This case checks whether the file has been changed.
-                    // If the file has changed, delete the existing document, create a new index document and add it
-                    // to the current index.
-                    // At the same time, update the metadata for the file.
-                    if (!md5.equals(data.getMd5())) {
-
-                        //Update index corresponding to the xml file.
-                        indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, file.getCanonicalPath()));
-                        indexDocumentBuilder = indexConstructorUtil.getIndexBuilder(file, indexWriter, abvsFileNode,
-                                nodeIdProvider, nodeId);
-                        indexDocumentBuilder.printStart();
+                if (data != null && metaFileUtil.hasSameAttributes(file, data)) {
+                    continue;
+                }
+                if (executor == null) {
+                    indexFile(file, data, indexConstructorUtil, abvsFileNode);
+                } else {
+                    pendingFiles.add(executor.submit(() -> {
+                        indexFile(file, data, workerConstructorUtil.get(), workerFileNode.get());
+                        return null;
+                    }));
+                }
+            } else if (file.isDirectory()) {
+                updateIndex(file);
+            }
+        }
+    }
 
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.log(Level.DEBUG, "New Index is created for updated file " + file.getCanonicalPath());
-                        }
+    /**
+     * Index a new or touched XML file.
+     * The checksum of a touched file is compared with the stored one, and the file is only indexed again if the
+     * content has changed.
+     *
+     * @param file
+     *            : XML file
+     * @param data
+     *            : Existing metadata object, or null for a newly added file
+     * @param constructorUtil
+     *            : Index constructor of the current thread
+     * @param fileNode
+     *            : Buffer of the current thread for the parsed file
+     * @throws IOException
+     *             : If reading or indexing the file generates {@link IOException}
+     */
+    private void indexFile(File file, XmlMetadata data, IndexConstructorUtil constructorUtil,
+            ArrayBackedValueStorage fileNode) throws IOException {
+        String path = file.getCanonicalPath();
+        String checksum = metaFileUtil.generateChecksum(file);
+        if (data != null) {
+            if (checksum.equals(data.getChecksum())) {
+                // Only the attributes of the file have changed.
+                metadataMap.replace(path, updateEntry(file, data, checksum));
+                return;
+            }
 
-                        //Update the metadata map.
-                        XmlMetadata metadata = updateEntry(file, data);
-                        metadataMap.replace(file.getCanonicalPath(), metadata);
+            // The file has changed, so delete the existing document, create a new index document and add it to the
+            // current index. At the same time, update the metadata for the file.
+            indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, path));
+        }
 
-                    }
-                } else {
+        fileNode.reset();
+        IndexDocumentBuilder indexDocumentBuilder =
+                constructorUtil.getIndexBuilder(file, indexWriter, fileNode, nodeIdProvider, nodeId);
+        indexDocumentBuilder.printStart();
 
-                    // In this case, the xml file has not added to the index. (It is a newly added file)
-                    // Therefore generate a new index for this file and add it to the existing index.
-                    indexDocumentBuilder = indexConstructorUtil.getIndexBuilder(file, indexWriter, abvsFileNode, nodeIdProvider,
-                            nodeId);
-                    indexDocumentBuilder.printStart();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.log(Level.DEBUG, "New Index is created for " + (data == null ? "newly added" : "updated") + " file "
+                    + path);
+        }
 
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.log(Level.DEBUG, "New Index is created for newly added file " + file.getCanonicalPath());
-                    }
+        metadataMap.put(path, updateEntry(file, data, checksum));
+    }
 
-                    XmlMetadata metadata = updateEntry(file, null);
-                    metadataMap.put(file.getCanonicalPath(), metadata);
-                }
-            } else if (file.isDirectory()) {
-                updateIndex(file);
+    /**
+     * Wait for a file submitted to the workers to be indexed.
+     *
+     * @param pendingFile
+     *            : Result of the worker task
+     * @throws IOException
+     *             : If indexing the file generated {@link IOException} or the wait was interrupted
+     */
+    private static void waitFor(Future<?> pendingFile) throws IOException {
+        try {
+            pendingFile.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException(e.getCause());
         }
     }
 
@@ -216,19 +295,25 @@ public class IndexUpdater {
      *            : XML file
      * @param metadata
      *            : Existing metadata object
+     * @param checksum
+     *            : Checksum of the file
      * @return : XML metadata object with updated fields.
      * @throws IOException
      *             : If getting the file info generates {@link IOException}
      */
-    private XmlMetadata updateEntry(File file, XmlMetadata metadataArg) throws IOException {
+    private XmlMetadata updateEntry(File file, XmlMetadata metadataArg, String checksum) throws IOException {
         XmlMetadata metadata = metadataArg;
         if (metadata == null) {
             metadata = new XmlMetadata();
         }
         metadata.setFileName(file.getName());
         metadata.setPath(file.getCanonicalPath());
-        metadata.setMd5(metaFileUtil.generateMD5(file));
-        metadata.setLastModified(sdf.format(file.lastModified()));
+        metadata.setChecksum(checksum);
+        metadata.setSize(file.length());
+        metadata.setLastModifiedTime(file.lastModified());
+        synchronized (sdf) {
+            metadata.setLastModified(sdf.format(file.lastModified()));
+        }
         return metadata;
     }
 
@@ -20,16 +20,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
-import javax.xml.bind.DatatypeConverter;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -42,6 +41,7 @@ import org.apache.log4j.Logger;
  * Utility class for writing, reading metadata file and generating checksum.
  */
 public class MetaFileUtil {
+    private static final int CHECKSUM_BUFFER_SIZE = 65536;
 
     private File metaFile;
     private static final Logger LOGGER = Logger.getLogger("MetadataFileUtil");
@@ -100,7 +100,7 @@ public class MetaFileUtil {
             this.index = indexes.getIndexLocation();
 
             for (XmlMetadata metadata : indexes.getMetadataList()) {
-                this.indexMap.put(index, metadata);
+                this.indexMap.put(metadata.getPath(), metadata);
             }
         } catch (JAXBException e) {
             if (LOGGER.isTraceEnabled()) {
@@ -142,7 +142,8 @@ public class MetaFileUtil {
     }
 
     /**
-     * Generate MD5 checksum string for a given file.
+     * Generate a CRC32 checksum string for a given file.
+     * The file is read in chunks, so it is not held in memory.
      *
      * @param file
      *            : File which the checksum should be generated.
@@ -150,18 +151,29 @@ public class MetaFileUtil {
      * @throws IOException
      *             : The file is not available
      */
-    public String generateMD5(File file) throws IOException {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            md.update(Files.readAllBytes(file.toPath()));
-            byte[] md5 = md.digest();
-            return DatatypeConverter.printHexBinary(md5);
-        } catch (NoSuchAlgorithmException e) {
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.log(Level.ERROR, "No Such Algorithm Error " + e.getMessage());
+    public String generateChecksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
             }
-            return null;
         }
+        return String.format("%08X", crc.getValue());
+    }
+
+    /**
+     * Checks whether a file has the size and last modified time stored in its metadata.
+     *
+     * @param file
+     *            : XML file
+     * @param metadata
+     *            : Stored metadata of the file
+     * @return true if the file can be taken as unchanged without reading it
+     */
+    public boolean hasSameAttributes(File file, XmlMetadata metadata) {
+        return metadata.getSize() == file.length() && metadata.getLastModifiedTime() == file.lastModified();
     }
 
     /**
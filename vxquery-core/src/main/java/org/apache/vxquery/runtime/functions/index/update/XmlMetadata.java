@@ -26,9 +26,12 @@ import javax.xml.bind.annotation.XmlRootElement;
  * Class to store metadata related to an XML file.
  * This contains
  * - Path to the xml file
- * - MD5 Checksum String
  * - File name
  * - Last modified date
+ * - Size and last modified time, to skip unchanged files without reading them
+ * - CRC32 checksum, to detect changes of files that were touched
+ * The md5 element of metadata files written by older versions is ignored when they are read, so those files are
+ * hashed and indexed again on the first update.
  */
 @XmlRootElement(name = "file")
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -36,9 +39,11 @@ public class XmlMetadata implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private String path;
-    private String md5;
     private String fileName;
     private String lastModified;
+    private long size;
+    private long lastModifiedTime;
+    private String checksum;
 
     public String getPath() {
         return path;
@@ -48,14 +53,6 @@ public class XmlMetadata implements Serializable {
         this.path = path;
     }
 
-    public String getMd5() {
-        return md5;
-    }
-
-    public void setMd5(String md5) {
-        this.md5 = md5;
-    }
-
     public String getFileName() {
         return fileName;
     }
@@ -71,4 +68,28 @@ public class XmlMetadata implements Serializable {
     public void setLastModified(String lastModified) {
         this.lastModified = lastModified;
     }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public void setLastModifiedTime(long lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
 }
@@ -34,12 +34,15 @@ import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.jsonparser.JSONParser;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
+import org.apache.vxquery.runtime.functions.util.DocumentCache;
+import org.apache.vxquery.runtime.functions.util.DocumentCache.DocumentKey;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 import org.apache.vxquery.xmlparser.IParser;
 
 public class JnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
 
     private static final long serialVersionUID = 1L;
+    private static final String DOCUMENT_KIND = "json";
 
     public JnDocScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
         super(args);
@@ -52,6 +55,8 @@ public class JnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
         final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
         final ByteBufferInputStream bbis = new ByteBufferInputStream();
         final DataInputStream di = new DataInputStream(bbis);
+        final DocumentCache documentCache = DocumentCache
+                .getInstance(ctx.getJobletContext().getServiceContext().getNodeId());
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
 
@@ -63,8 +68,16 @@ public class JnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
                 }
                 tvp.getValue(stringp);
                 try {
+                    String fName = stringp.toString();
+                    DocumentKey key = documentCache.getKey(fName, DOCUMENT_KIND);
+                    if (key != null && documentCache.get(key, result)) {
+                        return;
+                    }
                     IParser parser = new JSONParser();
-                    FunctionHelper.readInDocFromPointable(stringp, abvs, parser);
+                    FunctionHelper.readInDocFromString(fName, abvs, parser);
+                    if (key != null) {
+                        documentCache.put(key, abvs);
+                    }
                 } catch (IOException e) {
                     throw new SystemException(ErrorCode.FODC0002, e);
                 }
@@ -47,12 +47,31 @@ public abstract class AbstractNodePositionalCheckEvaluator extends AbstractTagge
             throw new SystemException(ErrorCode.FORG0006);
         }
 
-        if (nodeCompare(FunctionHelper.getLocalNodeId(args[0], tp), FunctionHelper.getLocalNodeId(args[1], tp))) {
+        int firstLocalId = FunctionHelper.getLocalNodeId(args[0], tp);
+        long firstTreeId = tp.ntp.getRootNodeId();
+        int secondLocalId = FunctionHelper.getLocalNodeId(args[1], tp);
+        long secondTreeId = tp.ntp.getRootNodeId();
+        boolean holds;
+        if (firstLocalId == -1 || firstTreeId == -1 || secondLocalId == -1 || secondTreeId == -1) {
+            // Nodes without ids, such as constructed nodes, have no known order and are only the same node as
+            // themselves.
+            holds = FunctionHelper.isSameItem(args[0], args[1]) && nodeCompare(0);
+        } else {
+            // Nodes of different trees are in the order of their tree ids.
+            int c = firstTreeId != secondTreeId ? Long.compare(firstTreeId, secondTreeId)
+                    : Integer.compare(firstLocalId, secondLocalId);
+            holds = nodeCompare(c);
+        }
+        if (holds) {
             XDMConstants.setTrue(result);
         } else {
             XDMConstants.setFalse(result);
         }
     }
 
-    abstract protected boolean nodeCompare(int firstId, int secondId);
+    /**
+     * @param comparison
+     *            negative, zero or positive when the first node is before, the same as or after the second node
+     */
+    abstract protected boolean nodeCompare(int comparison);
 }
@@ -34,6 +34,8 @@ import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
+import org.apache.vxquery.runtime.functions.util.DocumentCache;
+import org.apache.vxquery.runtime.functions.util.DocumentCache.DocumentKey;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 import org.apache.vxquery.xmlparser.IParser;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
@@ -42,6 +44,7 @@ import org.apache.vxquery.xmlparser.XMLParser;
 
 public class FnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
+    private static final String DOCUMENT_KIND = "xml";
 
     public FnDocScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
         super(args);
@@ -58,6 +61,7 @@ public class FnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
         final int partition = ctx.getTaskAttemptId().getTaskId().getPartition();
         final ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider((short) partition);
         final String nodeId = ctx.getJobletContext().getServiceContext().getNodeId();
+        final DocumentCache documentCache = DocumentCache.getInstance(nodeId);
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
@@ -77,9 +81,19 @@ public class FnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
                 }
                 tvp.getValue(stringp);
                 try {
+                    String fName = stringp.toString();
+                    DocumentKey key = documentCache.getKey(fName, DOCUMENT_KIND);
+                    if (key != null && documentCache.get(key, abvs, nodeIdProvider)) {
+                        result.set(abvs);
+                        return;
+                    }
                     // Only one document should be parsed so its ok to have a unique parser.
                     IParser parser = new XMLParser(false, nodeIdProvider, nodeId);
-                    FunctionHelper.readInDocFromPointable(stringp, abvs, parser);
+                    abvs.reset();
+                    FunctionHelper.readInDocFromString(fName, abvs, parser);
+                    if (key != null) {
+                        documentCache.put(key, abvs);
+                    }
                 } catch (Exception e) {
                     throw new SystemException(ErrorCode.SYSE0001, e);
                 }
@@ -26,8 +26,8 @@ public class OpNodeAfterEvaluator extends AbstractNodePositionalCheckEvaluator {
     }
 
     @Override
-    protected boolean nodeCompare(int firstId, int secondId) {
-        return (firstId > secondId);
+    protected boolean nodeCompare(int comparison) {
+        return comparison > 0;
     }
 
 }
@@ -56,9 +56,8 @@ public class TreeIdFromNodeScalarEvaluatorFactory extends AbstractTaggedValueArg
                     try {
                         abvs.reset();
                         tvp1.getValue(ntp);
-                        dOut.write(ValueTag.XS_INT_TAG);
-                        tvp1.getValue(ntp);
-                        dOut.writeInt(ntp.getRootNodeId());
+                        dOut.write(ValueTag.XS_LONG_TAG);
+                        dOut.writeLong(ntp.getRootNodeId());
                         result.set(abvs);
                     } catch (Exception e) {
                         throw new SystemException(ErrorCode.SYSE0001, e);
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import java.io.IOException;
+
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+
+/**
+ * Keeps the nodes of the first sequence that are (op:intersect) or are not (op:except) in the second sequence.
+ *
+ * Both sequences arrive in document order without duplicates, so they are merged on the tree id and local node id
+ * of each node. Nodes without ids, such as constructed nodes, are only the same as an item with the same bytes. If
+ * such a node is present, each node of the first sequence is looked up in the whole second sequence.
+ */
+public class NodeSetScalarEvaluator extends AbstractTaggedValueArgumentScalarEvaluator {
+    private final boolean intersect;
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final SequenceBuilder sb = new SequenceBuilder();
+    private final SequencePointable seqp1 = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final SequencePointable seqp2 = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TypedPointables tp = new TypedPointables();
+    private long treeId;
+    private int localId;
+
+    public NodeSetScalarEvaluator(IScalarEvaluator[] args, boolean intersect) {
+        super(args);
+        this.intersect = intersect;
+    }
+
+    @Override
+    protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
+        int size1 = getSize(args[0], seqp1);
+        int size2 = getSize(args[1], seqp2);
+        boolean merge = haveIds(args[0], seqp1, size1, tvp1) && haveIds(args[1], seqp2, size2, tvp2);
+        try {
+            abvs.reset();
+            sb.reset(abvs);
+            int j = 0;
+            long treeId2 = 0;
+            int localId2 = 0;
+            if (merge && size2 > 0) {
+                getItem(args[1], seqp2, 0, tvp2);
+                loadKey(tvp2);
+                treeId2 = treeId;
+                localId2 = localId;
+            }
+            for (int i = 0; i < size1; ++i) {
+                getItem(args[0], seqp1, i, tvp1);
+                boolean found;
+                if (merge) {
+                    loadKey(tvp1);
+                    long treeId1 = treeId;
+                    int localId1 = localId;
+                    // The second sequence is in document order, so it is only read once.
+                    while (j < size2 && compare(treeId2, localId2, treeId1, localId1) < 0) {
+                        if (++j < size2) {
+                            getItem(args[1], seqp2, j, tvp2);
+                            loadKey(tvp2);
+                            treeId2 = treeId;
+                            localId2 = localId;
+                        }
+                    }
+                    found = j < size2 && treeId2 == treeId1 && localId2 == localId1;
+                } else {
+                    found = contains(args[1], size2, tvp1);
+                }
+                if (found == intersect) {
+                    sb.addItem(tvp1);
+                }
+            }
+            sb.finish();
+            result.set(abvs);
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    private boolean contains(TaggedValuePointable arg, int size, TaggedValuePointable item) {
+        boolean hasId = loadKey(item);
+        long itemTreeId = treeId;
+        int itemLocalId = localId;
+        for (int j = 0; j < size; ++j) {
+            getItem(arg, seqp2, j, tvp2);
+            if (hasId && loadKey(tvp2) && treeId == itemTreeId && localId == itemLocalId) {
+                return true;
+            }
+            if (FunctionHelper.isSameItem(item, tvp2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean haveIds(TaggedValuePointable arg, SequencePointable seqp, int size, TaggedValuePointable item)
+            throws SystemException {
+        for (int i = 0; i < size; ++i) {
+            getItem(arg, seqp, i, item);
+            if (item.getTag() != ValueTag.NODE_TREE_TAG) {
+                throw new SystemException(ErrorCode.XPTY0004);
+            }
+            if (!loadKey(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the tree id and local node id of a node into {@link #treeId} and {@link #localId}.
+     *
+     * @return false if the node has no node id
+     */
+    private boolean loadKey(TaggedValuePointable item) {
+        localId = FunctionHelper.getLocalNodeId(item, tp);
+        // getLocalNodeId left the node tree in tp.ntp.
+        treeId = localId == -1 ? -1 : tp.ntp.getRootNodeId();
+        return localId != -1 && treeId != -1;
+    }
+
+    private static int compare(long treeId1, int localId1, long treeId2, int localId2) {
+        int c = Long.compare(treeId1, treeId2);
+        return c != 0 ? c : Integer.compare(localId1, localId2);
+    }
+
+    private static int getSize(TaggedValuePointable arg, SequencePointable seqp) {
+        if (arg.getTag() == ValueTag.SEQUENCE_TAG) {
+            arg.getValue(seqp);
+            return seqp.getEntryCount();
+        }
+        return 1;
+    }
+
+    private static void getItem(TaggedValuePointable arg, SequencePointable seqp, int index,
+            TaggedValuePointable item) {
+        if (arg.getTag() == ValueTag.SEQUENCE_TAG) {
+            seqp.getEntry(index, item);
+        } else {
+            item.set(arg);
+        }
+    }
+}
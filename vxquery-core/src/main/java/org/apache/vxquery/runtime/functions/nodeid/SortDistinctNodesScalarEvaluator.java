@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+
+/**
+ * Puts a sequence of nodes in document order and optionally removes duplicate nodes.
+ *
+ * Each node is keyed on its 64 bit tree id and its local node id. The keys are sorted with a least significant digit
+ * radix sort over an index array, first on the local ids and then on the tree ids, and duplicates are removed in one
+ * pass over the sorted keys. Sequences holding atomic values or nodes without ids are returned unchanged.
+ */
+public class SortDistinctNodesScalarEvaluator extends AbstractTaggedValueArgumentScalarEvaluator {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_BUCKETS = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX_BUCKETS - 1;
+
+    private final boolean distinct;
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final SequenceBuilder sb = new SequenceBuilder();
+    private final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TypedPointables tp = new TypedPointables();
+    private final int[] counts = new int[RADIX_BUCKETS];
+    private long[] treeIds = new long[INSERTION_SORT_THRESHOLD];
+    private long[] treeIdsTemp = new long[INSERTION_SORT_THRESHOLD];
+    private int[] localIds = new int[INSERTION_SORT_THRESHOLD];
+    private int[] localIdsTemp = new int[INSERTION_SORT_THRESHOLD];
+    private int[] order = new int[INSERTION_SORT_THRESHOLD];
+    private int[] orderTemp = new int[INSERTION_SORT_THRESHOLD];
+
+    public SortDistinctNodesScalarEvaluator(IScalarEvaluator[] args, boolean distinct) {
+        super(args);
+        this.distinct = distinct;
+    }
+
+    @Override
+    protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
+        TaggedValuePointable tvp = args[0];
+        if (tvp.getTag() != ValueTag.SEQUENCE_TAG) {
+            result.set(tvp);
+            return;
+        }
+        tvp.getValue(seqp);
+        int size = seqp.getEntryCount();
+        if (size < 2 || !loadKeys(size)) {
+            result.set(tvp);
+            return;
+        }
+        if (isSorted(size)) {
+            if (!distinct) {
+                result.set(tvp);
+                return;
+            }
+        } else if (size <= INSERTION_SORT_THRESHOLD) {
+            // Duplicates are removed from sorted keys, so distinct sorts unordered input as well.
+            insertionSort(size);
+        } else {
+            radixSort(size);
+        }
+        try {
+            abvs.reset();
+            sb.reset(abvs);
+            for (int i = 0; i < size; ++i) {
+                if (distinct && i > 0 && compareKeys(i - 1, i) == 0) {
+                    continue;
+                }
+                seqp.getEntry(order[i], tvpItem);
+                sb.addItem(tvpItem);
+            }
+            sb.finish();
+            result.set(abvs);
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    /**
+     * Fill the key and order arrays.
+     *
+     * @return false if any item is not a node with a node id
+     */
+    private boolean loadKeys(int size) {
+        if (treeIds.length < size) {
+            int capacity = Math.max(size, treeIds.length * 2);
+            treeIds = new long[capacity];
+            treeIdsTemp = new long[capacity];
+            localIds = new int[capacity];
+            localIdsTemp = new int[capacity];
+            order = new int[capacity];
+            orderTemp = new int[capacity];
+        }
+        for (int i = 0; i < size; ++i) {
+            seqp.getEntry(i, tvpItem);
+            int localNodeId = FunctionHelper.getLocalNodeId(tvpItem, tp);
+            if (localNodeId == -1) {
+                return false;
+            }
+            // getLocalNodeId left the node tree in tp.ntp.
+            long rootNodeId = tp.ntp.getRootNodeId();
+            if (rootNodeId == -1) {
+                return false;
+            }
+            treeIds[i] = rootNodeId;
+            localIds[i] = localNodeId;
+            order[i] = i;
+        }
+        return true;
+    }
+
+    private boolean isSorted(int size) {
+        for (int i = 1; i < size; ++i) {
+            if (compareKeys(i - 1, i) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int compareKeys(int i, int j) {
+        int c = Long.compare(treeIds[i], treeIds[j]);
+        return c != 0 ? c : Integer.compare(localIds[i], localIds[j]);
+    }
+
+    private void insertionSort(int size) {
+        for (int i = 1; i < size; ++i) {
+            long treeId = treeIds[i];
+            int localId = localIds[i];
+            int item = order[i];
+            int j = i - 1;
+            while (j >= 0 && (treeIds[j] > treeId || (treeIds[j] == treeId && localIds[j] > localId))) {
+                treeIds[j + 1] = treeIds[j];
+                localIds[j + 1] = localIds[j];
+                order[j + 1] = order[j];
+                --j;
+            }
+            treeIds[j + 1] = treeId;
+            localIds[j + 1] = localId;
+            order[j + 1] = item;
+        }
+    }
+
+    /**
+     * Stable least significant digit radix sort, over the digits of the local ids and then over those of the tree
+     * ids. Digits that are the same for every key (typically the high bytes of the tree id) are skipped. The sign bit
+     * is flipped so the signed ids sort as unsigned digits.
+     */
+    private void radixSort(int size) {
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; ++i) {
+                ++counts[digit(localIds[i] ^ Integer.MIN_VALUE, shift)];
+            }
+            if (counts[digit(localIds[0] ^ Integer.MIN_VALUE, shift)] != size) {
+                prefixSums();
+                for (int i = 0; i < size; ++i) {
+                    moveEntry(i, counts[digit(localIds[i] ^ Integer.MIN_VALUE, shift)]++);
+                }
+                swapArrays();
+            }
+        }
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; ++i) {
+                ++counts[digit(treeIds[i] ^ Long.MIN_VALUE, shift)];
+            }
+            if (counts[digit(treeIds[0] ^ Long.MIN_VALUE, shift)] != size) {
+                prefixSums();
+                for (int i = 0; i < size; ++i) {
+                    moveEntry(i, counts[digit(treeIds[i] ^ Long.MIN_VALUE, shift)]++);
+                }
+                swapArrays();
+            }
+        }
+    }
+
+    /**
+     * Turn the bucket counts into the start position of each bucket.
+     */
+    private void prefixSums() {
+        int total = 0;
+        for (int b = 0; b < RADIX_BUCKETS; ++b) {
+            int count = counts[b];
+            counts[b] = total;
+            total += count;
+        }
+    }
+
+    private void moveEntry(int from, int to) {
+        treeIdsTemp[to] = treeIds[from];
+        localIdsTemp[to] = localIds[from];
+        orderTemp[to] = order[from];
+    }
+
+    private void swapArrays() {
+        long[] swapTreeIds = treeIds;
+        treeIds = treeIdsTemp;
+        treeIdsTemp = swapTreeIds;
+        int[] swapLocalIds = localIds;
+        localIds = localIdsTemp;
+        localIdsTemp = swapLocalIds;
+        int[] swapOrder = order;
+        order = orderTemp;
+        orderTemp = swapOrder;
+    }
+
+    private static int digit(long key, int shift) {
+        return (int) (key >>> shift) & RADIX_MASK;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.sequence;
+
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
+import org.apache.hyracks.algebricks.runtime.base.IUnnestingEvaluator;
+import org.apache.hyracks.api.context.IHyracksTaskContext;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentUnnestingEvaluator;
+import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentUnnestingEvaluatorFactory;
+
+/**
+ * Returns the items of all arguments one at a time, without copying them into
+ * one sequence.
+ */
+public class ConcatenateUnnestingEvaluatorFactory extends AbstractTaggedValueArgumentUnnestingEvaluatorFactory {
+    private static final long serialVersionUID = 1L;
+
+    public ConcatenateUnnestingEvaluatorFactory(IScalarEvaluatorFactory[] args) {
+        super(args);
+    }
+
+    @Override
+    protected IUnnestingEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
+            throws HyracksDataException {
+        final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        return new AbstractTaggedValueArgumentUnnestingEvaluator(args) {
+            private int argIndex;
+            private int index;
+            private int seqLength;
+
+            @Override
+            public boolean step(IPointable result) throws HyracksDataException {
+                while (argIndex < tvps.length) {
+                    TaggedValuePointable tvp = tvps[argIndex];
+                    if (index < seqLength) {
+                        if (tvp.getTag() == ValueTag.SEQUENCE_TAG) {
+                            seqp.getEntry(index, result);
+                        } else {
+                            result.set(tvp);
+                        }
+                        ++index;
+                        return true;
+                    }
+                    ++argIndex;
+                    startArgument();
+                }
+                return false;
+            }
+
+            @Override
+            protected void init(TaggedValuePointable[] args) {
+                argIndex = 0;
+                startArgument();
+            }
+
+            private void startArgument() {
+                index = 0;
+                seqLength = 1;
+                if (argIndex < tvps.length && tvps[argIndex].getTag() == ValueTag.SEQUENCE_TAG) {
+                    tvps[argIndex].getValue(seqp);
+                    seqLength = seqp.getEntryCount();
+                }
+            }
+        };
+    }
+}
@@ -24,20 +24,17 @@ import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
-import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-import org.apache.vxquery.datamodel.accessors.TypedPointables;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
-import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
+import org.apache.vxquery.runtime.functions.util.AtomicValueHashSet;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 
 public class FnDistinctValuesScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
@@ -54,13 +51,9 @@ public class FnDistinctValuesScalarEvaluatorFactory extends AbstractTaggedValueA
         final SequenceBuilder sb = new SequenceBuilder();
         final SequencePointable seq = new SequencePointable();
         final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
-        final AbstractValueComparisonOperation aOp = new ValueEqComparisonOperation();
-        final TaggedValuePointable tvpDistinct = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
-        final TaggedValuePointable tvpCheck = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
-        final VoidPointable p = (VoidPointable) VoidPointable.FACTORY.createPointable();
+        final AtomicValueHashSet distinctValues = new AtomicValueHashSet(dCtx, true);
+        final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
         final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
-        final TypedPointables tp1 = new TypedPointables();
-        final TypedPointables tp2 = new TypedPointables();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
@@ -83,27 +76,20 @@ public class FnDistinctValuesScalarEvaluatorFactory extends AbstractTaggedValueA
                         tvp1.getValue(seq);
                         int seqLen = seq.getEntryCount();
 
-                        // Add remaining distinct item.
-                        boolean found = false;
-                        for (int j = 0; j < seqLen; ++j) {
-                            seq.getEntry(j, p);
-                            tvpDistinct.set(p.getByteArray(), p.getStartOffset(), p.getLength());
-
-                            // Check if item is distinct.
-                            if (j + 1 < seqLen) {
-                                for (int k = j + 1; k < seqLen; ++k) {
-                                    seq.getEntry(k, p);
-                                    tvpCheck.set(p.getByteArray(), p.getStartOffset(), p.getLength());
-                                    if (FunctionHelper.compareTaggedValues(aOp, tvpDistinct, tvpCheck, dCtx, tp1, tp2)) {
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                            }
+                        // Comparisons with xs:float promote to xs:float, so the hash has to as well.
+                        boolean floatNumerics = false;
+                        for (int j = 0; j < seqLen && !floatNumerics; ++j) {
+                            seq.getEntry(j, tvpItem);
+                            floatNumerics = FunctionHelper.getBaseTypeForComparisons(
+                                    tvpItem.getTag()) == ValueTag.XS_FLOAT_TAG;
+                        }
+                        distinctValues.reset(floatNumerics);
 
-                            // Add distinct item.
-                            if (!found) {
-                                sb.addItem(tvpDistinct);
+                        // Keep the first occurrence of each distinct item.
+                        for (int j = 0; j < seqLen; ++j) {
+                            seq.getEntry(j, tvpItem);
+                            if (distinctValues.add(tvpItem)) {
+                                sb.addItem(tvpItem);
                             }
                         }
                     } else {
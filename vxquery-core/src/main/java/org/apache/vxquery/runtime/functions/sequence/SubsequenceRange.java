@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.sequence;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDecimalPointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+
+/**
+ * The items selected by the starting location and length arguments of
+ * fn:subsequence, shared by its scalar and unnesting evaluators.
+ */
+public class SubsequenceRange {
+    private final DoublePointable doublep = (DoublePointable) DoublePointable.FACTORY.createPointable();
+    private final LongPointable longp = (LongPointable) LongPointable.FACTORY.createPointable();
+    private final XSDecimalPointable decp = (XSDecimalPointable) XSDecimalPointable.FACTORY.createPointable();
+    private long startingLoc;
+    private long endingLoc;
+
+    public void set(TaggedValuePointable[] args) throws SystemException {
+        // The items at the positions p where round(start) <= p < round(start) + round(length) in xs:double.
+        double start = getRoundedArgument(args[1]);
+        double end = Double.POSITIVE_INFINITY;
+        if (args.length > 2) {
+            end = start + getRoundedArgument(args[2]);
+        }
+        if (Double.isNaN(start) || Double.isNaN(end)) {
+            // No position compares true with NaN, which -INF + INF gives as well.
+            startingLoc = 1;
+            endingLoc = 1;
+            return;
+        }
+        startingLoc = Math.max(1, (long) start);
+        endingLoc = Math.max(startingLoc, (long) end);
+    }
+
+    /**
+     * @return the position of the first item, starting at 1
+     */
+    public long getStartingLoc() {
+        return startingLoc;
+    }
+
+    /**
+     * @return the position after the last item, starting at 1
+     */
+    public long getEndingLoc() {
+        return endingLoc;
+    }
+
+    /**
+     * @return the index of the first selected item of a sequence of the given length
+     */
+    public int getStartIndex(int seqLen) {
+        return (int) Math.min(seqLen, startingLoc - 1);
+    }
+
+    /**
+     * @return the index after the last selected item of a sequence of the given length
+     */
+    public int getEndIndex(int seqLen) {
+        return (int) Math.max(getStartIndex(seqLen), Math.min(seqLen, endingLoc - 1));
+    }
+
+    /**
+     * XQuery Specification calls for double value, rounded with fn:round. Integer and Decimal are allowed to cut
+     * down on casting.
+     *
+     * @param tvp
+     * @return the rounded value, NaN or an infinity
+     * @throws SystemException
+     */
+    private double getRoundedArgument(TaggedValuePointable tvp) throws SystemException {
+        double value;
+        if (tvp.getTag() == ValueTag.XS_DOUBLE_TAG) {
+            tvp.getValue(doublep);
+            value = doublep.doubleValue();
+        } else if (tvp.getTag() == ValueTag.XS_INTEGER_TAG) {
+            tvp.getValue(longp);
+            return longp.longValue();
+        } else if (tvp.getTag() == ValueTag.XS_DECIMAL_TAG) {
+            tvp.getValue(decp);
+            value = decp.doubleValue();
+        } else {
+            throw new SystemException(ErrorCode.FORG0006);
+        }
+        // Math.round rounds halves up, as fn:round does.
+        return Double.isNaN(value) || Double.isInfinite(value) ? value : Math.round(value);
+    }
+}
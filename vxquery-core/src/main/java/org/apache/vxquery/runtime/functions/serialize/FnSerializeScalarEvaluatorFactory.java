@@ -16,7 +16,6 @@ package org.apache.vxquery.runtime.functions.serialize;
 
 import java.io.DataOutput;
 import java.io.IOException;
-import java.io.PrintStream;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
@@ -24,7 +23,6 @@ import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
-import org.apache.hyracks.data.std.util.ByteArrayAccessibleOutputStream;
 import org.apache.hyracks.data.std.util.GrowableArray;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.builders.atomic.VXQueryUTF8StringBuilder;
@@ -47,8 +45,6 @@ public class FnSerializeScalarEvaluatorFactory extends AbstractTaggedValueArgume
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
         final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
-        final ByteArrayAccessibleOutputStream baaos = new ByteArrayAccessibleOutputStream();
-        final PrintStream ps = new PrintStream(baaos);
         final XMLSerializer printer = new XMLSerializer();
         final GrowableArray ga = new GrowableArray();
         final DataOutput out = abvs.getDataOutput();
@@ -58,15 +54,14 @@ public class FnSerializeScalarEvaluatorFactory extends AbstractTaggedValueArgume
 
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
-                baaos.reset();
                 TaggedValuePointable tvp = args[0];
                 abvs.reset();
                 try {
                     out.write(ValueTag.XS_STRING_TAG);
                     ga.reset();
                     sb.reset(ga, STRING_EXPECTED_LENGTH);
-                    printer.printTaggedValuePointable(ps, tvp);
-                    sb.appendUtf8Bytes(baaos.getByteArray(), 0, baaos.size());
+                    printer.serialize(tvp);
+                    sb.appendUtf8Bytes(printer.getByteArray(), 0, printer.getLength());
                     sb.finish();
                     out.write(ga.getByteArray(), 0, ga.getLength());
                 } catch (IOException e) {
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.util.Arrays;
+
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
+import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
+
+/**
+ * Open addressing hash set of atomic values using value equality (eq).
+ *
+ * The set only records where each value is stored (byte array, offset and length), so the bytes of added values
+ * must stay unchanged until the next reset. All arrays are reused between resets.
+ */
+public class AtomicValueHashSet {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final DynamicContext dCtx;
+    private final boolean nanEqualsNaN;
+    private final ValueHashHelper hashHelper = new ValueHashHelper();
+    private final AbstractValueComparisonOperation aOp = new ValueEqComparisonOperation();
+    private final TaggedValuePointable tvpEntry = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TypedPointables tp1 = new TypedPointables();
+    private final TypedPointables tp2 = new TypedPointables();
+
+    // Slot holds the entry index plus one, zero marks an empty slot.
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] families = new int[INITIAL_CAPACITY];
+    private byte[][] entryBytes = new byte[INITIAL_CAPACITY][];
+    private int[] entryStarts = new int[INITIAL_CAPACITY];
+    private int[] entryLengths = new int[INITIAL_CAPACITY];
+    private int size;
+    private boolean floatNumerics;
+
+    /**
+     * @param dCtx
+     *            dynamic context used for implicit timezones
+     * @param nanEqualsNaN
+     *            treat NaN as equal to itself (as fn:distinct-values does) instead of following eq
+     */
+    public AtomicValueHashSet(DynamicContext dCtx, boolean nanEqualsNaN) {
+        this.dCtx = dCtx;
+        this.nanEqualsNaN = nanEqualsNaN;
+    }
+
+    /**
+     * Empty the set.
+     *
+     * @param floatNumerics
+     *            must be set if any xs:float value may be added or probed
+     */
+    public void reset(boolean floatNumerics) {
+        if (size > 0) {
+            Arrays.fill(slots, 0);
+            Arrays.fill(entryBytes, 0, size, null);
+        }
+        size = 0;
+        this.floatNumerics = floatNumerics;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a value unless an equal value is already in the set.
+     *
+     * @return true if the value was added
+     */
+    public boolean add(TaggedValuePointable tvp) throws SystemException {
+        int family = ValueHashHelper.getHashFamily(tvp.getTag());
+        int hash = hashHelper.hash(tvp, dCtx, floatNumerics);
+        int slot = find(tvp, family, hash);
+        if (slots[slot] != 0) {
+            return false;
+        }
+        if (size == hashes.length) {
+            grow();
+            slot = find(tvp, family, hash);
+        }
+        hashes[size] = hash;
+        families[size] = family;
+        entryBytes[size] = tvp.getByteArray();
+        entryStarts[size] = tvp.getStartOffset();
+        entryLengths[size] = tvp.getLength();
+        slots[slot] = ++size;
+        return true;
+    }
+
+    public boolean contains(TaggedValuePointable tvp) throws SystemException {
+        int family = ValueHashHelper.getHashFamily(tvp.getTag());
+        return slots[find(tvp, family, hashHelper.hash(tvp, dCtx, floatNumerics))] != 0;
+    }
+
+    /**
+     * Linear probing for the slot holding an equal value or, if there is none, the empty slot ending the probe.
+     */
+    private int find(TaggedValuePointable tvp, int family, int hash) throws SystemException {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int entry = slots[slot] - 1;
+            if (hashes[entry] == hash && families[entry] == family) {
+                tvpEntry.set(entryBytes[entry], entryStarts[entry], entryLengths[entry]);
+                if (isEqual(tvpEntry, tvp)) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean isEqual(TaggedValuePointable tvp1, TaggedValuePointable tvp2) throws SystemException {
+        if (FunctionHelper.getBaseTypeForComparisons(tvp1.getTag()) == ValueTag.XS_INTEGER_TAG
+                && FunctionHelper.getBaseTypeForComparisons(tvp2.getTag()) == ValueTag.XS_INTEGER_TAG) {
+            // compareTaggedValues reads every integer as a long, the derived types may be stored in fewer bytes.
+            return ValueHashHelper.getLong(tvp1, tp1) == ValueHashHelper.getLong(tvp2, tp2);
+        }
+        if (FunctionHelper.compareTaggedValues(aOp, tvp1, tvp2, dCtx, tp1, tp2)) {
+            return true;
+        }
+        return nanEqualsNaN && isNaN(tvp1, tp1) && isNaN(tvp2, tp2);
+    }
+
+    private static boolean isNaN(TaggedValuePointable tvp, TypedPointables tp) {
+        switch (tvp.getTag()) {
+            case ValueTag.XS_FLOAT_TAG:
+                tvp.getValue(tp.floatp);
+                return Float.isNaN(tp.floatp.getFloat());
+            case ValueTag.XS_DOUBLE_TAG:
+                tvp.getValue(tp.doublep);
+                return Double.isNaN(tp.doublep.getDouble());
+            default:
+                return false;
+        }
+    }
+
+    private void grow() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        families = Arrays.copyOf(families, capacity);
+        entryBytes = Arrays.copyOf(entryBytes, capacity);
+        entryStarts = Arrays.copyOf(entryStarts, capacity);
+        entryLengths = Arrays.copyOf(entryLengths, capacity);
+        // Keep the load factor at or below one half.
+        slots = new int[capacity * 2];
+        int mask = slots.length - 1;
+        for (int entry = 0; entry < size; ++entry) {
+            int slot = hashes[entry] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+}
@@ -101,6 +101,14 @@ public class AtomizeHelper {
                 tempTVP.getValue(enp);
                 if (enp.childrenChunkExists()) {
                     enp.getChildrenSequence(ntp, sp);
+                    if (sp.getEntryCount() == 1) {
+                        // A typed value stored by the collection scan.
+                        sp.getEntry(0, tempTVP);
+                        if (!ValueTag.isNode(tempTVP.getTag())) {
+                            result.set(tempTVP);
+                            break;
+                        }
+                    }
                     buildStringConcatenation(sp, pp, tempABVS, ntp);
                     result.set(tempABVS.getByteArray(), tempABVS.getStartOffset(), tempABVS.getLength());
                 }
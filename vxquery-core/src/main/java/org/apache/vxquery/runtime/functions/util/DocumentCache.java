@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.api.IValueReference;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+
+/**
+ * Node controller wide cache of parsed documents for fn:doc and jn:doc.
+ *
+ * Documents are keyed on the parser kind, the canonical path, the last modified time and the length of the file, so
+ * a changed file is parsed again. The cache holds the parsed bytes up to a total size given by the system property
+ * vxquery.doc_cache_size (in bytes, zero disables the cache) and evicts the least recently used documents first.
+ * Only local files are cached.
+ */
+public class DocumentCache {
+    private static final Logger LOGGER = Logger.getLogger(DocumentCache.class.getName());
+    private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+    private static final Map<String, DocumentCache> INSTANCES = new HashMap<>();
+
+    private final long maxSize;
+    private final LinkedHashMap<DocumentKey, byte[]> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public DocumentCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param nodeId
+     *            the node controller id
+     * @return the document cache of the node controller
+     */
+    public static synchronized DocumentCache getInstance(String nodeId) {
+        DocumentCache cache = INSTANCES.get(nodeId);
+        if (cache == null) {
+            cache = new DocumentCache(Long.getLong("vxquery.doc_cache_size", DEFAULT_CACHE_SIZE));
+            INSTANCES.put(nodeId, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Get the cache key for a document.
+     *
+     * @param fName
+     *            the file name passed to the doc function
+     * @param kind
+     *            separates the output of different parsers for the same file
+     * @return the key or null if the document can not be cached
+     * @throws IOException
+     *             if the local file does not exist
+     */
+    public DocumentKey getKey(String fName, String kind) throws IOException {
+        if (maxSize <= 0 || fName.contains("hdfs:/")) {
+            return null;
+        }
+        File file = new File(fName);
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        return new DocumentKey(kind, file.getCanonicalPath(), file.lastModified(), file.length());
+    }
+
+    /**
+     * Point the result at the cached document.
+     *
+     * @return true if the document was found in the cache
+     */
+    public synchronized boolean get(DocumentKey key, IPointable result) {
+        byte[] bytes = documents.get(key);
+        if (bytes == null) {
+            ++misses;
+            return false;
+        }
+        ++hits;
+        result.set(bytes, 0, bytes.length);
+        return true;
+    }
+
+    /**
+     * Copy a cached node tree into the storage and give it a new tree id. The cached bytes keep the id of the job
+     * that parsed them, which later jobs may hand out to other trees.
+     *
+     * @return true if the document was found in the cache
+     */
+    public boolean get(DocumentKey key, ArrayBackedValueStorage abvs, ITreeNodeIdProvider nodeIdProvider)
+            throws IOException {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = documents.get(key);
+            if (bytes == null) {
+                ++misses;
+                return false;
+            }
+            ++hits;
+        }
+        abvs.reset();
+        abvs.getDataOutput().write(bytes, 0, bytes.length);
+        if (bytes[0] == ValueTag.NODE_TREE_TAG) {
+            NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+            ntp.set(abvs.getByteArray(), abvs.getStartOffset() + 1, abvs.getLength() - 1);
+            if (ntp.nodeIdExists()) {
+                ntp.setRootNodeId(nodeIdProvider.getId());
+            }
+        }
+        return true;
+    }
+
+    public synchronized void put(DocumentKey key, IValueReference value) {
+        int length = value.getLength();
+        if (length > maxSize || documents.containsKey(key)) {
+            return;
+        }
+        byte[] bytes = new byte[length];
+        System.arraycopy(value.getByteArray(), value.getStartOffset(), bytes, 0, length);
+        documents.put(key, bytes);
+        size += length;
+        Iterator<byte[]> lru = documents.values().iterator();
+        while (size > maxSize) {
+            size -= lru.next().length;
+            lru.remove();
+            ++evictions;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Cached document " + key.path + " (" + length + " bytes). " + this);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        documents.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DocumentCache [documents=" + documents.size() + ", size=" + size + ", hits=" + hits + ", misses="
+                + misses + ", evictions=" + evictions + "]";
+    }
+
+    public static final class DocumentKey {
+        private final String kind;
+        private final String path;
+        private final long lastModified;
+        private final long length;
+
+        DocumentKey(String kind, String path, long lastModified, long length) {
+            this.kind = kind;
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + kind.hashCode();
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            return 31 * result + (int) (length ^ (length >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DocumentKey)) {
+                return false;
+            }
+            DocumentKey other = (DocumentKey) obj;
+            return lastModified == other.lastModified && length == other.length && path.equals(other.path)
+                    && kind.equals(other.kind);
+        }
+    }
+}
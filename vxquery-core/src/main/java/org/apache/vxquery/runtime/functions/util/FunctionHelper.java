@@ -22,8 +22,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.List;
 
 import org.apache.hadoop.fs.FileSystem;
@@ -1115,6 +1113,16 @@ public class FunctionHelper {
         return localNodeId;
     }
 
+    /**
+     * Nodes without node ids, such as constructed nodes, can only be told apart by where their bytes are.
+     *
+     * @return true if both pointables cover the same bytes
+     */
+    public static boolean isSameItem(IPointable p1, IPointable p2) {
+        return p1.getByteArray() == p2.getByteArray() && p1.getStartOffset() == p2.getStartOffset()
+                && p1.getLength() == p2.getLength();
+    }
+
     /**
      * Returns the number of digits in a long. A few special cases that needed attention.
      *
@@ -1229,12 +1237,10 @@ public class FunctionHelper {
     }
 
     public static void readInDocFromString(String fName, ArrayBackedValueStorage abvs, IParser parser) throws IOException {
-        Reader input;
         if (!fName.contains("hdfs:/")) {
             File file = new File(fName);
             if (file.exists()) {
-                input = new InputStreamReader(new FileInputStream(file));
-                parser.parse(input, abvs);
+                parser.parse(new FileInputStream(file), abvs);
             } else {
                 throw new FileNotFoundException(file.getAbsolutePath());
             }
@@ -1247,8 +1253,7 @@ public class FunctionHelper {
                 Path xmlDocument = new Path(fHdfsName);
                 if (fs.exists(xmlDocument)) {
                     InputStream in = fs.open(xmlDocument).getWrappedStream();
-                    input = new InputStreamReader(in);
-                    parser.parse(input, abvs);
+                    parser.parse(in, abvs);
                     in.close();
                 } else {
                     throw new FileNotFoundException(xmlDocument.getName());
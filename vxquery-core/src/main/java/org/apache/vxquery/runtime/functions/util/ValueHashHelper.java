@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDateTimePointable;
+import org.apache.vxquery.datamodel.api.ITimezone;
+import org.apache.vxquery.datamodel.util.DateTime;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+
+/**
+ * Hash codes for atomic values that agree with value equality (eq).
+ *
+ * Values that are equal after type promotion get the same hash code: numerics are hashed on their promoted
+ * double (or float) value, all string types on their UTF-8 bytes, and date/time values after normalization to UTC.
+ * Values of different hash families are never comparable and may share a hash code.
+ */
+public class ValueHashHelper {
+    private final TypedPointables tp = new TypedPointables();
+    private final ArrayBackedValueStorage abvsInner = new ArrayBackedValueStorage();
+    private final XSDateTimePointable ctxDatetimep = (XSDateTimePointable) XSDateTimePointable.FACTORY
+            .createPointable();
+
+    /**
+     * Group the comparison base types into families of mutually comparable types.
+     *
+     * @param tag
+     *            value tag of an atomic value
+     * @return the representative tag of the family
+     * @throws SystemException
+     */
+    public static int getHashFamily(int tag) throws SystemException {
+        int tid = FunctionHelper.getBaseTypeForComparisons(tag);
+        switch (tid) {
+            case ValueTag.XS_DECIMAL_TAG:
+            case ValueTag.XS_INTEGER_TAG:
+            case ValueTag.XS_FLOAT_TAG:
+            case ValueTag.XS_DOUBLE_TAG:
+                return ValueTag.XS_DOUBLE_TAG;
+
+            case ValueTag.XS_STRING_TAG:
+            case ValueTag.XS_NORMALIZED_STRING_TAG:
+            case ValueTag.XS_TOKEN_TAG:
+            case ValueTag.XS_LANGUAGE_TAG:
+            case ValueTag.XS_NMTOKEN_TAG:
+            case ValueTag.XS_NAME_TAG:
+            case ValueTag.XS_NCNAME_TAG:
+            case ValueTag.XS_ID_TAG:
+            case ValueTag.XS_IDREF_TAG:
+            case ValueTag.XS_ENTITY_TAG:
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+            case ValueTag.XS_ANY_URI_TAG:
+                return ValueTag.XS_STRING_TAG;
+
+            case ValueTag.XS_DURATION_TAG:
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                return ValueTag.XS_DURATION_TAG;
+
+            default:
+                return tid;
+        }
+    }
+
+    /**
+     * Hash an atomic value.
+     *
+     * @param tvp
+     *            the atomic value
+     * @param dCtx
+     *            supplies the implicit timezone for date and time values without one
+     * @param floatNumerics
+     *            hash numerics on their xs:float value. Required whenever the value may be compared with an
+     *            xs:float, since eq then promotes the other operand to xs:float.
+     * @return the hash code
+     * @throws SystemException
+     */
+    public int hash(TaggedValuePointable tvp, DynamicContext dCtx, boolean floatNumerics) throws SystemException {
+        int tid = FunctionHelper.getBaseTypeForComparisons(tvp.getTag());
+        try {
+            switch (tid) {
+                case ValueTag.XS_DECIMAL_TAG:
+                    tvp.getValue(tp.decp);
+                    return floatNumerics ? hashFloat(tp.decp.floatValue()) : hashDouble(tp.decp.doubleValue());
+
+                case ValueTag.XS_INTEGER_TAG:
+                    long value = getLong(tvp, tp);
+                    return floatNumerics ? hashFloat(value) : hashDouble(value);
+
+                case ValueTag.XS_FLOAT_TAG:
+                    tvp.getValue(tp.floatp);
+                    return floatNumerics ? hashFloat(tp.floatp.getFloat()) : hashDouble(tp.floatp.doubleValue());
+
+                case ValueTag.XS_DOUBLE_TAG:
+                    tvp.getValue(tp.doublep);
+                    return floatNumerics ? hashFloat(tp.doublep.floatValue()) : hashDouble(tp.doublep.getDouble());
+
+                case ValueTag.XS_BOOLEAN_TAG:
+                    tvp.getValue(tp.boolp);
+                    return tp.boolp.getBoolean() ? 1231 : 1237;
+
+                case ValueTag.XS_STRING_TAG:
+                case ValueTag.XS_NORMALIZED_STRING_TAG:
+                case ValueTag.XS_TOKEN_TAG:
+                case ValueTag.XS_LANGUAGE_TAG:
+                case ValueTag.XS_NMTOKEN_TAG:
+                case ValueTag.XS_NAME_TAG:
+                case ValueTag.XS_NCNAME_TAG:
+                case ValueTag.XS_ID_TAG:
+                case ValueTag.XS_IDREF_TAG:
+                case ValueTag.XS_ENTITY_TAG:
+                case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+                case ValueTag.XS_ANY_URI_TAG:
+                case ValueTag.XS_NOTATION_TAG:
+                    tvp.getValue(tp.utf8sp);
+                    return hashBytes(tp.utf8sp.getByteArray(), tp.utf8sp.getCharStartOffset(),
+                            tp.utf8sp.getUTF8Length(), 0);
+
+                case ValueTag.XS_DATE_TAG:
+                case ValueTag.XS_G_DAY_TAG:
+                case ValueTag.XS_G_MONTH_DAY_TAG:
+                case ValueTag.XS_G_MONTH_TAG:
+                case ValueTag.XS_G_YEAR_MONTH_TAG:
+                case ValueTag.XS_G_YEAR_TAG:
+                    tvp.getValue(tp.datep);
+                    return hashUtcDateTime(tp.datep, dCtx, false);
+
+                case ValueTag.XS_DATETIME_TAG:
+                    tvp.getValue(tp.datetimep);
+                    return hashUtcDateTime(tp.datetimep, dCtx, true);
+
+                case ValueTag.XS_TIME_TAG:
+                    tvp.getValue(tp.timep);
+                    return hashUtcDateTime(tp.timep, dCtx, true);
+
+                case ValueTag.XS_DURATION_TAG:
+                    tvp.getValue(tp.durationp);
+                    return hashLong(tp.durationp.getDayTime(), tp.durationp.getYearMonth());
+
+                case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                    tvp.getValue(tp.longp);
+                    return hashLong(tp.longp.getLong(), 0);
+
+                case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                    tvp.getValue(tp.intp);
+                    return hashLong(0, tp.intp.getInteger());
+
+                case ValueTag.XS_QNAME_TAG:
+                    // Only the URI and the local name take part in the comparison.
+                    tvp.getValue(tp.qnamep);
+                    int h = hashBytes(tp.qnamep.getByteArray(), tp.qnamep.getStartOffset(),
+                            tp.qnamep.getUriLength(), 0);
+                    return hashBytes(tp.qnamep.getByteArray(),
+                            tp.qnamep.getStartOffset() + tp.qnamep.getUriLength() + tp.qnamep.getPrefixLength(),
+                            tp.qnamep.getLocalNameLength(), h);
+
+                case ValueTag.JS_NULL_TAG:
+                    return 0;
+
+                default:
+                    return hashBytes(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength(), 0);
+            }
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    /**
+     * Types derived from xs:integer may be stored in fewer bytes than a long.
+     */
+    static long getLong(TaggedValuePointable tvp, TypedPointables tp) {
+        switch (tvp.getTag()) {
+            case ValueTag.XS_INT_TAG:
+            case ValueTag.XS_UNSIGNED_SHORT_TAG:
+                tvp.getValue(tp.intp);
+                return tp.intp.getInteger();
+            case ValueTag.XS_SHORT_TAG:
+            case ValueTag.XS_UNSIGNED_BYTE_TAG:
+                tvp.getValue(tp.shortp);
+                return tp.shortp.getShort();
+            case ValueTag.XS_BYTE_TAG:
+                tvp.getValue(tp.bytep);
+                return tp.bytep.getByte();
+            default:
+                tvp.getValue(tp.longp);
+                return tp.longp.getLong();
+        }
+    }
+
+    private int hashUtcDateTime(ITimezone timezonep, DynamicContext dCtx, boolean withDayTime) throws IOException {
+        abvsInner.reset();
+        dCtx.getCurrentDateTime(ctxDatetimep);
+        DateTime.getUtcTimezoneDateTime(timezonep, ctxDatetimep, abvsInner.getDataOutput());
+        int startOffset = abvsInner.getStartOffset() + 1;
+        long yearMonth = XSDateTimePointable.getYearMonth(abvsInner.getByteArray(), startOffset);
+        long dayTime = withDayTime ? XSDateTimePointable.getDayTime(abvsInner.getByteArray(), startOffset)
+                : XSDateTimePointable.getDay(abvsInner.getByteArray(), startOffset);
+        return hashLong(dayTime, yearMonth);
+    }
+
+    public static int hashDouble(double value) {
+        // Fold -0.0 into 0.0; doubleToLongBits already canonicalizes NaN.
+        long bits = Double.doubleToLongBits(value == 0 ? 0.0d : value);
+        return hashLong(bits, 0);
+    }
+
+    public static int hashFloat(float value) {
+        int bits = Float.floatToIntBits(value == 0 ? 0.0f : value);
+        return mix(bits);
+    }
+
+    public static int hashLong(long value, long seed) {
+        long v = value ^ (seed * 0x9E3779B97F4A7C15L);
+        return mix((int) (v ^ (v >>> 32)));
+    }
+
+    public static int hashBytes(byte[] bytes, int start, int length, int seed) {
+        int h = seed;
+        for (int i = 0; i < length; ++i) {
+            h = 31 * h + bytes[start + i];
+        }
+        return mix(h);
+    }
+
+    /**
+     * The 32 bit finalizer of MurmurHash3, spreads the bits for power of two tables.
+     */
+    public static int mix(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -19,6 +19,8 @@ package org.apache.vxquery.serializer;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hyracks.algebricks.data.IPrinter;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
@@ -30,10 +32,8 @@ import org.apache.hyracks.data.std.primitive.IntegerPointable;
 import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.primitive.ShortPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
-import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
-import org.apache.vxquery.datamodel.accessors.PointablePool;
-import org.apache.vxquery.datamodel.accessors.PointablePoolFactory;
+import org.apache.hyracks.util.string.UTF8StringUtil;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.accessors.atomic.CodedQNamePointable;
@@ -56,104 +56,203 @@ import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.cast.CastToStringOperation;
 
+/**
+ * Serializes tagged values as XML, or as one JSON value per line.
+ * <p>
+ * The output is written as UTF-8 bytes into a buffer that is reused across values and handed to the output stream
+ * with a single write. Strings are escaped on their bytes, and integers and integral doubles are written without
+ * going through a string.
+ */
 public class XMLSerializer implements IPrinter {
-    private final PointablePool pp;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final byte[][] XML_ESCAPES = new byte[128][];
+
+    private static final byte[][] JSON_ESCAPES = new byte[128][];
+
+    static {
+        XML_ESCAPES['<'] = ascii("&lt;");
+        XML_ESCAPES['>'] = ascii("&gt;");
+        XML_ESCAPES['&'] = ascii("&amp;");
+        XML_ESCAPES['"'] = ascii("&quot;");
+        XML_ESCAPES['\''] = ascii("&apos;");
+
+        for (int c = 0; c < 0x20; ++c) {
+            JSON_ESCAPES[c] = ascii(String.format("\\u%04x", c));
+        }
+        JSON_ESCAPES['\b'] = ascii("\\b");
+        JSON_ESCAPES['\f'] = ascii("\\f");
+        JSON_ESCAPES['\n'] = ascii("\\n");
+        JSON_ESCAPES['\r'] = ascii("\\r");
+        JSON_ESCAPES['\t'] = ascii("\\t");
+        JSON_ESCAPES['"'] = ascii("\\\"");
+        JSON_ESCAPES['\\'] = ascii("\\\\");
+    }
+
+    private final boolean jsonLines;
+
+    private final NodeTreePointable treePointable = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
 
     private NodeTreePointable ntp;
 
-    private ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
-    private DataOutput dOut = abvs.getDataOutput();
-    private CastToStringOperation castToString = new CastToStringOperation();
+    // Pointables of the values that hold other values, one set for each level of nesting.
+    private final List<Level> levels = new ArrayList<>();
+
+    private int depth;
+
+    // Pointables of atomic values. They are never in use across a nested value.
+    private final TaggedValuePointable rootTVP = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final UTF8StringPointable utf8sp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final BooleanPointable bp = (BooleanPointable) BooleanPointable.FACTORY.createPointable();
+    private final BytePointable bytep = (BytePointable) BytePointable.FACTORY.createPointable();
+    private final ShortPointable sp = (ShortPointable) ShortPointable.FACTORY.createPointable();
+    private final IntegerPointable ip = (IntegerPointable) IntegerPointable.FACTORY.createPointable();
+    private final LongPointable lp = (LongPointable) LongPointable.FACTORY.createPointable();
+    private final FloatPointable fp = (FloatPointable) FloatPointable.FACTORY.createPointable();
+    private final DoublePointable dp = (DoublePointable) DoublePointable.FACTORY.createPointable();
+    private final XSDecimalPointable decp = (XSDecimalPointable) XSDecimalPointable.FACTORY.createPointable();
+    private final XSBinaryPointable binp = (XSBinaryPointable) XSBinaryPointable.FACTORY.createPointable();
+    private final XSDatePointable datep = (XSDatePointable) XSDatePointable.FACTORY.createPointable();
+    private final XSDateTimePointable datetimep = (XSDateTimePointable) XSDateTimePointable.FACTORY
+            .createPointable();
+    private final XSDurationPointable durationp = (XSDurationPointable) XSDurationPointable.FACTORY
+            .createPointable();
+    private final XSQNamePointable qnamep = (XSQNamePointable) XSQNamePointable.FACTORY.createPointable();
+    private final XSTimePointable timep = (XSTimePointable) XSTimePointable.FACTORY.createPointable();
+
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final DataOutput dOut = abvs.getDataOutput();
+    private final CastToStringOperation castToString = new CastToStringOperation();
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private int length;
 
     public XMLSerializer() {
-        pp = PointablePoolFactory.INSTANCE.createPointablePool();
+        this(false);
+    }
+
+    /**
+     * @param jsonLines
+     *            print each item as a JSON value on its own line instead of as XML
+     */
+    public XMLSerializer(boolean jsonLines) {
+        this.jsonLines = jsonLines;
     }
 
     @Override
     public void print(byte[] b, int s, int l, PrintStream ps) {
-        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
-        try {
-            tvp.set(b, s, l);
-            printTaggedValuePointable(ps, tvp);
-        } finally {
-            pp.giveBack(tvp);
+        rootTVP.set(b, s, l);
+        length = 0;
+        if (jsonLines) {
+            printJsonLines(rootTVP);
+        } else {
+            printTaggedValuePointable(rootTVP);
         }
+        ps.write(buffer, 0, length);
     }
 
     public void printTaggedValuePointable(PrintStream ps, TaggedValuePointable tvp) {
+        serialize(tvp);
+        ps.write(buffer, 0, length);
+    }
+
+    /**
+     * Serialize a value into the buffer of this serializer.
+     *
+     * @see #getByteArray()
+     * @see #getLength()
+     */
+    public void serialize(TaggedValuePointable tvp) {
+        length = 0;
+        printTaggedValuePointable(tvp);
+    }
+
+    /**
+     * @return the UTF-8 bytes of the last serialized value, from offset 0
+     */
+    public byte[] getByteArray() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    private void printTaggedValuePointable(TaggedValuePointable tvp) {
         byte tag = tvp.getTag();
         switch ((int) tag) {
             case ValueTag.XS_ANY_URI_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_BASE64_BINARY_TAG:
-                printBase64Binary(ps, tvp);
+                printBase64Binary(tvp);
                 break;
 
             case ValueTag.XS_BOOLEAN_TAG:
-                printBoolean(ps, tvp);
+                printBoolean(tvp);
                 break;
 
             case ValueTag.XS_DATE_TAG:
-                printDate(ps, tvp);
+                printDate(tvp);
                 break;
 
             case ValueTag.XS_DATETIME_TAG:
-                printDateTime(ps, tvp);
+                printDateTime(tvp);
                 break;
 
             case ValueTag.XS_DAY_TIME_DURATION_TAG:
-                printDTDuration(ps, tvp);
+                printDTDuration(tvp);
                 break;
 
             case ValueTag.XS_BYTE_TAG:
-                printByte(ps, tvp);
+                printByte(tvp);
                 break;
 
             case ValueTag.XS_DECIMAL_TAG:
-                printDecimal(ps, tvp);
+                printDecimal(tvp);
                 break;
 
             case ValueTag.XS_DOUBLE_TAG:
-                printDouble(ps, tvp);
+                printDouble(tvp);
                 break;
 
             case ValueTag.XS_DURATION_TAG:
-                printDuration(ps, tvp);
+                printDuration(tvp);
                 break;
 
             case ValueTag.XS_FLOAT_TAG:
-                printFloat(ps, tvp);
+                printFloat(tvp);
                 break;
 
             case ValueTag.XS_G_DAY_TAG:
-                printGDay(ps, tvp);
+                printGDay(tvp);
                 break;
 
             case ValueTag.XS_G_MONTH_TAG:
-                printGMonth(ps, tvp);
+                printGMonth(tvp);
                 break;
 
             case ValueTag.XS_G_MONTH_DAY_TAG:
-                printGMonthDay(ps, tvp);
+                printGMonthDay(tvp);
                 break;
 
             case ValueTag.XS_G_YEAR_TAG:
-                printGYear(ps, tvp);
+                printGYear(tvp);
                 break;
 
             case ValueTag.XS_G_YEAR_MONTH_TAG:
-                printGYearMonth(ps, tvp);
+                printGYearMonth(tvp);
                 break;
 
             case ValueTag.XS_HEX_BINARY_TAG:
-                printHexBinary(ps, tvp);
+                printHexBinary(tvp);
                 break;
 
             case ValueTag.XS_INT_TAG:
             case ValueTag.XS_UNSIGNED_SHORT_TAG:
-                printInt(ps, tvp);
+                printInt(tvp);
                 break;
 
             case ValueTag.XS_INTEGER_TAG:
@@ -164,20 +263,20 @@ public class XMLSerializer implements IPrinter {
             case ValueTag.XS_POSITIVE_INTEGER_TAG:
             case ValueTag.XS_UNSIGNED_INT_TAG:
             case ValueTag.XS_UNSIGNED_LONG_TAG:
-                printInteger(ps, tvp);
+                printInteger(tvp);
                 break;
 
             case ValueTag.XS_NOTATION_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_QNAME_TAG:
-                printQName(ps, tvp);
+                printQName(tvp);
                 break;
 
             case ValueTag.XS_SHORT_TAG:
             case ValueTag.XS_UNSIGNED_BYTE_TAG:
-                printShort(ps, tvp);
+                printShort(tvp);
                 break;
 
             case ValueTag.XS_STRING_TAG:
@@ -190,268 +289,243 @@ public class XMLSerializer implements IPrinter {
             case ValueTag.XS_ID_TAG:
             case ValueTag.XS_IDREF_TAG:
             case ValueTag.XS_ENTITY_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_TIME_TAG:
-                printTime(ps, tvp);
+                printTime(tvp);
                 break;
 
             case ValueTag.XS_UNTYPED_ATOMIC_TAG:
-                printString(ps, tvp);
+                printString(tvp);
                 break;
 
             case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
-                printYMDuration(ps, tvp);
+                printYMDuration(tvp);
                 break;
 
             case ValueTag.SEQUENCE_TAG:
-                printSequence(ps, tvp);
+                printSequence(tvp);
                 break;
 
             case ValueTag.NODE_TREE_TAG:
-                printNodeTree(ps, tvp);
+                printNodeTree(tvp);
                 break;
 
             case ValueTag.DOCUMENT_NODE_TAG:
-                printDocumentNode(ps, tvp);
+                printDocumentNode(tvp);
                 break;
 
             case ValueTag.ELEMENT_NODE_TAG:
-                printElementNode(ps, tvp);
+                printElementNode(tvp);
                 break;
 
             case ValueTag.ARRAY_TAG:
-                printArray(ps, tvp);
+                printArray(tvp);
                 break;
 
             case ValueTag.ATTRIBUTE_NODE_TAG:
-                printAttributeNode(ps, tvp);
+                printAttributeNode(tvp);
                 break;
 
             case ValueTag.TEXT_NODE_TAG:
-                printTextNode(ps, tvp);
+                printTextNode(tvp);
                 break;
 
             case ValueTag.COMMENT_NODE_TAG:
-                printCommentNode(ps, tvp);
+                printCommentNode(tvp);
                 break;
 
             case ValueTag.PI_NODE_TAG:
-                printPINode(ps, tvp);
+                printPINode(tvp);
                 break;
 
             case ValueTag.OBJECT_TAG:
-                printObject(ps, tvp);
+                printObject(tvp);
                 break;
 
             case ValueTag.JS_NULL_TAG:
-                printNull(ps, tvp);
+                printNull(tvp);
                 break;
             default:
                 throw new UnsupportedOperationException("Encountered tag: " + tvp.getTag());
         }
     }
 
-    private void printNull(PrintStream ps, TaggedValuePointable tvp) {
-        ps.append("null");
+    private void printNull(TaggedValuePointable tvp) {
+        writeAscii("null");
     }
 
-    private void printDecimal(PrintStream ps, TaggedValuePointable tvp) {
-        XSDecimalPointable dp = pp.takeOne(XSDecimalPointable.class);
+    private void printDecimal(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(decp);
             abvs.reset();
-            castToString.convertDecimal(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertDecimal(decp, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printNodeTree(PrintStream ps, TaggedValuePointable tvp) {
+    private void printNodeTree(TaggedValuePointable tvp) {
         if (ntp != null) {
             throw new IllegalStateException("Nested NodeTreePointable found");
         }
-        ntp = pp.takeOne(NodeTreePointable.class);
-        TaggedValuePointable rootTVP = pp.takeOne(TaggedValuePointable.class);
+        Level level = enter();
         try {
+            ntp = treePointable;
             tvp.getValue(ntp);
-            ntp.getRootNode(rootTVP);
-            printTaggedValuePointable(ps, rootTVP);
+            ntp.getRootNode(level.tvp);
+            printTaggedValuePointable(level.tvp);
         } finally {
-            pp.giveBack(rootTVP);
-            pp.giveBack(ntp);
             ntp = null;
+            exit();
         }
     }
 
-    private void printPINode(PrintStream ps, TaggedValuePointable tvp) {
-        PINodePointable pnp = pp.takeOne(PINodePointable.class);
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
+    private void printPINode(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            tvp.getValue(pnp);
-            ps.append("<?");
-            pnp.getTarget(ntp, utf8sp);
-            printString(ps, utf8sp);
-            ps.append(' ');
-            pnp.getContent(ntp, utf8sp);
-            printString(ps, utf8sp);
-            ps.append("?>");
+            tvp.getValue(level.pinp);
+            writeAscii("<?");
+            level.pinp.getTarget(ntp, level.utf8sp);
+            printString(level.utf8sp);
+            writeByte(' ');
+            level.pinp.getContent(ntp, level.utf8sp);
+            printString(level.utf8sp);
+            writeAscii("?>");
         } finally {
-            pp.giveBack(pnp);
-            pp.giveBack(utf8sp);
+            exit();
         }
     }
 
-    private void printCommentNode(PrintStream ps, TaggedValuePointable tvp) {
-        TextOrCommentNodePointable tcnp = pp.takeOne(TextOrCommentNodePointable.class);
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
+    private void printCommentNode(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            tvp.getValue(tcnp);
-            tcnp.getValue(ntp, utf8sp);
-            ps.append("<!--");
-            printString(ps, utf8sp);
-            ps.append("-->");
+            tvp.getValue(level.tcnp);
+            level.tcnp.getValue(ntp, level.utf8sp);
+            writeAscii("<!--");
+            printString(level.utf8sp);
+            writeAscii("-->");
         } finally {
-            pp.giveBack(tcnp);
-            pp.giveBack(utf8sp);
+            exit();
         }
     }
 
-    private void printTextNode(PrintStream ps, TaggedValuePointable tvp) {
-        TextOrCommentNodePointable tcnp = pp.takeOne(TextOrCommentNodePointable.class);
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
+    private void printTextNode(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            tvp.getValue(tcnp);
-            tcnp.getValue(ntp, utf8sp);
-            printString(ps, utf8sp);
+            tvp.getValue(level.tcnp);
+            level.tcnp.getValue(ntp, level.utf8sp);
+            printString(level.utf8sp);
         } finally {
-            pp.giveBack(tcnp);
-            pp.giveBack(utf8sp);
+            exit();
         }
     }
 
-    private void printAttributeNode(PrintStream ps, TaggedValuePointable tvp) {
-        AttributeNodePointable anp = pp.takeOne(AttributeNodePointable.class);
-        CodedQNamePointable cqp = pp.takeOne(CodedQNamePointable.class);
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
-        TaggedValuePointable valueTVP = pp.takeOne(TaggedValuePointable.class);
+    private void printAttributeNode(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            tvp.getValue(anp);
-            anp.getName(cqp);
-            printPrefixedQName(ps, cqp, utf8sp);
-            ps.append("=\"");
-            anp.getValue(ntp, valueTVP);
-            printTaggedValuePointable(ps, valueTVP);
-            ps.append('"');
+            tvp.getValue(level.anp);
+            level.anp.getName(level.cqp);
+            printPrefixedQName(level.cqp, level.utf8sp);
+            writeAscii("=\"");
+            level.anp.getValue(ntp, level.tvp);
+            printTaggedValuePointable(level.tvp);
+            writeByte('"');
         } finally {
-            pp.giveBack(valueTVP);
-            pp.giveBack(utf8sp);
-            pp.giveBack(anp);
-            pp.giveBack(cqp);
+            exit();
         }
     }
 
-    private void printObject(PrintStream ps, TaggedValuePointable tvp) {
-        ObjectPointable op = pp.takeOne(ObjectPointable.class);
-        TaggedValuePointable keys = pp.takeOne(TaggedValuePointable.class);
-        ArrayBackedValueStorage mvs = new ArrayBackedValueStorage();
-
-        tvp.getValue(op);
+    private void printObject(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            op.getKeys(mvs);
-            keys.set(mvs);
-            ps.append('{');
-            if (keys.getTag() == ValueTag.SEQUENCE_TAG) {
-                printObjectPairs(ps, keys, op);
+            tvp.getValue(level.op);
+            level.abvs.reset();
+            level.op.getKeys(level.abvs);
+            level.keys.set(level.abvs);
+            writeByte('{');
+            if (level.keys.getTag() == ValueTag.SEQUENCE_TAG) {
+                level.keys.getValue(level.seqp);
+                int len = level.seqp.getEntryCount();
+                for (int i = 0; i < len; i++) {
+                    level.seqp.getEntry(i, level.key);
+                    printObjectPair(level, level.key);
+                    if (i != len - 1) {
+                        writeByte(',');
+                    }
+                }
             } else {
-                printObjectPair(ps, keys, op);
+                printObjectPair(level, level.keys);
             }
-            ps.append('}');
+            writeByte('}');
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
-            pp.giveBack(keys);
-            pp.giveBack(op);
+            exit();
         }
     }
 
-    private void printObjectPairs(PrintStream ps, TaggedValuePointable keys, ObjectPointable op) {
-        SequencePointable seqp = pp.takeOne(SequencePointable.class);
-        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
+    private void printObjectPair(Level level, TaggedValuePointable key) {
+        printJsonValue(key);
+        key.getValue(level.utf8sp);
+        writeByte(':');
+        level.op.getValue(level.utf8sp, level.tvp);
+        printJsonValue(level.tvp);
+    }
+
+    private void printArray(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            keys.getValue(seqp);
-            int len = seqp.getEntryCount();
+            tvp.getValue(level.ap);
+            int len = level.ap.getEntryCount();
+            writeByte('[');
             for (int i = 0; i < len; i++) {
-                seqp.getEntry(i, tvp);
-                printObjectPair(ps, tvp, op);
+                level.ap.getEntry(i, level.tvp);
+                printJsonValue(level.tvp);
                 if (i != len - 1) {
-                    ps.append(',');
+                    writeByte(',');
                 }
             }
+            writeByte(']');
         } finally {
-            pp.giveBack(seqp);
-            pp.giveBack(tvp);
+            exit();
         }
     }
 
-    private void printObjectPair(PrintStream ps, TaggedValuePointable key, ObjectPointable op) {
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
-        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
-        try {
-            printQuotedTaggedValuePointable(ps, key);
-            key.getValue(utf8sp);
-            ps.append(":");
-            op.getValue(utf8sp, tvp);
-            printJsonValue(ps, tvp);
-        } finally {
-            pp.giveBack(tvp);
-            pp.giveBack(utf8sp);
+    private void printJsonLines(TaggedValuePointable tvp) {
+        if (tvp.getTag() != ValueTag.SEQUENCE_TAG) {
+            printJsonValue(tvp);
+            return;
         }
-    }
-
-    private void printArray(PrintStream ps, TaggedValuePointable tvp) {
-        ArrayPointable ap = pp.takeOne(ArrayPointable.class);
+        Level level = enter();
         try {
-            tvp.getValue(ap);
-            int len = ap.getEntryCount();
-            ps.append('[');
-            for (int i = 0; i < len; i++) {
-                ap.getEntry(i, tvp);
-                printJsonValue(ps, tvp);
-                if (i != len - 1) {
-                    ps.append(',');
+            tvp.getValue(level.seqp);
+            int len = level.seqp.getEntryCount();
+            for (int i = 0; i < len; ++i) {
+                if (i > 0) {
+                    writeByte('\n');
                 }
+                level.seqp.getEntry(i, level.tvp);
+                printJsonValue(level.tvp);
             }
-            ps.append(']');
         } finally {
-            pp.giveBack(ap);
+            exit();
         }
     }
 
-    private void printJsonValue(PrintStream ps, TaggedValuePointable tvp) {
+    private void printJsonValue(TaggedValuePointable tvp) {
         int tag = tvp.getTag();
         switch (tag) {
             case ValueTag.ARRAY_TAG:
-            case ValueTag.ATTRIBUTE_NODE_TAG:
-            case ValueTag.COMMENT_NODE_TAG:
-            case ValueTag.DOCUMENT_NODE_TAG:
-            case ValueTag.ELEMENT_NODE_TAG:
             case ValueTag.JS_NULL_TAG:
-            case ValueTag.NODE_TREE_TAG:
             case ValueTag.OBJECT_TAG:
-            case ValueTag.PI_NODE_TAG:
-            case ValueTag.TEXT_NODE_TAG:
             case ValueTag.XS_BOOLEAN_TAG:
             case ValueTag.XS_BYTE_TAG:
             case ValueTag.XS_DECIMAL_TAG:
-            case ValueTag.XS_DOUBLE_TAG:
-            case ValueTag.XS_FLOAT_TAG:
             case ValueTag.XS_INT_TAG:
             case ValueTag.XS_INTEGER_TAG:
             case ValueTag.XS_LONG_TAG:
@@ -464,483 +538,570 @@ public class XMLSerializer implements IPrinter {
             case ValueTag.XS_UNSIGNED_INT_TAG:
             case ValueTag.XS_UNSIGNED_LONG_TAG:
             case ValueTag.XS_UNSIGNED_SHORT_TAG:
-                printTaggedValuePointable(ps, tvp);
+                printTaggedValuePointable(tvp);
+                break;
+            case ValueTag.XS_DOUBLE_TAG:
+            case ValueTag.XS_FLOAT_TAG:
+                if (jsonLines && !isFinite(tvp)) {
+                    printQuotedTaggedValuePointable(tvp);
+                } else {
+                    printTaggedValuePointable(tvp);
+                }
+                break;
+            case ValueTag.ATTRIBUTE_NODE_TAG:
+            case ValueTag.COMMENT_NODE_TAG:
+            case ValueTag.DOCUMENT_NODE_TAG:
+            case ValueTag.ELEMENT_NODE_TAG:
+            case ValueTag.NODE_TREE_TAG:
+            case ValueTag.PI_NODE_TAG:
+            case ValueTag.TEXT_NODE_TAG:
+                if (jsonLines) {
+                    printQuotedTaggedValuePointable(tvp);
+                } else {
+                    printTaggedValuePointable(tvp);
+                }
+                break;
+            case ValueTag.XS_ANY_URI_TAG:
+            case ValueTag.XS_STRING_TAG:
+            case ValueTag.XS_NORMALIZED_STRING_TAG:
+            case ValueTag.XS_TOKEN_TAG:
+            case ValueTag.XS_LANGUAGE_TAG:
+            case ValueTag.XS_NMTOKEN_TAG:
+            case ValueTag.XS_NAME_TAG:
+            case ValueTag.XS_NCNAME_TAG:
+            case ValueTag.XS_ID_TAG:
+            case ValueTag.XS_IDREF_TAG:
+            case ValueTag.XS_ENTITY_TAG:
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+                if (jsonLines) {
+                    tvp.getValue(utf8sp);
+                    writeByte('"');
+                    writeUTF8(utf8sp.getByteArray(), utf8sp.getCharStartOffset(),
+                            utf8sp.getCharStartOffset() + utf8sp.getUTF8Length(), JSON_ESCAPES);
+                    writeByte('"');
+                } else {
+                    printQuotedTaggedValuePointable(tvp);
+                }
                 break;
             default:
-                printQuotedTaggedValuePointable(ps, tvp);
+                printQuotedTaggedValuePointable(tvp);
+        }
+    }
+
+    private boolean isFinite(TaggedValuePointable tvp) {
+        if (tvp.getTag() == ValueTag.XS_FLOAT_TAG) {
+            tvp.getValue(fp);
+            return !Float.isNaN(fp.getFloat()) && !Float.isInfinite(fp.getFloat());
         }
+        tvp.getValue(dp);
+        return !Double.isNaN(dp.getDouble()) && !Double.isInfinite(dp.getDouble());
     }
 
-    private void printQuotedTaggedValuePointable(PrintStream ps, TaggedValuePointable tvp) {
-        ps.append('\"');
-        printTaggedValuePointable(ps, tvp);
-        ps.append('\"');
+    private void printQuotedTaggedValuePointable(TaggedValuePointable tvp) {
+        if (!jsonLines) {
+            writeByte('"');
+            printTaggedValuePointable(tvp);
+            writeByte('"');
+            return;
+        }
+        // Print the value, then append it again as a JSON string and move that over the printed value.
+        int start = length;
+        printTaggedValuePointable(tvp);
+        int end = length;
+        writeByte('"');
+        writeUTF8(buffer, start, end, JSON_ESCAPES);
+        writeByte('"');
+        System.arraycopy(buffer, end, buffer, start, length - end);
+        length -= end - start;
     }
 
-    private void printElementNode(PrintStream ps, TaggedValuePointable tvp) {
-        ElementNodePointable enp = pp.takeOne(ElementNodePointable.class);
-        CodedQNamePointable cqp = pp.takeOne(CodedQNamePointable.class);
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
-        SequencePointable seqp = pp.takeOne(SequencePointable.class);
+    private void printElementNode(TaggedValuePointable tvp) {
+        Level level = enter();
+        ElementNodePointable enp = level.enp;
+        CodedQNamePointable cqp = level.cqp;
+        UTF8StringPointable nameString = level.utf8sp;
+        SequencePointable seqp = level.seqp;
         try {
             tvp.getValue(enp);
             enp.getName(cqp);
-            ps.append('<');
-            printPrefixedQName(ps, cqp, utf8sp);
+            writeByte('<');
+            printPrefixedQName(cqp, nameString);
 
             int nsCount = enp.getNamespaceEntryCount(ntp);
             for (int i = 0; i < nsCount; ++i) {
-                ps.append(" xmlns:");
-                ntp.getString(enp.getNamespacePrefixCode(ntp, i), utf8sp);
-                printString(ps, utf8sp);
-                ps.append("=\"");
-                ntp.getString(enp.getNamespaceURICode(ntp, i), utf8sp);
-                printString(ps, utf8sp);
-                ps.append("\"");
+                writeAscii(" xmlns:");
+                ntp.getString(enp.getNamespacePrefixCode(ntp, i), nameString);
+                printString(nameString);
+                writeAscii("=\"");
+                ntp.getString(enp.getNamespaceURICode(ntp, i), nameString);
+                printString(nameString);
+                writeByte('"');
             }
 
             enp.getAttributeSequence(ntp, seqp);
             if (seqp.getByteArray() != null && seqp.getEntryCount() > 0) {
-                ps.append(' ');
-                printSequence(ps, seqp, " ");
+                writeByte(' ');
+                printSequence(seqp, level.tvp, true);
             }
 
             enp.getChildrenSequence(ntp, seqp);
             if (seqp.getByteArray() != null) {
-                ps.append('>');
-                printSequence(ps, seqp);
-                ps.append("</");
-                printPrefixedQName(ps, cqp, utf8sp);
-                ps.append('>');
+                writeByte('>');
+                printSequence(seqp, level.tvp, false);
+                writeAscii("</");
+                printPrefixedQName(cqp, nameString);
+                writeByte('>');
             } else {
-                ps.append("/>");
+                writeAscii("/>");
             }
         } finally {
-            pp.giveBack(seqp);
-            pp.giveBack(utf8sp);
-            pp.giveBack(cqp);
-            pp.giveBack(enp);
+            exit();
         }
     }
 
-    private void printPrefixedQName(PrintStream ps, CodedQNamePointable cqp, UTF8StringPointable utf8sp) {
-        ntp.getString(cqp.getPrefixCode(), utf8sp);
-        if (utf8sp.getStringLength() > 0) {
-            printString(ps, utf8sp);
-            ps.append(':');
+    private void printPrefixedQName(CodedQNamePointable cqp, UTF8StringPointable nameString) {
+        ntp.getString(cqp.getPrefixCode(), nameString);
+        if (nameString.getStringLength() > 0) {
+            printString(nameString);
+            writeByte(':');
         }
-        ntp.getString(cqp.getLocalCode(), utf8sp);
-        printString(ps, utf8sp);
+        ntp.getString(cqp.getLocalCode(), nameString);
+        printString(nameString);
     }
 
-    private void printDocumentNode(PrintStream ps, TaggedValuePointable tvp) {
-        DocumentNodePointable dnp = pp.takeOne(DocumentNodePointable.class);
-        SequencePointable seqp = pp.takeOne(SequencePointable.class);
+    private void printDocumentNode(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            ps.append("<?xml version=\"1.0\"?>\n");
-            tvp.getValue(dnp);
-            dnp.getContent(ntp, seqp);
-            printSequence(ps, seqp);
+            writeAscii("<?xml version=\"1.0\"?>\n");
+            tvp.getValue(level.dnp);
+            level.dnp.getContent(ntp, level.seqp);
+            printSequence(level.seqp, level.tvp, false);
         } finally {
-            pp.giveBack(seqp);
-            pp.giveBack(dnp);
+            exit();
         }
     }
 
-    private void printSequence(PrintStream ps, TaggedValuePointable tvp) {
-        SequencePointable seqp = pp.takeOne(SequencePointable.class);
+    private void printSequence(TaggedValuePointable tvp) {
+        Level level = enter();
         try {
-            tvp.getValue(seqp);
-            printSequence(ps, seqp);
+            tvp.getValue(level.seqp);
+            printSequence(level.seqp, level.tvp, false);
         } finally {
-            pp.giveBack(seqp);
+            exit();
         }
     }
 
-    private void printSequence(PrintStream ps, SequencePointable seqp) {
-        printSequence(ps, seqp, null);
-    }
-
-    private void printSequence(PrintStream ps, SequencePointable seqp, String between) {
-        VoidPointable vp = pp.takeOne(VoidPointable.class);
-        try {
-            int len = seqp.getEntryCount();
-            for (int i = 0; i < len; ++i) {
-                seqp.getEntry(i, vp);
-                print(vp.getByteArray(), vp.getStartOffset(), vp.getLength(), ps);
-                if (i < len - 1 && between != null) {
-                    ps.append(between);
-                }
+    private void printSequence(SequencePointable seqp, TaggedValuePointable entry, boolean spaced) {
+        int len = seqp.getEntryCount();
+        for (int i = 0; i < len; ++i) {
+            seqp.getEntry(i, entry);
+            printTaggedValuePointable(entry);
+            if (i < len - 1 && spaced) {
+                writeByte(' ');
             }
-        } finally {
-            pp.giveBack(vp);
         }
     }
 
-    private void printBase64Binary(PrintStream ps, TaggedValuePointable tvp) {
-        XSBinaryPointable bp = pp.takeOne(XSBinaryPointable.class);
+    private void printBase64Binary(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(bp);
+            tvp.getValue(binp);
             abvs.reset();
-            castToString.convertBase64Binary(bp, dOut);
-            printStringAbvs(ps);
+            castToString.convertBase64Binary(binp, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(bp);
         }
     }
 
-    private void printBoolean(PrintStream ps, TaggedValuePointable tvp) {
-        BooleanPointable bp = pp.takeOne(BooleanPointable.class);
-        try {
-            tvp.getValue(bp);
-            ps.print(bp.getBoolean());
-        } finally {
-            pp.giveBack(bp);
-        }
+    private void printBoolean(TaggedValuePointable tvp) {
+        tvp.getValue(bp);
+        writeAscii(bp.getBoolean() ? "true" : "false");
     }
 
-    private void printByte(PrintStream ps, TaggedValuePointable tvp) {
-        BytePointable bp = pp.takeOne(BytePointable.class);
-        try {
-            tvp.getValue(bp);
-            ps.print(bp.byteValue());
-        } finally {
-            pp.giveBack(bp);
-        }
+    private void printByte(TaggedValuePointable tvp) {
+        tvp.getValue(bytep);
+        writeLong(bytep.byteValue());
     }
 
-    private void printDouble(PrintStream ps, TaggedValuePointable tvp) {
-        DoublePointable dp = pp.takeOne(DoublePointable.class);
+    private void printDouble(TaggedValuePointable tvp) {
+        tvp.getValue(dp);
+        double value = dp.getDouble();
+        // Integral values in the range printed as decimals need no digits after the point.
+        if (value != 0 && Math.abs(value) >= 1 && Math.abs(value) <= 1000000 && value == Math.rint(value)) {
+            writeLong((long) value);
+            return;
+        }
         try {
-            tvp.getValue(dp);
             abvs.reset();
             castToString.convertDouble(dp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printDate(PrintStream ps, TaggedValuePointable tvp) {
-        XSDatePointable dp = pp.takeOne(XSDatePointable.class);
+    private void printDate(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(datep);
             abvs.reset();
-            castToString.convertDate(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertDate(datep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printDateTime(PrintStream ps, TaggedValuePointable tvp) {
-        XSDateTimePointable dtp = pp.takeOne(XSDateTimePointable.class);
+    private void printDateTime(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dtp);
+            tvp.getValue(datetimep);
             abvs.reset();
-            castToString.convertDatetime(dtp, dOut);
-            printStringAbvs(ps);
+            castToString.convertDatetime(datetimep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dtp);
         }
     }
 
-    private void printDTDuration(PrintStream ps, TaggedValuePointable tvp) {
-        LongPointable lp = pp.takeOne(LongPointable.class);
+    private void printDTDuration(TaggedValuePointable tvp) {
         try {
             tvp.getValue(lp);
             abvs.reset();
             castToString.convertDTDuration(lp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(lp);
         }
     }
 
-    private void printDuration(PrintStream ps, TaggedValuePointable tvp) {
-        XSDurationPointable dp = pp.takeOne(XSDurationPointable.class);
+    private void printDuration(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(durationp);
             abvs.reset();
-            castToString.convertDuration(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertDuration(durationp, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printFloat(PrintStream ps, TaggedValuePointable tvp) {
-        FloatPointable fp = pp.takeOne(FloatPointable.class);
+    private void printFloat(TaggedValuePointable tvp) {
         try {
             tvp.getValue(fp);
             abvs.reset();
             castToString.convertFloat(fp, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(fp);
         }
     }
 
-    private void printGDay(PrintStream ps, TaggedValuePointable tvp) {
-        XSDatePointable dp = pp.takeOne(XSDatePointable.class);
+    private void printGDay(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(datep);
             abvs.reset();
-            castToString.convertGDay(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertGDay(datep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printGMonth(PrintStream ps, TaggedValuePointable tvp) {
-        XSDatePointable dp = pp.takeOne(XSDatePointable.class);
+    private void printGMonth(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(datep);
             abvs.reset();
-            castToString.convertGMonth(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertGMonth(datep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printGMonthDay(PrintStream ps, TaggedValuePointable tvp) {
-        XSDatePointable dp = pp.takeOne(XSDatePointable.class);
+    private void printGMonthDay(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(datep);
             abvs.reset();
-            castToString.convertGMonthDay(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertGMonthDay(datep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printGYear(PrintStream ps, TaggedValuePointable tvp) {
-        XSDatePointable dp = pp.takeOne(XSDatePointable.class);
+    private void printGYear(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(datep);
             abvs.reset();
-            castToString.convertGYear(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertGYear(datep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printGYearMonth(PrintStream ps, TaggedValuePointable tvp) {
-        XSDatePointable dp = pp.takeOne(XSDatePointable.class);
+    private void printGYearMonth(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(datep);
             abvs.reset();
-            castToString.convertGYearMonth(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertGYearMonth(datep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printHexBinary(PrintStream ps, TaggedValuePointable tvp) {
-        XSBinaryPointable bp = pp.takeOne(XSBinaryPointable.class);
+    private void printHexBinary(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(bp);
+            tvp.getValue(binp);
             abvs.reset();
-            castToString.convertHexBinary(bp, dOut);
-            printStringAbvs(ps);
+            castToString.convertHexBinary(binp, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(bp);
         }
     }
 
-    private void printInt(PrintStream ps, TaggedValuePointable tvp) {
-        IntegerPointable ip = pp.takeOne(IntegerPointable.class);
-        try {
-            tvp.getValue(ip);
-            ps.print(ip.intValue());
-        } finally {
-            pp.giveBack(ip);
-        }
+    private void printInt(TaggedValuePointable tvp) {
+        tvp.getValue(ip);
+        writeLong(ip.intValue());
     }
 
-    private void printInteger(PrintStream ps, TaggedValuePointable tvp) {
-        LongPointable lp = pp.takeOne(LongPointable.class);
-        try {
-            tvp.getValue(lp);
-            ps.print(lp.longValue());
-        } finally {
-            pp.giveBack(lp);
-        }
+    private void printInteger(TaggedValuePointable tvp) {
+        tvp.getValue(lp);
+        writeLong(lp.longValue());
     }
 
-    private void printShort(PrintStream ps, TaggedValuePointable tvp) {
-        ShortPointable sp = pp.takeOne(ShortPointable.class);
-        try {
-            tvp.getValue(sp);
-            ps.print(sp.shortValue());
-        } finally {
-            pp.giveBack(sp);
-        }
+    private void printShort(TaggedValuePointable tvp) {
+        tvp.getValue(sp);
+        writeLong(sp.shortValue());
     }
 
-    private void printQName(PrintStream ps, TaggedValuePointable tvp) {
-        XSQNamePointable dp = pp.takeOne(XSQNamePointable.class);
+    private void printQName(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(dp);
+            tvp.getValue(qnamep);
             abvs.reset();
-            castToString.convertQName(dp, dOut);
-            printStringAbvs(ps);
+            castToString.convertQName(qnamep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(dp);
         }
     }
 
-    private void printStringAbvs(PrintStream ps) {
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
-        try {
-            utf8sp.set(abvs.getByteArray(), abvs.getStartOffset() + 1, abvs.getLength() - 1);
-            printString(ps, utf8sp);
-        } finally {
-            pp.giveBack(utf8sp);
-        }
+    private void printStringAbvs() {
+        byte[] bytes = abvs.getByteArray();
+        int start = abvs.getStartOffset() + 1;
+        int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
+        int offset = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        writeUTF8(bytes, offset, offset + utfLength, XML_ESCAPES);
     }
 
-    private void printString(PrintStream ps, TaggedValuePointable tvp) {
-        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
-        try {
-            tvp.getValue(utf8sp);
-            printString(ps, utf8sp);
-        } finally {
-            pp.giveBack(utf8sp);
-        }
+    private void printString(TaggedValuePointable tvp) {
+        tvp.getValue(utf8sp);
+        printString(utf8sp);
     }
 
-    private void printString(PrintStream ps, UTF8StringPointable utf8sp) {
-        int utfLen = utf8sp.getUTF8Length();
-        int offset = utf8sp.getMetaDataLength();
-        while (utfLen > 0) {
-            char c = utf8sp.charAt(offset);
-            switch (c) {
-                case '<':
-                    ps.append("&lt;");
-                    break;
-
-                case '>':
-                    ps.append("&gt;");
-                    break;
-
-                case '&':
-                    ps.append("&amp;");
-                    break;
-
-                case '"':
-                    ps.append("&quot;");
-                    break;
-
-                case '\'':
-                    ps.append("&apos;");
-                    break;
-
-                default:
-                    ps.append(c);
-                    break;
-            }
-            int cLen = utf8sp.charSize(offset);
-            offset += cLen;
-            utfLen -= cLen;
-        }
+    private void printString(UTF8StringPointable stringp) {
+        int offset = stringp.getCharStartOffset();
+        writeUTF8(stringp.getByteArray(), offset, offset + stringp.getUTF8Length(), XML_ESCAPES);
     }
 
-    private void printTime(PrintStream ps, TaggedValuePointable tvp) {
-        XSTimePointable tp = pp.takeOne(XSTimePointable.class);
+    private void printTime(TaggedValuePointable tvp) {
         try {
-            tvp.getValue(tp);
+            tvp.getValue(timep);
             abvs.reset();
-            castToString.convertTime(tp, dOut);
-            printStringAbvs(ps);
+            castToString.convertTime(timep, dOut);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(tp);
         }
     }
 
-    private void printYMDuration(PrintStream ps, TaggedValuePointable tvp) {
-        IntegerPointable ip = pp.takeOne(IntegerPointable.class);
+    private void printYMDuration(TaggedValuePointable tvp) {
         try {
             tvp.getValue(ip);
             abvs.reset();
             castToString.convertYMDuration(ip, dOut);
-            printStringAbvs(ps);
+            printStringAbvs();
         } catch (SystemException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            pp.giveBack(ip);
         }
     }
 
+    /**
+     * Write the UTF-8 bytes between offset and end, replacing the ASCII characters that have an escape. The null
+     * character and the surrogate pairs of modified UTF-8 are written in standard UTF-8.
+     */
+    private void writeUTF8(byte[] bytes, int offset, int end, byte[][] escapes) {
+        int run = offset;
+        while (offset < end) {
+            int b = bytes[offset] & 0xff;
+            if (b < 0x80) {
+                if (escapes[b] != null) {
+                    writeBytes(bytes, run, offset - run);
+                    writeBytes(escapes[b], 0, escapes[b].length);
+                    run = offset + 1;
+                }
+                ++offset;
+            } else if (b >= 0xf0) {
+                offset += 4;
+            } else if (b >= 0xe0) {
+                int c = ((b & 0x0f) << 12) | ((bytes[offset + 1] & 0x3f) << 6) | (bytes[offset + 2] & 0x3f);
+                if (Character.isHighSurrogate((char) c) && offset + 6 <= end) {
+                    int low = ((bytes[offset + 3] & 0x0f) << 12) | ((bytes[offset + 4] & 0x3f) << 6)
+                            | (bytes[offset + 5] & 0x3f);
+                    if ((bytes[offset + 3] & 0xf0) == 0xe0 && Character.isLowSurrogate((char) low)) {
+                        writeBytes(bytes, run, offset - run);
+                        writeCodePoint(Character.toCodePoint((char) c, (char) low));
+                        offset += 6;
+                        run = offset;
+                        continue;
+                    }
+                }
+                offset += 3;
+            } else if (b == 0xc0 && bytes[offset + 1] == (byte) 0x80) {
+                writeBytes(bytes, run, offset - run);
+                if (escapes[0] != null) {
+                    writeBytes(escapes[0], 0, escapes[0].length);
+                } else {
+                    writeByte(0);
+                }
+                offset += 2;
+                run = offset;
+            } else {
+                offset += 2;
+            }
+        }
+        writeBytes(bytes, run, end - run);
+    }
+
+    private void writeCodePoint(int codePoint) {
+        ensureCapacity(4);
+        buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            ++digits;
+        }
+        length += digits;
+        int pos = length;
+        do {
+            buffer[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+    }
+
+    private void writeAscii(String str) {
+        int len = str.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; ++i) {
+            buffer[length++] = (byte) str.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int len) {
+        ensureCapacity(len);
+        System.arraycopy(bytes, offset, buffer, length, len);
+        length += len;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(length + extra, buffer.length * 2)];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+    }
+
+    private Level enter() {
+        if (depth == levels.size()) {
+            levels.add(new Level());
+        }
+        return levels.get(depth++);
+    }
+
+    private void exit() {
+        --depth;
+    }
+
+    private static byte[] ascii(String str) {
+        byte[] bytes = new byte[str.length()];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) str.charAt(i);
+        }
+        return bytes;
+    }
+
     @Override
     public void init() throws HyracksDataException {
 
     }
+
+    private static final class Level {
+        final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final TaggedValuePointable keys = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final TaggedValuePointable key = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final UTF8StringPointable utf8sp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+        final DocumentNodePointable dnp = (DocumentNodePointable) DocumentNodePointable.FACTORY.createPointable();
+        final ElementNodePointable enp = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
+        final AttributeNodePointable anp = (AttributeNodePointable) AttributeNodePointable.FACTORY.createPointable();
+        final TextOrCommentNodePointable tcnp = (TextOrCommentNodePointable) TextOrCommentNodePointable.FACTORY
+                .createPointable();
+        final PINodePointable pinp = (PINodePointable) PINodePointable.FACTORY.createPointable();
+        final ObjectPointable op = (ObjectPointable) ObjectPointable.FACTORY.createPointable();
+        final ArrayPointable ap = (ArrayPointable) ArrayPointable.FACTORY.createPointable();
+        final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    }
 }
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Holds the bytes of one document at a time for the parsers that work on bytes.
+ * The array is reused from document to document, so a scan over many small
+ * files allocates it only once, and a local file is read with a single channel
+ * read into it, without going through stream buffers.
+ * <p>
+ * Documents as large as the maximum size or larger are streamed to the
+ * parsers. The maximum size is set with the "vxquery.document_buffer_size"
+ * system property, and one buffer is shared by the parsers of a task.
+ */
+public class DocumentBuffer {
+    /** Largest document kept in memory when vxquery.document_buffer_size is not set. */
+    public static final int DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    private static final int INITIAL_SIZE = 64 * 1024;
+
+    private final int maxSize;
+    private byte[] bytes;
+    private int length;
+
+    public DocumentBuffer() {
+        this(Integer.parseInt(System.getProperty("vxquery.document_buffer_size", Integer.toString(DEFAULT_MAX_SIZE))));
+    }
+
+    /**
+     * @param maxSize
+     *            largest document kept in memory
+     */
+    public DocumentBuffer(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Reads a whole file from the current position of the channel. A file
+     * larger than the maximum size is not read at all.
+     *
+     * @return false if the file is larger than the maximum size, in which case
+     *         {@link #remainder(InputStream)} gives the whole document
+     */
+    public boolean read(FileChannel channel) throws IOException {
+        length = 0;
+        long size = channel.size() - channel.position();
+        if (size >= maxSize) {
+            return false;
+        }
+        // One more byte, so the end of the file is found without growing the array.
+        ensureCapacity((int) size + 1);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                // The file grew since its size was read.
+                length = buffer.position();
+                if (length >= maxSize) {
+                    return false;
+                }
+                ensureCapacity(length + 1);
+                buffer = ByteBuffer.wrap(bytes, length, bytes.length - length);
+            }
+            if (channel.read(buffer) < 0) {
+                length = buffer.position();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads a stream to its end. A file stream is read through its channel, so
+     * a file larger than the maximum size is not read at all.
+     *
+     * @return false if the stream is longer than the maximum size, in which case
+     *         {@link #remainder(InputStream)} gives the whole document
+     */
+    public boolean read(InputStream input) throws IOException {
+        if (input instanceof FileInputStream) {
+            return read(((FileInputStream) input).getChannel());
+        }
+        return read(input, -1);
+    }
+
+    /**
+     * Reads a stream of a known length to its end. A stream longer than the
+     * maximum size is not read at all.
+     *
+     * @param size
+     *            length of the stream, or -1 if it is not known
+     * @return false if the stream is longer than the maximum size, in which case
+     *         {@link #remainder(InputStream)} gives the whole document
+     */
+    public boolean read(InputStream input, long size) throws IOException {
+        length = 0;
+        if (size >= maxSize) {
+            return false;
+        }
+        ensureCapacity(size < 0 ? INITIAL_SIZE : (int) size + 1);
+        while (true) {
+            if (length == bytes.length) {
+                if (length >= maxSize) {
+                    return false;
+                }
+                ensureCapacity(length + 1);
+            }
+            int read = input.read(bytes, length, bytes.length - length);
+            if (read < 0) {
+                return true;
+            }
+            length += read;
+        }
+    }
+
+    /**
+     * @return a stream of the bytes read so far followed by the rest of the input
+     */
+    public InputStream remainder(InputStream input) {
+        if (length == 0) {
+            return input;
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(bytes, 0, length), input);
+    }
+
+    private void ensureCapacity(int size) {
+        if (bytes == null) {
+            bytes = new byte[Math.max(size, Math.min(maxSize, INITIAL_SIZE))];
+        } else if (bytes.length < size) {
+            bytes = Arrays.copyOf(bytes, Math.max(size, Math.min(maxSize, bytes.length * 2)));
+        }
+    }
+}
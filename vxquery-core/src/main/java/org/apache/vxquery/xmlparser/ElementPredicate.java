@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.vxquery.runtime.functions.comparison.general.GeneralComparisonKeys.Comparison;
+
+/**
+ * A comparison pushed into a collection scan: the elements found by following
+ * the child path steps from a scanned element are compared with a constant.
+ * The scan leaves out the scanned elements for which the comparison is sure to
+ * be false.
+ */
+public class ElementPredicate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Integer> childSeq;
+    private final Comparison comparison;
+    private final boolean general;
+    private final byte[] constant;
+
+    /**
+     * @param childSeq
+     *            type codes of the child path steps from the scanned element
+     * @param comparison
+     *            the comparison of the elements with the constant
+     * @param general
+     *            true for a general comparison, false for a value comparison
+     * @param constant
+     *            the constant as a tagged value
+     */
+    public ElementPredicate(List<Integer> childSeq, Comparison comparison, boolean general, byte[] constant) {
+        this.childSeq = childSeq;
+        this.comparison = comparison;
+        this.general = general;
+        this.constant = constant;
+    }
+
+    public List<Integer> getChildSeq() {
+        return childSeq;
+    }
+
+    public Comparison getComparison() {
+        return comparison;
+    }
+
+    public boolean isGeneral() {
+        return general;
+    }
+
+    public byte[] getConstant() {
+        return constant;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + childSeq.hashCode();
+        result = prime * result + comparison.hashCode();
+        result = prime * result + (general ? 1231 : 1237);
+        result = prime * result + Arrays.hashCode(constant);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ElementPredicate)) {
+            return false;
+        }
+        ElementPredicate other = (ElementPredicate) obj;
+        return childSeq.equals(other.childSeq) && comparison == other.comparison && general == other.general
+                && Arrays.equals(constant, other.constant);
+    }
+
+    @Override
+    public String toString() {
+        return "ElementPredicate [childSeq=" + childSeq + ", comparison=" + comparison + ", general=" + general
+                + "]";
+    }
+}
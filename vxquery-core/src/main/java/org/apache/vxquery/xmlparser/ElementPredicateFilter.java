@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.comparison.general.GeneralComparisonKeys.Comparison;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.NameTest;
+
+/**
+ * Evaluates the {@link ElementPredicate}s of a collection scan while the
+ * {@link SAXContentHandler} builds a scanned element. The text of the elements
+ * on the path of a predicate is collected and compared with the constant when
+ * the element ends. A scanned element is only left out when the comparison is
+ * sure to be false, as the select above the scan still checks the condition.
+ * When the comparison could raise an error instead, for example because the
+ * text is not a number or a value comparison finds several elements, the
+ * element is kept so the error is still raised.
+ */
+public class ElementPredicateFilter {
+    private final Predicate[] predicates;
+
+    public ElementPredicateFilter(List<ElementPredicate> elementPredicates, StaticContext staticContext)
+            throws SystemException {
+        predicates = new Predicate[elementPredicates.size()];
+        TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        TypedPointables tp = new TypedPointables();
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        for (int i = 0; i < predicates.length; ++i) {
+            ElementPredicate elementPredicate = elementPredicates.get(i);
+            Predicate predicate = new Predicate(elementPredicate.getChildSeq().size());
+            predicate.comparison = elementPredicate.getComparison();
+            predicate.general = elementPredicate.isGeneral();
+            int index = 0;
+            for (int typeCode : elementPredicate.getChildSeq()) {
+                ElementType eType = (ElementType) staticContext.lookupSequenceType(typeCode).getItemType();
+                NameTest nameTest = eType.getNameTest();
+                predicate.uris[index] = getStringFromBytes(nameTest.getUri(), 0);
+                predicate.localNames[index] = getStringFromBytes(nameTest.getLocalName(), 0);
+                ++index;
+            }
+            byte[] constant = elementPredicate.getConstant();
+            tvp.set(constant, 0, constant.length);
+            if (tvp.getTag() == ValueTag.XS_STRING_TAG) {
+                predicate.stringValue = getStringFromBytes(constant, 1);
+            } else {
+                // Untyped values are compared with numbers as doubles.
+                try {
+                    abvs.reset();
+                    FunctionHelper.getDoublePointable(tvp, abvs.getDataOutput(), tp);
+                } catch (IOException e) {
+                    throw new SystemException(ErrorCode.SYSE0001, e);
+                }
+                predicate.doubleValue = DoublePointable.getDouble(abvs.getByteArray(), abvs.getStartOffset() + 1);
+            }
+            predicates[i] = predicate;
+        }
+    }
+
+    /**
+     * Starts the predicates on a new scanned element.
+     */
+    public void startCandidate() {
+        for (Predicate predicate : predicates) {
+            predicate.matched = 0;
+            predicate.count = 0;
+            predicate.satisfied = false;
+            predicate.undecided = false;
+        }
+    }
+
+    /**
+     * @param level
+     *            depth of the element below the scanned element, starting at 1 for its children
+     */
+    public void startElement(int level, String uri, String localName) {
+        for (Predicate predicate : predicates) {
+            if (predicate.matched != level - 1 || level > predicate.localNames.length || predicate.isDecided()) {
+                continue;
+            }
+            if (uri != null && predicate.uris[level - 1] != null && !uri.equals(predicate.uris[level - 1])) {
+                continue;
+            }
+            if (localName != null && predicate.localNames[level - 1] != null
+                    && !localName.equals(predicate.localNames[level - 1])) {
+                continue;
+            }
+            predicate.matched = level;
+            if (level == predicate.localNames.length) {
+                predicate.text.setLength(0);
+            }
+        }
+    }
+
+    public void endElement(int level) {
+        for (Predicate predicate : predicates) {
+            if (predicate.matched == level) {
+                if (level == predicate.localNames.length) {
+                    predicate.evaluate();
+                }
+                predicate.matched = level - 1;
+            }
+        }
+    }
+
+    public void characters(char[] ch, int start, int length) {
+        for (Predicate predicate : predicates) {
+            if (predicate.matched == predicate.localNames.length) {
+                predicate.text.append(ch, start, length);
+            }
+        }
+    }
+
+    /**
+     * Adds text given in modified UTF-8, without a length.
+     */
+    public void characters(byte[] utf8, int start, int length) {
+        for (Predicate predicate : predicates) {
+            if (predicate.matched == predicate.localNames.length) {
+                for (int i = start; i < start + length; i += UTF8StringUtil.charSize(utf8, i)) {
+                    predicate.text.append(UTF8StringUtil.charAt(utf8, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the scanned element fails one of the predicates and can be left out
+     */
+    public boolean accept() {
+        for (Predicate predicate : predicates) {
+            if (!predicate.satisfied && !predicate.undecided) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getStringFromBytes(byte[] bytes, int start) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, start);
+        return sb.toString();
+    }
+
+    private static class Predicate {
+        final String[] uris;
+        final String[] localNames;
+        final StringBuilder text = new StringBuilder();
+        Comparison comparison;
+        boolean general;
+        String stringValue;
+        double doubleValue;
+
+        // Number of path steps matched by the open elements.
+        int matched;
+        // Number of elements found on the path.
+        int count;
+        boolean satisfied;
+        boolean undecided;
+
+        Predicate(int steps) {
+            uris = new String[steps];
+            localNames = new String[steps];
+        }
+
+        /**
+         * A general comparison is known once one element satisfies it.
+         */
+        boolean isDecided() {
+            return general && (satisfied || undecided);
+        }
+
+        void evaluate() {
+            ++count;
+            if (!general && count > 1) {
+                // A value comparison of several elements raises an error.
+                undecided = true;
+                return;
+            }
+            if (stringValue != null) {
+                satisfied = test(compareText(), 0);
+            } else if (isNumber()) {
+                try {
+                    satisfied = test(parseNumber(), doubleValue);
+                } catch (NumberFormatException e) {
+                    undecided = true;
+                }
+            } else {
+                undecided = true;
+            }
+        }
+
+        private int compareText() {
+            int length = Math.min(text.length(), stringValue.length());
+            for (int i = 0; i < length; ++i) {
+                int c = text.charAt(i) - stringValue.charAt(i);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return text.length() - stringValue.length();
+        }
+
+        /**
+         * Checks that the cast of the text to xs:double parses it the same way as {@link Double#parseDouble}.
+         */
+        private boolean isNumber() {
+            if (text.length() == 0) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); ++i) {
+                char c = text.charAt(i);
+                if ((c < '0' || c > '9') && c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-') {
+                    return isSpecialNumber();
+                }
+            }
+            return true;
+        }
+
+        private boolean isSpecialNumber() {
+            String value = text.toString();
+            // NaN has no sign, so "-NaN" is not a number and the cast raises an error.
+            return value.equals("INF") || value.equals("-INF") || value.equals("NaN");
+        }
+
+        private double parseNumber() {
+            String value = text.toString();
+            if (value.equals("INF")) {
+                return Double.POSITIVE_INFINITY;
+            } else if (value.equals("-INF")) {
+                return Double.NEGATIVE_INFINITY;
+            } else if (value.equals("NaN")) {
+                return Double.NaN;
+            }
+            return Double.parseDouble(value);
+        }
+
+        private boolean test(double value1, double value2) {
+            // NaN is not equal to, less than or greater than any value.
+            switch (comparison) {
+                case EQ:
+                    return value1 == value2;
+                case NE:
+                    return value1 != value2;
+                case LT:
+                    return value1 < value2;
+                case LE:
+                    return value1 <= value2;
+                case GT:
+                    return value1 > value2;
+                case GE:
+                    return value1 >= value2;
+                default:
+                    return true;
+            }
+        }
+    }
+}
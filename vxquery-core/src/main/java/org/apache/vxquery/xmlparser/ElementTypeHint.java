@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A type pushed into a collection scan: the query only uses the elements found
+ * by following the child path steps from a scanned element in casts to the
+ * type. The scan stores the text of these elements as a value of the type.
+ */
+public class ElementTypeHint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Integer> childSeq;
+    private final int typeCode;
+
+    /**
+     * @param childSeq
+     *            type codes of the child path steps from the scanned element
+     * @param typeCode
+     *            type code of the sequence type the elements are cast to
+     */
+    public ElementTypeHint(List<Integer> childSeq, int typeCode) {
+        this.childSeq = childSeq;
+        this.typeCode = typeCode;
+    }
+
+    public List<Integer> getChildSeq() {
+        return childSeq;
+    }
+
+    public int getTypeCode() {
+        return typeCode;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + childSeq.hashCode();
+        result = prime * result + typeCode;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ElementTypeHint)) {
+            return false;
+        }
+        ElementTypeHint other = (ElementTypeHint) obj;
+        return childSeq.equals(other.childSeq) && typeCode == other.typeCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ElementTypeHint [childSeq=" + childSeq + ", typeCode=" + typeCode + "]";
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.cast.AbstractCastToOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDateOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDateTimeOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDoubleOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToIntegerOperation;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.ItemType;
+import org.apache.vxquery.types.NameTest;
+
+/**
+ * Casts the text of the elements named by the {@link ElementTypeHint}s of a
+ * collection scan while the {@link SAXContentHandler} builds a scanned element.
+ * The cast is the one the query applies to the element, so the typed value is
+ * the result the query would get. Text that the cast rejects is kept as text,
+ * so the query still raises the error.
+ */
+public class ElementTypeHintCaster {
+    private final Hint[] hints;
+    private final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+
+    public ElementTypeHintCaster(List<ElementTypeHint> elementTypeHints, StaticContext staticContext)
+            throws SystemException {
+        hints = new Hint[elementTypeHints.size()];
+        for (int i = 0; i < hints.length; ++i) {
+            ElementTypeHint elementTypeHint = elementTypeHints.get(i);
+            Hint hint = new Hint(elementTypeHint.getChildSeq().size());
+            int index = 0;
+            for (int typeCode : elementTypeHint.getChildSeq()) {
+                ElementType eType = (ElementType) staticContext.lookupSequenceType(typeCode).getItemType();
+                NameTest nameTest = eType.getNameTest();
+                hint.uris[index] = getStringFromBytes(nameTest.getUri());
+                hint.localNames[index] = getStringFromBytes(nameTest.getLocalName());
+                ++index;
+            }
+            hint.operation = getCastOperation(
+                    staticContext.lookupSequenceType(elementTypeHint.getTypeCode()).getItemType());
+            if (hint.operation == null) {
+                throw new SystemException(ErrorCode.XPTY0004);
+            }
+            hints[i] = hint;
+        }
+    }
+
+    /**
+     * @return the cast to the item type, or null if the scan does not cast to it
+     */
+    public static AbstractCastToOperation getCastOperation(ItemType type) {
+        if (type == BuiltinTypeRegistry.XS_DATE) {
+            return new CastToDateOperation();
+        } else if (type == BuiltinTypeRegistry.XS_DATETIME) {
+            return new CastToDateTimeOperation();
+        } else if (type == BuiltinTypeRegistry.XS_DOUBLE) {
+            return new CastToDoubleOperation();
+        } else if (type == BuiltinTypeRegistry.XS_INTEGER) {
+            return new CastToIntegerOperation();
+        }
+        return null;
+    }
+
+    /**
+     * Starts the hints on a new scanned element.
+     */
+    public void startCandidate() {
+        for (Hint hint : hints) {
+            hint.matched = 0;
+        }
+    }
+
+    /**
+     * @param level
+     *            depth of the element below the scanned element, starting at 1 for its children
+     * @return the index of the hint whose path ends at the element, or -1 if there is none
+     */
+    public int startElement(int level, String uri, String localName) {
+        int found = -1;
+        for (int i = 0; i < hints.length; ++i) {
+            Hint hint = hints[i];
+            if (hint.matched != level - 1 || level > hint.localNames.length) {
+                continue;
+            }
+            if (uri != null && hint.uris[level - 1] != null && !uri.equals(hint.uris[level - 1])) {
+                continue;
+            }
+            if (localName != null && hint.localNames[level - 1] != null
+                    && !localName.equals(hint.localNames[level - 1])) {
+                continue;
+            }
+            hint.matched = level;
+            if (level == hint.localNames.length && found < 0) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    public void endElement(int level) {
+        for (Hint hint : hints) {
+            if (hint.matched == level) {
+                hint.matched = level - 1;
+            }
+        }
+    }
+
+    /**
+     * Casts the text of an element to the type of a hint.
+     *
+     * @param text
+     *            the text as a UTF-8 string, starting with its length
+     * @return true if the typed value was written, false if the cast failed and nothing was written
+     */
+    public boolean cast(int hint, byte[] text, int start, int length, ArrayBackedValueStorage result)
+            throws IOException {
+        stringp.set(text, start, length);
+        result.reset();
+        try {
+            hints[hint].operation.convertUntypedAtomic(stringp, result.getDataOutput());
+            return true;
+        } catch (SystemException | RuntimeException e) {
+            result.reset();
+            return false;
+        }
+    }
+
+    private static String getStringFromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, 0);
+        return sb.toString();
+    }
+
+    private static class Hint {
+        final String[] uris;
+        final String[] localNames;
+        AbstractCastToOperation operation;
+
+        // Number of path steps matched by the open elements.
+        int matched;
+
+        Hint(int steps) {
+            uris = new String[steps];
+            localNames = new String[steps];
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.vxquery.xmlparser;
 
+import java.io.InputStream;
 import java.io.Reader;
 
 import org.apache.hyracks.api.exceptions.HyracksDataException;
@@ -24,4 +25,6 @@ import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 public interface IParser {
     public int parse(Reader input, ArrayBackedValueStorage abvs) throws HyracksDataException;
 
+    public int parse(InputStream input, ArrayBackedValueStorage abvs) throws HyracksDataException;
+
 }
@@ -17,5 +17,5 @@
 package org.apache.vxquery.xmlparser;
 
 public interface ITreeNodeIdProvider {
-    public int getId();
+    public long getId();
 }
@@ -24,11 +24,11 @@ import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.hyracks.data.std.util.GrowableArray;
-import org.apache.hyracks.data.std.util.UTF8StringBuilder;
 import org.apache.hyracks.dataflow.common.comm.util.FrameUtils;
 import org.apache.hyracks.util.string.UTF8StringUtil;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.atomic.VXQueryUTF8StringBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.AbstractNodeBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.AttributeNodeBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.CommentNodeBuilder;
@@ -61,11 +61,12 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
     protected final DocumentNodeBuilder docb;
     protected final PINodeBuilder pinb;
     protected final TextNodeBuilder tnb;
-    protected final UTF8StringBuilder utf8b;
-    private final UTF8StringBuilder utf8bInternal;
+    protected final VXQueryUTF8StringBuilder utf8b;
+    private final VXQueryUTF8StringBuilder utf8bInternal;
     protected final List<ElementNodeBuilder> enbStack;
     protected final List<ElementNodeBuilder> freeENBList;
     protected boolean isIndexHandler;
+    private int sharedDictionarySize;
 
     // Frame writing variables
     protected IFrameFieldAppender appender;
@@ -78,6 +79,11 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
     private String[] childUri = null;
     private boolean[] subElement = null;
     private final TaggedValuePointable tvp;
+    private ElementPredicateFilter elementFilter;
+    private ElementTypeHintCaster typeHintCaster;
+    // Hint of the element just started, as long as nothing but text was added to it.
+    private int typeHint = -1;
+    private final ArrayBackedValueStorage typedValueABVS;
 
     // Basic tracking and setting variables
     protected final boolean attachTypes;
@@ -99,14 +105,15 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         docb = new DocumentNodeBuilder();
         pinb = new PINodeBuilder();
         tnb = new TextNodeBuilder();
-        utf8b = new UTF8StringBuilder();
-        utf8bInternal = new UTF8StringBuilder();
+        utf8b = new VXQueryUTF8StringBuilder();
+        utf8bInternal = new VXQueryUTF8StringBuilder();
         enbStack = new ArrayList<>();
         freeENBList = new ArrayList<>();
 
         // Element writing and path step variables
         skipping = true;
         tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        typedValueABVS = new ArrayBackedValueStorage();
 
         // Basic tracking and setting variables
         this.attachTypes = attachTypes;
@@ -133,6 +140,41 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         setChildPathSteps(childSequenceTypes);
     }
 
+    /**
+     * Keep the dictionary across the documents parsed by this handler until it holds more than the given number of
+     * strings, so that the names shared by the documents of a collection are only added and sorted once. Each tree
+     * then carries all the strings of the shared dictionary.
+     *
+     * @param sharedDictionarySize
+     *            maximum number of strings kept across documents. 0 starts each document with an empty dictionary.
+     */
+    public void setSharedDictionarySize(int sharedDictionarySize) {
+        this.sharedDictionarySize = sharedDictionarySize;
+    }
+
+    /**
+     * Leave out the elements found by the child path steps that fail the predicates of the filter. An element is
+     * still built before the filter is checked, but it is not written to the frame.
+     *
+     * @param elementFilter
+     *            predicates pushed into the scan, or null to write all elements
+     */
+    public void setElementFilter(ElementPredicateFilter elementFilter) {
+        this.elementFilter = elementFilter;
+    }
+
+    /**
+     * Store the text of the elements named by the type hints as typed values. An element whose content is only
+     * text that the cast accepts gets the result of the cast as the only item of its children, which is what
+     * atomizing it returns. Any other element is built as usual.
+     *
+     * @param typeHintCaster
+     *            casts of the type hints pushed into the scan, or null to keep all text
+     */
+    public void setTypeHintCaster(ElementTypeHintCaster typeHintCaster) {
+        this.typeHintCaster = typeHintCaster;
+    }
+
     private void setChildPathSteps(List<SequenceType> childSeq) {
         if (!childSeq.isEmpty()) {
             subElement = new boolean[childSeq.size()];
@@ -167,6 +209,29 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
             e.printStackTrace();
             throw new SAXException(e);
         }
+        if (isFiltering()) {
+            elementFilter.characters(ch, start, length);
+        }
+        pendingText = true;
+    }
+
+    /**
+     * Adds text given in modified UTF-8, without a length, to the current text
+     * node.
+     */
+    public void characters(byte[] utf8, int start, int length) throws SAXException {
+        if (skipping) {
+            return;
+        }
+        try {
+            utf8b.appendUtf8Bytes(utf8, start, length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+        if (isFiltering()) {
+            elementFilter.characters(utf8, start, length);
+        }
         pendingText = true;
     }
 
@@ -206,13 +271,25 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
                 nonSkipped = foundFirstNonSkippedElement();
             }
             flushText();
+            typeHint = -1;
             ElementNodeBuilder enb = enbStack.remove(enbStack.size() - 1);
             enb.endChildrenChunk();
             endChildInParent(enb, nonSkipped);
             freeENB(enb);
             if (!isIndexHandler) {
                 if (nonSkipped) {
-                    writeElement();
+                    if (isFiltering() && !elementFilter.accept()) {
+                        skipping = true;
+                    } else {
+                        writeElement();
+                    }
+                } else {
+                    if (isFiltering()) {
+                        elementFilter.endElement(depth - subElement.length);
+                    }
+                    if (isTyping()) {
+                        typeHintCaster.endElement(depth - subElement.length);
+                    }
                 }
                 endElementChildPathStep();
             }
@@ -237,6 +314,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
             return;
         }
         try {
+            typeHint = -1;
             flushText();
             startChildInParent(pinb);
             if (createNodeIds) {
@@ -269,7 +347,9 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         if (isIndexHandler || subElement == null) {
             skipping = false;
         }
-        db.reset();
+        if (db.size() > sharedDictionarySize) {
+            db.reset();
+        }
         try {
             textGA.reset();
             utf8b.reset(textGA, STRING_EXPECTED_LENGTH);
@@ -321,8 +401,56 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         return start;
     }
 
+    /**
+     * Tells if the content of the element just started may be left out by the
+     * parser: the element is skipped and none of its descendants can match the
+     * child path steps. The parser still has to report the end of the element.
+     */
+    public boolean isSubtreeSkipped() {
+        if (!skipping || subElement == null) {
+            return false;
+        }
+        if (depth >= subElement.length) {
+            return true;
+        }
+        for (int i = 0; i < depth; ++i) {
+            if (!subElement[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+        if (!startElementNode(uri, localName, name)) {
+            return;
+        }
+        try {
+            final int nAttrs = atts.getLength();
+            for (int i = 0; i < nAttrs; ++i) {
+                tempABVS.reset();
+                DataOutput tempOut = tempABVS.getDataOutput();
+                tempOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+                stringToGrowableArray(atts.getValue(i));
+                tempOut.write(textGAInternal.getByteArray(), 0, textGAInternal.getLength());
+                addAttribute(atts.getURI(i), atts.getLocalName(i), atts.getQName(i));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+        endStartElement();
+    }
+
+    /**
+     * Starts an element whose attributes are added with
+     * {@link #attribute(String, String, String, byte[], int, int)} before
+     * {@link #endStartElement()} is called.
+     *
+     * @return false if the element is skipped, and so are its attributes
+     */
+    public boolean startElementNode(String uri, String localName, String name) throws SAXException {
         ++depth;
         boolean start = false;
         if (!isIndexHandler) {
@@ -330,10 +458,26 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
 
         if (skipping) {
-            return;
+            return false;
+        }
+        if (isFiltering()) {
+            if (start) {
+                elementFilter.startCandidate();
+            } else {
+                elementFilter.startElement(depth - subElement.length, uri, localName);
+            }
         }
         try {
+            // The text before a child element stays text.
+            typeHint = -1;
             flushText();
+            if (isTyping()) {
+                if (start) {
+                    typeHintCaster.startCandidate();
+                } else {
+                    typeHint = typeHintCaster.startElement(depth - subElement.length, uri, localName);
+                }
+            }
             int idx = name.indexOf(':');
             String prefix = idx < 0 ? "" : name.substring(0, idx);
             ElementNodeBuilder enb = createENB();
@@ -352,36 +496,69 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
                 enb.setLocalNodeId(nodeIdCounter++);
             }
             enb.startAttributeChunk();
-            final int nAttrs = atts.getLength();
-            for (int i = 0; i < nAttrs; ++i) {
-                String aName = atts.getQName(i);
-                int aIdx = aName.indexOf(':');
-                int aPrefixCode = db.lookup(aIdx < 0 ? "" : aName.substring(0, aIdx));
-                int aLocalNameCode = db.lookup(atts.getLocalName(i));
-                int aUriCode = db.lookup(atts.getURI(i));
-                String aValue = atts.getValue(i);
-                tempABVS.reset();
-                DataOutput tempOut = tempABVS.getDataOutput();
-                tempOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
-                stringToGrowableArray(aValue);
-                tempOut.write(textGAInternal.getByteArray(), 0, textGAInternal.getLength());
-                enb.startAttribute(anb);
-                anb.setName(aUriCode, aLocalNameCode, aPrefixCode);
-                if (attachTypes) {
-                    int typeUriCode = db.lookup(XQueryConstants.XS_NSURI);
-                    int typeLocalNameCode = db.lookup(BuiltinTypeQNames.UNTYPED_ATOMIC_STR);
-                    int typePrefixCode = db.lookup(XQueryConstants.XS_PREFIX);
-                    anb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
-                }
-                if (createNodeIds) {
-                    anb.setLocalNodeId(nodeIdCounter++);
-                }
-                anb.setValue(tempABVS);
-                enb.endAttribute(anb);
-            }
+            enbStack.add(enb);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Adds an attribute to the element started by
+     * {@link #startElementNode(String, String, String)}.
+     *
+     * @param utf8
+     *            the value of the attribute in modified UTF-8, without a length
+     */
+    public void attribute(String uri, String localName, String name, byte[] utf8, int start, int length)
+            throws SAXException {
+        try {
+            tempABVS.reset();
+            DataOutput tempOut = tempABVS.getDataOutput();
+            tempOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+            textGAInternal.reset();
+            utf8bInternal.reset(textGAInternal, length);
+            utf8bInternal.appendUtf8Bytes(utf8, start, length);
+            utf8bInternal.finish();
+            tempOut.write(textGAInternal.getByteArray(), 0, textGAInternal.getLength());
+            addAttribute(uri, localName, name);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+    }
+
+    private void addAttribute(String uri, String localName, String name) throws IOException {
+        int aIdx = name.indexOf(':');
+        int aPrefixCode = db.lookup(aIdx < 0 ? "" : name.substring(0, aIdx));
+        int aLocalNameCode = db.lookup(localName);
+        int aUriCode = db.lookup(uri);
+        ElementNodeBuilder enb = peekENBStackTop();
+        enb.startAttribute(anb);
+        anb.setName(aUriCode, aLocalNameCode, aPrefixCode);
+        if (attachTypes) {
+            int typeUriCode = db.lookup(XQueryConstants.XS_NSURI);
+            int typeLocalNameCode = db.lookup(BuiltinTypeQNames.UNTYPED_ATOMIC_STR);
+            int typePrefixCode = db.lookup(XQueryConstants.XS_PREFIX);
+            anb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
+        }
+        if (createNodeIds) {
+            anb.setLocalNodeId(nodeIdCounter++);
+        }
+        anb.setValue(tempABVS);
+        enb.endAttribute(anb);
+    }
+
+    /**
+     * Ends the attributes of the element started by
+     * {@link #startElementNode(String, String, String)}.
+     */
+    public void endStartElement() throws SAXException {
+        try {
+            ElementNodeBuilder enb = peekENBStackTop();
             enb.endAttributeChunk();
             enb.startChildrenChunk();
-            enbStack.add(enb);
         } catch (IOException e) {
             e.printStackTrace();
             throw new SAXException(e);
@@ -398,6 +575,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
             return;
         }
         try {
+            typeHint = -1;
             flushText();
             startChildInParent(cnb);
             if (createNodeIds) {
@@ -415,6 +593,32 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
     }
 
+    /**
+     * Adds a comment given in modified UTF-8, without a length.
+     */
+    public void comment(byte[] utf8, int start, int length) throws SAXException {
+        if (skipping) {
+            return;
+        }
+        try {
+            typeHint = -1;
+            flushText();
+            startChildInParent(cnb);
+            if (createNodeIds) {
+                cnb.setLocalNodeId(nodeIdCounter++);
+            }
+            utf8b.appendUtf8Bytes(utf8, start, length);
+            utf8b.finish();
+            cnb.setValue(textGA);
+            endChildInParent(cnb);
+            textGA.reset();
+            utf8b.reset(textGA, STRING_EXPECTED_LENGTH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+    }
+
     private void appendCharArray(char[] ch, int start, int length) throws IOException {
         for (int i = 0; i < length; ++i) {
             utf8b.appendChar(ch[i + start]);
@@ -423,13 +627,18 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
 
     protected void flushText() throws IOException {
         if (pendingText) {
-            peekENBStackTop().startChild(tnb);
-            if (createNodeIds) {
-                tnb.setLocalNodeId(nodeIdCounter++);
-            }
             utf8b.finish();
-            tnb.setValue(textGA);
-            peekENBStackTop().endChild(tnb);
+            if (typeHint >= 0 && typeHintCaster.cast(typeHint, textGA.getByteArray(), 0, textGA.getLength(),
+                    typedValueABVS)) {
+                peekENBStackTop().addChild(typedValueABVS);
+            } else {
+                peekENBStackTop().startChild(tnb);
+                if (createNodeIds) {
+                    tnb.setLocalNodeId(nodeIdCounter++);
+                }
+                tnb.setValue(textGA);
+                peekENBStackTop().endChild(tnb);
+            }
             textGA.reset();
             utf8b.reset(textGA, STRING_EXPECTED_LENGTH);
             pendingText = false;
@@ -473,7 +682,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
         out.write(header);
         if (createNodeIds) {
-            out.writeInt(nodeIdProvider.getId());
+            out.writeLong(nodeIdProvider.getId());
         }
         db.writeFromCache(tempABVS);
         out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
@@ -494,7 +703,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
         out.write(header);
         if (createNodeIds) {
-            out.writeInt(nodeIdProvider.getId());
+            out.writeLong(nodeIdProvider.getId());
         }
         db.writeFromCache(abvs);
         out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
@@ -578,6 +787,20 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         return sb.toString();
     }
 
+    /**
+     * Tells if the element filter applies to the elements being built.
+     */
+    private boolean isFiltering() {
+        return elementFilter != null && subElement != null;
+    }
+
+    /**
+     * Tells if the type hints apply to the elements being built.
+     */
+    private boolean isTyping() {
+        return typeHintCaster != null && subElement != null;
+    }
+
     /**
      * Determines if the correct path step is active.
      */
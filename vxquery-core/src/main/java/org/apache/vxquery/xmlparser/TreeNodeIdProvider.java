@@ -16,31 +16,57 @@
  */
 package org.apache.vxquery.xmlparser;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the ids of the node trees of a partition. An id holds the partition in its upper 16 bits, followed by
+ * the data source scan and a counter in the remaining 48 bits, so the counter does not wrap around on collections
+ * with many documents.
+ *
+ * The highest of the 48 bits marks the trees of fn:doc and the index reader. Their counter is shared by all of these
+ * providers in the JVM, so two doc() calls of a job, or of two jobs, never hand out the same tree id and
+ * never clash with the ids of a collection scan.
+ */
 public class TreeNodeIdProvider implements ITreeNodeIdProvider {
+    private static final int COUNTER_BITS = 48;
+    private static final int SCAN_BITS = COUNTER_BITS - 1;
+    private static final long DOCUMENT_TREE_BIT = 1L << SCAN_BITS;
+    private static final AtomicLong DOCUMENT_COUNTER = new AtomicLong();
 
     private final short partitionDataSource;
     private final short dataSouceScanId;
     private final byte dataSourceBits;
-    private short currentId;
+    private final boolean documents;
+    private long currentId;
 
     public TreeNodeIdProvider(short partitionDataSource, short dataSouceScanId, short totalDataSources) {
         this.partitionDataSource = partitionDataSource;
         this.dataSouceScanId = dataSouceScanId;
         this.dataSourceBits = getBitsNeeded(totalDataSources);
+        documents = false;
         currentId = 0;
     }
 
+    /**
+     * Creates a provider for the trees that fn:doc and the index reader build outside of a collection scan.
+     */
     public TreeNodeIdProvider(short partition) {
         this.partitionDataSource = partition;
         dataSouceScanId = 0;
         dataSourceBits = 0;
+        documents = true;
         currentId = 0;
     }
 
-    public int getId() {
-        int p = partitionDataSource;
-        int dssi = dataSouceScanId;
-        return (p << 16) | (dssi << (16 - dataSourceBits)) | currentId++;
+    @Override
+    public long getId() {
+        long p = partitionDataSource;
+        if (documents) {
+            long counter = DOCUMENT_COUNTER.getAndIncrement() & (DOCUMENT_TREE_BIT - 1);
+            return (p << COUNTER_BITS) | DOCUMENT_TREE_BIT | counter;
+        }
+        long dssi = dataSouceScanId;
+        return (p << COUNTER_BITS) | (dssi << (SCAN_BITS - dataSourceBits)) | currentId++;
     }
 
     private byte getBitsNeeded(int number) {
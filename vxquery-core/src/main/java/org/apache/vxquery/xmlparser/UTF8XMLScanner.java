@@ -0,0 +1,829 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Scans an XML document held in memory as UTF-8 bytes and passes it to a
+ * {@link SAXContentHandler}. Text, attribute values and comments are handed to
+ * the node builders as bytes, without being decoded to UTF-16 first. Names are
+ * decoded once per distinct name and document.
+ * The scanner follows the events a namespace aware SAX parser reports, but it
+ * does not read document type declarations or other encodings than UTF-8. Use
+ * {@link #isSupported(byte[], int, int)} to find out if a document has to be
+ * parsed by SAX instead.
+ */
+public class UTF8XMLScanner {
+    private static final String XML_PREFIX = "xml";
+    private static final String XML_NS_URI = "http://www.w3.org/XML/1998/namespace";
+    private static final String XMLNS_PREFIX = "xmlns";
+    private static final byte[] LINE_FEED = { '\n' };
+    private static final byte[] XML_DECLARATION = bytes("<?xml");
+    private static final byte[] COMMENT_START = bytes("<!--");
+    private static final byte[] COMMENT_END = bytes("-->");
+    private static final byte[] PI_START = bytes("<?");
+    private static final byte[] PI_END = bytes("?>");
+    private static final byte[] CDATA_START = bytes("<![CDATA[");
+    private static final byte[] CDATA_END = bytes("]]>");
+    private static final byte[] DOCTYPE_START = bytes("<!DOCTYPE");
+    private static final byte[] ENCODING = bytes("encoding");
+    /** Names kept between documents, the table is cleared when it grows larger. */
+    private static final int MAX_NAMES = 4096;
+
+    private final SAXContentHandler handler;
+    private final NameTable names = new NameTable();
+    private final char[] chars = new char[2];
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+
+    // Open elements
+    private Name[] elementNames = new Name[16];
+    private String[] elementUris = new String[16];
+    private int[] namespaceMarks = new int[16];
+    private int depth;
+
+    // Namespace declarations in scope
+    private String[] nsPrefixes = new String[16];
+    private String[] nsUris = new String[16];
+    private int nsCount;
+
+    // Attributes of the current start tag, and the normalized text of attribute values and comments
+    private Name[] attributeNames = new Name[8];
+    private int[] attributeStarts = new int[8];
+    private int[] attributeEnds = new int[8];
+    private int attributeCount;
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    public UTF8XMLScanner(SAXContentHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * @return false if the document declares a document type or an encoding other
+     *         than UTF-8, and must be parsed by SAX
+     */
+    public static boolean isSupported(byte[] buf, int start, int end) {
+        if (end - start >= 2 && ((buf[start] == (byte) 0xFE && buf[start + 1] == (byte) 0xFF)
+                || (buf[start] == (byte) 0xFF && buf[start + 1] == (byte) 0xFE) || buf[start] == 0
+                || buf[start + 1] == 0)) {
+            // UTF-16 or UTF-32
+            return false;
+        }
+        int p = skipByteOrderMark(buf, start, end);
+        if (startsWith(buf, p, end, XML_DECLARATION) && p + 5 < end && isWhitespace(buf[p + 5])) {
+            int declarationEnd = indexOf(buf, p, end, PI_END);
+            if (declarationEnd < 0) {
+                return true;
+            }
+            int encoding = indexOf(buf, p, declarationEnd, ENCODING);
+            if (encoding >= 0) {
+                int quote = encoding + ENCODING.length;
+                while (quote < declarationEnd && buf[quote] != '"' && buf[quote] != '\'') {
+                    ++quote;
+                }
+                int valueEnd = quote + 1;
+                while (valueEnd < declarationEnd && buf[valueEnd] != buf[quote]) {
+                    ++valueEnd;
+                }
+                String name = valueEnd < declarationEnd
+                        ? new String(buf, quote + 1, valueEnd - quote - 1, StandardCharsets.US_ASCII) : "";
+                if (!"UTF-8".equalsIgnoreCase(name) && !"UTF8".equalsIgnoreCase(name)
+                        && !"US-ASCII".equalsIgnoreCase(name) && !"ASCII".equalsIgnoreCase(name)) {
+                    return false;
+                }
+            }
+            p = declarationEnd + PI_END.length;
+        }
+        while (p < end) {
+            if (isWhitespace(buf[p])) {
+                ++p;
+            } else if (startsWith(buf, p, end, COMMENT_START)) {
+                p = indexOf(buf, p + COMMENT_START.length, end, COMMENT_END);
+                if (p < 0) {
+                    return true;
+                }
+                p += COMMENT_END.length;
+            } else if (startsWith(buf, p, end, DOCTYPE_START)) {
+                return false;
+            } else if (startsWith(buf, p, end, PI_START)) {
+                p = indexOf(buf, p + PI_START.length, end, PI_END);
+                if (p < 0) {
+                    return true;
+                }
+                p += PI_END.length;
+            } else {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a document for which {@link #isSupported(byte[], int, int)} is true.
+     */
+    public void parse(byte[] buf, int start, int end) throws SAXException {
+        this.buf = buf;
+        this.end = end;
+        pos = skipByteOrderMark(buf, start, end);
+        depth = 0;
+        nsCount = 0;
+        if (names.size() > MAX_NAMES) {
+            names.clear();
+        }
+        try {
+            handler.startDocument();
+            if (startsWith(buf, pos, end, XML_DECLARATION) && pos + 5 < end && isWhitespace(buf[pos + 5])) {
+                pos = indexOf(buf, pos, end, PI_END);
+                if (pos < 0) {
+                    throw error("The XML declaration must end with \"?>\".");
+                }
+                pos += PI_END.length;
+            }
+            boolean rootSeen = false;
+            while (true) {
+                skipWhitespace();
+                if (pos >= end) {
+                    break;
+                }
+                if (startsWith(buf, pos, end, COMMENT_START)) {
+                    scanComment();
+                } else if (startsWith(buf, pos, end, PI_START)) {
+                    scanProcessingInstruction();
+                } else if (!rootSeen && buf[pos] == '<' && pos + 1 < end && buf[pos + 1] != '!'
+                        && buf[pos + 1] != '/') {
+                    scanElement();
+                    rootSeen = true;
+                } else {
+                    throw error(rootSeen ? "Content is not allowed in trailing section."
+                            : "Content is not allowed in prolog.");
+                }
+            }
+            if (!rootSeen) {
+                throw error("Premature end of file.");
+            }
+            handler.endDocument();
+        } finally {
+            this.buf = null;
+        }
+    }
+
+    private void scanElement() throws SAXException {
+        scanStartTag();
+        while (depth > 0) {
+            scanText();
+            if (pos + 1 >= end) {
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            byte next = buf[pos + 1];
+            if (next == '/') {
+                scanEndTag();
+            } else if (next == '?') {
+                scanProcessingInstruction();
+            } else if (startsWith(buf, pos, end, COMMENT_START)) {
+                scanComment();
+            } else if (startsWith(buf, pos, end, CDATA_START)) {
+                scanCData();
+            } else if (next == '!') {
+                throw error("The markup in the document following the root element must be well-formed.");
+            } else {
+                scanStartTag();
+            }
+        }
+    }
+
+    private void scanStartTag() throws SAXException {
+        ++pos;
+        Name name = scanName();
+        int nsMark = nsCount;
+        attributeCount = 0;
+        scratchLength = 0;
+        boolean empty;
+        while (true) {
+            boolean whitespace = skipWhitespace();
+            if (pos >= end) {
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            byte b = buf[pos];
+            if (b == '>') {
+                ++pos;
+                empty = false;
+                break;
+            } else if (b == '/') {
+                expect('/');
+                expect('>');
+                empty = true;
+                break;
+            } else if (!whitespace) {
+                throw error("Element type \"" + name.qName
+                        + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+            }
+            Name attributeName = scanName();
+            skipWhitespace();
+            expect('=');
+            skipWhitespace();
+            int valueStart = scratchLength;
+            scanAttributeValue(attributeName);
+            if (attributeName.prefix.isEmpty() && attributeName.localName.equals(XMLNS_PREFIX)) {
+                declareNamespace("", valueStart);
+            } else if (attributeName.prefix.equals(XMLNS_PREFIX)) {
+                declareNamespace(attributeName.localName, valueStart);
+            } else {
+                addAttribute(attributeName, valueStart);
+            }
+        }
+
+        String uri = resolve(name, true);
+        pushElement(name, uri, nsMark);
+        if (handler.startElementNode(uri, name.localName, name.qName)) {
+            for (int i = 0; i < attributeCount; ++i) {
+                Name attributeName = attributeNames[i];
+                handler.attribute(resolve(attributeName, false), attributeName.localName, attributeName.qName,
+                        scratch, attributeStarts[i], attributeEnds[i] - attributeStarts[i]);
+            }
+            handler.endStartElement();
+        } else if (!empty && handler.isSubtreeSkipped()) {
+            skipContent();
+            empty = true;
+        }
+        if (empty) {
+            endElement();
+        }
+    }
+
+    /**
+     * Moves past the content and the end tag of an element the handler does not
+     * need. Only the nesting of the tags is followed, so markup inside the skipped
+     * content is not checked.
+     */
+    private void skipContent() throws SAXException {
+        int level = 1;
+        while (true) {
+            while (pos < end && buf[pos] != '<') {
+                ++pos;
+            }
+            if (pos + 1 >= end) {
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            byte next = buf[pos + 1];
+            int stop;
+            if (next == '!') {
+                byte[] close = startsWith(buf, pos, end, CDATA_START) ? CDATA_END : COMMENT_END;
+                stop = indexOf(buf, pos + 2, end, close);
+                if (stop >= 0) {
+                    stop += close.length;
+                }
+            } else if (next == '?') {
+                stop = indexOf(buf, pos + 2, end, PI_END);
+                if (stop >= 0) {
+                    stop += PI_END.length;
+                }
+            } else {
+                stop = skipTag(pos + 1);
+                if (stop > 0 && next == '/') {
+                    --level;
+                } else if (stop > 0 && buf[stop - 2] != '/') {
+                    ++level;
+                }
+            }
+            if (stop < 0) {
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            pos = stop;
+            if (level == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the offset after the '>' ending a tag, ignoring any '>' in attribute values
+     */
+    private int skipTag(int p) {
+        byte quote = 0;
+        for (; p < end; ++p) {
+            byte b = buf[p];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return p + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void scanEndTag() throws SAXException {
+        pos += 2;
+        Name name = scanName();
+        skipWhitespace();
+        expect('>');
+        if (name != elementNames[depth - 1]) {
+            throw error("The element type \"" + elementNames[depth - 1].qName
+                    + "\" must be terminated by the matching end-tag \"</" + elementNames[depth - 1].qName + ">\".");
+        }
+        endElement();
+    }
+
+    private void endElement() throws SAXException {
+        --depth;
+        Name name = elementNames[depth];
+        handler.endElement(elementUris[depth], name.localName, name.qName);
+        nsCount = namespaceMarks[depth];
+    }
+
+    private void pushElement(Name name, String uri, int nsMark) {
+        if (depth == elementNames.length) {
+            elementNames = Arrays.copyOf(elementNames, depth * 2);
+            elementUris = Arrays.copyOf(elementUris, depth * 2);
+            namespaceMarks = Arrays.copyOf(namespaceMarks, depth * 2);
+        }
+        elementNames[depth] = name;
+        elementUris[depth] = uri;
+        namespaceMarks[depth] = nsMark;
+        ++depth;
+    }
+
+    private void addAttribute(Name name, int valueStart) {
+        if (attributeCount == attributeNames.length) {
+            attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+            attributeStarts = Arrays.copyOf(attributeStarts, attributeCount * 2);
+            attributeEnds = Arrays.copyOf(attributeEnds, attributeCount * 2);
+        }
+        attributeNames[attributeCount] = name;
+        attributeStarts[attributeCount] = valueStart;
+        attributeEnds[attributeCount] = scratchLength;
+        ++attributeCount;
+    }
+
+    private void declareNamespace(String prefix, int valueStart) {
+        String uri = names.get(scratch, valueStart, scratchLength).qName;
+        scratchLength = valueStart;
+        if (nsCount == nsPrefixes.length) {
+            nsPrefixes = Arrays.copyOf(nsPrefixes, nsCount * 2);
+            nsUris = Arrays.copyOf(nsUris, nsCount * 2);
+        }
+        nsPrefixes[nsCount] = prefix;
+        nsUris[nsCount] = uri;
+        ++nsCount;
+    }
+
+    /**
+     * An unprefixed element is in the default namespace, an unprefixed attribute
+     * is in no namespace.
+     */
+    private String resolve(Name name, boolean element) throws SAXException {
+        String prefix = name.prefix;
+        if (prefix.isEmpty() && !element) {
+            return "";
+        }
+        if (prefix.equals(XML_PREFIX)) {
+            return XML_NS_URI;
+        }
+        for (int i = nsCount - 1; i >= 0; --i) {
+            if (nsPrefixes[i].equals(prefix)) {
+                return nsUris[i];
+            }
+        }
+        if (prefix.isEmpty()) {
+            return "";
+        }
+        throw error("The prefix \"" + prefix + "\" for " + (element ? "element" : "attribute") + " \""
+                + name.qName + "\" is not bound.");
+    }
+
+    /**
+     * Passes the text up to the next markup to the handler.
+     */
+    private void scanText() throws SAXException {
+        while (pos < end) {
+            int start = pos;
+            while (pos < end && buf[pos] != '<' && buf[pos] != '&') {
+                ++pos;
+            }
+            characters(start, pos);
+            if (pos >= end || buf[pos] == '<') {
+                return;
+            }
+            int length = scanReference();
+            handler.characters(chars, 0, length);
+        }
+    }
+
+    private void scanCData() throws SAXException {
+        int start = pos + CDATA_START.length;
+        int stop = indexOf(buf, start, end, CDATA_END);
+        if (stop < 0) {
+            throw error("The CDATA section must end with \"]]>\".");
+        }
+        characters(start, stop);
+        pos = stop + CDATA_END.length;
+    }
+
+    /**
+     * Passes text without references to the handler with line ends normalized and
+     * supplementary characters written as surrogate pairs.
+     */
+    private void characters(int start, int stop) throws SAXException {
+        int runStart = start;
+        for (int i = start; i < stop; ++i) {
+            byte b = buf[i];
+            if (b == '\r') {
+                if (i > runStart) {
+                    handler.characters(buf, runStart, i - runStart);
+                }
+                handler.characters(LINE_FEED, 0, 1);
+                if (i + 1 < stop && buf[i + 1] == '\n') {
+                    ++i;
+                }
+                runStart = i + 1;
+            } else if ((b & 0xF8) == 0xF0) {
+                if (i > runStart) {
+                    handler.characters(buf, runStart, i - runStart);
+                }
+                handler.characters(chars, 0, decodeSupplementary(i, stop));
+                i += 3;
+                runStart = i + 1;
+            }
+        }
+        if (stop > runStart) {
+            handler.characters(buf, runStart, stop - runStart);
+        }
+    }
+
+    private void scanComment() throws SAXException {
+        int start = pos + COMMENT_START.length;
+        int stop = indexOf(buf, start, end, COMMENT_END);
+        if (stop < 0) {
+            throw error("The comment must end with \"-->\".");
+        }
+        scratchLength = 0;
+        for (int i = start; i < stop; ++i) {
+            byte b = buf[i];
+            if (b == '\r') {
+                append((byte) '\n');
+                if (i + 1 < stop && buf[i + 1] == '\n') {
+                    ++i;
+                }
+            } else if ((b & 0xF8) == 0xF0) {
+                appendChars(decodeSupplementary(i, stop));
+                i += 3;
+            } else {
+                append(b);
+            }
+        }
+        handler.comment(scratch, 0, scratchLength);
+        pos = stop + COMMENT_END.length;
+    }
+
+    private void scanProcessingInstruction() throws SAXException {
+        pos += PI_START.length;
+        Name target = scanName();
+        if (target.qName.equalsIgnoreCase(XML_PREFIX)) {
+            throw error("The processing instruction target matching \"[xX][mM][lL]\" is not allowed.");
+        }
+        int stop = indexOf(buf, pos, end, PI_END);
+        if (stop < 0) {
+            throw error("The processing instruction must end with \"?>\".");
+        }
+        if (pos < stop && !isWhitespace(buf[pos])) {
+            throw error("White space is required between the processing instruction target and data.");
+        }
+        skipWhitespace();
+        String data = new String(buf, pos, stop - pos, StandardCharsets.UTF_8);
+        handler.processingInstruction(target.qName, data.replace("\r\n", "\n").replace('\r', '\n'));
+        pos = stop + PI_END.length;
+    }
+
+    /**
+     * Appends an attribute value to the scratch buffer, normalized the way a
+     * parser without a document type does: references are replaced and white
+     * space characters become spaces.
+     */
+    private void scanAttributeValue(Name name) throws SAXException {
+        byte quote = pos < end ? buf[pos] : 0;
+        if (quote != '"' && quote != '\'') {
+            throw error("Open quote is expected for attribute \"" + name.qName + "\".");
+        }
+        ++pos;
+        while (true) {
+            if (pos >= end) {
+                throw error("XML document structures must start and end within the same entity.");
+            }
+            byte b = buf[pos];
+            if (b == quote) {
+                ++pos;
+                return;
+            } else if (b == '<') {
+                throw error("The value of attribute \"" + name.qName + "\" must not contain the '<' character.");
+            } else if (b == '&') {
+                appendChars(scanReference());
+            } else if (b == '\r') {
+                append((byte) ' ');
+                ++pos;
+                if (pos < end && buf[pos] == '\n') {
+                    ++pos;
+                }
+            } else if (b == '\n' || b == '\t') {
+                append((byte) ' ');
+                ++pos;
+            } else if ((b & 0xF8) == 0xF0) {
+                appendChars(decodeSupplementary(pos, end));
+                pos += 4;
+            } else {
+                append(b);
+                ++pos;
+            }
+        }
+    }
+
+    /**
+     * Reads a character or predefined entity reference into {@link #chars}.
+     *
+     * @return the number of chars of the reference
+     */
+    private int scanReference() throws SAXException {
+        int start = ++pos;
+        while (pos < end && buf[pos] != ';') {
+            if (buf[pos] == '<' || buf[pos] == '&' || isWhitespace(buf[pos])) {
+                throw error("The entity name must immediately follow the '&' in the entity reference.");
+            }
+            ++pos;
+        }
+        if (pos >= end) {
+            throw error("The reference must end with the ';' delimiter.");
+        }
+        int stop = pos++;
+        int length = stop - start;
+        if (length > 1 && buf[start] == '#') {
+            int radix = 10;
+            int i = start + 1;
+            if (buf[i] == 'x') {
+                radix = 16;
+                ++i;
+            }
+            int codePoint = 0;
+            if (i == stop) {
+                throw error("A character reference must have digits.");
+            }
+            for (; i < stop; ++i) {
+                int digit = Character.digit(buf[i], radix);
+                if (digit < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw error("A character reference is not valid.");
+                }
+                codePoint = codePoint * radix + digit;
+            }
+            if (!isXmlChar(codePoint)) {
+                throw error("Character reference \"&#" + codePoint + "\" is an invalid XML character.");
+            }
+            return Character.toChars(codePoint, chars, 0);
+        }
+        if (length == 2 && buf[start] == 'l' && buf[start + 1] == 't') {
+            chars[0] = '<';
+        } else if (length == 2 && buf[start] == 'g' && buf[start + 1] == 't') {
+            chars[0] = '>';
+        } else if (length == 3 && buf[start] == 'a' && buf[start + 1] == 'm' && buf[start + 2] == 'p') {
+            chars[0] = '&';
+        } else if (length == 4 && buf[start] == 'a' && buf[start + 1] == 'p' && buf[start + 2] == 'o'
+                && buf[start + 3] == 's') {
+            chars[0] = '\'';
+        } else if (length == 4 && buf[start] == 'q' && buf[start + 1] == 'u' && buf[start + 2] == 'o'
+                && buf[start + 3] == 't') {
+            chars[0] = '"';
+        } else {
+            throw error("The entity \"" + new String(buf, start, length, StandardCharsets.UTF_8)
+                    + "\" was referenced, but not declared.");
+        }
+        return 1;
+    }
+
+    /**
+     * Decodes a four byte UTF-8 sequence into a surrogate pair in {@link #chars}.
+     */
+    private int decodeSupplementary(int i, int stop) throws SAXException {
+        if (i + 3 >= stop) {
+            throw error("Invalid byte 1 of 4-byte UTF-8 sequence.");
+        }
+        int codePoint = ((buf[i] & 0x07) << 18) | ((buf[i + 1] & 0x3F) << 12) | ((buf[i + 2] & 0x3F) << 6)
+                | (buf[i + 3] & 0x3F);
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT || codePoint > Character.MAX_CODE_POINT) {
+            throw error("Invalid 4-byte UTF-8 sequence.");
+        }
+        return Character.toChars(codePoint, chars, 0);
+    }
+
+    private Name scanName() throws SAXException {
+        int start = pos;
+        while (pos < end && isNameByte(buf[pos])) {
+            ++pos;
+        }
+        if (pos == start) {
+            throw error("A name was expected.");
+        }
+        return names.get(buf, start, pos);
+    }
+
+    private boolean skipWhitespace() {
+        int start = pos;
+        while (pos < end && isWhitespace(buf[pos])) {
+            ++pos;
+        }
+        return pos > start;
+    }
+
+    private void expect(char c) throws SAXException {
+        if (pos >= end || buf[pos] != c) {
+            throw error("\"" + c + "\" was expected.");
+        }
+        ++pos;
+    }
+
+    /**
+     * Appends chars to the scratch buffer in modified UTF-8.
+     */
+    private void appendChars(int length) {
+        for (int i = 0; i < length; ++i) {
+            char c = chars[i];
+            if (c >= 0x0001 && c <= 0x007F) {
+                append((byte) c);
+            } else if (c > 0x07FF) {
+                append((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                append((byte) (0x80 | ((c >> 6) & 0x3F)));
+                append((byte) (0x80 | (c & 0x3F)));
+            } else {
+                append((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                append((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void append(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratchLength * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private SAXException error(String message) {
+        return new SAXException(message + " (byte offset " + pos + ")");
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Bytes of non ASCII characters are all accepted in names.
+     */
+    private static boolean isNameByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == ':' || b == '_'
+                || b == '-' || b == '.' || b < 0;
+    }
+
+    private static boolean isXmlChar(int c) {
+        return c == 0x9 || c == 0xA || c == 0xD || (c >= 0x20 && c <= 0xD7FF) || (c >= 0xE000 && c <= 0xFFFD)
+                || (c >= 0x10000 && c <= 0x10FFFF);
+    }
+
+    private static int skipByteOrderMark(byte[] buf, int start, int end) {
+        if (end - start >= 3 && buf[start] == (byte) 0xEF && buf[start + 1] == (byte) 0xBB
+                && buf[start + 2] == (byte) 0xBF) {
+            return start + 3;
+        }
+        return start;
+    }
+
+    private static boolean startsWith(byte[] buf, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (buf[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, int start, int end, byte[] target) {
+        byte first = target[0];
+        for (int i = start; i <= end - target.length; ++i) {
+            if (buf[i] == first && startsWith(buf, i, end, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A decoded name. The same bytes always give the same instance, so names are
+     * compared by reference.
+     */
+    private static final class Name {
+        final byte[] bytes;
+        final int hash;
+        final String qName;
+        final String prefix;
+        final String localName;
+
+        Name(byte[] bytes, int hash) {
+            this.bytes = bytes;
+            this.hash = hash;
+            qName = new String(bytes, StandardCharsets.UTF_8);
+            int colon = qName.indexOf(':');
+            prefix = colon < 0 ? "" : qName.substring(0, colon);
+            localName = colon < 0 ? qName : qName.substring(colon + 1);
+        }
+    }
+
+    /**
+     * Open addressing hash table from the bytes of a name to its {@link Name}.
+     */
+    private static final class NameTable {
+        private Name[] table = new Name[256];
+        private int size;
+
+        Name get(byte[] buf, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; ++i) {
+                hash = 31 * hash + buf[i];
+            }
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            Name name;
+            while ((name = table[slot]) != null) {
+                if (name.hash == hash && equals(name.bytes, buf, start, end)) {
+                    return name;
+                }
+                slot = (slot + 1) & mask;
+            }
+            name = new Name(Arrays.copyOfRange(buf, start, end), hash);
+            table[slot] = name;
+            if (++size * 2 > table.length) {
+                rehash();
+            }
+            return name;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            Arrays.fill(table, null);
+            size = 0;
+        }
+
+        private void rehash() {
+            Name[] old = table;
+            table = new Name[old.length * 2];
+            int mask = table.length - 1;
+            for (Name name : old) {
+                if (name != null) {
+                    int slot = name.hash & mask;
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = name;
+                }
+            }
+        }
+
+        private static boolean equals(byte[] bytes, byte[] buf, int start, int end) {
+            if (bytes.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; ++i) {
+                if (bytes[i] != buf[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
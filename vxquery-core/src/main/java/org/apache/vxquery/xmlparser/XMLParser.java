@@ -14,14 +14,16 @@
  */
 package org.apache.vxquery.xmlparser;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,15 +47,29 @@ public class XMLParser implements IParser {
     final InputSource in;
     final String nodeId;
     final int bufferSize;
+    final UTF8XMLScanner scanner;
+    final DocumentBuffer documentBuffer;
 
     public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId) throws HyracksDataException {
-        this(attachTypes, idProvider, nodeId, null, null, null);
+        this(attachTypes, idProvider, nodeId, null, null, null, null, null, new DocumentBuffer());
     }
 
+    /**
+     * @param elementPredicates
+     *            predicates pushed into the scan that the elements found by the child path steps must pass
+     * @param elementTypeHints
+     *            types pushed into the scan that the text of elements below the scanned elements is stored as
+     * @param documentBuffer
+     *            buffer for the bytes of each document, which may be shared with the other parsers of the task
+     */
     public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId, IFrameFieldAppender appender,
-            List<Integer> childSeq, StaticContext staticContext) throws HyracksDataException {
+            List<Integer> childSeq, List<ElementPredicate> elementPredicates, List<ElementTypeHint> elementTypeHints,
+            StaticContext staticContext, DocumentBuffer documentBuffer) throws HyracksDataException {
         bufferSize = Integer.parseInt(System.getProperty("vxquery.buffer_size", "-1"));
+        boolean utf8Scanner = "utf8".equalsIgnoreCase(System.getProperty("vxquery.xml_parser", "sax"));
+        int sharedDictionarySize = Integer.parseInt(System.getProperty("vxquery.shared_dictionary_size", "0"));
         this.nodeId = nodeId;
+        this.documentBuffer = documentBuffer;
         try {
             parser = XMLReaderFactory.createXMLReader();
             if (appender == null) {
@@ -64,10 +80,18 @@ public class XMLParser implements IParser {
                     childSequenceTypes.add(staticContext.lookupSequenceType(typeCode));
                 }
                 handler = new SAXContentHandler(attachTypes, idProvider, appender, childSequenceTypes);
+                if (!elementPredicates.isEmpty()) {
+                    handler.setElementFilter(new ElementPredicateFilter(elementPredicates, staticContext));
+                }
+                if (!elementTypeHints.isEmpty()) {
+                    handler.setTypeHintCaster(new ElementTypeHintCaster(elementTypeHints, staticContext));
+                }
             }
+            handler.setSharedDictionarySize(sharedDictionarySize);
             parser.setContentHandler(handler);
             parser.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
             in = new InputSource();
+            scanner = utf8Scanner ? new UTF8XMLScanner(handler) : null;
         } catch (Exception e) {
             throw new HyracksDataException(e.toString());
         }
@@ -86,19 +110,27 @@ public class XMLParser implements IParser {
         return 0;
     }
 
-    public void parseElements(File file, IFrameWriter writer, int tupleIndex) throws HyracksDataException {
+    public int parse(InputStream input, ArrayBackedValueStorage abvs) throws HyracksDataException {
         try {
-            Reader input;
-            if (bufferSize > 0) {
-                input = new BufferedReader(new InputStreamReader(new FileInputStream(file)), bufferSize);
+            readAndParse(input);
+            handler.writeDocument(abvs);
+            input.close();
+        } catch (Exception e) {
+            HyracksDataException hde = new HyracksDataException(e, nodeId);
+            throw hde;
+        }
+        return 0;
+    }
+
+    public void parseElements(File file, IFrameWriter writer, int tupleIndex) throws HyracksDataException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            handler.setupElementWriter(writer, tupleIndex);
+            if (documentBuffer.read(channel)) {
+                parseBuffer();
             } else {
-                input = new InputStreamReader(new FileInputStream(file));
+                parseBytes(documentBuffer.remainder(openStream(channel)));
             }
-            in.setCharacterStream(input);
-            handler.setupElementWriter(writer, tupleIndex);
-            parser.parse(in);
-            input.close();
-        } catch (FileNotFoundException e) {
+        } catch (NoSuchFileException e) {
             HyracksDataException hde = new VXQueryFileNotFoundException(e, file, nodeId);
             throw hde;
         } catch (SAXException e) {
@@ -112,21 +144,67 @@ public class XMLParser implements IParser {
 
     public void parseHDFSElements(InputStream inputStream, IFrameWriter writer, FrameTupleAccessor fta, int tupleIndex)
             throws HyracksDataException {
+        parseHDFSElements(inputStream, -1, writer, fta, tupleIndex);
+    }
+
+    /**
+     * @param length
+     *            length of the document, or -1 if it is not known
+     */
+    public void parseHDFSElements(InputStream inputStream, long length, IFrameWriter writer, FrameTupleAccessor fta,
+            int tupleIndex) throws HyracksDataException {
         try {
-            Reader input;
-            if (bufferSize > 0) {
-                input = new BufferedReader(new InputStreamReader(inputStream), bufferSize);
+            handler.setupElementWriter(writer, tupleIndex);
+            if (documentBuffer.read(inputStream, length)) {
+                parseBuffer();
             } else {
-                input = new InputStreamReader(inputStream);
+                parseBytes(documentBuffer.remainder(inputStream));
             }
-            in.setCharacterStream(input);
-            handler.setupElementWriter(writer, tupleIndex);
-            parser.parse(in);
-            input.close();
+            inputStream.close();
         } catch (Exception e) {
             HyracksDataException hde = new HyracksDataException(e, nodeId);
             throw hde;
         }
     }
 
+    /**
+     * Parses the document in the {@link DocumentBuffer} with the
+     * {@link UTF8XMLScanner} if it is selected and supports the document, or
+     * with SAX.
+     */
+    private void parseBuffer() throws IOException, SAXException {
+        byte[] bytes = documentBuffer.getBytes();
+        int length = documentBuffer.getLength();
+        if (scanner != null && UTF8XMLScanner.isSupported(bytes, 0, length)) {
+            scanner.parse(bytes, 0, length);
+        } else {
+            parseBytes(new ByteArrayInputStream(bytes, 0, length));
+        }
+    }
+
+    /**
+     * Parses a document with SAX from its bytes.
+     */
+    private void parseBytes(InputStream input) throws IOException, SAXException {
+        in.setCharacterStream(null);
+        in.setByteStream(input);
+        parser.parse(in);
+    }
+
+    private void readAndParse(InputStream input) throws IOException, SAXException {
+        if (documentBuffer.read(input)) {
+            parseBuffer();
+        } else {
+            parseBytes(documentBuffer.remainder(input));
+        }
+    }
+
+    /**
+     * @return a stream over the rest of a file too large for the
+     *         {@link DocumentBuffer}, buffered if vxquery.buffer_size is set
+     */
+    private InputStream openStream(FileChannel channel) {
+        InputStream input = Channels.newInputStream(channel);
+        return bufferSize > 0 ? new BufferedInputStream(input, bufferSize) : input;
+    }
 }
@@ -69,6 +69,7 @@ import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.metadata.VXQueryMetadataProvider;
 import org.apache.vxquery.runtime.provider.VXQueryBinaryHashFunctionFactoryProvider;
 import org.apache.vxquery.runtime.provider.VXQueryBinaryHashFunctionFamilyProvider;
+import org.apache.vxquery.runtime.provider.VXQueryNormalizedKeyComputerFactoryProvider;
 import org.apache.vxquery.types.BuiltinTypeRegistry;
 import org.apache.vxquery.types.Quantifier;
 import org.apache.vxquery.types.SequenceType;
@@ -98,6 +99,8 @@ public class XMLQueryCompiler {
 
     private String[] nodeList;
 
+    private int availableProcessors;
+
     public XMLQueryCompiler(XQueryCompilationListener listener, Map<String, NodeControllerInfo> nodeControllerInfos,
             int frameSize, String hdfsConf) {
         this(listener, nodeControllerInfos, frameSize, -1, -1, -1, hdfsConf);
@@ -113,6 +116,7 @@ public class XMLQueryCompiler {
         this.listener = listener == null ? NoopXQueryCompilationListener.INSTANCE : listener;
         this.frameSize = frameSize;
         this.nodeControllerInfos = nodeControllerInfos;
+        this.availableProcessors = availableProcessors;
         setNodeList();
         this.hdfsConf = hdfsConf;
         HeuristicCompilerFactoryBuilder builder = new HeuristicCompilerFactoryBuilder(
@@ -162,6 +166,7 @@ public class XMLQueryCompiler {
         builder.setPrinterProvider(VXQueryPrinterFactoryProvider.INSTANCE);
         builder.setExpressionRuntimeProvider(new VXQueryExpressionRuntimeProvider());
         builder.setComparatorFactoryProvider(new VXQueryComparatorFactoryProvider());
+        builder.setNormalizedKeyComputerFactoryProvider(VXQueryNormalizedKeyComputerFactoryProvider.INSTANCE);
         builder.setBinaryBooleanInspectorFactory(new VXQueryBinaryBooleanInspectorFactory());
         builder.setBinaryIntegerInspectorFactory(new VXQueryBinaryIntegerInspectorFactory());
         builder.setExpressionTypeComputer(new IExpressionTypeComputer() {
@@ -230,7 +235,7 @@ public class XMLQueryCompiler {
         pprinter = new LogicalOperatorPrettyPrintVisitor(new AlgebricksAppendable(),
                 new VXQueryLogicalExpressionPrettyPrintVisitor(module.getModuleContext()));
         VXQueryMetadataProvider mdProvider = new VXQueryMetadataProvider(nodeList, ccb.getSourceFileMap(),
-                module.getModuleContext(), this.hdfsConf, nodeControllerInfos, collections);
+                module.getModuleContext(), this.hdfsConf, nodeControllerInfos, collections, availableProcessors);
         compiler = cFactory.createCompiler(module.getBody(), mdProvider, 0);
         listener.notifyTranslationResult(module);
         XMLQueryTypeChecker.typeCheckModule(module);
@@ -52,6 +52,9 @@ public final class XQueryConstants {
     public static final String LIBJN_PREFIX = "libjn";
     public static final String LIBJN_NSURI = "http://jsoniq.org/function-library";
 
+    public static final String OUTPUT_PREFIX = "output";
+    public static final String OUTPUT_NSURI = "http://www.w3.org/2010/xslt-xquery-serialization";
+
     public static final String JERR_PREFIX = "jerr";
     public static final String JERR_NSURI = "http://jsoniq.org/errors";
 
@@ -426,7 +426,7 @@ public class XMLQueryTranslator {
                     case OPTION_DECLARATION: {
                         OptionDeclNode node = (OptionDeclNode) d;
                         QName name = createQName(node.getName());
-                        moduleCtx.setOption(name, node.getValue());
+                        moduleCtx.setOption(name, unquote(node.getValue()));
                         break;
                     }
 
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.DictionaryBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the dictionary of a node tree.
+ * 1) String and UTF-8 lookups of a name give the same code
+ * 2) The hash table grows past its load factor
+ * 3) The written dictionary is sorted after incremental writes
+ */
+public class DictionaryBuilderTest {
+    private final DictionaryBuilder db = new DictionaryBuilder();
+    private final StringValueBuilder svb = new StringValueBuilder();
+    private final NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+
+    @Test
+    public void testStringAndUTF8Lookups() throws IOException {
+        String[] names = { "a", "catalog", "", "élément", "中文", "😀" };
+        for (int i = 0; i < names.length; ++i) {
+            Assert.assertEquals(names[i], i, db.lookup(names[i]));
+            Assert.assertEquals(names[i], i, db.lookup(utf8(names[i])));
+        }
+        // Names added through their UTF-8 bytes are found by their string as well.
+        int code = db.lookup(utf8("book"));
+        Assert.assertEquals(names.length, code);
+        Assert.assertEquals(code, db.lookup("book"));
+        Assert.assertEquals(names.length + 1, db.size());
+    }
+
+    @Test
+    public void testTableGrowth() throws IOException {
+        // The table starts with 64 entries and doubles whenever it is more than half full.
+        int count = 1000;
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(i, db.lookup("name" + i));
+        }
+        Assert.assertEquals(count, db.size());
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(i, db.lookup("name" + i));
+            Assert.assertEquals(i, db.lookup(utf8("name" + i)));
+        }
+        Assert.assertEquals(count, db.size());
+
+        db.reset();
+        Assert.assertEquals(0, db.size());
+        Assert.assertEquals(0, db.lookup("name999"));
+    }
+
+    @Test
+    public void testSortedAfterIncrementalWrites() throws IOException {
+        String[] first = { "m", "c", "x", "c2" };
+        String[] second = { "a", "z", "d", "m2", "é" };
+        for (String name : first) {
+            db.lookup(name);
+        }
+        assertDictionary(first);
+
+        String[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        for (String name : second) {
+            db.lookup(name);
+        }
+        assertDictionary(all);
+
+        // A lookup of a known name leaves the cached dictionary as it is.
+        db.lookup("x");
+        assertDictionary(all);
+    }
+
+    /**
+     * Write the dictionary into a node tree and check that each string has its code and that the sorted pointers
+     * are in order.
+     */
+    private void assertDictionary(String[] names) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK);
+        db.writeFromCache(abvs);
+        ntp.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+        Assert.assertEquals(names.length, ntp.getDictionaryEntryCount());
+
+        UTF8StringPointable string = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        for (int i = 0; i < names.length; ++i) {
+            ntp.getString(i, string);
+            Assert.assertEquals(names[i], string.toString());
+            // The lookup is a binary search over the sorted pointers.
+            Assert.assertEquals(names[i], i, ntp.lookupString(utf8(names[i])));
+        }
+        Assert.assertEquals(-1, ntp.lookupString(utf8("missing")));
+    }
+
+    private UTF8StringPointable utf8(String value) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        svb.write(value, abvs.getDataOutput());
+        UTF8StringPointable string = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        string.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+        return string;
+    }
+}
@@ -258,6 +258,71 @@ public class ObjectByteTest extends AbstractPointableTest {
         }
     }
 
+    @Test
+    public void testKeyDirectoryObject() {
+        // Build an object large enough for a key directory, with keys out of order and one key twice
+        int size = ObjectPointable.MIN_KEY_DIRECTORY_ENTRIES * 3;
+        UTF8StringPointable[] keys = new UTF8StringPointable[size];
+        TaggedValuePointable[] values = new TaggedValuePointable[size];
+        UTF8StringPointable duplicateKey = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        TaggedValuePointable duplicateValue = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        abvsResult.reset();
+        try {
+            ob.reset(abvsResult);
+            for (int i = 0; i < size; i++) {
+                keys[i] = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+                values[i] = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+                getTaggedValuePointable("key" + (size - i), false, keys[i]);
+                getTaggedValuePointable(i, values[i]);
+                ob.addItem(keys[i], values[i]);
+            }
+            getTaggedValuePointable("key" + size, false, duplicateKey);
+            getTaggedValuePointable(-1, duplicateValue);
+            ob.addItem(duplicateKey, duplicateValue);
+            ob.finish();
+        } catch (IOException e) {
+            Assert.fail("Test failed to write the object pointable.");
+        }
+        tvp.set(abvsResult);
+        tvp.getValue(op);
+        if (op.getEntryCount() != size + 1) {
+            Assert.fail("Object size is incorrect. Expected: " + (size + 1) + " Got: " + op.getEntryCount());
+        }
+
+        // Keys keep the order of the object
+        try {
+            op.getKeys(abvsKeys);
+            tvp.set(abvsKeys);
+        } catch (IOException e) {
+            Assert.fail("Test failed to write the object pointable.");
+        }
+        tvp.getValue(sp);
+        sp.getEntry(0, tvp);
+        if (!compareKeys(tvp, keys[0])) {
+            Assert.fail("Object key one is incorrect. Expected: key" + size);
+        }
+
+        // The first of two equal keys is found
+        for (int i = 0; i < size; i++) {
+            if (!op.getValue(keys[i], tvp)) {
+                Assert.fail("Value not found for the given key: key" + (size - i));
+            }
+            if (!FunctionHelper.arraysEqual(tvp, values[i])) {
+                Assert.fail("Value is incorrect for the given key: key" + (size - i));
+            }
+        }
+        try {
+            getTaggedValuePointable("key", false, tvpKey1);
+            getTaggedValuePointable("key0", false, tvpKey2);
+            getTaggedValuePointable("key" + (size + 1), false, tvpKey3);
+        } catch (IOException e) {
+            Assert.fail("Test failed to write the object pointable.");
+        }
+        if (op.getValue(tvpKey1, tvp) || op.getValue(tvpKey2, tvp) || op.getValue(tvpKey3, tvp)) {
+            Assert.fail("key not in object. Expected: false Got: true");
+        }
+    }
+
     private boolean compareKeys(TaggedValuePointable tvp1, IPointable tvp2) {
         tvp1.getValue(vp);
         return FunctionHelper.arraysEqual(vp.getByteArray(), vp.getStartOffset(), vp.getLength(), tvp2.getByteArray(),
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.indexing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.vxquery.runtime.functions.index.IndexConstructorUtil;
+import org.apache.vxquery.runtime.functions.index.update.Constants;
+import org.apache.vxquery.runtime.functions.index.update.IndexUpdater;
+import org.apache.vxquery.runtime.functions.index.update.MetaFileUtil;
+import org.apache.vxquery.runtime.functions.index.update.XmlMetadata;
+import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test cases for updating an index after the files of its collection have changed.
+ * 1) Files that were touched but not changed keep their index documents
+ * 2) Changed, added and deleted files are indexed again or removed
+ * 3) The same with more than one worker thread (vxquery.index_update_threads)
+ */
+public class IndexUpdaterTest {
+    private static final String THREADS_PROPERTY = "vxquery.index_update_threads";
+    private static final int FILES = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VoidPointable result = (VoidPointable) VoidPointable.FACTORY.createPointable();
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final ArrayBackedValueStorage abvsFileNode = new ArrayBackedValueStorage();
+    private final TreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider((short) 0);
+    private File collection;
+    private File index;
+
+    @Before
+    public void setup() throws IOException {
+        collection = folder.newFolder("collection");
+        index = folder.newFolder("index");
+        for (int i = 0; i < FILES; ++i) {
+            writeFile(i, "<catalog><book id=\"" + i + "\"><title>Book " + i + "</title></book></catalog>");
+        }
+        new IndexConstructorUtil().evaluate(collection.getAbsolutePath(), index.getAbsolutePath(), result, abvs,
+                nodeIdProvider, abvsFileNode, false, null);
+    }
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(THREADS_PROPERTY);
+    }
+
+    @Test
+    public void testUpdateOneThread() throws IOException {
+        System.setProperty(THREADS_PROPERTY, "1");
+        testUpdate();
+    }
+
+    @Test
+    public void testUpdateWorkerThreads() throws IOException {
+        System.setProperty(THREADS_PROPERTY, "4");
+        testUpdate();
+    }
+
+    private void testUpdate() throws IOException {
+        Assert.assertEquals(FILES, getMaxDoc());
+        ConcurrentHashMap<String, XmlMetadata> initial = readMetadata();
+        Assert.assertEquals(FILES, initial.size());
+
+        // Nothing has changed.
+        update();
+        Assert.assertEquals(FILES, getMaxDoc());
+
+        // Touched files get their new attributes, but are not indexed again.
+        for (int i = 0; i < FILES; i += 2) {
+            File file = getFile(i);
+            Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+        }
+        update();
+        Assert.assertEquals(FILES, getMaxDoc());
+        ConcurrentHashMap<String, XmlMetadata> touched = readMetadata();
+        for (int i = 0; i < FILES; ++i) {
+            String path = getFile(i).getCanonicalPath();
+            Assert.assertEquals(getFile(i).lastModified(), touched.get(path).getLastModifiedTime());
+            Assert.assertEquals(initial.get(path).getChecksum(), touched.get(path).getChecksum());
+        }
+
+        // Changed files are indexed again, including a change that keeps the size of the file.
+        writeFile(1, "<catalog><book id=\"1\"><title>Changed book</title></book></catalog>");
+        String sameSize = "<catalog><book id=\"3\"><title>Book x</title></book></catalog>";
+        Assert.assertEquals(getFile(3).length(), sameSize.length());
+        long lastModified = getFile(3).lastModified();
+        writeFile(3, sameSize);
+        Assert.assertTrue(getFile(3).setLastModified(lastModified + 10000));
+        update();
+        Assert.assertEquals(FILES + 2, getMaxDoc());
+        Assert.assertEquals(FILES, getNumDocs());
+        ConcurrentHashMap<String, XmlMetadata> changed = readMetadata();
+        MetaFileUtil metaFileUtil = new MetaFileUtil(index.getAbsolutePath());
+        for (int i = 0; i < FILES; ++i) {
+            File file = getFile(i);
+            Assert.assertEquals(1, countDocs(file));
+            XmlMetadata metadata = changed.get(file.getCanonicalPath());
+            Assert.assertEquals(metaFileUtil.generateChecksum(file), metadata.getChecksum());
+            Assert.assertTrue(metaFileUtil.hasSameAttributes(file, metadata));
+        }
+        Assert.assertNotEquals(initial.get(getFile(3).getCanonicalPath()).getChecksum(),
+                changed.get(getFile(3).getCanonicalPath()).getChecksum());
+
+        // Added and deleted files.
+        writeFile(FILES, "<catalog/>");
+        File deleted = getFile(0);
+        Assert.assertTrue(deleted.delete());
+        update();
+        Assert.assertEquals(FILES, getNumDocs());
+        Assert.assertEquals(1, countDocs(getFile(FILES)));
+        Assert.assertEquals(0, countDocs(deleted));
+        ConcurrentHashMap<String, XmlMetadata> updated = readMetadata();
+        Assert.assertEquals(FILES, updated.size());
+        Assert.assertFalse(updated.containsKey(deleted.getCanonicalPath()));
+    }
+
+    private void update() throws IOException {
+        IndexUpdater updater = new IndexUpdater(index.getAbsolutePath(), result, abvs, nodeIdProvider, abvsFileNode,
+                null);
+        updater.setup();
+        updater.updateIndex();
+        updater.updateMetadataFile();
+        updater.exit();
+    }
+
+    private ConcurrentHashMap<String, XmlMetadata> readMetadata() {
+        MetaFileUtil metaFileUtil = new MetaFileUtil(index.getAbsolutePath());
+        metaFileUtil.readMetadataFile();
+        return metaFileUtil.getMetadata();
+    }
+
+    private int getMaxDoc() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(index.toPath()))) {
+            return reader.maxDoc();
+        }
+    }
+
+    private int getNumDocs() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(index.toPath()))) {
+            return reader.numDocs();
+        }
+    }
+
+    private int countDocs(File file) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(index.toPath()))) {
+            return new IndexSearcher(reader).count(new TermQuery(new Term(Constants.FIELD_PATH,
+                    file.getCanonicalPath())));
+        }
+    }
+
+    private File getFile(int i) {
+        return new File(collection, "file" + i + ".xml");
+    }
+
+    private void writeFile(int i, String content) throws IOException {
+        Files.write(getFile(i).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
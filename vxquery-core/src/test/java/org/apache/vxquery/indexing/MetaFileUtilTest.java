@@ -16,7 +16,6 @@ package org.apache.vxquery.indexing;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -35,10 +34,11 @@ import org.junit.runners.MethodSorters;
 /**
  * Test cases for testing MetaFileUtil functions.
  * 1) Creating MetaData file
- * 2) Generating MD5 Hashes
+ * 2) Generating checksums
  * 3) Detecting file changes
  * 4) Updating metadata
  * 5) Delete metadata file
+ * 6) Skipping files with the stored size and last modified time
  */
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class MetaFileUtilTest {
@@ -56,16 +56,16 @@ public class MetaFileUtilTest {
     }
 
     /**
-     * Test case for generating MD5 string for an XML file.
+     * Test case for generating the checksum string for an XML file.
      */
     @Test
-    public void step1_testGenerateMD5ForXML() throws IOException {
+    public void step1_testGenerateChecksumForXML() throws IOException {
         TestConstants.createXML("catalog.xml");
         File xml = new File(TestConstants.XML_FILE);
-        String md5 = metaFileUtil.generateMD5(xml);
-
-        Assert.assertEquals(TestConstants.INITIAL_MD5, md5);
+        String checksum = metaFileUtil.generateChecksum(xml);
 
+        Assert.assertEquals(TestConstants.INITIAL_CHECKSUM, checksum);
+        Assert.assertEquals(checksum, metaFileUtil.generateChecksum(xml));
     }
 
     /**
@@ -104,20 +104,19 @@ public class MetaFileUtilTest {
     public void step4_testDetectFileChanges() throws IOException {
         TestConstants.createXML("catalog_edited.xml");
         File xml = new File(TestConstants.XML_FILE);
-        Assert.assertTrue(metaFileUtil.generateMD5(xml).equals(TestConstants.CHANGED_MD5));
+        Assert.assertTrue(metaFileUtil.generateChecksum(xml).equals(TestConstants.CHANGED_CHECKSUM));
     }
 
     /**
      * Test the update metadata file process.
      */
     @Test
-    public void step5_testUpdateMetadata()
-            throws IOException, ClassNotFoundException, NoSuchAlgorithmException, JAXBException {
+    public void step5_testUpdateMetadata() throws IOException, ClassNotFoundException, JAXBException {
         ConcurrentHashMap<String, XmlMetadata> fromFileMap = metaFileUtil.getMetadata();
         XmlMetadata modified = fromFileMap.get(TestConstants.XML_FILE);
 
         File xml = new File(TestConstants.XML_FILE);
-        modified.setMd5(metaFileUtil.generateMD5(xml));
+        modified.setChecksum(metaFileUtil.generateChecksum(xml));
 
         fromFileMap.replace(TestConstants.XML_FILE, modified);
 
@@ -153,6 +152,28 @@ public class MetaFileUtilTest {
         Assert.assertFalse(metaFileUtil.isMetaFilePresent());
     }
 
+    /**
+     * Test that only files with the stored size and last modified time are skipped.
+     */
+    @Test
+    public void step8_testHasSameAttributes() throws IOException {
+        TestConstants.createXML("catalog.xml");
+        File xml = new File(TestConstants.XML_FILE);
+        XmlMetadata metadata = new XmlMetadata();
+        metadata.setSize(xml.length());
+        metadata.setLastModifiedTime(xml.lastModified());
+        Assert.assertTrue(metaFileUtil.hasSameAttributes(xml, metadata));
+
+        // A touched file is read again, even though its content is the same.
+        Assert.assertTrue(xml.setLastModified(xml.lastModified() - 10000));
+        Assert.assertFalse(metaFileUtil.hasSameAttributes(xml, metadata));
+        metadata.setLastModifiedTime(xml.lastModified());
+        Assert.assertTrue(metaFileUtil.hasSameAttributes(xml, metadata));
+
+        metadata.setSize(xml.length() + 1);
+        Assert.assertFalse(metaFileUtil.hasSameAttributes(xml, metadata));
+    }
+
     @AfterClass
     public static void tearDown() throws IOException {
         FileUtils.forceDelete(new File(TestConstants.INDEX_DIR));
@@ -31,8 +31,8 @@ import org.apache.vxquery.runtime.functions.index.update.XmlMetadata;
  * TestConstants and methods which will be used in indexing test cases.
  */
 public class TestConstants {
-    public static String INITIAL_MD5 = "F62EE4BBBBE37183E5F50BB1A0B4FFB4";
-    public static String CHANGED_MD5 = "98B31970B863E86AB2D7852B346FF234";
+    public static String INITIAL_CHECKSUM = "B706F5B9";
+    public static String CHANGED_CHECKSUM = "711244EF";
 
     public static String COLLECTION = "src/test/resources/collection/";
     public static String XML_FILE = "/tmp/index/catalog.xml";
@@ -51,7 +51,7 @@ public class TestConstants {
         XmlMetadata metadata = new XmlMetadata();
         metadata.setFileName("catalog.xml");
         metadata.setPath(XML_FILE);
-        metadata.setMd5(INITIAL_MD5);
+        metadata.setChecksum(INITIAL_CHECKSUM);
         initialMetadataMap.put(XML_FILE, metadata);
 
         return initialMetadataMap;
@@ -66,7 +66,7 @@ public class TestConstants {
         XmlMetadata metadata = new XmlMetadata();
         metadata.setFileName("catalog.xml");
         metadata.setPath(XML_FILE);
-        metadata.setMd5(CHANGED_MD5);
+        metadata.setChecksum(CHANGED_CHECKSUM);
         modifiedMetadataMap.put(XML_FILE, metadata);
 
         return modifiedMetadataMap;
@@ -113,7 +113,7 @@ public class TestConstants {
      * @return String containing metadata
      */
     public static String getXMLMetadataString(XmlMetadata metadata) {
-        return String.format("%s %s %s", metadata.getFileName(), metadata.getPath(), metadata.getMd5());
+        return String.format("%s %s %s", metadata.getFileName(), metadata.getPath(), metadata.getChecksum());
     }
 
 }
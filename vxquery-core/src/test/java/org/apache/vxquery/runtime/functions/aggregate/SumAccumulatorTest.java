@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.aggregate;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hyracks.algebricks.runtime.base.IAggregateEvaluator;
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
+import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.data.accessors.IFrameTupleReference;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the primitive sum of the aggregates and the aggregates that use it.
+ * 1) xs:integer, xs:double and untyped atomic items are summed in a long or a double
+ * 2) Other items move the sum to the generic arithmetic
+ * 3) Empty input for fn:sum, fn:avg and the two step avg
+ * 4) fn:min and fn:max with items of the same and of mixed types
+ */
+public class SumAccumulatorTest {
+    private final SumAccumulator sum = new SumAccumulator(null);
+    private final StringValueBuilder svb = new StringValueBuilder();
+    private final TaggedValuePointable result = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TypedPointables tp = new TypedPointables();
+
+    @Test
+    public void testIntegers() throws IOException {
+        sum.reset();
+        assertInteger(0, get());
+        add(integer(1), integer(2), integer(-10), integer(Long.MAX_VALUE - 1));
+        assertInteger(Long.MAX_VALUE - 8, get());
+    }
+
+    @Test
+    public void testDoubles() throws IOException {
+        sum.resetEmpty();
+        add(xsDouble(0.5), xsDouble(1.25), xsDouble(-2));
+        assertDouble(-0.25, get());
+    }
+
+    @Test
+    public void testMixedPrimitives() throws IOException {
+        sum.reset();
+        add(integer(2), integer(3));
+        assertInteger(5, get());
+        // An untyped atomic item is added as an xs:double.
+        add(untyped("1.5"));
+        assertDouble(6.5, get());
+        add(integer(4), xsDouble(0.25), untyped("-1"));
+        assertDouble(9.75, get());
+
+        sum.resetEmpty();
+        add(untyped("2"), integer(1));
+        assertDouble(3, get());
+    }
+
+    @Test
+    public void testGenericDecimal() throws IOException {
+        sum.reset();
+        add(integer(2), decimal(15, 1));
+        assertDecimal(3.5, get());
+        add(integer(1), decimal(25, 2));
+        assertDecimal(4.75, get());
+        // Untyped atomic items still become xs:double in the generic state.
+        add(untyped("0.25"));
+        assertDouble(5, get());
+
+        // A sum that started with xs:double items keeps their value after the switch.
+        sum.resetEmpty();
+        add(xsDouble(1.5), decimal(5, 1));
+        assertDouble(2, get());
+    }
+
+    @Test
+    public void testGenericDurations() throws IOException {
+        sum.resetEmpty();
+        add(dayTimeDuration(1000));
+        Assert.assertEquals(ValueTag.XS_DAY_TIME_DURATION_TAG, get().getTag());
+        add(dayTimeDuration(2500), dayTimeDuration(-500));
+        get().getValue(tp.longp);
+        Assert.assertEquals(ValueTag.XS_DAY_TIME_DURATION_TAG, result.getTag());
+        Assert.assertEquals(3000, tp.longp.getLong());
+
+        // A sum can be reset after it has moved to the generic state.
+        sum.reset();
+        add(integer(7));
+        assertInteger(7, get());
+    }
+
+    @Test
+    public void testSumAggregate() throws IOException {
+        EvaluatorFactory factory = new FnSumAggregateEvaluatorFactory(new IScalarEvaluatorFactory[1])::createEvaluator;
+        assertInteger(0, aggregate(factory));
+        assertInteger(6, aggregate(factory, integer(1), integer(2), integer(3)));
+        assertDouble(4.5, aggregate(factory, integer(1), untyped("2.5"), integer(1)));
+        assertDecimal(3.5, aggregate(factory, integer(1), decimal(25, 1)));
+    }
+
+    @Test
+    public void testAvgAggregate() throws IOException {
+        EvaluatorFactory factory = new FnAvgAggregateEvaluatorFactory(new IScalarEvaluatorFactory[1])::createEvaluator;
+        // fn:avg of no items is the empty sequence, while fn:sum is zero.
+        assertEmptySequence(aggregate(factory));
+        assertDecimal(1.5, aggregate(factory, integer(1), integer(2)));
+        assertDouble(2, aggregate(factory, xsDouble(1), untyped("3")));
+        aggregate(factory, dayTimeDuration(1000), dayTimeDuration(3000)).getValue(tp.longp);
+        Assert.assertEquals(ValueTag.XS_DAY_TIME_DURATION_TAG, result.getTag());
+        Assert.assertEquals(2000, tp.longp.getLong());
+    }
+
+    @Test
+    public void testTwoStepAvg() throws IOException {
+        EvaluatorFactory local = new AvgLocalAggregateEvaluatorFactory(new IScalarEvaluatorFactory[1])::createEvaluator;
+        EvaluatorFactory global = new AvgGlobalAggregateEvaluatorFactory(
+                new IScalarEvaluatorFactory[1])::createEvaluator;
+        assertEmptySequence(aggregate(local));
+
+        ArrayBackedValueStorage partial1 = copy(aggregate(local, integer(1), integer(2), integer(3)));
+        ArrayBackedValueStorage partial2 = copy(aggregate(local, xsDouble(4.5)));
+        ArrayBackedValueStorage empty = copy(aggregate(local));
+        assertDouble(2.625, aggregate(global, tagged(partial1), tagged(empty), tagged(partial2)));
+        assertEmptySequence(aggregate(global, tagged(empty)));
+
+        // The local counts are read as longs, so a count past the int range is kept.
+        long count = 3L * Integer.MAX_VALUE;
+        ArrayBackedValueStorage large = partial(count, xsDouble(2.0 * count));
+        assertDouble(2, aggregate(global, tagged(large)));
+        assertDouble((2.0 * count + 6) / (count + 3), aggregate(global, tagged(large), tagged(partial1)));
+    }
+
+    @Test
+    public void testMaxMin() throws IOException {
+        EvaluatorFactory max = new FnMaxAggregateEvaluatorFactory(new IScalarEvaluatorFactory[1])::createEvaluator;
+        EvaluatorFactory min = new FnMinAggregateEvaluatorFactory(new IScalarEvaluatorFactory[1])::createEvaluator;
+        assertEmptySequence(aggregate(max));
+        assertInteger(7, aggregate(max, integer(3), integer(7), integer(5)));
+        assertInteger(3, aggregate(min, integer(3), integer(7), integer(5)));
+        assertDouble(-1.5, aggregate(min, xsDouble(2), xsDouble(-1.5), xsDouble(0)));
+
+        // Items of another type than the current value are promoted before they are compared.
+        assertDouble(7.5, aggregate(max, integer(3), xsDouble(7.5), integer(5)));
+        assertInteger(8, aggregate(max, integer(3), xsDouble(7.5), integer(8)));
+        assertDouble(2.5, aggregate(min, integer(3), xsDouble(2.5), integer(5)));
+        assertDecimal(2.5, aggregate(min, integer(3), decimal(25, 1), xsDouble(2.75)));
+    }
+
+    private void add(TaggedValuePointable... items) throws IOException {
+        for (TaggedValuePointable item : items) {
+            sum.add(item);
+        }
+    }
+
+    private TaggedValuePointable get() throws IOException {
+        sum.get(result);
+        return result;
+    }
+
+    /**
+     * Run an aggregate over the items and return its result.
+     */
+    private TaggedValuePointable aggregate(EvaluatorFactory factory, TaggedValuePointable... items)
+            throws HyracksDataException {
+        ItemEvaluator arg = new ItemEvaluator();
+        return aggregate(factory.createEvaluator(new IScalarEvaluator[] { arg }), arg, items);
+    }
+
+    private TaggedValuePointable aggregate(IAggregateEvaluator evaluator, ItemEvaluator arg,
+            TaggedValuePointable... items) throws HyracksDataException {
+        evaluator.init();
+        for (TaggedValuePointable item : items) {
+            arg.item = item;
+            evaluator.step(null);
+        }
+        evaluator.finish(result);
+        return result;
+    }
+
+    private interface EvaluatorFactory {
+        IAggregateEvaluator createEvaluator(IScalarEvaluator[] args) throws HyracksDataException;
+    }
+
+    /**
+     * Argument of an aggregate that returns the item set by the test.
+     */
+    private static class ItemEvaluator implements IScalarEvaluator {
+        TaggedValuePointable item;
+
+        @Override
+        public void evaluate(IFrameTupleReference tuple, IPointable result) {
+            result.set(item);
+        }
+    }
+
+    private static TaggedValuePointable integer(long value) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(ValueTag.XS_INTEGER_TAG);
+        abvs.getDataOutput().writeLong(value);
+        return tagged(abvs);
+    }
+
+    private static TaggedValuePointable xsDouble(double value) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(ValueTag.XS_DOUBLE_TAG);
+        abvs.getDataOutput().writeDouble(value);
+        return tagged(abvs);
+    }
+
+    private static TaggedValuePointable decimal(long value, int decimalPlace) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(ValueTag.XS_DECIMAL_TAG);
+        abvs.getDataOutput().write(decimalPlace);
+        abvs.getDataOutput().writeLong(value);
+        return tagged(abvs);
+    }
+
+    private static TaggedValuePointable dayTimeDuration(long milliseconds) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(ValueTag.XS_DAY_TIME_DURATION_TAG);
+        abvs.getDataOutput().writeLong(milliseconds);
+        return tagged(abvs);
+    }
+
+    private TaggedValuePointable untyped(String value) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+        svb.write(value, abvs.getDataOutput());
+        return tagged(abvs);
+    }
+
+    /**
+     * Write the result of a local avg step by hand.
+     */
+    private static ArrayBackedValueStorage partial(long count, TaggedValuePointable sum) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        SequenceBuilder sb = new SequenceBuilder();
+        sb.reset(abvs);
+        sb.addItem(integer(count));
+        sb.addItem(sum);
+        sb.finish();
+        return abvs;
+    }
+
+    private static TaggedValuePointable tagged(ArrayBackedValueStorage abvs) {
+        TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        tvp.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+        return tvp;
+    }
+
+    private static ArrayBackedValueStorage copy(TaggedValuePointable tvp) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        DataOutput dOut = abvs.getDataOutput();
+        dOut.write(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength());
+        return abvs;
+    }
+
+    private void assertInteger(long expected, TaggedValuePointable tvp) {
+        Assert.assertEquals(ValueTag.XS_INTEGER_TAG, tvp.getTag());
+        tvp.getValue(tp.longp);
+        Assert.assertEquals(expected, tp.longp.getLong());
+    }
+
+    private void assertDouble(double expected, TaggedValuePointable tvp) {
+        Assert.assertEquals(ValueTag.XS_DOUBLE_TAG, tvp.getTag());
+        tvp.getValue(tp.doublep);
+        Assert.assertEquals(expected, tp.doublep.getDouble(), 1e-9);
+    }
+
+    private void assertDecimal(double expected, TaggedValuePointable tvp) {
+        Assert.assertEquals(ValueTag.XS_DECIMAL_TAG, tvp.getTag());
+        tvp.getValue(tp.decp);
+        Assert.assertEquals(expected, tp.decp.doubleValue(), 1e-9);
+    }
+
+    private void assertEmptySequence(TaggedValuePointable tvp) {
+        Assert.assertEquals(ValueTag.SEQUENCE_TAG, tvp.getTag());
+        SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        tvp.getValue(seqp);
+        Assert.assertEquals(0, seqp.getEntryCount());
+    }
+}
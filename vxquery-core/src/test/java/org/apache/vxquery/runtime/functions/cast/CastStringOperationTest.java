@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.cast;
+
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDatePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDateTimePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the casts that parse the UTF-8 bytes of a string directly.
+ */
+public class CastStringOperationTest {
+    private final ArrayBackedValueStorage abvsInput = new ArrayBackedValueStorage();
+    private final ArrayBackedValueStorage abvsResult = new ArrayBackedValueStorage();
+    private final StringValueBuilder svb = new StringValueBuilder();
+    private final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+
+    @Test
+    public void testDoubleFastPathBoundaries() throws Exception {
+        // Significands up to 2^53 are exact, larger ones take the general path.
+        assertDouble("9007199254740992");
+        assertDouble("-9007199254740992");
+        assertDouble("9007199254740993");
+        assertDouble("900719925474099.2");
+        assertDouble("90071992547409921e-1");
+        // Powers of ten up to 22 are exact, larger ones take the general path.
+        assertDouble("1e22");
+        assertDouble("1e-22");
+        assertDouble("1E+22");
+        assertDouble("1e23");
+        assertDouble("1e-23");
+        assertDouble("1.5e21");
+        assertDouble("15e21");
+        assertDouble("123456789e-22");
+        assertDouble("1e0000000000000000000000000000000000022");
+        // Decimal points without digits on one side, signs and zeros.
+        assertDouble("5.");
+        assertDouble(".5");
+        assertDouble("-.5");
+        assertDouble("+1.5");
+        assertDouble("-0");
+        assertDouble("-0.0e0");
+        assertDouble("0.1");
+        assertDouble("3.14159");
+    }
+
+    @Test
+    public void testDoubleSpecialValues() throws Exception {
+        Assert.assertEquals(Double.POSITIVE_INFINITY, castToDouble("INF"), 0);
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, castToDouble("-INF"), 0);
+        Assert.assertTrue(Double.isNaN(castToDouble("NaN")));
+    }
+
+    @Test
+    public void testDoubleInvalid() throws Exception {
+        String[] invalid = { "", ".", "-", "1e", "1e+", "e5", "1.2.3", "--1", "1 2", "inf", "-NaN" };
+        for (String text : invalid) {
+            assertInvalid(new CastToDoubleOperation(), text);
+        }
+    }
+
+    @Test
+    public void testIntegerLimits() throws Exception {
+        Assert.assertEquals(Long.MAX_VALUE, castToInteger("9223372036854775807"));
+        Assert.assertEquals(Long.MIN_VALUE, castToInteger("-9223372036854775808"));
+        Assert.assertEquals(0, castToInteger("-0"));
+        Assert.assertEquals(42, castToInteger("00042"));
+    }
+
+    @Test
+    public void testIntegerInvalid() throws Exception {
+        // The last digit overflows in the addition, or the value already overflows in the multiplication by ten.
+        String[] invalid = { "9223372036854775808", "-9223372036854775809", "92233720368547758070",
+                "18446744073709551616", "99999999999999999999", "", "-", "1a", "+-1", "1.0", "\u0661" };
+        for (String text : invalid) {
+            assertInvalid(new CastToIntegerOperation(), text);
+        }
+    }
+
+    @Test
+    public void testDate() throws Exception {
+        castString(new CastToDateOperation(), "2001-02-03-05:00");
+        byte[] bytes = abvsResult.getByteArray();
+        int start = abvsResult.getStartOffset();
+        Assert.assertEquals(ValueTag.XS_DATE_TAG, bytes[start]);
+        Assert.assertEquals(2001, XSDatePointable.getYear(bytes, start + 1));
+        Assert.assertEquals(2, XSDatePointable.getMonth(bytes, start + 1));
+        Assert.assertEquals(3, XSDatePointable.getDay(bytes, start + 1));
+        Assert.assertEquals(-5, XSDatePointable.getTimezoneHour(bytes, start + 1));
+    }
+
+    @Test
+    public void testDateInvalid() throws Exception {
+        // Separators past the timezone fields have no field to go to.
+        String[] invalid = { "2001-01-01-05:00-01", "2001-01-01+05:00:00", "2001-01-01::::", "2001-13-01",
+                "2001-01-01T00:00:00", "2001-0\u0661-01" };
+        for (String text : invalid) {
+            assertInvalid(new CastToDateOperation(), text);
+        }
+    }
+
+    @Test
+    public void testDateTime() throws Exception {
+        castString(new CastToDateTimeOperation(), "2001-02-03T04:05:06.789Z");
+        byte[] bytes = abvsResult.getByteArray();
+        int start = abvsResult.getStartOffset();
+        Assert.assertEquals(ValueTag.XS_DATETIME_TAG, bytes[start]);
+        Assert.assertEquals(2001, XSDateTimePointable.getYear(bytes, start + 1));
+        Assert.assertEquals(2, XSDateTimePointable.getMonth(bytes, start + 1));
+        Assert.assertEquals(3, XSDateTimePointable.getDay(bytes, start + 1));
+        Assert.assertEquals(4, XSDateTimePointable.getHour(bytes, start + 1));
+        Assert.assertEquals(5, XSDateTimePointable.getMinute(bytes, start + 1));
+        Assert.assertEquals(6789, XSDateTimePointable.getMilliSecond(bytes, start + 1));
+        Assert.assertEquals(0, XSDateTimePointable.getTimezoneHour(bytes, start + 1));
+    }
+
+    @Test
+    public void testDateTimeInvalid() throws Exception {
+        // Separators past the timezone fields have no field to go to.
+        String[] invalid = { "2001-01-01T00:00:00-05:00:00", "2001-01-01T00:00:00:00:00:00",
+                "2001-01-01T00:00:00+05:00+01", "2001-01-01T00:00:0\u0661" };
+        for (String text : invalid) {
+            assertInvalid(new CastToDateTimeOperation(), text);
+        }
+    }
+
+    private void assertDouble(String text) throws Exception {
+        double expected = Double.parseDouble(text);
+        double actual = castToDouble(text);
+        Assert.assertEquals(text, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+    }
+
+    private double castToDouble(String text) throws Exception {
+        castString(new CastToDoubleOperation(), text);
+        Assert.assertEquals(ValueTag.XS_DOUBLE_TAG, abvsResult.getByteArray()[abvsResult.getStartOffset()]);
+        return DoublePointable.getDouble(abvsResult.getByteArray(), abvsResult.getStartOffset() + 1);
+    }
+
+    private long castToInteger(String text) throws Exception {
+        castString(new CastToIntegerOperation(), text);
+        Assert.assertEquals(ValueTag.XS_INTEGER_TAG, abvsResult.getByteArray()[abvsResult.getStartOffset()]);
+        return LongPointable.getLong(abvsResult.getByteArray(), abvsResult.getStartOffset() + 1);
+    }
+
+    private void assertInvalid(AbstractCastToOperation operation, String text) throws IOException {
+        try {
+            castString(operation, text);
+            Assert.fail("Expected FORG0001 for \"" + text + "\"");
+        } catch (SystemException e) {
+            Assert.assertEquals(text, ErrorCode.FORG0001, e.getCode());
+        }
+    }
+
+    private void castString(AbstractCastToOperation operation, String text) throws SystemException, IOException {
+        abvsInput.reset();
+        svb.write(text, abvsInput.getDataOutput());
+        stringp.set(abvsInput.getByteArray(), abvsInput.getStartOffset(), abvsInput.getLength());
+        abvsResult.reset();
+        operation.convertString(stringp, abvsResult.getDataOutput());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.VoidPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.functions.util.DocumentCache.DocumentKey;
+import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test cases for the hit, miss and eviction counts of the document cache and the tree ids of cached documents.
+ */
+public class DocumentCacheTest {
+    private static final String KIND = "xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VoidPointable result = (VoidPointable) VoidPointable.FACTORY.createPointable();
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        DocumentCache cache = new DocumentCache(1024);
+        File file = createFile("a.xml", "<a/>");
+        DocumentKey key = cache.getKey(file.getPath(), KIND);
+
+        Assert.assertFalse(cache.get(key, result));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+
+        cache.put(key, value(1, 2, 3));
+        Assert.assertTrue(cache.get(key, result));
+        Assert.assertTrue(cache.get(cache.getKey(file.getPath(), KIND), result));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(3, cache.getSize());
+        Assert.assertEquals(3, result.getLength());
+
+        // The other parser kind and a changed file are different documents.
+        Assert.assertFalse(cache.get(cache.getKey(file.getPath(), "json"), result));
+        Files.write(file.toPath(), "<a>changed</a>".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(cache.get(cache.getKey(file.getPath(), KIND), result));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        DocumentCache cache = new DocumentCache(10);
+        DocumentKey a = cache.getKey(createFile("a.xml", "<a/>").getPath(), KIND);
+        DocumentKey b = cache.getKey(createFile("b.xml", "<b/>").getPath(), KIND);
+        DocumentKey c = cache.getKey(createFile("c.xml", "<c/>").getPath(), KIND);
+
+        cache.put(a, value(new byte[4]));
+        cache.put(b, value(new byte[4]));
+        // Reading a makes b the least recently used document.
+        Assert.assertTrue(cache.get(a, result));
+        cache.put(c, value(new byte[4]));
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(8, cache.getSize());
+        Assert.assertTrue(cache.get(a, result));
+        Assert.assertFalse(cache.get(b, result));
+        Assert.assertTrue(cache.get(c, result));
+
+        // Documents larger than the cache are not kept.
+        cache.put(b, value(new byte[11]));
+        Assert.assertFalse(cache.get(b, result));
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        DocumentCache cache = new DocumentCache(0);
+        Assert.assertNull(cache.getKey(createFile("a.xml", "<a/>").getPath(), KIND));
+        Assert.assertNull(new DocumentCache(1024).getKey("hdfs://a.xml", KIND));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingFile() throws IOException {
+        new DocumentCache(1024).getKey(new File(folder.getRoot(), "missing.xml").getPath(), KIND);
+    }
+
+    @Test
+    public void testCachedTreesGetNewTreeIds() throws IOException {
+        DocumentCache cache = new DocumentCache(1024);
+        DocumentKey key = cache.getKey(createFile("a.xml", "<a/>").getPath(), KIND);
+        TreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider((short) 0);
+        long parsedId = nodeIdProvider.getId();
+        ArrayBackedValueStorage tree = new ArrayBackedValueStorage();
+        DataOutput out = tree.getDataOutput();
+        out.write(ValueTag.NODE_TREE_TAG);
+        out.write(NodeTreePointable.HEADER_NODEID_EXISTS_MASK);
+        out.writeLong(parsedId);
+        out.writeInt(42);
+        cache.put(key, tree);
+
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        Assert.assertFalse(cache.get(cache.getKey(createFile("b.xml", "<b/>").getPath(), KIND), abvs,
+                nodeIdProvider));
+        Assert.assertTrue(cache.get(key, abvs, nodeIdProvider));
+        long firstId = getTreeId(abvs);
+        Assert.assertTrue(cache.get(key, abvs, nodeIdProvider));
+        long secondId = getTreeId(abvs);
+        Assert.assertNotEquals(parsedId, firstId);
+        Assert.assertNotEquals(firstId, secondId);
+        Assert.assertEquals(tree.getLength(), abvs.getLength());
+        Assert.assertEquals(42, IntegerPointable.getInteger(abvs.getByteArray(), abvs.getLength() - 4));
+
+        // The cached bytes keep their id.
+        Assert.assertTrue(cache.get(key, result));
+        Assert.assertEquals(parsedId, LongPointable.getLong(result.getByteArray(), result.getStartOffset() + 2));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(3, cache.getHits());
+    }
+
+    private static long getTreeId(ArrayBackedValueStorage abvs) {
+        NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+        ntp.set(abvs.getByteArray(), abvs.getStartOffset() + 1, abvs.getLength() - 1);
+        return ntp.getRootNodeId();
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static ArrayBackedValueStorage value(int... bytes) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        for (int b : bytes) {
+            abvs.getDataOutput().write(b);
+        }
+        return abvs;
+    }
+
+    private static ArrayBackedValueStorage value(byte[] bytes) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(bytes);
+        return abvs;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test cases for the buffer that holds the bytes of a document.
+ * 1) The maximum size is set with vxquery.document_buffer_size
+ * 2) Documents smaller than the maximum size are read into the buffer
+ * 3) Larger documents of a known size are streamed without reading any of them into the buffer
+ */
+public class DocumentBufferTest {
+    private static final String SIZE_PROPERTY = "vxquery.document_buffer_size";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(SIZE_PROPERTY);
+    }
+
+    @Test
+    public void testConfiguredSize() throws IOException {
+        File file = createFile("a.xml", 20);
+        Assert.assertTrue(read(new DocumentBuffer(), file));
+        System.setProperty(SIZE_PROPERTY, "20");
+        Assert.assertFalse(read(new DocumentBuffer(), file));
+        System.setProperty(SIZE_PROPERTY, "21");
+        Assert.assertTrue(read(new DocumentBuffer(), file));
+    }
+
+    @Test
+    public void testSmallDocuments() throws IOException {
+        DocumentBuffer buffer = new DocumentBuffer(1024);
+        File large = createFile("large.xml", 1000);
+        File small = createFile("small.xml", 10);
+        Assert.assertTrue(read(buffer, large));
+        Assert.assertEquals(1000, buffer.getLength());
+        byte[] bytes = buffer.getBytes();
+        // The array is reused for the next document.
+        Assert.assertTrue(read(buffer, small));
+        Assert.assertSame(bytes, buffer.getBytes());
+        assertContent(small, buffer);
+
+        try (InputStream input = new FileInputStream(large)) {
+            Assert.assertTrue(buffer.read(input));
+        }
+        assertContent(large, buffer);
+        Assert.assertTrue(buffer.read(new ByteArrayInputStream(Files.readAllBytes(small.toPath())), 10));
+        assertContent(small, buffer);
+        // A stream of an unknown length grows the array as it is read.
+        DocumentBuffer growing = new DocumentBuffer(1024 * 1024);
+        Assert.assertTrue(growing.read(new ByteArrayInputStream(new byte[100000])));
+        Assert.assertEquals(100000, growing.getLength());
+    }
+
+    @Test
+    public void testLargeDocuments() throws IOException {
+        DocumentBuffer buffer = new DocumentBuffer(100);
+        File file = createFile("a.xml", 500);
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Assert.assertFalse(buffer.read(channel));
+            Assert.assertEquals(0, channel.position());
+        }
+        Assert.assertEquals(0, buffer.getLength());
+
+        try (InputStream input = new FileInputStream(file)) {
+            Assert.assertFalse(buffer.read(input));
+            Assert.assertEquals(0, buffer.getLength());
+            Assert.assertArrayEquals(content, IOUtils.toByteArray(buffer.remainder(input)));
+        }
+
+        CountingInputStream input = new CountingInputStream(content);
+        Assert.assertFalse(buffer.read(input, content.length));
+        Assert.assertEquals(0, input.count);
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(buffer.remainder(input)));
+
+        // Without its length, the stream is read up to the maximum size and then continued.
+        input = new CountingInputStream(content);
+        Assert.assertFalse(buffer.read(input));
+        Assert.assertEquals(100, buffer.getLength());
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(buffer.remainder(input)));
+    }
+
+    private static boolean read(DocumentBuffer buffer, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return buffer.read(channel);
+        }
+    }
+
+    private static void assertContent(File file, DocumentBuffer buffer) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        Assert.assertEquals(content.length, buffer.getLength());
+        for (int i = 0; i < content.length; ++i) {
+            Assert.assertEquals(content[i], buffer.getBytes()[i]);
+        }
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        StringBuilder content = new StringBuilder("<a>");
+        while (content.length() < size - 4) {
+            content.append((char) ('a' + content.length() % 26));
+        }
+        content.append("</a>");
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Stream that counts the bytes read from it.
+     */
+    private static class CountingInputStream extends ByteArrayInputStream {
+        int count;
+
+        CountingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int read = super.read(b, off, len);
+            count += Math.max(read, 0);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.RootStaticContextImpl;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.context.StaticContextImpl;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.types.AnyType;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.ItemType;
+import org.apache.vxquery.types.NameTest;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the casts of the type hints pushed into a collection scan.
+ * 1) The elements found by the child path steps of a hint, including wildcards and namespaces
+ * 2) Text the cast accepts is stored as the typed value, other text is left alone
+ * 3) Only the types the scan can cast to are accepted
+ */
+public class ElementTypeHintCasterTest {
+    private final StaticContext staticContext = new StaticContextImpl(RootStaticContextImpl.INSTANCE);
+    private final ArrayBackedValueStorage abvsText = new ArrayBackedValueStorage();
+    private final ArrayBackedValueStorage abvsResult = new ArrayBackedValueStorage();
+    private final StringValueBuilder svb = new StringValueBuilder();
+
+    @Test
+    public void testChildPaths() throws Exception {
+        List<ElementTypeHint> hints = new ArrayList<>();
+        hints.add(new ElementTypeHint(Arrays.asList(element("value")), type(BuiltinTypeRegistry.XS_DOUBLE)));
+        hints.add(new ElementTypeHint(Arrays.asList(element(null), element("day")),
+                type(BuiltinTypeRegistry.XS_DATE)));
+        ElementTypeHintCaster caster = new ElementTypeHintCaster(hints, staticContext);
+
+        caster.startCandidate();
+        Assert.assertEquals(-1, caster.startElement(1, "", "id"));
+        caster.endElement(1);
+        Assert.assertEquals(0, caster.startElement(1, "", "value"));
+        Assert.assertEquals(-1, caster.startElement(2, "", "value"));
+        caster.endElement(2);
+        Assert.assertEquals(1, caster.startElement(2, "", "day"));
+        caster.endElement(2);
+        caster.endElement(1);
+        // The namespace is part of the name.
+        Assert.assertEquals(-1, caster.startElement(1, "urn:a", "value"));
+        Assert.assertEquals(1, caster.startElement(2, "", "day"));
+        caster.endElement(2);
+        caster.endElement(1);
+
+        // A new scanned element starts again from its children.
+        Assert.assertEquals(-1, caster.startElement(1, "", "when"));
+        caster.startCandidate();
+        Assert.assertEquals(-1, caster.startElement(2, "", "day"));
+        caster.endElement(2);
+        Assert.assertEquals(0, caster.startElement(1, "", "value"));
+    }
+
+    @Test
+    public void testCast() throws Exception {
+        List<ElementTypeHint> hints = new ArrayList<>();
+        hints.add(new ElementTypeHint(Arrays.asList(element("value")), type(BuiltinTypeRegistry.XS_DOUBLE)));
+        hints.add(new ElementTypeHint(Arrays.asList(element("day")), type(BuiltinTypeRegistry.XS_DATE)));
+        hints.add(new ElementTypeHint(Arrays.asList(element("count")), type(BuiltinTypeRegistry.XS_INTEGER)));
+        ElementTypeHintCaster caster = new ElementTypeHintCaster(hints, staticContext);
+
+        Assert.assertTrue(cast(caster, 0, "1.5e1"));
+        Assert.assertEquals(ValueTag.XS_DOUBLE_TAG, abvsResult.getByteArray()[abvsResult.getStartOffset()]);
+        Assert.assertEquals(15.0, DoublePointable.getDouble(abvsResult.getByteArray(), abvsResult.getStartOffset() + 1),
+                0);
+        Assert.assertTrue(cast(caster, 1, "2026-10-18"));
+        Assert.assertEquals(ValueTag.XS_DATE_TAG, abvsResult.getByteArray()[abvsResult.getStartOffset()]);
+        Assert.assertTrue(cast(caster, 2, "42"));
+        Assert.assertEquals(ValueTag.XS_INTEGER_TAG, abvsResult.getByteArray()[abvsResult.getStartOffset()]);
+
+        // The query raises the error when it casts the text.
+        Assert.assertFalse(cast(caster, 0, "abc"));
+        Assert.assertEquals(0, abvsResult.getLength());
+        Assert.assertFalse(cast(caster, 1, "2026-13-45"));
+        Assert.assertFalse(cast(caster, 2, "4.2"));
+        Assert.assertFalse(cast(caster, 2, ""));
+    }
+
+    @Test(expected = SystemException.class)
+    public void testUnsupportedType() throws Exception {
+        List<ElementTypeHint> hints = new ArrayList<>();
+        hints.add(new ElementTypeHint(Arrays.asList(element("value")), type(BuiltinTypeRegistry.XS_STRING)));
+        new ElementTypeHintCaster(hints, staticContext);
+    }
+
+    private boolean cast(ElementTypeHintCaster caster, int hint, String text) throws IOException {
+        abvsText.reset();
+        svb.write(text, abvsText.getDataOutput());
+        return caster.cast(hint, abvsText.getByteArray(), abvsText.getStartOffset(), abvsText.getLength(),
+                abvsResult);
+    }
+
+    private int element(String localName) throws IOException {
+        NameTest nameTest = localName == null ? NameTest.STAR_NAMETEST
+                : new NameTest(toUTF8String(""), toUTF8String(localName));
+        return staticContext.encodeSequenceType(
+                SequenceType.create(new ElementType(nameTest, AnyType.INSTANCE, true), Quantifier.QUANT_STAR));
+    }
+
+    private int type(ItemType itemType) {
+        return staticContext.encodeSequenceType(SequenceType.create(itemType, Quantifier.QUANT_QUESTION));
+    }
+
+    private byte[] toUTF8String(String string) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        svb.write(string, abvs.getDataOutput());
+        return Arrays.copyOf(abvs.getByteArray(), abvs.getLength());
+    }
+}
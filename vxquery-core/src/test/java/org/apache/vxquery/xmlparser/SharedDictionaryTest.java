@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the dictionary that the parser shares across documents when vxquery.shared_dictionary_size is set.
+ */
+public class SharedDictionaryTest {
+    private static final String SIZE_PROPERTY = "vxquery.shared_dictionary_size";
+
+    private final StringValueBuilder svb = new StringValueBuilder();
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(SIZE_PROPERTY);
+    }
+
+    @Test
+    public void testDictionaryPerDocument() throws IOException {
+        XMLParser parser = createParser(0);
+        parse(parser, "<a><b/></a>");
+        NodeTreePointable second = parse(parser, "<c/>");
+        Assert.assertEquals(-1, second.lookupString(utf8("a")));
+        Assert.assertTrue(second.lookupString(utf8("c")) >= 0);
+    }
+
+    @Test
+    public void testCodesStableAcrossDocuments() throws IOException {
+        XMLParser parser = createParser(100);
+        NodeTreePointable first = parse(parser, "<station><id>1</id><name>one</name></station>");
+        NodeTreePointable second = parse(parser, "<station><name>two</name><id>2</id><extra/></station>");
+        Assert.assertTrue(second.getDictionaryEntryCount() > first.getDictionaryEntryCount());
+        UTF8StringPointable string = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        for (int i = 0; i < first.getDictionaryEntryCount(); ++i) {
+            first.getString(i, string);
+            String value = string.toString();
+            Assert.assertEquals(value, i, second.lookupString(utf8(value)));
+        }
+        Assert.assertEquals(-1, first.lookupString(utf8("extra")));
+        // New strings are added after the shared ones.
+        Assert.assertTrue(second.lookupString(utf8("extra")) >= first.getDictionaryEntryCount());
+    }
+
+    @Test
+    public void testResetAfterSizeExceeded() throws IOException {
+        int size = parse(createParser(0), "<a><b/></a>").getDictionaryEntryCount();
+        XMLParser parser = createParser(size);
+        parse(parser, "<a><b/></a>");
+        // The dictionary holds no more than the shared size, so it is kept.
+        NodeTreePointable second = parse(parser, "<c/>");
+        Assert.assertTrue(second.lookupString(utf8("a")) >= 0);
+        Assert.assertTrue(second.lookupString(utf8("c")) >= 0);
+        // Now it holds more, so the next document starts with an empty dictionary.
+        NodeTreePointable third = parse(parser, "<d/>");
+        Assert.assertEquals(-1, third.lookupString(utf8("a")));
+        Assert.assertEquals(-1, third.lookupString(utf8("c")));
+        Assert.assertTrue(third.lookupString(utf8("d")) >= 0);
+    }
+
+    private static XMLParser createParser(int sharedDictionarySize) throws IOException {
+        System.setProperty(SIZE_PROPERTY, Integer.toString(sharedDictionarySize));
+        return new XMLParser(false, new TreeNodeIdProvider((short) 0), null);
+    }
+
+    private static NodeTreePointable parse(XMLParser parser, String document) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        parser.parse(new StringReader(document), abvs);
+        NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+        // Skip the value tag of the node tree.
+        ntp.set(abvs.getByteArray(), abvs.getStartOffset() + 1, abvs.getLength() - 1);
+        return ntp;
+    }
+
+    private UTF8StringPointable utf8(String value) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        svb.write(value, abvs.getDataOutput());
+        UTF8StringPointable string = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        string.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+        return string;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases checking that the {@link UTF8XMLScanner} builds the same documents
+ * as the SAX parser.
+ */
+public class UTF8XMLScannerTest {
+    private static final String PARSER_PROPERTY = "vxquery.xml_parser";
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(PARSER_PROPERTY);
+    }
+
+    @Test
+    public void testElementsAndText() throws Exception {
+        assertSameDocument("<?xml version=\"1.0\"?>\n<a><b>text</b><c/>more <d>x</d>\n</a>\n");
+    }
+
+    @Test
+    public void testAttributesAndNamespaces() throws Exception {
+        assertSameDocument("<a xmlns=\"urn:a\" xmlns:p=\"urn:p\" id=\"1\" p:q=\"two\tlines\nhere\">"
+                + "<p:b xml:lang=\"en\" v='&lt;&amp;&#x41;&#10;'/><c xmlns=\"\"><d/></c></a>");
+    }
+
+    @Test
+    public void testReferencesCDataCommentsAndProcessingInstructions() throws Exception {
+        assertSameDocument("<!-- before --><?pi data?><a>&quot;x&apos; &#233;&#x1F600;<![CDATA[<raw> & ]]>"
+                + "<!-- in\r\nside --><?target some data?>line\r\nend\rx</a><!-- after -->");
+    }
+
+    @Test
+    public void testNonAsciiText() throws Exception {
+        assertSameDocument("<élément attr=\"ü中\">café 中文 😀</élément>");
+    }
+
+    @Test
+    public void testCatalog() throws Exception {
+        byte[] document;
+        try (InputStream input = getClass().getResourceAsStream("/collection/catalog.xml")) {
+            document = IOUtils.toByteArray(input);
+        }
+        Assert.assertArrayEquals(parse("sax", document), parse("utf8", document));
+    }
+
+    @Test
+    public void testUnsupportedDocuments() {
+        Assert.assertFalse(isSupported("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>"));
+        Assert.assertFalse(isSupported("<!-- c --><!DOCTYPE a [<!ENTITY e \"x\">]><a>&e;</a>"));
+        Assert.assertTrue(isSupported("<?xml version=\"1.0\" encoding=\"utf-8\"?><a/>"));
+        Assert.assertTrue(isSupported("<a/>"));
+    }
+
+    @Test(expected = HyracksDataException.class)
+    public void testMismatchedEndTag() throws Exception {
+        parse("utf8", "<a><b></a></b>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = HyracksDataException.class)
+    public void testUnboundPrefix() throws Exception {
+        parse("utf8", "<p:a/>".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isSupported(String document) {
+        byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        return UTF8XMLScanner.isSupported(bytes, 0, bytes.length);
+    }
+
+    private static void assertSameDocument(String document) throws IOException {
+        byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        Assert.assertArrayEquals(parse("sax", bytes), parse("utf8", bytes));
+    }
+
+    private static byte[] parse(String parserName, byte[] document) throws IOException {
+        System.setProperty(PARSER_PROPERTY, parserName);
+        XMLParser parser = new XMLParser(false, new TreeNodeIdProvider((short) 0), null);
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        if ("sax".equals(parserName)) {
+            // The SAX parser decodes the bytes with the platform encoding otherwise
+            parser.parse(new InputStreamReader(new ByteArrayInputStream(document), StandardCharsets.UTF_8),
+                    abvs);
+        } else {
+            parser.parse(new ByteArrayInputStream(document), abvs);
+        }
+        return Arrays.copyOfRange(abvs.getByteArray(), abvs.getStartOffset(),
+                abvs.getStartOffset() + abvs.getLength());
+    }
+}
@@ -22,6 +22,7 @@ import static org.apache.vxquery.rest.Constants.Properties.AVAILABLE_PROCESSORS;
 import static org.apache.vxquery.rest.Constants.Properties.HDFS_CONFIG;
 import static org.apache.vxquery.rest.Constants.Properties.JOIN_HASH_SIZE;
 import static org.apache.vxquery.rest.Constants.Properties.MAXIMUM_DATA_SIZE;
+import static org.apache.vxquery.rest.Constants.Properties.PLAN_CACHE_SIZE;
 
 import java.io.IOException;
 import java.net.Inet4Address;
@@ -66,6 +67,7 @@ public class LocalClusterUtil {
         System.setProperty(AVAILABLE_PROCESSORS, String.valueOf(config.getAvailableProcessors()));
         System.setProperty(JOIN_HASH_SIZE, String.valueOf(config.getJoinHashSize()));
         System.setProperty(MAXIMUM_DATA_SIZE, String.valueOf(config.getMaximumDataSize()));
+        System.setProperty(PLAN_CACHE_SIZE, String.valueOf(config.getPlanCacheSize()));
         if (config.getHdfsConf() != null) {
             System.setProperty(HDFS_CONFIG, config.getHdfsConf());
         }
@@ -32,6 +32,7 @@ import static org.apache.vxquery.rest.Constants.Parameters.SHOW_OET;
 import static org.apache.vxquery.rest.Constants.Parameters.SHOW_RP;
 import static org.apache.vxquery.rest.Constants.Parameters.SHOW_TET;
 import static org.apache.vxquery.rest.Constants.Parameters.STATEMENT;
+import static org.apache.vxquery.rest.Constants.Parameters.STREAM;
 import static org.apache.vxquery.rest.Constants.URLs.QUERY_ENDPOINT;
 import static org.apache.vxquery.rest.Constants.URLs.QUERY_RESULT_ENDPOINT;
 
@@ -139,6 +140,9 @@ public class RestUtils {
         if (resultRequest.isShowMetrics()) {
             builder.setParameter(METRICS, String.valueOf(resultRequest.isShowMetrics()));
         }
+        if (resultRequest.isStream()) {
+            builder.setParameter(STREAM, String.valueOf(resultRequest.isStream()));
+        }
 
         return builder.build();
     }
@@ -28,6 +28,7 @@ public class QueryResultRequest {
 
     private long resultId;
     private boolean showMetrics = false;
+    private boolean stream = false;
     private String requestId;
 
     public QueryResultRequest(long resultId) {
@@ -51,6 +52,14 @@ public class QueryResultRequest {
         this.showMetrics = showMetrics;
     }
 
+    public boolean isStream() {
+        return stream;
+    }
+
+    public void setStream(boolean stream) {
+        this.stream = stream;
+    }
+
     public String getRequestId() {
         return requestId;
     }
@@ -23,6 +23,9 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class Metrics {
     private long compileTime;
     private long elapsedTime;
+    private long planCacheHits;
+    private long planCacheMisses;
+    private long planCacheEvictions;
 
     public long getCompileTime() {
         return compileTime;
@@ -39,4 +42,28 @@ public class Metrics {
     public void setElapsedTime(long elapsedTime) {
         this.elapsedTime = elapsedTime;
     }
+
+    public long getPlanCacheHits() {
+        return planCacheHits;
+    }
+
+    public void setPlanCacheHits(long planCacheHits) {
+        this.planCacheHits = planCacheHits;
+    }
+
+    public long getPlanCacheMisses() {
+        return planCacheMisses;
+    }
+
+    public void setPlanCacheMisses(long planCacheMisses) {
+        this.planCacheMisses = planCacheMisses;
+    }
+
+    public long getPlanCacheEvictions() {
+        return planCacheEvictions;
+    }
+
+    public void setPlanCacheEvictions(long planCacheEvictions) {
+        this.planCacheEvictions = planCacheEvictions;
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hyracks.api.dataset.ResultSetId;
+import org.apache.hyracks.api.job.JobSpecification;
+import org.apache.vxquery.context.StaticContext;
+
+/**
+ * A bounded cache of compiled queries used by {@link VXQueryService}, so a
+ * query sent again with the same settings is submitted without being parsed,
+ * translated and optimized again. The least recently used plan is evicted when
+ * the cache is full.
+ */
+public class QueryPlanCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, CompiledQuery> plans = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize
+     *            maximum number of plans kept. 0 disables the cache.
+     */
+    public QueryPlanCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param key
+     *            {@link Key} of the query
+     * @return the compiled query | null if it is not in the cache
+     */
+    public synchronized CompiledQuery get(Key key) {
+        CompiledQuery plan = plans.get(key);
+        if (plan == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return plan;
+    }
+
+    public synchronized void put(Key key, CompiledQuery plan) {
+        if (!isEnabled()) {
+            return;
+        }
+        plans.put(key, plan);
+        Iterator<CompiledQuery> iterator = plans.values().iterator();
+        while (plans.size() > maxSize) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Everything a compiled plan depends on, other than the configuration of the
+     * service itself.
+     */
+    public static final class Key {
+        private final String statement;
+        private final int optimization;
+        private final int frameSize;
+        private final Map<String, File> sourceFileMap;
+        private final List<String> indexCollections;
+        private final Set<String> nodeIds;
+
+        public Key(String statement, int optimization, int frameSize, Map<String, File> sourceFileMap,
+                List<String> indexCollections, Set<String> nodeIds) {
+            this.statement = normalize(statement);
+            this.optimization = optimization;
+            this.frameSize = frameSize;
+            this.sourceFileMap = sourceFileMap == null ? new HashMap<String, File>() : new HashMap<>(sourceFileMap);
+            this.indexCollections = new ArrayList<>(indexCollections);
+            this.nodeIds = new HashSet<>(nodeIds);
+        }
+
+        /**
+         * Only whitespace around the statement and line endings are normalized, as
+         * any other whitespace may be part of a string literal.
+         */
+        private static String normalize(String statement) {
+            return statement.trim().replace("\r\n", "\n").replace('\r', '\n');
+        }
+
+        @Override
+        public int hashCode() {
+            int result = statement.hashCode();
+            result = 31 * result + optimization;
+            result = 31 * result + frameSize;
+            result = 31 * result + sourceFileMap.hashCode();
+            result = 31 * result + indexCollections.hashCode();
+            result = 31 * result + nodeIds.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return optimization == other.optimization && frameSize == other.frameSize
+                    && statement.equals(other.statement) && sourceFileMap.equals(other.sourceFileMap)
+                    && indexCollections.equals(other.indexCollections) && nodeIds.equals(other.nodeIds);
+        }
+    }
+
+    /**
+     * A compiled query. The {@link ResultSetId} is the one the result writer of
+     * the job was generated with; hyracks tells results of different runs apart by
+     * their job id.
+     */
+    public static final class CompiledQuery {
+        private final JobSpecification jobSpecification;
+        private final ResultSetId resultSetId;
+        private final StaticContext moduleContext;
+
+        public CompiledQuery(JobSpecification jobSpecification, ResultSetId resultSetId,
+                StaticContext moduleContext) {
+            this.jobSpecification = jobSpecification;
+            this.resultSetId = resultSetId;
+            this.moduleContext = moduleContext;
+        }
+
+        public JobSpecification getJobSpecification() {
+            return jobSpecification;
+        }
+
+        public ResultSetId getResultSetId() {
+            return resultSetId;
+        }
+
+        public StaticContext getModuleContext() {
+            return moduleContext;
+        }
+    }
+}
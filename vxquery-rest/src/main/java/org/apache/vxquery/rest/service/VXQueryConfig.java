@@ -34,6 +34,8 @@ public class VXQueryConfig {
     private long joinHashSize = -1;
     /** Maximum possible data size in bytes. (default: 150,323,855,000) */
     private long maximumDataSize = -1;
+    /** Number of compiled queries kept by the service, 0 disables. (default: 64) */
+    private int planCacheSize = 64;
     /** Directory path to Hadoop configuration files */
     private String hdfsConf = null;
 
@@ -66,6 +68,14 @@ public class VXQueryConfig {
         this.maximumDataSize = maximumDataSize;
     }
 
+    public int getPlanCacheSize() {
+        return planCacheSize;
+    }
+
+    public void setPlanCacheSize(int planCacheSize) {
+        this.planCacheSize = planCacheSize;
+    }
+
     public String getHdfsConf() {
         return hdfsConf;
     }
@@ -23,15 +23,18 @@ import static org.apache.vxquery.rest.Constants.ErrorCodes.UNFORSEEN_PROBLEM;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,13 +53,15 @@ import org.apache.hyracks.api.client.NodeControllerInfo;
 import org.apache.hyracks.api.comm.IFrame;
 import org.apache.hyracks.api.comm.IFrameTupleAccessor;
 import org.apache.hyracks.api.comm.VSizeFrame;
-import org.apache.hyracks.api.dataset.DatasetJobRecord;
+import org.apache.hyracks.api.dataflow.IOperatorDescriptor;
 import org.apache.hyracks.api.dataset.IHyracksDatasetReader;
 import org.apache.hyracks.api.dataset.ResultSetId;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.api.exceptions.HyracksException;
 import org.apache.hyracks.api.job.JobFlag;
 import org.apache.hyracks.api.job.JobId;
 import org.apache.hyracks.api.job.JobSpecification;
+import org.apache.hyracks.api.job.JobStatus;
 import org.apache.hyracks.client.dataset.HyracksDataset;
 import org.apache.hyracks.control.nc.resources.memory.FrameManager;
 import org.apache.hyracks.dataflow.common.comm.io.ResultFrameTupleAccessor;
@@ -70,6 +75,7 @@ import org.apache.vxquery.context.StaticContextImpl;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.exceptions.VXQueryRuntimeException;
+import org.apache.vxquery.metadata.VXQueryIndexingOperatorDescriptor;
 import org.apache.vxquery.rest.request.QueryRequest;
 import org.apache.vxquery.rest.request.QueryResultRequest;
 import org.apache.vxquery.rest.response.APIResponse;
@@ -104,10 +110,15 @@ public class VXQueryService {
     private AtomicLong atomicLong = new AtomicLong(0);
     private Map<Long, HyracksJobContext> jobContexts = new ConcurrentHashMap<>();
     private IHyracksClientConnection hyracksClientConnection;
-    private HyracksDataset hyracksDataset;
+    private final Map<Integer, HyracksDataset> hyracksDatasets = new HashMap<>();
+    private final Object indexCatalogLock = new Object();
+    private final QueryPlanCache planCache;
+    private volatile List<String> indexCollections;
+    private final Set<JobId> indexModificationJobs = ConcurrentHashMap.newKeySet();
 
     public VXQueryService(VXQueryConfig config) {
         vxQueryConfig = config;
+        planCache = new QueryPlanCache(config.getPlanCacheSize());
     }
 
     /**
@@ -157,13 +168,89 @@ public class VXQueryService {
      * @return AsyncQueryResponse if no error occurs | ErrorResponse else
      */
     public APIResponse execute(final QueryRequest request) {
-        QueryRequest indexingRequest = new QueryRequest("show-indexes()");
-        indexingRequest.setAsync(false);
-        SyncQueryResponse indexingResponse = (SyncQueryResponse) execute(indexingRequest, new ArrayList<>());
-        LOGGER.log(Level.FINE, String.format("Found indexes: %s", indexingResponse.getResults()));
+        return execute(request, getIndexCollections());
+    }
+
+    /**
+     * Returns the collections which have an index. The catalog is read with a
+     * show-indexes() query only when the service has no copy of it, which is on
+     * the first request and after a job built, updated or deleted an index. The
+     * copy is not kept while such a job is running.
+     *
+     * @return collections having an index
+     */
+    private List<String> getIndexCollections() {
+        List<String> collections = indexCollections;
+        if (collections != null && indexModificationJobs.isEmpty()) {
+            return collections;
+        }
+        synchronized (indexCatalogLock) {
+            boolean indexModificationRunning = checkIndexModificationJobs();
+            collections = indexCollections;
+            if (collections != null) {
+                return collections;
+            }
+            QueryRequest indexingRequest = new QueryRequest("show-indexes()");
+            indexingRequest.setAsync(false);
+            APIResponse indexingResponse = execute(indexingRequest, Collections.<String> emptyList());
+            if (!(indexingResponse instanceof SyncQueryResponse)) {
+                // Not kept, so the catalog is read again by the next request.
+                LOGGER.log(Level.WARNING, "Unable to read the index catalog, running the query without indexes");
+                return Collections.emptyList();
+            }
+            String results = ((SyncQueryResponse) indexingResponse).getResults();
+            LOGGER.log(Level.FINE, String.format("Found indexes: %s", results));
+
+            collections = new ArrayList<>();
+            for (String collection : results.split("\n")) {
+                if (!collection.isEmpty()) {
+                    collections.add(collection);
+                }
+            }
+            collections = Collections.unmodifiableList(collections);
+            if (!indexModificationRunning) {
+                indexCollections = collections;
+            }
+            return collections;
+        }
+    }
+
+    /**
+     * Forgets the jobs building, updating or deleting an index that have finished
+     * and drops the copy of the index catalog if there was one, whether or not
+     * the results of the job have been read.
+     *
+     * @return true if such a job is still running
+     */
+    private boolean checkIndexModificationJobs() {
+        boolean running = false;
+        for (Iterator<JobId> i = indexModificationJobs.iterator(); i.hasNext();) {
+            JobId jobId = i.next();
+            JobStatus status;
+            try {
+                status = hyracksClientConnection.getJobStatus(jobId);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Unable to get the status of index job " + jobId, e);
+                status = null;
+            }
+            if (status == JobStatus.PENDING || status == JobStatus.RUNNING) {
+                running = true;
+            } else {
+                i.remove();
+                indexCollections = null;
+            }
+        }
+        return running;
+    }
 
-        List<String> collections = Arrays.asList(indexingResponse.getResults().split("\n"));
-        return execute(request, collections);
+    /**
+     * Drops the copy of the index catalog so that it is read again by the next
+     * request.
+     */
+    private void invalidateIndexCollections() {
+        synchronized (indexCatalogLock) {
+            indexCollections = null;
+        }
     }
 
     private APIResponse execute(final QueryRequest request, List<String> collections) {
@@ -196,47 +283,64 @@ public class VXQueryService {
                 request.isShowAbstractSyntaxTree(), request.isShowTranslatedExpressionTree(),
                 request.isShowOptimizedExpressionTree(), request.isShowRuntimePlan());
 
-        Date start = new Date();
-        // Compiling the XQuery given
-        final XMLQueryCompiler compiler = new XMLQueryCompiler(listener, nodeControllerInfos, request.getFrameSize(),
-                vxQueryConfig.getAvailableProcessors(), vxQueryConfig.getJoinHashSize(),
-                vxQueryConfig.getMaximumDataSize(), vxQueryConfig.getHdfsConf());
-        CompilerControlBlock compilerControlBlock = new CompilerControlBlock(
-                new StaticContextImpl(RootStaticContextImpl.INSTANCE), resultSetId, request.getSourceFileMap());
-        try {
-            compiler.compile(null, new StringReader(query), compilerControlBlock, request.getOptimization(),
-                    collections);
-        } catch (AlgebricksException e) {
-            LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
-                    query, e.getMessage()));
-            return APIResponse.newErrorResponse(request.getRequestId(), Error.builder().withCode(PROBLEM_WITH_QUERY)
-                    .withMessage("Query compilation failure: " + e.getMessage()).build());
-        } catch (SystemException e) {
-            LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
-                    query, e.getMessage()));
-            return APIResponse.newErrorResponse(request.getRequestId(),
-                    new Error(PROBLEM_WITH_QUERY, "Query compilation failure: " + e.getCode()));
+        // The intermediate trees and plans requested are only produced by the compiler
+        QueryPlanCache.Key planKey = null;
+        if (planCache.isEnabled() && !request.isShowAbstractSyntaxTree() && !request.isShowTranslatedExpressionTree()
+                && !request.isShowOptimizedExpressionTree() && !request.isShowRuntimePlan()) {
+            planKey = new QueryPlanCache.Key(query, request.getOptimization(), request.getFrameSize(),
+                    request.getSourceFileMap(), collections, nodeControllerInfos.keySet());
+        }
+
+        long start = System.nanoTime();
+        QueryPlanCache.CompiledQuery plan = planKey == null ? null : planCache.get(planKey);
+        if (plan == null) {
+            // Compiling the XQuery given
+            final XMLQueryCompiler compiler = new XMLQueryCompiler(listener, nodeControllerInfos,
+                    request.getFrameSize(), vxQueryConfig.getAvailableProcessors(), vxQueryConfig.getJoinHashSize(),
+                    vxQueryConfig.getMaximumDataSize(), vxQueryConfig.getHdfsConf());
+            CompilerControlBlock compilerControlBlock = new CompilerControlBlock(
+                    new StaticContextImpl(RootStaticContextImpl.INSTANCE), resultSetId, request.getSourceFileMap());
+            try {
+                compiler.compile(null, new StringReader(query), compilerControlBlock, request.getOptimization(),
+                        collections);
+            } catch (AlgebricksException e) {
+                LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
+                        query, e.getMessage()));
+                return APIResponse.newErrorResponse(request.getRequestId(), Error.builder()
+                        .withCode(PROBLEM_WITH_QUERY).withMessage("Query compilation failure: " + e.getMessage())
+                        .build());
+            } catch (SystemException e) {
+                LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
+                        query, e.getMessage()));
+                return APIResponse.newErrorResponse(request.getRequestId(),
+                        new Error(PROBLEM_WITH_QUERY, "Query compilation failure: " + e.getCode()));
+            }
+
+            Module module = compiler.getModule();
+            plan = new QueryPlanCache.CompiledQuery(module.getHyracksJobSpecification(), resultSetId,
+                    module.getModuleContext());
+            if (planKey != null) {
+                planCache.put(planKey, plan);
+            }
         }
 
         if (request.isShowMetrics()) {
-            response.getMetrics().setCompileTime(new Date().getTime() - start.getTime());
+            response.getMetrics().setCompileTime(getElapsedMillis(start));
+            response.getMetrics().setPlanCacheHits(planCache.getHits());
+            response.getMetrics().setPlanCacheMisses(planCache.getMisses());
+            response.getMetrics().setPlanCacheEvictions(planCache.getEvictions());
         }
 
         if (request.isCompileOnly()) {
             return response;
         }
 
-        Module module = compiler.getModule();
-        JobSpecification js = module.getHyracksJobSpecification();
-        DynamicContext dCtx = new DynamicContextImpl(module.getModuleContext());
-        js.setGlobalJobDataFactory(new VXQueryGlobalDataFactory(dCtx.createFactory()));
-
         HyracksJobContext hyracksJobContext;
-        start = new Date();
+        start = System.nanoTime();
         if (!request.isAsync()) {
             for (int i = 0; i < request.getRepeatExecutions(); i++) {
                 try {
-                    hyracksJobContext = executeJob(js, resultSetId, request);
+                    hyracksJobContext = executeJob(plan);
 
                 } catch (Exception e) {
                     LOGGER.log(SEVERE, "Error occurred when submitting job to hyracks for query: " + query, e);
@@ -260,7 +364,7 @@ public class VXQueryService {
             }
         } else {
             try {
-                hyracksJobContext = executeJob(js, resultSetId, request);
+                hyracksJobContext = executeJob(plan);
             } catch (Exception e) {
                 LOGGER.log(SEVERE, "Error occurred when submitting job to hyracks for query: " + query, e);
                 return APIResponse.newErrorResponse(request.getRequestId(), Error.builder().withCode(UNFORSEEN_PROBLEM)
@@ -270,21 +374,45 @@ public class VXQueryService {
         }
 
         if (request.isShowMetrics()) {
-            response.getMetrics().setElapsedTime(new Date().getTime() - start.getTime());
+            response.getMetrics().setElapsedTime(getElapsedMillis(start));
         }
 
         return response;
     }
 
-    private HyracksJobContext executeJob(JobSpecification js, ResultSetId resultSetId, QueryRequest request)
-            throws Exception {
+    private HyracksJobContext executeJob(QueryPlanCache.CompiledQuery plan) throws Exception {
         HyracksJobContext hyracksJobContext;
-        JobId jobId = hyracksClientConnection.startJob(js, EnumSet.of(JobFlag.PROFILE_RUNTIME));
-        hyracksJobContext = new HyracksJobContext(jobId, js.getFrameSize(), resultSetId);
+        JobSpecification js = plan.getJobSpecification();
+        boolean indexModification = isIndexModification(js);
+        if (indexModification) {
+            invalidateIndexCollections();
+        }
+        JobId jobId;
+        // A cached plan is shared by requests. The job specification is serialized when the job is started, so
+        // holding the plan until then keeps another request from replacing the global job data of this job.
+        synchronized (plan) {
+            DynamicContext dCtx = new DynamicContextImpl(plan.getModuleContext());
+            js.setGlobalJobDataFactory(new VXQueryGlobalDataFactory(dCtx.createFactory()));
+            jobId = hyracksClientConnection.startJob(js, EnumSet.of(JobFlag.PROFILE_RUNTIME));
+        }
+        if (indexModification) {
+            indexModificationJobs.add(jobId);
+        }
+        hyracksJobContext = new HyracksJobContext(jobId, js.getFrameSize(), plan.getResultSetId());
 
         return hyracksJobContext;
     }
 
+    private static boolean isIndexModification(JobSpecification js) {
+        for (IOperatorDescriptor operator : js.getOperatorMap().values()) {
+            if (operator instanceof VXQueryIndexingOperatorDescriptor
+                    && ((VXQueryIndexingOperatorDescriptor) operator).isIndexModification()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static SystemException getSystemException(HyracksException e) {
         Throwable t = e;
         Throwable candidate = t instanceof SystemException ? t : null;
@@ -307,6 +435,17 @@ public class VXQueryService {
         return null;
     }
 
+    /**
+     * Milliseconds since a {@link System#nanoTime()} value.
+     *
+     * @param start
+     *            value of {@link System#nanoTime()} when the step started
+     * @return elapsed time in whole milliseconds
+     */
+    private static long getElapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
     /**
      * Returns the query results for a given result set id.
      *
@@ -318,7 +457,7 @@ public class VXQueryService {
     public APIResponse getResult(QueryResultRequest request) {
         if (jobContexts.containsKey(request.getResultId())) {
             QueryResultResponse resultResponse = APIResponse.newQueryResultResponse(request.getRequestId());
-            Date start = new Date();
+            long start = System.nanoTime();
             try {
                 String results = readResults(jobContexts.get(request.getResultId()));
                 resultResponse.setResults(results);
@@ -329,7 +468,7 @@ public class VXQueryService {
             }
 
             if (request.isShowMetrics()) {
-                resultResponse.getMetrics().setElapsedTime(new Date().getTime() - start.getTime());
+                resultResponse.getMetrics().setElapsedTime(getElapsedMillis(start));
             }
 
             return resultResponse;
@@ -339,6 +478,41 @@ public class VXQueryService {
         }
     }
 
+    /**
+     * Writes the query results for a given result set id to an output stream
+     * frame by frame as they arrive from hyracks, so only a few frames are held in
+     * memory regardless of the size of the result.
+     *
+     * @param request
+     *            {@link QueryResultRequest} with result ID required
+     * @param out
+     *            stream the results are written to. It is flushed after every
+     *            frame.
+     * @return null if the results were written |
+     *         {@link org.apache.vxquery.rest.response.ErrorResponse} else.
+     */
+    public APIResponse getResult(QueryResultRequest request, OutputStream out) {
+        HyracksJobContext jobContext = jobContexts.get(request.getResultId());
+        if (jobContext == null) {
+            return APIResponse.newErrorResponse(request.getRequestId(), Error.builder().withCode(NOT_FOUND)
+                    .withMessage("No query found for result ID : " + request.getResultId()).build());
+        }
+
+        try {
+            writeResults(jobContext, out);
+        } catch (HyracksException e) {
+            LOGGER.log(Level.SEVERE, "Error occurred when streaming results for id : " + request.getResultId(), e);
+            SystemException se = getSystemException(e);
+            return APIResponse.newErrorResponse(request.getRequestId(), new Error(UNFORSEEN_PROBLEM,
+                    String.format("Error occurred when reading results: %s", se != null ? se.getCode() : "")));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error occurred when streaming results for id : " + request.getResultId(), e);
+            return APIResponse.newErrorResponse(request.getRequestId(), new Error(UNFORSEEN_PROBLEM,
+                    "Error occurred when reading results for: " + request.getResultId()));
+        }
+        return null;
+    }
+
     /**
      * Reads results from hyracks given the {@link HyracksJobContext} containing
      * {@link ResultSetId} and {@link JobId} mapping.
@@ -351,35 +525,57 @@ public class VXQueryService {
      *             IOErrors and etc
      */
     private String readResults(HyracksJobContext jobContext) throws Exception {
+        ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
+        writeResults(jobContext, resultStream);
+        return resultStream.toString(StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Writes results from hyracks to an output stream as the frames arrive. The
+     * reader blocks until the next frame is available, so there is no need to
+     * poll for the job status.
+     *
+     * @param jobContext
+     *            mapoing between the {@link ResultSetId} and corresponding hyracks
+     *            {@link JobId}
+     * @param out
+     *            stream the results are written to
+     * @throws Exception
+     *             IOErrors and etc
+     */
+    private void writeResults(HyracksJobContext jobContext, OutputStream out) throws Exception {
         int nReaders = 1;
 
-        if (hyracksDataset == null) {
-            hyracksDataset = new HyracksDataset(hyracksClientConnection, jobContext.getFrameSize(), nReaders);
+        // The reader copies whole network buffers into the frame, so the dataset must use the frame size of the job.
+        HyracksDataset hyracksDataset;
+        synchronized (hyracksDatasets) {
+            hyracksDataset = hyracksDatasets.get(jobContext.getFrameSize());
+            if (hyracksDataset == null) {
+                hyracksDataset = new HyracksDataset(hyracksClientConnection, jobContext.getFrameSize(), nReaders);
+                hyracksDatasets.put(jobContext.getFrameSize(), hyracksDataset);
+            }
         }
 
         FrameManager resultDisplayFrameMgr = new FrameManager(jobContext.getFrameSize());
         IFrame frame = new VSizeFrame(resultDisplayFrameMgr);
         IHyracksDatasetReader reader = hyracksDataset.createReader(jobContext.getJobId(), jobContext.getResultSetId());
-        OutputStream resultStream = new ByteArrayOutputStream();
-
-        // This loop is required for XTests to reliably identify the error code of
-        // SystemException.
-        while (reader.getResultStatus().getState() == DatasetJobRecord.State.RUNNING) {
-            Thread.sleep(100);
-        }
 
         IFrameTupleAccessor frameTupleAccessor = new ResultFrameTupleAccessor();
-        try (PrintWriter writer = new PrintWriter(resultStream, true)) {
+        try {
             while (reader.read(frame) > 0) {
-                writer.print(ResultUtils.getStringFromBuffer(frame.getBuffer(), frameTupleAccessor));
-                writer.flush();
+                ResultUtils.writeBuffer(frame.getBuffer(), frameTupleAccessor, out);
+                out.flush();
                 frame.getBuffer().clear();
             }
+        } catch (HyracksDataException e) {
+            // The reader only reports a failed result channel. Waiting for the job
+            // throws the exception holding the error code of the SystemException.
+            hyracksClientConnection.waitForCompletion(jobContext.getJobId());
+            throw e;
         }
 
         hyracksClientConnection.waitForCompletion(jobContext.getJobId());
         LOGGER.log(Level.FINE, String.format("Result for resultId %d completed", jobContext.getResultSetId().getId()));
-        return resultStream.toString();
     }
 
     /**
@@ -17,11 +17,16 @@
 
 package org.apache.vxquery.rest.servlet;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.hyracks.http.api.IServletRequest;
+import org.apache.hyracks.http.api.IServletResponse;
+import org.apache.hyracks.http.server.utils.HttpUtil;
 import org.apache.vxquery.rest.Constants;
 import org.apache.vxquery.rest.request.QueryResultRequest;
 import org.apache.vxquery.rest.response.APIResponse;
@@ -46,6 +51,50 @@ public class QueryResultAPIServlet extends RestAPIServlet {
 
     @Override
     protected APIResponse doHandle(IServletRequest request) {
+        QueryResultRequest resultRequest = createResultRequest(request);
+        if (resultRequest == null) {
+            return APIResponse.newErrorResponse(null, Error.builder().withCode(HttpResponseStatus.BAD_REQUEST.code())
+                    .withMessage("Result ID couldn't be retrieved from URL").build());
+        }
+        return vxQueryService.getResult(resultRequest);
+    }
+
+    @Override
+    protected boolean isStreamed(IServletRequest request) {
+        return Boolean.parseBoolean(request.getParameter(Constants.Parameters.STREAM));
+    }
+
+    /**
+     * Streams the raw results to the client with chunked transfer encoding as the
+     * frames arrive from hyracks. If reading the results fails after the first
+     * bytes were sent, the connection is closed without the last chunk.
+     */
+    @Override
+    protected APIResponse doStream(IServletRequest request, IServletResponse response) throws IOException {
+        QueryResultRequest resultRequest = createResultRequest(request);
+        if (resultRequest == null) {
+            return doHandle(request);
+        }
+        resultRequest.setStream(true);
+
+        // The status has to be set before the first chunk is flushed.
+        response.setStatus(HttpResponseStatus.OK);
+        HttpUtil.setContentType(response, "text/plain", StandardCharsets.UTF_8.name());
+        CountingOutputStream out = new CountingOutputStream(response.outputStream());
+        APIResponse error = vxQueryService.getResult(resultRequest, out);
+        if (error != null && out.getByteCount() > 0) {
+            // The status line has been sent already. A failure status makes the chunked response close the
+            // connection instead of writing the last chunk, so the client cannot take the partial results as
+            // complete.
+            LOGGER.log(Level.SEVERE,
+                    String.format("Streaming results for resultId %d failed", resultRequest.getResultId()));
+            response.setStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+            return null;
+        }
+        return error;
+    }
+
+    private QueryResultRequest createResultRequest(IServletRequest request) {
         String uri = request.getHttpRequest().uri();
         long resultId;
         try {
@@ -54,14 +103,13 @@ public class QueryResultAPIServlet extends RestAPIServlet {
             resultId = Long.parseLong(pathParam);
         } catch (NumberFormatException e) {
             LOGGER.log(Level.SEVERE, "Result ID could not be retrieved from URL");
-            return APIResponse.newErrorResponse(null, Error.builder().withCode(HttpResponseStatus.BAD_REQUEST.code())
-                    .withMessage("Result ID couldn't be retrieved from URL").build());
+            return null;
         }
 
         QueryResultRequest resultRequest = new QueryResultRequest(resultId, UUID.randomUUID().toString());
         resultRequest.setShowMetrics(Boolean.parseBoolean(request.getParameter(Constants.Parameters.METRICS)));
         LOGGER.log(Level.INFO,
                 String.format("Received a result request with resultId : %d", resultRequest.getResultId()));
-        return vxQueryService.getResult(resultRequest);
+        return resultRequest;
     }
 }
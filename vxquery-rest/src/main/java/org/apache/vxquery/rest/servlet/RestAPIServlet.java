@@ -30,6 +30,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 
+import org.apache.htrace.fasterxml.jackson.core.JsonGenerator;
 import org.apache.htrace.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.htrace.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.hyracks.http.api.IServletRequest;
@@ -84,7 +85,16 @@ public abstract class RestAPIServlet extends AbstractServlet {
     private void getOrPost(IServletRequest request, IServletResponse response) {
         try {
             initResponse(request, response);
-            APIResponse entity = doHandle(request);
+            APIResponse entity;
+            if (isStreamed(request)) {
+                entity = doStream(request, response);
+                if (entity == null) {
+                    // The entity has already been written to the response.
+                    return;
+                }
+            } else {
+                entity = doHandle(request);
+            }
             if (entity == null) {
                 LOGGER.log(Level.WARNING, "No entity found for request : " + request);
                 response.setStatus(HttpResponseStatus.BAD_REQUEST);
@@ -132,6 +142,8 @@ public abstract class RestAPIServlet extends AbstractServlet {
                 try {
                     HttpUtil.setContentType(response, CONTENT_TYPE_JSON);
                     ObjectMapper jsonMapper = new ObjectMapper();
+                    // Results are UTF-8, but the response writer may not be; keep the entity ASCII.
+                    jsonMapper.configure(JsonGenerator.Feature.ESCAPE_NON_ASCII, true);
                     entityString = jsonMapper.writeValueAsString(entity);
                 } catch (JsonProcessingException e) {
                     LOGGER.log(Level.SEVERE, "Error occurred when mapping java object into JSON", e);
@@ -165,4 +177,35 @@ public abstract class RestAPIServlet extends AbstractServlet {
      * @return Object to be set as the entity of the response
      */
     protected abstract APIResponse doHandle(IServletRequest request);
+
+    /**
+     * Whether the entity of the response is written directly to the client by
+     * {@link #doStream(IServletRequest, IServletResponse)} instead of being
+     * returned by {@link #doHandle(IServletRequest)}.
+     *
+     * @param request
+     *            {@link IServletRequest} received
+     * @return true if the response is to be streamed
+     */
+    protected boolean isStreamed(IServletRequest request) {
+        return false;
+    }
+
+    /**
+     * Writes the entity of the response directly to the client. Implementing
+     * classes use this to send large entities without building them in memory.
+     * By default the entity is built by {@link #doHandle(IServletRequest)} and
+     * sent like any other response.
+     *
+     * @param request
+     *            {@link IServletRequest} received
+     * @param response
+     *            {@link IServletResponse} the entity is written to
+     * @return null if the entity was written | an entity, such as an
+     *         {@link ErrorResponse}, to be sent if nothing was written yet
+     * @throws IOException
+     */
+    protected APIResponse doStream(IServletRequest request, IServletResponse response) throws IOException {
+        return doHandle(request);
+    }
 }
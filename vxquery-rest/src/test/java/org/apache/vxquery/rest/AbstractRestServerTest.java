@@ -18,6 +18,7 @@
 package org.apache.vxquery.rest;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.HttpMethod;
@@ -31,6 +32,7 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.apache.vxquery.app.VXQueryApplication;
 import org.apache.vxquery.app.util.LocalClusterUtil;
 import org.apache.vxquery.app.util.RestUtils;
@@ -200,6 +202,33 @@ public abstract class AbstractRestServerTest {
         }
     }
 
+    /**
+     * Reads the raw results streamed by the result endpoint.
+     *
+     * @param resultRequest
+     *            result request with stream enabled
+     * @param method
+     *            Http method- GET or POST
+     * @return results as sent by the server
+     */
+    protected static String getQueryResultStream(QueryResultRequest resultRequest, String method) throws Exception {
+        URI uri = RestUtils.buildQueryResultURI(resultRequest, restIpAddress, restPort);
+        CloseableHttpClient httpClient = HttpClients.custom().setConnectionTimeToLive(20, TimeUnit.SECONDS).build();
+        try {
+            HttpUriRequest request = getRequest(uri, method);
+            try (CloseableHttpResponse httpResponse = httpClient.execute(request)) {
+                Assert.assertEquals(httpResponse.getStatusLine().getStatusCode(), HttpResponseStatus.OK.code());
+
+                HttpEntity entity = httpResponse.getEntity();
+                Assert.assertNotNull(entity);
+                Assert.assertTrue(entity.isChunked());
+                return EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            }
+        } finally {
+            HttpClientUtils.closeQuietly(httpClient);
+        }
+    }
+
     /**
      * Creates a POST or GET request accordingly from the given {@link URI}
      *
@@ -108,6 +108,15 @@ public class ErrorResponseTest extends AbstractRestServerTest {
         runTest(buildQueryResultURI(request, restIpAddress, restPort), CONTENT_TYPE_XML, NOT_FOUND);
     }
 
+    @Test
+    public void testInvalidStreamResultId() throws Exception {
+        QueryResultRequest request = new QueryResultRequest(1000);
+        request.setStream(true);
+        runTest(buildQueryResultURI(request, restIpAddress, restPort), null, NOT_FOUND);
+        runTest(buildQueryResultURI(request, restIpAddress, restPort), CONTENT_TYPE_JSON, NOT_FOUND);
+        runTest(buildQueryResultURI(request, restIpAddress, restPort), CONTENT_TYPE_XML, NOT_FOUND);
+    }
+
     @Test
     public void testSyncInvalidInput01() throws Exception {
         QueryRequest request = new QueryRequest("   ");
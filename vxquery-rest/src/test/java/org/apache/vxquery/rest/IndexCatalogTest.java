@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest;
+
+import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_JSON;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.HttpMethod;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.vxquery.app.util.RestUtils;
+import org.apache.vxquery.rest.request.QueryRequest;
+import org.apache.vxquery.rest.response.AsyncQueryResponse;
+import org.apache.vxquery.rest.response.SyncQueryResponse;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that the index catalog kept by the service follows the jobs that build
+ * or delete an index.
+ */
+public class IndexCatalogTest extends AbstractRestServerTest {
+
+    private static final long INDEX_TIMEOUT_MILLIS = 30000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexUsedWithoutReadingIndexResults() throws Exception {
+        File collection = folder.newFolder("collection");
+        FileUtils.writeStringToFile(new File(collection, "a.xml"), "<a><b>1</b></a>", StandardCharsets.UTF_8);
+        String path = collection.getAbsolutePath();
+        String query = "collection(\"" + path + "\")/a/b";
+
+        // Reads the catalog before the index exists.
+        Assert.assertFalse(usesIndex(query));
+
+        // The results of the index job are never read.
+        QueryRequest indexRequest = new QueryRequest("build-index-on-collection(\"" + path + "\")");
+        AsyncQueryResponse indexResponse = getQuerySuccessResponse(
+                RestUtils.buildQueryURI(indexRequest, restIpAddress, restPort), CONTENT_TYPE_JSON,
+                AsyncQueryResponse.class, HttpMethod.GET);
+        checkResults(indexResponse, false);
+
+        long deadline = System.currentTimeMillis() + INDEX_TIMEOUT_MILLIS;
+        while (!usesIndex(query)) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("The index built for " + path + " is not used by queries");
+            }
+            Thread.sleep(100);
+        }
+
+        QueryRequest deleteRequest = new QueryRequest("delete-index(\"" + path + "\")");
+        deleteRequest.setAsync(false);
+        getQuerySuccessResponse(RestUtils.buildQueryURI(deleteRequest, restIpAddress, restPort), CONTENT_TYPE_JSON,
+                SyncQueryResponse.class, HttpMethod.GET);
+        Assert.assertFalse(usesIndex(query));
+    }
+
+    private static boolean usesIndex(String query) throws Exception {
+        QueryRequest request = new QueryRequest(query);
+        request.setCompileOnly(true);
+        request.setShowOptimizedExpressionTree(true);
+        request.setAsync(false);
+        URI uri = RestUtils.buildQueryURI(request, restIpAddress, restPort);
+        SyncQueryResponse response =
+                getQuerySuccessResponse(uri, CONTENT_TYPE_JSON, SyncQueryResponse.class, HttpMethod.GET);
+        return response.getOptimizedExpressionTree().contains("VXQueryIndexingDataSource");
+    }
+}
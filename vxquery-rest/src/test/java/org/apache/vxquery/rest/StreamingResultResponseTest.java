@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest;
+
+import static org.apache.vxquery.rest.Constants.ErrorCodes.UNFORSEEN_PROBLEM;
+import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_JSON;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.HttpMethod;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.apache.vxquery.app.util.RestUtils;
+import org.apache.vxquery.rest.request.QueryRequest;
+import org.apache.vxquery.rest.request.QueryResultRequest;
+import org.apache.vxquery.rest.response.APIResponse;
+import org.apache.vxquery.rest.response.AsyncQueryResponse;
+import org.apache.vxquery.rest.response.Error;
+import org.apache.vxquery.rest.service.VXQueryConfig;
+import org.apache.vxquery.rest.service.VXQueryService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Tests the results streamed by the query result endpoint when the stream
+ * parameter is set.
+ */
+public class StreamingResultResponseTest extends AbstractRestServerTest {
+
+    @Test
+    public void testStreamedResults() throws Exception {
+        runTest("for $x in (1, 2.0, 3) return $x", "123", HttpMethod.GET);
+        runTest("for $x in (1, 2.0, 3) return $x", "123", HttpMethod.POST);
+    }
+
+    @Test
+    public void testStreamedResultsSmallFrames() throws Exception {
+        // Enough results to fill several frames.
+        QueryRequest request = new QueryRequest("for $x in 1 to 2000 return $x");
+        request.setFrameSize((int) Math.pow(2, 12));
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 2000; i++) {
+            expected.append(i);
+        }
+        runTest(request, expected.toString(), HttpMethod.GET);
+    }
+
+    @Test
+    public void testStreamFailureAfterFirstBytes() throws Exception {
+        // A service whose results fail after the first frame has been sent.
+        VXQueryService failingService = new VXQueryService(new VXQueryConfig()) {
+            @Override
+            public APIResponse getResult(QueryResultRequest request, OutputStream out) {
+                try {
+                    out.write("123".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                } catch (IOException e) {
+                    Assert.fail(e.getMessage());
+                }
+                return APIResponse.newErrorResponse(request.getRequestId(),
+                        new Error(UNFORSEEN_PROBLEM, "Error occurred when reading results"));
+            }
+        };
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RestServer restServer = new RestServer(failingService, port);
+        restServer.start();
+
+        CloseableHttpClient httpClient = HttpClients.custom().setConnectionTimeToLive(20, TimeUnit.SECONDS).build();
+        try {
+            QueryResultRequest resultRequest = new QueryResultRequest(1);
+            resultRequest.setStream(true);
+            URI uri = RestUtils.buildQueryResultURI(resultRequest, restIpAddress, port);
+            try (CloseableHttpResponse httpResponse = httpClient.execute(getRequest(uri, HttpMethod.GET))) {
+                Assert.assertEquals(HttpResponseStatus.OK.code(), httpResponse.getStatusLine().getStatusCode());
+                try {
+                    EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8);
+                    Assert.fail("Partial results must not end with the last chunk");
+                } catch (IOException e) {
+                    // The connection was closed before the last chunk.
+                }
+            }
+        } finally {
+            HttpClientUtils.closeQuietly(httpClient);
+            restServer.stop();
+        }
+    }
+
+    private void runTest(String query, String expected, String httpMethod) throws Exception {
+        runTest(new QueryRequest(query), expected, httpMethod);
+    }
+
+    private void runTest(QueryRequest request, String expected, String httpMethod) throws Exception {
+        URI queryEndpointUri = RestUtils.buildQueryURI(request, restIpAddress, restPort);
+        AsyncQueryResponse queryResponse =
+                getQuerySuccessResponse(queryEndpointUri, CONTENT_TYPE_JSON, AsyncQueryResponse.class, httpMethod);
+        checkResults(queryResponse, false);
+
+        QueryResultRequest resultRequest = new QueryResultRequest(queryResponse.getResultId());
+        resultRequest.setStream(true);
+        Assert.assertEquals(expected, normalize(getQueryResultStream(resultRequest, httpMethod)));
+    }
+}
@@ -21,11 +21,18 @@ import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_JS
 import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_XML;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.HttpMethod;
 
 import org.apache.vxquery.app.util.RestUtils;
 import org.apache.vxquery.rest.request.QueryRequest;
+import org.apache.vxquery.rest.response.APIResponse;
 import org.apache.vxquery.rest.response.SyncQueryResponse;
 import org.apache.vxquery.rest.service.Status;
 import org.junit.Assert;
@@ -133,6 +140,65 @@ public class SuccessSyncResponseTest extends AbstractRestServerTest {
         runTest(CONTENT_TYPE_XML, request);
     }
 
+    @Test
+    public void testRepeatedQueryUsesCachedPlan() throws Exception {
+        QueryRequest request = new QueryRequest("for $x in (4, 5.0, 6) return $x * 2");
+        request.setShowMetrics(true);
+        request.setAsync(false);
+
+        SyncQueryResponse first = (SyncQueryResponse) vxQueryService.execute(request);
+        SyncQueryResponse second = (SyncQueryResponse) vxQueryService.execute(request);
+
+        Assert.assertEquals(Status.SUCCESS.toString(), second.getStatus());
+        Assert.assertEquals(first.getMetrics().getPlanCacheHits() + 1, second.getMetrics().getPlanCacheHits());
+        Assert.assertEquals(first.getMetrics().getPlanCacheMisses(), second.getMetrics().getPlanCacheMisses());
+        Assert.assertEquals(normalize(first.getResults()), normalize(second.getResults()));
+        // Looking up a cached plan may take less than a millisecond.
+        Assert.assertTrue(second.getMetrics().getCompileTime() >= 0);
+        Assert.assertTrue(second.getMetrics().getElapsedTime() > 0);
+    }
+
+    @Test
+    public void testCachedPlanMatchesFreshCompile() throws Exception {
+        String query = "for $x in 1 to 10 return $x * $x";
+        // Requests showing the runtime plan are always compiled.
+        QueryRequest freshRequest = new QueryRequest(query);
+        freshRequest.setShowRuntimePlan(true);
+        freshRequest.setAsync(false);
+        SyncQueryResponse fresh = (SyncQueryResponse) vxQueryService.execute(freshRequest);
+        Assert.assertEquals(Status.SUCCESS.toString(), fresh.getStatus());
+
+        final QueryRequest request = new QueryRequest(query);
+        request.setShowMetrics(true);
+        request.setAsync(false);
+        vxQueryService.execute(request);
+        SyncQueryResponse cached = (SyncQueryResponse) vxQueryService.execute(request);
+        Assert.assertEquals(Status.SUCCESS.toString(), cached.getStatus());
+        Assert.assertTrue(cached.getMetrics().getPlanCacheHits() > 0);
+        Assert.assertEquals(normalize(fresh.getResults()), normalize(cached.getResults()));
+
+        // Requests sharing the cached plan at the same time.
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<APIResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                responses.add(executor.submit(new Callable<APIResponse>() {
+                    @Override
+                    public APIResponse call() {
+                        return vxQueryService.execute(request);
+                    }
+                }));
+            }
+            for (Future<APIResponse> response : responses) {
+                SyncQueryResponse concurrent = (SyncQueryResponse) response.get();
+                Assert.assertEquals(Status.SUCCESS.toString(), concurrent.getStatus());
+                Assert.assertEquals(normalize(fresh.getResults()), normalize(concurrent.getResults()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private void runTest(String contentType, QueryRequest request) throws Exception {
         runTest(contentType, request, HttpMethod.GET);
         runTest(contentType, request, HttpMethod.POST);
@@ -15,8 +15,11 @@
 package org.apache.vxquery.xtest;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -178,7 +181,7 @@ public class TestCaseResult {
     private String slurpFile(File f) {
         StringBuilder content = new StringBuilder();
         try {
-            FileReader in = new FileReader(f);
+            Reader in = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8);
             try {
                 char[] buffer = new char[8192];
                 int c;